@@ -6,6 +6,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import org.codarama.diet.api.reporting.MinimizationReport;
 import org.codarama.diet.bundle.JarMaker;
+import org.codarama.diet.model.ClassFile;
 import org.codarama.diet.model.ClassName;
 import org.codarama.diet.util.Files;
 import org.codarama.diet.util.Settings;
@@ -14,6 +15,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
 import java.util.Set;
 import java.util.jar.JarFile;
@@ -23,6 +28,8 @@ public abstract class DefaultMinimizer implements Minimizer {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultMinimizer.class);
 
+    private static final String CLASS_FILE_SUFFIX = "." + ClassFile.EXTENSION;
+
     // this is usually the OS temp dir
     private String workDir = Settings.DEFAULT_OUT_DIR.getValue();
     // this is where explicitly included dependencies go
@@ -62,10 +69,39 @@ public abstract class DefaultMinimizer implements Minimizer {
             throw new IllegalArgumentException("Directory at: " + pathToLibs + " does not exist or is not a directory");
         }
 
-        libraryLocations = ImmutableSet.copyOf(Files.in(pathToLibs).withExtension(JarMaker.JAR_FILE_EXTENSION).list());
+        final ImmutableSet.Builder<File> libraries = ImmutableSet.builder();
+        libraries.addAll(Files.in(pathToLibs).withExtension(JarMaker.JAR_FILE_EXTENSION).list());
+
+        // class directories, like the target/classes of a sibling module, are the sub directories holding class files
+        final File[] subDirs = lib.listFiles();
+        if (subDirs != null) {
+            for (File subDir : subDirs) {
+                if (subDir.isDirectory() && holdsClasses(subDir)) {
+                    libraries.add(subDir);
+                }
+            }
+        }
+
+        libraryLocations = libraries.build();
         return this;
     }
 
+    private static boolean holdsClasses(File dir) throws IOException {
+        final boolean[] found = {false};
+        java.nio.file.Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                if (path.getFileName().toString().endsWith(CLASS_FILE_SUFFIX)) {
+                    found[0] = true;
+                    return FileVisitResult.TERMINATE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return found[0];
+    }
+
     @Override
     public Minimizer libs(Set<File> artifactLocations) {
         this.libraryLocations = artifactLocations;
@@ -2,7 +2,6 @@ package org.codarama.diet.api;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collection;
 import java.util.Set;
 import java.util.jar.JarFile;
 import java.util.stream.Collectors;
@@ -10,6 +9,8 @@ import java.util.stream.Collectors;
 import org.codarama.diet.api.reporting.MinimizationReport;
 import org.codarama.diet.api.reporting.ReportBuilder;
 import org.codarama.diet.bundle.JarMaker;
+import org.codarama.diet.index.IndexStatistics;
+import org.codarama.diet.minimization.MinimizationResult;
 import org.codarama.diet.minimization.MinimizationStrategy;
 import org.codarama.diet.model.ClassStream;
 import org.codarama.diet.model.SourceFile;
@@ -19,13 +20,13 @@ import org.codarama.diet.util.Files;
 import com.google.common.collect.Sets;
 
 /**
- * A minimizer that indexes all .class files in the jars it's trying to minimize.
+ * A minimizer that indexes all .class files in the jars and class directories it's trying to minimize.
  *
  * Created by ayld on 20.06.15.
  */
 public class IndexedMinimizer extends DefaultMinimizer implements Minimizer{
 
-    private final MinimizationStrategy<SourceFile, JarFile, ClassStream> minimizationStrategy = Components.INDEXED_MINIMIZATION_STRATEGY.getInstance();
+    private final MinimizationStrategy<SourceFile, File, ClassStream> minimizationStrategy = Components.INDEXED_MINIMIZATION_STRATEGY.getInstance();
     private final JarMaker<ClassStream> jarMaker = Components.STREAM_JAR_MAKER.getInstance();
 
     private IndexedMinimizer(File pathToSources) {
@@ -61,31 +62,21 @@ public class IndexedMinimizer extends DefaultMinimizer implements Minimizer{
                     .collect(Collectors.toList())
         );
 
-        final Set<JarFile> libs = toJarFiles(libraryLocations);
-        reportBuilder.sources(sources).allLibsCount(countClasses(libs));
+        reportBuilder.sources(sources);
 
-        final Set<ClassStream> minimized = minimizationStrategy.minimize(sources, libs);
-        reportBuilder.minimizedLibs(minimized);
+        // the found classes read their bytes from the run's store, which is dropped once they are in the jar
+        try (MinimizationResult<ClassStream> minimized = minimizationStrategy.minimizeToResult(sources, libraryLocations)) {
+            reportBuilder.allLibsCount(countClasses(minimized.libraryStatistics())).minimizedLibs(minimized.classes());
 
-        final JarFile minimizedJar = jarMaker.zip(minimized);
-        reportBuilder.setJarFile(minimizedJar).stopClock();
+            final JarFile minimizedJar = jarMaker.zip(minimized.classes());
+            reportBuilder.setJarFile(minimizedJar).stopClock();
+        }
 
         return reportBuilder.getReport();
     }
 
-    private int countClasses(Set<JarFile> jars) {
-        int result = 0;
-        for (JarFile jar : jars) {
-            result += jar.size();
-        }
-        return result;
-    }
-
-    private Set<JarFile> toJarFiles(Collection<File> jars) throws IOException{
-        final Set<JarFile> result = Sets.newHashSetWithExpectedSize(jars.size());
-        for (File jar : jars) {
-            result.add(new JarFile(jar));
-        }
-        return result;
+    // the run counted the classes of its libraries when indexing them, duplicates are classes of the libraries too
+    private int countClasses(IndexStatistics libraries) {
+        return (int) (libraries.classes() + libraries.duplicates());
     }
 }
@@ -26,6 +26,10 @@ public interface Minimizer {
      * The {@link Minimizer} would assume that all the dependencies of the sources are located within this directory or
      * it's sub directories
      * </p>
+     * <p>
+     * The libraries are the jars in the directory or its sub directories and the sub directories holding class files,
+     * which are taken as class directories
+     * </p>
      *
      * @param pathToLibraries the file path to the directory
      * @return an instance of the {@link Minimizer} that is being set up
@@ -37,8 +41,11 @@ public interface Minimizer {
      * <p>
      * Use the provided {@link Set} of {@link File}s as the list of dependencies, which need to be minimized
      * </p>
+     * <p>
+     * A dependency is either a jar or a class directory, like the target/classes directory of a sibling module
+     * </p>
      *
-     * @param artifactLocations a {@link Set} of {@link File}s that are dependencies of this project
+     * @param artifactLocations a {@link Set} of jars and class directories that are dependencies of this project
      * @return an instance of the {@link Minimizer} that is being set up
      */
     Minimizer libs(Set<File> artifactLocations);
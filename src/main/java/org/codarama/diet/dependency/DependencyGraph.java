@@ -0,0 +1,396 @@
+package org.codarama.diet.dependency;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.util.annotation.Immutable;
+import org.codarama.diet.util.annotation.NotThreadSafe;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The dependencies of a set of classes, kept as compressed sparse rows of {@link ClassName#id()}s.
+ *
+ * A graph is three int arrays: the ids of its classes, sorted, the offsets of their rows and the ids of the
+ * dependencies of all classes one row after another, so an edge costs 4 bytes and a class 8. Dependencies need not be
+ * classes of the graph, the dependencies of a jar's classes for example are mostly classes of other jars or the JDK.
+ *
+ * The transitive closure of classes is walked with {@link #closure(List, Collection)}, iteratively with an explicit
+ * worklist, marking visited classes in a bitset over their ids, so it uses a bit per known class name and a worklist
+ * entry per reached class, whatever the depth of the graph.
+ */
+@Immutable
+public final class DependencyGraph {
+
+    private static final DependencyGraph EMPTY = new DependencyGraph(new int[0], new int[1], new int[0]);
+
+    // the ids of the classes of the graph, sorted, a class's row is its position here
+    private final int[] nodes;
+
+    // the dependencies of the class of row r are targets[offsets[r]] to targets[offsets[r + 1]]
+    private final int[] offsets;
+    private final int[] targets;
+
+    private DependencyGraph(int[] nodes, int[] offsets, int[] targets) {
+        this.nodes = nodes;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * @return a graph without classes
+     * */
+    public static DependencyGraph empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return a builder to create a graph with
+     * */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Walks the transitive dependencies of the given classes through the given graphs.
+     * The dependencies of a class are taken from the first graph that has the class, like classes are taken from the
+     * first of a classpath's jars that has them.
+     *
+     * @param graphs the graphs to walk, in order of precedence
+     * @param roots the classes to start from
+     * @return the roots and every class reached from them, also those that are in none of the graphs
+     * */
+    public static Set<ClassName> closure(List<DependencyGraph> graphs, Collection<ClassName> roots) {
+        long[] visited = new long[0];
+        int[] worklist = new int[Math.max(16, roots.size())];
+        int pending = 0;
+        int reached = 0;
+
+        for (ClassName root : roots) {
+            final int id = root.id();
+            visited = ensureCapacity(visited, id);
+            if (mark(visited, id)) {
+                worklist = ensureSize(worklist, pending);
+                worklist[pending++] = id;
+                reached++;
+            }
+        }
+
+        while (pending > 0) {
+            final int id = worklist[--pending];
+
+            for (DependencyGraph graph : graphs) {
+                final int row = Arrays.binarySearch(graph.nodes, id);
+                if (row < 0) {
+                    continue;
+                }
+
+                for (int edge = graph.offsets[row]; edge < graph.offsets[row + 1]; edge++) {
+                    final int target = graph.targets[edge];
+                    visited = ensureCapacity(visited, target);
+                    if (mark(visited, target)) {
+                        worklist = ensureSize(worklist, pending);
+                        worklist[pending++] = target;
+                        reached++;
+                    }
+                }
+                break;
+            }
+        }
+
+        final Set<ClassName> result = Sets.newHashSetWithExpectedSize(reached);
+        for (int word = 0; word < visited.length; word++) {
+            long bits = visited[word];
+            while (bits != 0) {
+                result.add(ClassName.byId(word * Long.SIZE + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Walks the transitive dependencies of the given classes through this graph, see {@link #closure(List, Collection)}.
+     *
+     * @param roots the classes to start from
+     * @return the roots and every class reached from them
+     * */
+    public Set<ClassName> closure(Collection<ClassName> roots) {
+        return closure(ImmutableList.of(this), roots);
+    }
+
+    /**
+     * Reads a graph written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in the input to read from
+     * @return the read graph
+     * @throws IOException if the input can not be read or does not hold a graph
+     * */
+    public static DependencyGraph readFrom(DataInput in) throws IOException {
+        final int nameCount = in.readInt();
+        if (nameCount < 0) {
+            throw new IOException("not a dependency graph, name count: " + nameCount);
+        }
+
+        final int[] ids = new int[nameCount];
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = ClassName.of(in.readUTF()).id();
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("not a dependency graph, a name is not a class name", e);
+        }
+
+        final int nodeCount = in.readInt();
+        final int edgeCount = in.readInt();
+        if (nodeCount < 0 || edgeCount < 0) {
+            throw new IOException("not a dependency graph, node count: " + nodeCount + ", edge count: " + edgeCount);
+        }
+
+        final Builder builder = builder();
+        for (int row = 0; row < nodeCount; row++) {
+            final int node = idOf(ids, in.readInt());
+            final int dependencyCount = in.readInt();
+            if (dependencyCount < 0) {
+                throw new IOException("not a dependency graph, dependency count: " + dependencyCount);
+            }
+
+            final int[] dependencies = new int[dependencyCount];
+            for (int i = 0; i < dependencies.length; i++) {
+                dependencies[i] = idOf(ids, in.readInt());
+            }
+            builder.add(node, dependencies);
+        }
+
+        final DependencyGraph result = builder.build();
+        if (result.edgeCount() != edgeCount) {
+            throw new IOException("not a dependency graph, expected: " + edgeCount + " edges, read: " + result.edgeCount());
+        }
+        return result;
+    }
+
+    /**
+     * Writes the graph with the names of its classes, so it can be read in another JVM, where names have other ids.
+     * The names are written once, as a table, and classes and their dependencies as positions in the table.
+     *
+     * @param out the output to write to
+     * @throws IOException if the output can not be written
+     * */
+    public void writeTo(DataOutput out) throws IOException {
+        // the table holds every id of the graph once, sorted, so a name's position is found with a binary search
+        final int[] all = Arrays.copyOf(nodes, nodes.length + targets.length);
+        System.arraycopy(targets, 0, all, nodes.length, targets.length);
+        Arrays.sort(all);
+
+        int names = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (names == 0 || all[names - 1] != all[i]) {
+                all[names++] = all[i];
+            }
+        }
+
+        out.writeInt(names);
+        for (int i = 0; i < names; i++) {
+            out.writeUTF(ClassName.byId(all[i]).toString());
+        }
+
+        out.writeInt(nodes.length);
+        out.writeInt(targets.length);
+        for (int row = 0; row < nodes.length; row++) {
+            out.writeInt(Arrays.binarySearch(all, 0, names, nodes[row]));
+            out.writeInt(offsets[row + 1] - offsets[row]);
+            for (int edge = offsets[row]; edge < offsets[row + 1]; edge++) {
+                out.writeInt(Arrays.binarySearch(all, 0, names, targets[edge]));
+            }
+        }
+    }
+
+    /**
+     * @param className a class
+     * @return true if the graph has the dependencies of the class
+     * */
+    public boolean has(ClassName className) {
+        return Arrays.binarySearch(nodes, className.id()) >= 0;
+    }
+
+    /**
+     * @param className a class
+     * @return the dependencies of the class, a view of the graph's row of the class, empty if the graph does not have
+     *         the class
+     * */
+    public List<ClassName> dependenciesOf(ClassName className) {
+        final int row = Arrays.binarySearch(nodes, className.id());
+        if (row < 0) {
+            return ImmutableList.of();
+        }
+
+        final int start = offsets[row];
+        final int end = offsets[row + 1];
+        return new AbstractList<ClassName>() {
+            @Override
+            public ClassName get(int index) {
+                Preconditions.checkElementIndex(index, end - start);
+                return ClassName.byId(targets[start + index]);
+            }
+
+            @Override
+            public int size() {
+                return end - start;
+            }
+        };
+    }
+
+    /**
+     * @return the number of classes in the graph
+     * */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * @return the number of dependencies of all classes in the graph
+     * */
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    private static int idOf(int[] ids, int position) throws IOException {
+        if (position < 0 || position >= ids.length) {
+            throw new IOException("not a dependency graph, unknown name position: " + position);
+        }
+        return ids[position];
+    }
+
+    // sets the bit of the id, true if it was not set
+    private static boolean mark(long[] bits, int id) {
+        final int word = id >>> 6;
+        final long mask = 1L << id;
+        if ((bits[word] & mask) != 0) {
+            return false;
+        }
+        bits[word] |= mask;
+        return true;
+    }
+
+    private static long[] ensureCapacity(long[] bits, int id) {
+        final int word = id >>> 6;
+        return word < bits.length ? bits : Arrays.copyOf(bits, Math.max(word + 1, bits.length * 2));
+    }
+
+    private static int[] ensureSize(int[] values, int index) {
+        return index < values.length ? values : Arrays.copyOf(values, values.length * 2);
+    }
+
+    /**
+     * Collects the dependencies of classes into a {@link DependencyGraph}.
+     */
+    @NotThreadSafe
+    public static final class Builder {
+
+        // the ids of the added classes and their dependencies, in the order they were added
+        private int[] ids = new int[16];
+        private int[][] rows = new int[16][];
+        private int added;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a class and its dependencies, replacing those it was added with before.
+         *
+         * @param className the class
+         * @param dependencies the dependencies of the class
+         * @return this builder
+         * */
+        public Builder add(ClassName className, Collection<ClassName> dependencies) {
+            final int[] row = new int[dependencies.size()];
+            int i = 0;
+            for (ClassName dependency : dependencies) {
+                row[i++] = dependency.id();
+            }
+
+            return add(className.id(), row);
+        }
+
+        /**
+         * Adds every class of the given graph and its dependencies.
+         *
+         * @param graph the graph to add
+         * @return this builder
+         * */
+        public Builder addAll(DependencyGraph graph) {
+            for (int row = 0; row < graph.nodes.length; row++) {
+                add(graph.nodes[row], Arrays.copyOfRange(graph.targets, graph.offsets[row], graph.offsets[row + 1]));
+            }
+            return this;
+        }
+
+        private Builder add(int id, int[] dependencyIds) {
+            if (added == ids.length) {
+                ids = Arrays.copyOf(ids, added * 2);
+                rows = Arrays.copyOf(rows, added * 2);
+            }
+            ids[added] = id;
+            rows[added] = dependencyIds;
+            added++;
+            return this;
+        }
+
+        /**
+         * @return a graph of the added classes
+         * */
+        public DependencyGraph build() {
+            if (added == 0) {
+                return EMPTY;
+            }
+
+            // sorted by id and then by when they were added, ids are never negative, the last row of an id wins
+            final long[] order = new long[added];
+            for (int i = 0; i < added; i++) {
+                order[i] = (long) ids[i] << 32 | i;
+            }
+            Arrays.sort(order);
+
+            int nodeCount = 0;
+            int edgeCount = 0;
+            for (int i = 0; i < added; i++) {
+                if (isLastOfId(order, i)) {
+                    nodeCount++;
+                    edgeCount += rows[(int) order[i]].length;
+                }
+            }
+
+            final int[] nodes = new int[nodeCount];
+            final int[] offsets = new int[nodeCount + 1];
+            final int[] targets = new int[edgeCount];
+
+            int row = 0;
+            int edge = 0;
+            for (int i = 0; i < added; i++) {
+                if (!isLastOfId(order, i)) {
+                    continue;
+                }
+                final int[] dependencies = rows[(int) order[i]];
+                nodes[row] = ids[(int) order[i]];
+                offsets[row++] = edge;
+                System.arraycopy(dependencies, 0, targets, edge, dependencies.length);
+                edge += dependencies.length;
+            }
+            offsets[row] = edge;
+
+            return new DependencyGraph(nodes, offsets, targets);
+        }
+
+        private static boolean isLastOfId(long[] order, int i) {
+            return i + 1 == order.length || (order[i + 1] >>> 32) != (order[i] >>> 32);
+        }
+    }
+}
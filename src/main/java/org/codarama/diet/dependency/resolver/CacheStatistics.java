@@ -0,0 +1,45 @@
+package org.codarama.diet.dependency.resolver;
+
+import org.codarama.diet.util.annotation.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how a caching {@link DependencyResolver} answers.
+ *
+ * A resolution is either a hit, answered from the cache without parsing the class, or a miss, resolved by the wrapped
+ * resolver and added to the cache.
+ */
+@ThreadSafe
+public final class CacheStatistics {
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Records a resolution answered from the cache.
+     * */
+    public void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * Records a resolution not found in the cache.
+     * */
+    public void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses", hits(), misses());
+    }
+}
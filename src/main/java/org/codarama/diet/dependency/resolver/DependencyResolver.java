@@ -20,4 +20,14 @@ public interface DependencyResolver<T extends Resolvable> {
     Set<ClassName> resolve(T resolvable) throws IOException;
 
     Set<ClassName> resolve(Set<T> resolvables) throws IOException;
+
+    /**
+     * Returns a fingerprint of what the resolver is configured with, like the catalogs of platform classes it leaves
+     * out. Dependencies kept between runs are only valid for a resolver with the same fingerprint.
+     *
+     * @return a fingerprint of the resolver's configuration, 0 for resolvers that depend on the resolvable only
+     */
+    default long fingerprint() {
+        return 0;
+    }
 }
@@ -0,0 +1,256 @@
+package org.codarama.diet.dependency.resolver.impl;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.codarama.diet.dependency.resolver.CacheStatistics;
+import org.codarama.diet.dependency.resolver.DependencyResolver;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.codarama.diet.util.annotation.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the dependencies a wrapped resolver finds by the content of the class they were found for, on disk between
+ * runs.
+ *
+ * Classes are keyed by a 128 bit hash of their bytes, so a class of a jar that has not changed, like the jars of a
+ * local Maven repository, is parsed once and only hashed on later runs, whatever jar or run it is read in. The cache
+ * is read when created and written by {@link #flush()}, the file is laid out as:
+ * <pre>
+ *   header   magic, version, the fingerprint of the wrapped resolver, see {@link DependencyResolver#fingerprint()}
+ *   names    a count and the class names found as dependencies, the position of a name is its id
+ *   classes  a count and one record per class: the hash of its bytes, a count and the ids of its dependencies
+ * </pre>
+ * A dependency found for many classes is written once, and kept in memory as its {@link ClassName#id()}.
+ *
+ * Results are cached as the wrapped resolver returned them. A file written for a wrapped resolver that was configured
+ * differently, for example with other platform catalogs, has another fingerprint, its classes are discarded when it is
+ * read and the file is replaced on the next {@link #flush()}.
+ */
+@ThreadSafe
+public class CachingDependencyResolver implements DependencyResolver<ClassStream>, Flushable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingDependencyResolver.class);
+
+    private static final int MAGIC = 0x44444550; // DDEP
+    private static final int VERSION = 2;
+
+    private final File file;
+    private final DependencyResolver<ClassStream> delegate;
+
+    // the ids of the dependencies of every class, see ClassName#id(), written under the lock
+    private final Map<HashCode, int[]> dependencies = new ConcurrentHashMap<>();
+    private boolean changed;
+
+    private final CacheStatistics statistics = new CacheStatistics();
+
+    private CachingDependencyResolver(File file, DependencyResolver<ClassStream> delegate) {
+        this.file = file;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Creates a cache kept in a file, reading what the file holds if it exists.
+     * A file that can not be read or was written for another configuration of the wrapped resolver is ignored and
+     * replaced on the next {@link #flush()}.
+     *
+     * @param filePath the path to the cache file
+     * @param delegate the resolver to resolve classes not in the cache with
+     * @return a new cache
+     * */
+    public static CachingDependencyResolver inFile(String filePath, DependencyResolver<ClassStream> delegate) {
+        final CachingDependencyResolver result = new CachingDependencyResolver(new File(filePath).getAbsoluteFile(), delegate);
+        if (result.file.isFile()) {
+            try {
+                result.read();
+            } catch (IOException e) {
+                LOG.warn("ignoring unreadable dependency cache: " + result.file + ", it will be replaced", e);
+                result.clear();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<ClassName> resolve(ClassStream classStream) throws IOException {
+        final byte[] bytes = classStream.bytes();
+        final HashCode key = Hashing.murmur3_128().hashBytes(bytes);
+
+        final int[] cached = dependencies.get(key);
+        if (cached != null) {
+            statistics.recordHit();
+            return namesOf(cached);
+        }
+
+        statistics.recordMiss();
+        final Set<ClassName> result = delegate.resolve(ClassStream.fromBytes(classStream.name(), bytes));
+        add(key, result);
+        return result;
+    }
+
+    @Override
+    public Set<ClassName> resolve(Set<ClassStream> classStreams) throws IOException {
+        final Set<ClassName> result = Sets.newHashSet();
+
+        for (ClassStream classStream : classStreams) {
+            result.addAll(resolve(classStream));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the fingerprint of the wrapped resolver, the results of this resolver are the ones it finds
+     * */
+    @Override
+    public long fingerprint() {
+        return delegate.fingerprint();
+    }
+
+    /**
+     * Writes the cache to its file, if anything was added since it was read or last written.
+     *
+     * @throws IOException if the file can not be written
+     * */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (!changed) {
+            return;
+        }
+
+        final File parent = file.getParentFile();
+        if (!parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("could not create dependency cache directory: " + parent);
+        }
+
+        final File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(delegate.fingerprint());
+
+            // the file has its own name ids, in memory names are kept by their global ids
+            final Map<Integer, Integer> fileIds = Maps.newLinkedHashMap();
+            for (int[] dependencyIds : dependencies.values()) {
+                for (int id : dependencyIds) {
+                    if (!fileIds.containsKey(id)) {
+                        fileIds.put(id, fileIds.size());
+                    }
+                }
+            }
+
+            out.writeInt(fileIds.size());
+            for (int id : fileIds.keySet()) {
+                out.writeUTF(ClassName.byId(id).toString());
+            }
+
+            out.writeInt(dependencies.size());
+            for (Map.Entry<HashCode, int[]> entry : dependencies.entrySet()) {
+                out.write(entry.getKey().asBytes());
+                out.writeInt(entry.getValue().length);
+                for (int id : entry.getValue()) {
+                    out.writeInt(fileIds.get(id));
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+        LOG.debug("wrote dependency cache: " + file + ", of " + dependencies.size() + " classes");
+    }
+
+    /**
+     * @return the number of classes in the cache
+     * */
+    public int size() {
+        return dependencies.size();
+    }
+
+    /**
+     * @return the counts of hits and misses of the cache
+     * */
+    public CacheStatistics statistics() {
+        return statistics;
+    }
+
+    private static Set<ClassName> namesOf(int[] dependencyIds) {
+        final Set<ClassName> result = Sets.newHashSetWithExpectedSize(dependencyIds.length);
+        for (int id : dependencyIds) {
+            result.add(ClassName.byId(id));
+        }
+        return result;
+    }
+
+    private synchronized void add(HashCode key, Set<ClassName> dependencyNames) {
+        final int[] dependencyIds = new int[dependencyNames.size()];
+        int i = 0;
+        for (ClassName name : dependencyNames) {
+            dependencyIds[i++] = name.id();
+        }
+
+        dependencies.put(key, dependencyIds);
+        changed = true;
+    }
+
+    private synchronized void read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a dependency cache file or an unsupported version: " + file);
+            }
+            if (in.readLong() != delegate.fingerprint()) {
+                LOG.debug("discarding dependency cache: " + file + ", written for a differently configured resolver");
+                changed = true; // replaced on the next flush even if nothing is added
+                return;
+            }
+
+            final int[] ids = new int[in.readInt()];
+            for (int fileId = 0; fileId < ids.length; fileId++) {
+                ids[fileId] = ClassName.of(in.readUTF()).id();
+            }
+
+            final int classCount = in.readInt();
+            final byte[] hash = new byte[16];
+            for (int i = 0; i < classCount; i++) {
+                in.readFully(hash);
+
+                final int[] dependencyIds = new int[in.readInt()];
+                for (int j = 0; j < dependencyIds.length; j++) {
+                    final int fileId = in.readInt();
+                    if (fileId < 0 || fileId >= ids.length) {
+                        throw new IOException("corrupt dependency cache file: " + file + ", unknown name id: " + fileId);
+                    }
+                    dependencyIds[j] = ids[fileId];
+                }
+                dependencies.put(HashCode.fromBytes(hash), dependencyIds);
+            }
+        } catch (IllegalArgumentException e) {
+            // a name that is not a class name
+            throw new IOException("corrupt dependency cache file: " + file, e);
+        }
+    }
+
+    private synchronized void clear() {
+        dependencies.clear();
+    }
+}
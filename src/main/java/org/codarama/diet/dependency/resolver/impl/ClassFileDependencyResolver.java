@@ -10,13 +10,6 @@ import org.codarama.diet.event.model.ClassDependencyResolutionStartEvent;
 import org.codarama.diet.model.ClassFile;
 import org.codarama.diet.model.ClassName;
 
-import org.apache.bcel.classfile.ClassParser;
-import org.apache.bcel.classfile.ConstantClass;
-import org.apache.bcel.classfile.ConstantPool;
-import org.apache.bcel.classfile.DescendingVisitor;
-import org.apache.bcel.classfile.EmptyVisitor;
-import org.apache.bcel.classfile.JavaClass;
-
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import org.codarama.diet.model.ClassStream;
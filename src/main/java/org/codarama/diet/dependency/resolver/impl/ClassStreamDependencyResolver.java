@@ -1,18 +1,21 @@
 package org.codarama.diet.dependency.resolver.impl;
 
 import com.google.common.base.Stopwatch;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
-import org.apache.bcel.classfile.*;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.codarama.diet.component.ListenableComponent;
 import org.codarama.diet.dependency.resolver.DependencyResolver;
 import org.codarama.diet.event.model.ClassDependencyResolutionEndEvent;
 import org.codarama.diet.event.model.ClassDependencyResolutionStartEvent;
+import org.codarama.diet.index.impl.PlatformCatalog;
 import org.codarama.diet.model.ClassName;
 import org.codarama.diet.model.ClassStream;
 import org.codarama.diet.util.Java;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -20,28 +23,32 @@ import java.util.concurrent.TimeUnit;
  * Resolves the dependencies of {@link org.codarama.diet.model.ClassStream} which is essentially a byte stream.
  * The model class validates whether said stream is actually a compiled Java class.
  *
+ * A class is read once, see {@link DependencyScanner}, every class in its constant pool, descriptors, signatures and
+ * annotations is a dependency.
+ *
+ * Classes of the platform, the JDK or whatever {@link org.codarama.diet.index.impl.PlatformCatalog}s are set, are not
+ * returned as dependencies, they are never looked up in a library index.
+ *
  * Created by ayld on 6/21/2015.
  */
 public class ClassStreamDependencyResolver implements DependencyResolver<ClassStream> {
 
-    private static final String BINARY_ARRAY_ID_PREFIX = "[";
-    private static final String BINARY_TYPE_PREFIX = "L";
-    private static final String BINARY_ARRAY_ID_SUFFIX = ";";
-
-    private static final String ARRAY_ID_PREFIX_REGEX = "\\" + BINARY_ARRAY_ID_PREFIX + "+";
-    private static final String TYPE_PREFIX_REGEX = BINARY_TYPE_PREFIX;
+    private List<PlatformCatalog> platformCatalogs = Collections.emptyList();
 
     @Override
     public Set<ClassName> resolve(ClassStream classStream) throws IOException {
+        final Set<String> referencedClasses = DependencyScanner.referencedClasses(classStream.bytes());
 
-        final JavaClass javaClass = new ClassParser(classStream.content(), classStream.name().toString()).parse();
-
-        final DependencyVisitor dependencyVisitor = new DependencyVisitor(javaClass);
-        final DescendingVisitor classWalker = new DescendingVisitor(javaClass, dependencyVisitor);
+        final Set<ClassName> result = Sets.newHashSetWithExpectedSize(referencedClasses.size());
+        for (String dependency : referencedClasses) {
 
-        classWalker.visit();
-
-        return dependencyVisitor.getFoundDependencies();
+            // don't return java.io, java.lang ect. dependencies
+            final boolean isNotJavaCoreDependency = !dependency.startsWith(Java.ROOT_PACKAGE);
+            if (isNotJavaCoreDependency && !isPlatformClass(dependency)) {
+                result.add(ClassName.of(dependency));
+            }
+        }
+        return result;
     }
 
     @Override
@@ -55,53 +62,31 @@ public class ClassStreamDependencyResolver implements DependencyResolver<ClassSt
         return result;
     }
 
-    private static class DependencyVisitor extends EmptyVisitor {
-
-        private final JavaClass javaClass;
-        private Set<ClassName> foundDependencies = Sets.newHashSet();
-
-        private DependencyVisitor(JavaClass javaClass) {
-            this.javaClass = javaClass;
+    /**
+     * @return a hash of the stamps and sizes of the platform catalogs, in the order they are set
+     * */
+    @Override
+    public long fingerprint() {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (PlatformCatalog catalog : platformCatalogs) {
+            hasher.putLong(catalog.stamp()).putInt(catalog.size());
         }
+        return hasher.hash().asLong();
+    }
 
-        @Override
-        public void visitConstantClass(ConstantClass constantClass) {
-            final ConstantPool cp = javaClass.getConstantPool();
-
-            String dependency = constantClass.getBytes(cp);
-
-            // handle array dependencies
-            // if this is an array dependency remove identifiers
-            if (dependency.startsWith(BINARY_ARRAY_ID_PREFIX)) {
-                dependency = dependency.replaceAll(ARRAY_ID_PREFIX_REGEX, "");
-                dependency = dependency.replaceAll(BINARY_ARRAY_ID_SUFFIX, "");
-            }
-
-            // handle binary type notations
-            if (dependency.startsWith(BINARY_TYPE_PREFIX)) {
-                dependency = dependency.replaceAll(TYPE_PREFIX_REGEX, "");
-            }
-
-            // because for some reason BCEL returns dependencies like this:
-            //
-            // com/something/Class
-            //
-            // which is odd
-            // TODO check if there is a way to return dependencies dot delimited
-            dependency = dependency.replaceAll("/", ".");
-
-            // don't return the class we're resolving as a dependency
-            final boolean isNotResolvedClass = !dependency.equals(javaClass.getClassName());
+    /**
+     * @param platformCatalogs the catalogs of platform classes that are not dependencies, like the JDK's
+     * */
+    public void setPlatformCatalogs(List<PlatformCatalog> platformCatalogs) {
+        this.platformCatalogs = platformCatalogs;
+    }
 
-            // don't return java.io, java.lang ect. dependencies
-            final boolean isNotJavaCoreDependency = !dependency.startsWith(Java.ROOT_PACKAGE);
-            if (isNotResolvedClass && isNotJavaCoreDependency) {
-                foundDependencies.add(new ClassName(dependency));
+    private boolean isPlatformClass(String dependency) {
+        for (PlatformCatalog catalog : platformCatalogs) {
+            if (catalog.includes(dependency)) {
+                return true;
             }
         }
-
-        private Set<ClassName> getFoundDependencies() {
-            return ImmutableSet.copyOf(foundDependencies);
-        }
+        return false;
     }
 }
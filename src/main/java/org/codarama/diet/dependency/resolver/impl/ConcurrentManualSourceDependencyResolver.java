@@ -3,59 +3,59 @@ package org.codarama.diet.dependency.resolver.impl;
 import java.io.IOException;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 import org.codarama.diet.dependency.resolver.DependencyResolver;
 import org.codarama.diet.model.ClassName;
 import org.codarama.diet.model.SourceFile;
+import org.codarama.diet.util.EnginePool;
 
 import org.springframework.beans.factory.annotation.Required;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
+/**
+ * Resolves source files in parallel on the shared {@link org.codarama.diet.util.EnginePool}, in as many chunks as its
+ * parallelism allows. The pool outlives every call, so the resolver can be called any number of times.
+ */
 public class ConcurrentManualSourceDependencyResolver extends ManualParseSourceDependencyResolver implements DependencyResolver<SourceFile> {
 
-    private ExecutorService threadPool;
+    private EnginePool enginePool;
+    private int parallelism = Integer.MAX_VALUE;
 
     @Override
     public Set<ClassName> resolve(Set<SourceFile> sources) throws IOException {
-        final Set<ClassName> result = Sets.newHashSet();
-
-        final Set<Callable<Set<ClassName>>> resolutionTasks = Sets.newHashSetWithExpectedSize(sources.size());
-        for (final SourceFile source : sources) {
-
-            final Callable<Set<ClassName>> resolutionTask = new Callable<Set<ClassName>>() {
-
-                @Override
-                public Set<ClassName> call() throws Exception {
-                    return resolve(source);
+        final List<Set<ClassName>> chunkResults = enginePool.inChunks(
+                Lists.newArrayList(sources), parallelism, new EnginePool.Chunk<SourceFile, Set<ClassName>>() {
+
+                    @Override
+                    public Set<ClassName> call(List<SourceFile> chunk) throws IOException {
+                        final Set<ClassName> result = Sets.newHashSet();
+                        for (SourceFile source : chunk) {
+                            result.addAll(resolve(source));
+                        }
+                        return result;
+                    }
                 }
-            };
-            resolutionTasks.add(resolutionTask);
-        }
-        try {
-            final List<Future<Set<ClassName>>> futures = threadPool.invokeAll(resolutionTasks);
-            for (Future<Set<ClassName>> f : futures) {
+        );
 
-                result.addAll(f.get());
-
-            }
-            threadPool.shutdown();
-            threadPool.awaitTermination(1, TimeUnit.DAYS); // FOREVER !!!
-
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException(e);
+        final Set<ClassName> result = Sets.newHashSet();
+        for (Set<ClassName> chunkResult : chunkResults) {
+            result.addAll(chunkResult);
         }
         return ImmutableSet.copyOf(result);
     }
 
     @Required
-    public void setThreadPool(ExecutorService threadPool) {
-        this.threadPool = threadPool;
+    public void setEnginePool(EnginePool enginePool) {
+        this.enginePool = enginePool;
+    }
+
+    /**
+     * @param parallelism the most chunks resolved at the same time, the pool's parallelism by default
+     * */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
     }
 }
@@ -0,0 +1,639 @@
+package org.codarama.diet.dependency.resolver.impl;
+
+import com.google.common.collect.Sets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Reads the names of the classes a compiled class refers to in a single pass over its bytes.
+ *
+ * The constant pool is walked first, skipping every entry by its tag and remembering where it starts. The rest of the
+ * class is then walked once, reading the types in:
+ * <ul>
+ *     <li>CONSTANT_Class entries</li>
+ *     <li>the descriptors of CONSTANT_NameAndType and CONSTANT_MethodType entries, these cover the members and the
+ *     method handles referred to, and so the bootstrap methods and their arguments</li>
+ *     <li>the descriptors of the fields and methods declared</li>
+ *     <li>the generic Signature attributes of the class, its fields and methods</li>
+ *     <li>annotations, parameter annotations, type annotations and annotation defaults, with the enums and classes
+ *     their element values refer to</li>
+ * </ul>
+ * Names are decoded from the UTF-8 bytes of the pool, with slashes turned into dots as they are decoded, and every
+ * descriptor or signature is parsed once however many entries share it.
+ *
+ * Every constant pool tag up to Java 11 is known, so classes of any release up to then can be scanned, see
+ * <a href="https://docs.oracle.com/javase/specs/jvms/se11/html/jvms-4.html">the class file format</a>.
+ */
+public final class DependencyScanner {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    // where the constant pool count is, after the magic, minor and major versions
+    private static final int CONSTANT_POOL_COUNT_OFFSET = 8;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final byte[] CODE = attributeName("Code");
+    private static final byte[] SIGNATURE = attributeName("Signature");
+    private static final byte[] ANNOTATION_DEFAULT = attributeName("AnnotationDefault");
+    private static final byte[] VISIBLE_ANNOTATIONS = attributeName("RuntimeVisibleAnnotations");
+    private static final byte[] INVISIBLE_ANNOTATIONS = attributeName("RuntimeInvisibleAnnotations");
+    private static final byte[] VISIBLE_PARAMETER_ANNOTATIONS = attributeName("RuntimeVisibleParameterAnnotations");
+    private static final byte[] INVISIBLE_PARAMETER_ANNOTATIONS = attributeName("RuntimeInvisibleParameterAnnotations");
+    private static final byte[] VISIBLE_TYPE_ANNOTATIONS = attributeName("RuntimeVisibleTypeAnnotations");
+    private static final byte[] INVISIBLE_TYPE_ANNOTATIONS = attributeName("RuntimeInvisibleTypeAnnotations");
+
+    private final byte[] bytes;
+    private final int end;
+
+    // where every entry starts, by pool index, 0 for index 0 and the second slot of longs and doubles
+    private final int[] entryOffsets;
+    private final int thisClassIndex;
+
+    // where the access flags are, right after the pool
+    private final int poolEnd;
+
+    // the UTF-8 entries already parsed as a descriptor or a signature, created on the first one
+    private boolean[] parsedTypes;
+    private Set<String> found;
+
+    private DependencyScanner(byte[] bytes, int offset, int length) throws IOException {
+        this.bytes = bytes;
+        this.end = offset + length;
+
+        if (length < CONSTANT_POOL_COUNT_OFFSET + 2 || readInt(offset) != MAGIC) {
+            throw new IOException("not a class file, no magic number");
+        }
+
+        final int count = readUnsignedShort(offset + CONSTANT_POOL_COUNT_OFFSET);
+        this.entryOffsets = new int[count];
+
+        int position = offset + CONSTANT_POOL_COUNT_OFFSET + 2;
+        for (int index = 1; index < count; index++) {
+            checkAvailable(position, 1);
+            entryOffsets[index] = position;
+
+            final int tag = bytes[position];
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    checkAvailable(position, 3);
+                    position += 3 + readUnsignedShort(position + 1);
+                    break;
+                case CONSTANT_CLASS:
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    position += 3;
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    position += 4;
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELD_REF:
+                case CONSTANT_METHOD_REF:
+                case CONSTANT_INTERFACE_METHOD_REF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    position += 5;
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    // takes two pool slots
+                    position += 9;
+                    index++;
+                    break;
+                default:
+                    throw new IOException("not a class file, unknown constant pool tag: " + tag + ", at index: " + index);
+            }
+        }
+
+        // access flags, then this class
+        checkAvailable(position, 4);
+        this.poolEnd = position;
+        this.thisClassIndex = readUnsignedShort(position + 2);
+        if (classNameOffset(thisClassIndex) < 0) {
+            throw new IOException("not a class file, this class index: " + thisClassIndex + ", is not a class entry");
+        }
+    }
+
+    /**
+     * Reads the name of a class, only its constant pool is walked.
+     *
+     * @param classBytes the bytes of a compiled class
+     * @return the qualified name of the class, like <code>com.example.Foo$Bar</code>
+     * @throws IOException if the bytes are not a class file
+     * */
+    public static String className(byte[] classBytes) throws IOException {
+        final DependencyScanner scanner = new DependencyScanner(classBytes, 0, classBytes.length);
+        return scanner.decodeClassName(scanner.classNameOffset(scanner.thisClassIndex));
+    }
+
+    /**
+     * Reads the names of the classes a class refers to.
+     *
+     * The class itself is not returned, arrays are returned as their element class and primitives are not returned.
+     *
+     * @param classBytes the bytes of a compiled class
+     * @return the qualified names of the classes referred to, each once
+     * @throws IOException if the bytes are not a class file
+     * */
+    public static Set<String> referencedClasses(byte[] classBytes) throws IOException {
+        return new DependencyScanner(classBytes, 0, classBytes.length).referencedClasses();
+    }
+
+    /**
+     * Reads the names of the classes a class refers to, see {@link #referencedClasses(byte[])}.
+     *
+     * @param classBytes the bytes of a compiled class, from its position to its limit, the position is not moved
+     * @return the qualified names of the classes referred to, each once
+     * @throws IOException if the bytes are not a class file
+     * */
+    public static Set<String> referencedClasses(ByteBuffer classBytes) throws IOException {
+        if (classBytes.hasArray()) {
+            return new DependencyScanner(
+                    classBytes.array(), classBytes.arrayOffset() + classBytes.position(), classBytes.remaining()
+            ).referencedClasses();
+        }
+
+        final byte[] copy = new byte[classBytes.remaining()];
+        classBytes.duplicate().get(copy);
+        return referencedClasses(copy);
+    }
+
+    private Set<String> referencedClasses() throws IOException {
+        this.found = Sets.newLinkedHashSet();
+        this.parsedTypes = new boolean[entryOffsets.length];
+
+        try {
+            scanPool();
+            scanMembersAndAttributes();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("not a class file, truncated or malformed", e);
+        }
+
+        // a pool may hold more than one entry of the class itself
+        found.remove(decodeClassName(classNameOffset(thisClassIndex)));
+        return found;
+    }
+
+    private void scanPool() throws IOException {
+        for (int index = 1; index < entryOffsets.length; index++) {
+            final int entryOffset = entryOffsets[index];
+            if (entryOffset == 0) {
+                continue;
+            }
+
+            switch (bytes[entryOffset]) {
+                case CONSTANT_CLASS:
+                    if (index != thisClassIndex) {
+                        final String className = decodeClassName(classNameOffset(index));
+                        if (className != null) {
+                            found.add(className);
+                        }
+                    }
+                    break;
+                case CONSTANT_NAME_AND_TYPE:
+                    parseType(readUnsignedShort(entryOffset + 3));
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                    parseType(readUnsignedShort(entryOffset + 1));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void scanMembersAndAttributes() throws IOException {
+        // access flags, this class, super class, then the interfaces, which are class entries already read
+        int position = poolEnd + 6;
+        checkAvailable(position, 2);
+        position += 2 + 2 * readUnsignedShort(position);
+
+        // fields, then methods
+        for (int members = 0; members < 2; members++) {
+            checkAvailable(position, 2);
+            final int count = readUnsignedShort(position);
+            position += 2;
+
+            for (int member = 0; member < count; member++) {
+                // access flags, name, descriptor
+                checkAvailable(position, 8);
+                parseType(readUnsignedShort(position + 4));
+                position = scanAttributes(position + 6);
+            }
+        }
+
+        scanAttributes(position);
+    }
+
+    // reads an attribute count and the attributes after it, returns where they end
+    private int scanAttributes(int position) throws IOException {
+        checkAvailable(position, 2);
+        final int count = readUnsignedShort(position);
+        position += 2;
+
+        for (int attribute = 0; attribute < count; attribute++) {
+            checkAvailable(position, 6);
+            final int nameIndex = readUnsignedShort(position);
+            final int length = readInt(position + 2);
+            final int start = position + 6;
+            if (length < 0) {
+                throw new IOException("not a class file, attribute length out of range at: " + position);
+            }
+            checkAvailable(start, length);
+
+            if (isUtf8(nameIndex, SIGNATURE)) {
+                parseType(readUnsignedShort(start));
+            } else if (isUtf8(nameIndex, VISIBLE_ANNOTATIONS) || isUtf8(nameIndex, INVISIBLE_ANNOTATIONS)) {
+                scanAnnotations(start);
+            } else if (isUtf8(nameIndex, VISIBLE_PARAMETER_ANNOTATIONS) || isUtf8(nameIndex, INVISIBLE_PARAMETER_ANNOTATIONS)) {
+                final int parameters = bytes[start] & 0xff;
+                int annotations = start + 1;
+                for (int parameter = 0; parameter < parameters; parameter++) {
+                    annotations = scanAnnotations(annotations);
+                }
+            } else if (isUtf8(nameIndex, VISIBLE_TYPE_ANNOTATIONS) || isUtf8(nameIndex, INVISIBLE_TYPE_ANNOTATIONS)) {
+                scanTypeAnnotations(start);
+            } else if (isUtf8(nameIndex, ANNOTATION_DEFAULT)) {
+                scanElementValue(start);
+            } else if (isUtf8(nameIndex, CODE)) {
+                // max stack, max locals, the code, the exception table whose catch types are class entries
+                final int codeLength = readInt(start + 4);
+                final int exceptionTable = start + 8 + codeLength;
+                scanAttributes(exceptionTable + 2 + 8 * readUnsignedShort(exceptionTable));
+            }
+
+            position = start + length;
+        }
+        return position;
+    }
+
+    // reads an annotation count and the annotations after it, returns where they end
+    private int scanAnnotations(int position) throws IOException {
+        final int count = readUnsignedShort(position);
+        position += 2;
+        for (int annotation = 0; annotation < count; annotation++) {
+            position = scanAnnotation(position);
+        }
+        return position;
+    }
+
+    private int scanAnnotation(int position) throws IOException {
+        parseType(readUnsignedShort(position));
+
+        final int pairs = readUnsignedShort(position + 2);
+        position += 4;
+        for (int pair = 0; pair < pairs; pair++) {
+            // element name, then value
+            position = scanElementValue(position + 2);
+        }
+        return position;
+    }
+
+    private int scanElementValue(int position) throws IOException {
+        final int tag = bytes[position];
+        switch (tag) {
+            case 'e':
+                // enum type, then constant name
+                parseType(readUnsignedShort(position + 1));
+                return position + 5;
+            case 'c':
+                // a return descriptor, like Ljava/lang/String; or V
+                parseType(readUnsignedShort(position + 1));
+                return position + 3;
+            case '@':
+                return scanAnnotation(position + 1);
+            case '[':
+                final int values = readUnsignedShort(position + 1);
+                position += 3;
+                for (int value = 0; value < values; value++) {
+                    position = scanElementValue(position);
+                }
+                return position;
+            default:
+                // a constant
+                return position + 3;
+        }
+    }
+
+    private void scanTypeAnnotations(int position) throws IOException {
+        final int count = readUnsignedShort(position);
+        position += 2;
+
+        for (int annotation = 0; annotation < count; annotation++) {
+            // skip the target, see JVMS 4.7.20.1
+            final int targetType = bytes[position] & 0xff;
+            position++;
+            switch (targetType) {
+                case 0x00: case 0x01: case 0x16:
+                    position += 1;
+                    break;
+                case 0x10: case 0x11: case 0x12: case 0x17:
+                case 0x42: case 0x43: case 0x44: case 0x45: case 0x46:
+                    position += 2;
+                    break;
+                case 0x13: case 0x14: case 0x15:
+                    break;
+                case 0x40: case 0x41:
+                    position += 2 + 6 * readUnsignedShort(position);
+                    break;
+                case 0x47: case 0x48: case 0x49: case 0x4A: case 0x4B:
+                    position += 3;
+                    break;
+                default:
+                    throw new IOException("not a class file, unknown type annotation target: " + targetType);
+            }
+
+            // the type path
+            position += 1 + 2 * (bytes[position] & 0xff);
+            position = scanAnnotation(position);
+        }
+    }
+
+    // parses the UTF-8 entry at the index as a descriptor or a signature, once
+    private void parseType(int utf8Index) throws IOException {
+        if (utf8Index <= 0 || utf8Index >= entryOffsets.length || parsedTypes[utf8Index]) {
+            return;
+        }
+        parsedTypes[utf8Index] = true;
+
+        final int entryOffset = entryOffsets[utf8Index];
+        if (entryOffset == 0 || bytes[entryOffset] != CONSTANT_UTF8) {
+            throw new IOException("not a class file, entry: " + utf8Index + ", is not a UTF-8 descriptor or signature");
+        }
+
+        final int start = entryOffset + 3;
+        new TypeParser(start, start + readUnsignedShort(entryOffset + 1)).parse();
+    }
+
+    private boolean isUtf8(int index, byte[] expected) {
+        if (index <= 0 || index >= entryOffsets.length) {
+            return false;
+        }
+
+        final int entryOffset = entryOffsets[index];
+        if (entryOffset == 0 || bytes[entryOffset] != CONSTANT_UTF8 || readUnsignedShort(entryOffset + 1) != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[entryOffset + 3 + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // where the UTF-8 entry with the name of a class entry starts, or -1 if the index is not of a class entry
+    private int classNameOffset(int index) throws IOException {
+        if (index <= 0 || index >= entryOffsets.length) {
+            return -1;
+        }
+
+        final int entryOffset = entryOffsets[index];
+        if (entryOffset == 0 || bytes[entryOffset] != CONSTANT_CLASS) {
+            return -1;
+        }
+
+        final int nameIndex = readUnsignedShort(entryOffset + 1);
+        if (nameIndex <= 0 || nameIndex >= entryOffsets.length || entryOffsets[nameIndex] == 0
+                || bytes[entryOffsets[nameIndex]] != CONSTANT_UTF8) {
+            throw new IOException("not a class file, class entry: " + index + ", has no UTF-8 name");
+        }
+        return entryOffsets[nameIndex];
+    }
+
+    // decodes an internal name like com/example/Foo or [[Lcom/example/Foo; to com.example.Foo, null for [I and alike
+    private String decodeClassName(int utf8Offset) {
+        int start = utf8Offset + 3;
+        int length = readUnsignedShort(utf8Offset + 1);
+
+        int dimensions = 0;
+        while (dimensions < length && bytes[start + dimensions] == '[') {
+            dimensions++;
+        }
+        if (dimensions > 0) {
+            final boolean isClassArray = length - dimensions > 2
+                    && bytes[start + dimensions] == 'L'
+                    && bytes[start + length - 1] == ';';
+            if (!isClassArray) {
+                return null;
+            }
+            start += dimensions + 1;
+            length -= dimensions + 2;
+        }
+
+        return decode(start, start + length);
+    }
+
+    // decodes modified UTF-8, turning slashes into dots
+    private String decode(int start, int end) {
+        // modified UTF-8 never takes less bytes than chars
+        final char[] chars = new char[end - start];
+        int charCount = 0;
+        for (int i = start; i < end; ) {
+            final int first = bytes[i] & 0xff;
+            if (first < 0x80) {
+                chars[charCount++] = first == '/' ? '.' : (char) first;
+                i++;
+            } else if ((first & 0xe0) == 0xc0) {
+                chars[charCount++] = (char) (((first & 0x1f) << 6) | (bytes[i + 1] & 0x3f));
+                i += 2;
+            } else {
+                chars[charCount++] = (char) (((first & 0x0f) << 12) | ((bytes[i + 1] & 0x3f) << 6) | (bytes[i + 2] & 0x3f));
+                i += 3;
+            }
+        }
+        return new String(chars, 0, charCount);
+    }
+
+    private void checkAvailable(int position, int count) throws IOException {
+        if (position + count > end) {
+            throw new IOException("not a class file, truncated at: " + position);
+        }
+    }
+
+    private int readUnsignedShort(int position) {
+        return ((bytes[position] & 0xff) << 8) | (bytes[position + 1] & 0xff);
+    }
+
+    private int readInt(int position) {
+        return ((bytes[position] & 0xff) << 24)
+                | ((bytes[position + 1] & 0xff) << 16)
+                | ((bytes[position + 2] & 0xff) << 8)
+                | (bytes[position + 3] & 0xff);
+    }
+
+    private static byte[] attributeName(String name) {
+        return name.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Parses a descriptor, a field, method or class signature, see JVMS 4.3 and 4.7.9.1, adding the classes in it.
+     *
+     * Bytes of multi byte characters are never ASCII, so the grammar is parsed on the raw bytes and only class names
+     * are decoded.
+     */
+    private final class TypeParser {
+
+        private int position;
+        private final int end;
+
+        private TypeParser(int start, int end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        private void parse() throws IOException {
+            if (position < end && bytes[position] == '<') {
+                typeParameters();
+            }
+
+            if (position < end && bytes[position] == '(') {
+                position++;
+                while (bytes[position] != ')') {
+                    type();
+                }
+                position++;
+
+                // the return type, then what is thrown
+                type();
+                while (position < end && bytes[position] == '^') {
+                    position++;
+                    type();
+                }
+            } else {
+                // a field descriptor or signature, or a super class signature and the interfaces after it
+                while (position < end) {
+                    type();
+                }
+            }
+
+            if (position != end) {
+                throw new IOException("not a class file, malformed descriptor or signature at: " + position);
+            }
+        }
+
+        private void typeParameters() {
+            position++;
+            while (bytes[position] != '>') {
+                // the identifier, then a class bound that may be empty and interface bounds
+                while (bytes[position] != ':') {
+                    position++;
+                }
+                while (bytes[position] == ':') {
+                    position++;
+                    if (bytes[position] != ':') {
+                        type();
+                    }
+                }
+            }
+            position++;
+        }
+
+        private void type() {
+            switch (bytes[position]) {
+                case 'L':
+                    classType();
+                    break;
+                case 'T':
+                    // a type variable
+                    while (bytes[position] != ';') {
+                        position++;
+                    }
+                    position++;
+                    break;
+                case '[':
+                    position++;
+                    type();
+                    break;
+                default:
+                    // a primitive or void
+                    position++;
+                    break;
+            }
+        }
+
+        // Lcom/example/Outer<TT;>.Inner<Ljava/lang/String;>; adds com.example.Outer and com.example.Outer$Inner
+        private void classType() {
+            position++;
+            final int nameStart = position;
+            StringBuilder innerName = null;
+
+            int segmentStart = position;
+            while (true) {
+                final byte current = bytes[position];
+                if (current != '<' && current != '.' && current != ';') {
+                    position++;
+                    continue;
+                }
+
+                if (innerName != null) {
+                    innerName.append('$').append(decode(segmentStart, position));
+                }
+
+                final String className = innerName == null ? decode(nameStart, position) : innerName.toString();
+                found.add(className);
+
+                if (current == '<') {
+                    typeArguments();
+                }
+
+                if (bytes[position] == '.') {
+                    if (innerName == null) {
+                        innerName = new StringBuilder(className);
+                    }
+                    position++;
+                    segmentStart = position;
+                    continue;
+                }
+
+                // the ; ending it
+                position++;
+                return;
+            }
+        }
+
+        private void typeArguments() {
+            position++;
+            while (bytes[position] != '>') {
+                switch (bytes[position]) {
+                    case '*':
+                        position++;
+                        break;
+                    case '+':
+                    case '-':
+                        position++;
+                        type();
+                        break;
+                    default:
+                        type();
+                        break;
+                }
+            }
+            position++;
+        }
+    }
+}
@@ -3,54 +3,38 @@ package org.codarama.diet.dependency.resolver.impl;
 import java.io.IOException;
 import java.util.Set;
 
-import org.codarama.diet.component.ListenableComponent;
 import org.codarama.diet.dependency.resolver.DependencyResolver;
-import org.codarama.diet.event.model.SourceDependencyResolutionEndEvent;
-import org.codarama.diet.event.model.SourceDependencyResolutionStartEvent;
 import org.codarama.diet.model.ClassName;
 import org.codarama.diet.model.SourceFile;
-import org.codarama.diet.util.Tokenizer;
+import org.codarama.diet.model.SourceHeader;
 import org.codarama.diet.util.annotation.ThreadSafe;
 
-import com.google.common.base.Charsets;
-import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
 import com.google.common.collect.Sets;
-import com.google.common.io.Resources;
 
+/**
+ * Resolves the dependencies of a source file from its imports, as read in its {@link SourceHeader} when the file was
+ * created, so the file is not read again. A static import depends on the class its members are imported from.
+ * Wildcard imports of packages are not supported, the classes they import can not be known from the header alone.
+ */
 @ThreadSafe
-// TODO Use JavaParser instead of parsing manually
 public class ManualParseSourceDependencyResolver implements DependencyResolver<SourceFile> {
 
     @Override
     public Set<ClassName> resolve(SourceFile source) throws IOException {
-
-        final String sourceFileContent = Resources.toString(source.physicalFile().toURI().toURL(), Charsets.UTF_8);
-
-        // we can somehow select only lines starting with import so we don't need to iterate over every single line
         final Set<ClassName> result = Sets.newHashSet();
-        for (String line : Splitter.on("\n").split(sourceFileContent)) {
+        for (SourceHeader.Import anImport : source.header().imports()) {
 
-            // we reached class definition, no point to loop any further
-            final String publicClassDefinition = Joiner.on(" ").join(SourceFile.PUBLIC_KEYWORD, SourceFile.CLASS_KEYWORD);
-            if (line.startsWith(publicClassDefinition) || line.startsWith(SourceFile.CLASS_KEYWORD)) {
-                break;
+            if (anImport.isStatic()) {
+                // a member of the class, or all of them
+                final String name = anImport.name();
+                result.add(ClassName.of(anImport.isWildcard() ? name : name.substring(0, name.lastIndexOf('.'))));
+                continue;
             }
 
-            if (line.startsWith(SourceFile.IMPORT_KEYWORD)) {
-
-                if (line.endsWith(SourceFile.WILDCARD_IMPORT_SUFFIX)) {
-                    throw new IllegalArgumentException("wildcard imports: " + line + ", not currently supported");
-                }
-
-                final String dependency = Tokenizer
-                        .delimiter(" ")
-                        .tokenize(line)
-                        .lastToken()
-                        .replaceAll(";", "") // remove semicolon at end of imports
-                        .replaceAll("\r", ""); // remove windows newline chars
-                result.add(new ClassName(dependency));
+            if (anImport.isWildcard()) {
+                throw new IllegalArgumentException("wildcard imports: " + anImport + ", not currently supported");
             }
+            result.add(ClassName.of(anImport.name()));
         }
         return result;
     }
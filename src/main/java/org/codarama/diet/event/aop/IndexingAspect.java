@@ -15,6 +15,14 @@ public class IndexingAspect {
     @Pointcut(("execution(* get(..)) && within(org.codarama.diet.index.impl..*)"))
     public void get() {};
 
+    // any contains method in the index package
+    @Pointcut(("execution(* contains(..)) && within(org.codarama.diet.index.impl..*)"))
+    public void contains() {};
+
+    // any lookup method in the index package
+    @Pointcut(("execution(* lookup(..)) && within(org.codarama.diet.index.impl..*)"))
+    public void lookup() {};
+
     // any index method in the index package
     @Pointcut(("execution(* index(..)) && within(org.codarama.diet.index.impl..*)"))
     public void index() {};
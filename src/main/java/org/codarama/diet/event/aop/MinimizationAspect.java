@@ -11,7 +11,7 @@ import org.aspectj.lang.annotation.Pointcut;
 @Aspect
 public class MinimizationAspect {
 
-    // any minimize method in the minimization.impl package
-    @Pointcut("execution(* minimize(..)) && within(org.codarama.diet.minimization.impl..*)")
+    // any minimize method in the minimization.impl package, also the ones returning a result
+    @Pointcut("execution(* minimize*(..)) && within(org.codarama.diet.minimization.impl..*)")
     public void minimize() {};
 }
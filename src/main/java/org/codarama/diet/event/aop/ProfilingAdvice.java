@@ -12,6 +12,7 @@ import org.codarama.diet.event.model.MinimizationEvent;
 import org.codarama.diet.event.model.MinimizationStartEvent;
 import org.codarama.diet.event.model.SourceDependencyResolutionEndEvent;
 import org.codarama.diet.event.model.SourceDependencyResolutionStartEvent;
+import org.codarama.diet.index.FilteredLibraryIndex;
 import org.codarama.diet.model.ClassName;
 import org.codarama.diet.model.SourceFile;
 
@@ -44,6 +45,23 @@ public class ProfilingAdvice extends ListenableComponent {
         return joinpointResult;
     }
 
+    @Around("org.codarama.diet.event.aop.IndexingAspect.contains() || org.codarama.diet.event.aop.IndexingAspect.lookup()")
+    public Object profileContains(ProceedingJoinPoint pjp) throws Throwable {
+
+        // execute joinpoint
+        final Object joinpointResult = pjp.proceed();
+
+        final Object index = pjp.getTarget();
+        if (index instanceof FilteredLibraryIndex) {
+            eventBus.post(
+                    new MinimizationEvent("Index." + pjp.getSignature().getName() + " called for: " + getDepNameFromIndexContainsArgs(pjp.getArgs())
+                            + ", filter: " + ((FilteredLibraryIndex) index).filterStatistics(),
+                            this.getClass())
+            );
+        }
+        return joinpointResult;
+    }
+
     @Around("org.codarama.diet.event.aop.IndexingAspect.index()")
     public Object profileIndex(ProceedingJoinPoint pjp) throws Throwable {
 
@@ -154,6 +172,13 @@ public class ProfilingAdvice extends ListenableComponent {
         return ((Set) args[1]).size();
     }
 
+    private String getDepNameFromIndexContainsArgs(Object[] args) {
+        if (args.length != 1) {
+            throw new IllegalArgumentException(this.getClass().getSimpleName() + " expects a single argument to contains() and lookup()");
+        }
+        return args[0].toString();
+    }
+
     private String getDepNameFromIndexGetArgs(Object[] args) {
         if (args.length != 1) {
             throw new IllegalArgumentException(this.getClass().getSimpleName() + " expects a single argument to get()");
@@ -0,0 +1,85 @@
+package org.codarama.diet.index;
+
+import org.codarama.diet.util.annotation.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how a {@link ClassByteStore} keeps within its memory budget.
+ *
+ * A read is either a hit, answered from memory, or a reload of bytes evicted before, read back from the spill file
+ * or from the class's jar. Evicted bytes are either spilled to the spill file or dropped, if they can be read from
+ * their jar again.
+ */
+@ThreadSafe
+public final class ByteStoreStatistics {
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong spills = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong spillReads = new AtomicLong();
+
+    /**
+     * Records a read answered from memory.
+     * */
+    public void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * Records bytes evicted from memory.
+     *
+     * @param spilled whether the bytes were written to the spill file, false if they were dropped
+     * */
+    public void recordEviction(boolean spilled) {
+        evictions.incrementAndGet();
+        if (spilled) {
+            spills.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a read of evicted bytes.
+     *
+     * @param fromSpill whether the bytes were read from the spill file, false if they were read from their jar
+     * */
+    public void recordReload(boolean fromSpill) {
+        reloads.incrementAndGet();
+        if (fromSpill) {
+            spillReads.incrementAndGet();
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of evictions that wrote the bytes to the spill file
+     * */
+    public long spills() {
+        return spills.get();
+    }
+
+    public long reloads() {
+        return reloads.get();
+    }
+
+    /**
+     * @return the number of reloads that read the bytes from the spill file
+     * */
+    public long spillReads() {
+        return spillReads.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d evictions (%d spilled), %d reloads (%d from the spill file)",
+                hits(), evictions(), spills(), reloads(), spillReads());
+    }
+}
@@ -0,0 +1,63 @@
+package org.codarama.diet.index;
+
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Keeps the bytes of classes found by a minimization until they are written out, within a memory budget.
+ *
+ * Class streams handed out by the store hold no bytes themselves, they read them from the store whenever their
+ * content is asked for. Bytes that do not fit in the budget are evicted from memory and read back when needed, so
+ * the heap a minimization takes does not grow with the number of classes it finds. A store is closed once the
+ * classes it kept were written out, which frees what it holds on disk.
+ */
+public interface ClassByteStore extends Closeable {
+
+    /**
+     * Adds the bytes of a class, adding a class twice keeps the first bytes.
+     *
+     * @param name the name of the class
+     * @param bytes the bytes of the class
+     * @param source where the bytes were read from, used to read them again once evicted, or null if they can not
+     *               be read again
+     * @return a class stream reading its content from the store
+     * */
+    ClassStream put(ClassName name, byte[] bytes, ClassHandle source);
+
+    /**
+     * Returns the bytes of a class, reading them back if they were evicted.
+     *
+     * @throws java.lang.IllegalStateException if the class is not in the store or its bytes can not be read back
+     * @param name the name of the class
+     * @return the bytes of the class
+     * */
+    byte[] get(ClassName name);
+
+    /**
+     * @param name the name of a class
+     * @return true if the class was added to the store, whether its bytes are in memory or not
+     * */
+    boolean contains(ClassName name);
+
+    /**
+     * @return the number of class bytes currently kept in memory
+     * */
+    long memoryBytes();
+
+    /**
+     * @return the counts of hits, evictions and reloads of the store
+     * */
+    ByteStoreStatistics statistics();
+
+    /**
+     * Drops the kept bytes and deletes what the store wrote to disk, the class streams it handed out can not be read
+     * after. Closing a closed store does nothing.
+     *
+     * @throws IOException if what the store wrote to disk can not be deleted
+     * */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,28 @@
+package org.codarama.diet.index;
+
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+
+/**
+ * A class found in a {@link LibraryIndex}, not read yet.
+ *
+ * Returned by a single lookup, a handle tells both that the class is indexed and how to read it, so callers don't
+ * have to check with {@link LibraryIndex#contains(ClassName)} and then look the class up again to get it.
+ */
+public interface ClassHandle {
+
+    /**
+     * Returns the qualified name of the class.
+     *
+     * @return the qualified name of the class
+     * */
+    ClassName name();
+
+    /**
+     * Reads the class.
+     *
+     * @throws IllegalStateException if the class can no longer be read
+     * @return the class as a stream of bytes
+     * */
+    ClassStream stream();
+}
@@ -0,0 +1,322 @@
+package org.codarama.diet.index;
+
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.codarama.diet.util.annotation.Immutable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Points to a compiled class inside a jar without holding its bytes.
+ *
+ * A locator is what the jar's central directory says about an entry: the jar it is in, the entry name, where the
+ * entry's local header starts and how big the entry is compressed and uncompressed. That is enough to read the class
+ * with a single positioned read and no directory lookups, so indexes can keep locators and read bytes only for the
+ * classes that are actually asked for.
+ *
+ * A locator can also point to a class file in a class directory, like the target/classes directory of a module, see
+ * {@link #inDirectory(String, File, String, long)}. Its {@link #jar()} is then the class directory, its entry name the
+ * path of the class file in the directory and it has no header offset. Indexes keep it like any other locator.
+ */
+@Immutable
+public final class ClassLocator implements ClassHandle {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int LOCAL_HEADER_NAME_LENGTH_OFFSET = 26;
+    private static final int LOCAL_HEADER_EXTRA_LENGTH_OFFSET = 28;
+
+    // the header offset of class files in class directories
+    private static final long NO_HEADER = -1;
+
+    private final String className;
+    private final File jar;
+    private final String entryName;
+    private final long headerOffset;
+    private final long compressedSize;
+    private final long size;
+    private final int method;
+
+    /**
+     * Creates a locator.
+     *
+     * @param className the qualified name of the class
+     * @param jar the jar containing the class
+     * @param entryName the name of the class entry in the jar
+     * @param headerOffset the offset of the entry's local header from the start of the jar
+     * @param compressedSize the size of the stored entry data
+     * @param size the size of the class file once inflated
+     * @param method the zip compression method, either {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+     * */
+    public ClassLocator(String className, File jar, String entryName, long headerOffset, long compressedSize, long size, int method) {
+        if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+            throw new IllegalArgumentException("unsupported compression method: " + method + ", for entry: " + entryName);
+        }
+        if (size > Integer.MAX_VALUE || compressedSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("entry: " + entryName + ", is too large to be a class file");
+        }
+        this.className = className;
+        this.jar = jar;
+        this.entryName = entryName;
+        this.headerOffset = headerOffset;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.method = method;
+    }
+
+    /**
+     * Returns the qualified name of the located class as it was found in the jar.
+     * The name is not validated, so it is kept as a string.
+     *
+     * @return the qualified name of the located class
+     * */
+    public String className() {
+        return className;
+    }
+
+    /**
+     * Creates a locator of a class file in a class directory.
+     *
+     * @param className the qualified name of the class
+     * @param classDir the class directory, the root of the class's package directories
+     * @param path the path of the class file in the directory, separated by <code>/</code> like a jar entry name
+     * @param size the size of the class file
+     * @return a locator of the class file
+     * */
+    public static ClassLocator inDirectory(String className, File classDir, String path, long size) {
+        return new ClassLocator(className, classDir, path, NO_HEADER, size, size, ZipEntry.STORED);
+    }
+
+    @Override
+    public ClassName name() {
+        return ClassName.of(className);
+    }
+
+    /**
+     * @return true if the class is a file in a class directory, false if it is an entry in a jar
+     * */
+    public boolean isInDirectory() {
+        return headerOffset == NO_HEADER;
+    }
+
+    public File jar() {
+        return jar;
+    }
+
+    public String entryName() {
+        return entryName;
+    }
+
+    public long headerOffset() {
+        return headerOffset;
+    }
+
+    public long compressedSize() {
+        return compressedSize;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public int method() {
+        return method;
+    }
+
+    /**
+     * Reads the located class from its jar or class directory.
+     *
+     * @return the bytes of the located class file
+     * @throws IOException if the jar can not be read or no longer matches this locator
+     * */
+    public byte[] read() throws IOException {
+        if (isInDirectory()) {
+            return readFile();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(jar, "r")) {
+            return read(file.getChannel());
+        }
+    }
+
+    /**
+     * Reads the located class from an already open channel to its jar.
+     * Useful when reading many classes from the same jar. Classes in class directories are read from their own files,
+     * the channel is then not used and can be null.
+     *
+     * @param jarChannel an open channel to the jar returned by {@link #jar()}
+     * @return the bytes of the located class file
+     * @throws IOException if the jar can not be read or no longer matches this locator
+     * */
+    public byte[] read(FileChannel jarChannel) throws IOException {
+        if (isInDirectory()) {
+            return readFile();
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(jarChannel, header, headerOffset);
+
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("no local header for: " + entryName + ", at: " + headerOffset + " in: " + jar);
+        }
+
+        final int nameLength = header.getShort(LOCAL_HEADER_NAME_LENGTH_OFFSET) & 0xffff;
+        final int extraLength = header.getShort(LOCAL_HEADER_EXTRA_LENGTH_OFFSET) & 0xffff;
+        final long dataOffset = headerOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+
+        final ByteBuffer data = ByteBuffer.allocate((int) compressedSize);
+        readFully(jarChannel, data, dataOffset);
+
+        if (method == ZipEntry.STORED) {
+            return data.array();
+        }
+        return inflate(data.array());
+    }
+
+    // one positioned read of the whole file into an array of its size
+    private byte[] readFile() throws IOException {
+        final File classFile = new File(jar, entryName);
+        try (RandomAccessFile file = new RandomAccessFile(classFile, "r")) {
+            final FileChannel channel = file.getChannel();
+            if (channel.size() != size) {
+                throw new IOException("class file: " + classFile + " has " + channel.size() + " bytes, expected: " + size);
+            }
+
+            final ByteBuffer data = ByteBuffer.allocate((int) size);
+            readFully(channel, data, 0);
+            return data.array();
+        }
+    }
+
+    @Override
+    public ClassStream stream() {
+        try {
+            return ClassStream.fromBytes(read());
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read: " + entryName + ", from: " + jar, e);
+        }
+    }
+
+    /**
+     * Reads many located classes at once.
+     * Locators are grouped by jar and each jar is opened once and read from start to end, in entry order, instead of
+     * reading the classes one by one at scattered places. Classes in class directories are read file by file.
+     *
+     * @param locators the classes to read
+     * @return the read classes, in the order of the given locators
+     * @throws IllegalStateException if a class can not be read from its jar
+     * */
+    public static List<ClassStream> streamAll(final List<ClassLocator> locators) {
+        final Integer[] order = new Integer[locators.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                final ClassLocator first = locators.get(a);
+                final ClassLocator second = locators.get(b);
+
+                final int byJar = first.jar.compareTo(second.jar);
+                return byJar != 0 ? byJar : Long.compare(first.headerOffset, second.headerOffset);
+            }
+        });
+
+        final ClassStream[] result = new ClassStream[order.length];
+
+        int start = 0;
+        while (start < order.length) {
+            final File jar = locators.get(order[start]).jar;
+
+            int end = start;
+            try (RandomAccessFile file = jar.isDirectory() ? null : new RandomAccessFile(jar, "r")) {
+                final FileChannel channel = file == null ? null : file.getChannel();
+                while (end < order.length && locators.get(order[end]).jar.equals(jar)) {
+                    final ClassLocator locator = locators.get(order[end]);
+                    result[order[end]] = ClassStream.fromBytes(locator.read(channel));
+                    end++;
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("could not read classes from: " + jar, e);
+            }
+            start = end;
+        }
+        return Arrays.asList(result);
+    }
+
+    private byte[] inflate(byte[] compressed) throws IOException {
+        final Inflater inflater = new Inflater(true); // entries are raw deflate data, no zlib header
+        try {
+            inflater.setInput(compressed);
+
+            final byte[] result = new byte[(int) size];
+            int inflated = 0;
+            boolean paddingGiven = false;
+            while (inflated < result.length && !inflater.finished()) {
+                final int count = inflater.inflate(result, inflated, result.length - inflated);
+                if (count == 0 && inflater.needsInput() && !paddingGiven) {
+                    // raw inflation may need an extra dummy byte past the data, see Inflater(boolean)
+                    inflater.setInput(new byte[1]);
+                    paddingGiven = true;
+                    continue;
+                }
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != result.length) {
+                throw new IOException("entry: " + entryName + ", in: " + jar + " inflated to " + inflated + " bytes, expected: " + size);
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt entry: " + entryName + ", in: " + jar, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("unexpected end of file at: " + offset);
+            }
+            offset += read;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return isInDirectory() ? new File(jar, entryName).getPath() : jar.getPath() + "!/" + entryName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ClassLocator)) {
+            return false;
+        }
+        final ClassLocator other = (ClassLocator) o;
+        return other.headerOffset == this.headerOffset && other.entryName.equals(this.entryName) && other.jar.equals(this.jar);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(jar, entryName, headerOffset);
+    }
+}
@@ -0,0 +1,76 @@
+package org.codarama.diet.index;
+
+import org.codarama.diet.util.annotation.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how a membership filter in front of an index lookup performs.
+ *
+ * A lookup is either rejected by the filter, meaning the class is certainly not indexed and the index was not asked,
+ * or passed on to the index. A passed lookup the index does not find is a false positive of the filter.
+ */
+@ThreadSafe
+public final class FilterStatistics {
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong passed = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    /**
+     * Records a lookup the filter answered on its own.
+     * */
+    public void recordRejected() {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Records a lookup the filter passed on to the index.
+     *
+     * @param found whether the index found the class
+     * */
+    public void recordPassed(boolean found) {
+        passed.incrementAndGet();
+        if (!found) {
+            falsePositives.incrementAndGet();
+        }
+    }
+
+    public long lookups() {
+        return rejected.get() + passed.get();
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    public long passed() {
+        return passed.get();
+    }
+
+    public long falsePositives() {
+        return falsePositives.get();
+    }
+
+    /**
+     * @return the part of all lookups the filter answered without asking the index, 0 if there were no lookups
+     * */
+    public double rejectionRate() {
+        final long lookups = lookups();
+        return lookups == 0 ? 0 : (double) rejected() / lookups;
+    }
+
+    /**
+     * @return the part of the lookups for classes that are not indexed the filter failed to reject
+     * */
+    public double falsePositiveRate() {
+        final long misses = rejected() + falsePositives();
+        return misses == 0 ? 0 : (double) falsePositives() / misses;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d lookups, %d rejected by the filter (%.1f%%), %d false positives (%.2f%%)",
+                lookups(), rejected(), rejectionRate() * 100, falsePositives(), falsePositiveRate() * 100);
+    }
+}
@@ -0,0 +1,16 @@
+package org.codarama.diet.index;
+
+/**
+ * A {@link LibraryIndex} that checks a compact probabilistic membership filter, like a bloom filter, before looking
+ * classes up. The filter is built while indexing, so most lookups of classes that are not indexed cost a few hash
+ * probes instead of a real lookup.
+ */
+public interface FilteredLibraryIndex extends LibraryIndex {
+
+    /**
+     * Returns the live statistics of the index's filter, counted since the index was created.
+     *
+     * @return the filter statistics
+     * */
+    FilterStatistics filterStatistics();
+}
@@ -0,0 +1,22 @@
+package org.codarama.diet.index;
+
+import org.codarama.diet.dependency.DependencyGraph;
+
+import java.io.File;
+
+/**
+ * A {@link LibraryIndex} that resolves the dependencies of the classes of every library while indexing it, once, and
+ * keeps them as a {@link org.codarama.diet.dependency.DependencyGraph} of the library. Following the dependencies of an
+ * indexed class then takes no parsing of its bytes.
+ */
+public interface GraphedLibraryIndex extends LibraryIndex {
+
+    /**
+     * Returns the dependencies of the classes of an indexed library, as the classes are indexed, so for a multi-release
+     * jar those of the index's target release.
+     *
+     * @param library the jar or class directory
+     * @return the graph of the library, or null if the library is not indexed or its graph is not known
+     * */
+    DependencyGraph dependencyGraph(File library);
+}
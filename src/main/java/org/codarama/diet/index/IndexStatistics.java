@@ -0,0 +1,136 @@
+package org.codarama.diet.index;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.codarama.diet.util.annotation.ThreadSafe;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running counters of what an index holds, kept up to date while indexing.
+ *
+ * Indexes record a {@link JarStatistics} for every jar they index and drop it when they drop the jar, totals are
+ * updated on every change. Reading a total costs a single read no matter how large the index is, so statistics can
+ * be polled while a run is indexing or looking classes up.
+ */
+@ThreadSafe
+public final class IndexStatistics {
+
+    private final ConcurrentMap<File, JarStatistics> jars = Maps.newConcurrentMap();
+
+    private final AtomicLong classes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /**
+     * Records an indexed jar, replacing what was recorded for the same jar before.
+     *
+     * @param jar the statistics of the jar
+     * */
+    public void recordJar(JarStatistics jar) {
+        final JarStatistics previous = jars.put(jar.jar(), jar);
+        if (previous != null) {
+            add(previous, -1);
+        }
+        add(jar, 1);
+    }
+
+    /**
+     * Drops a jar that is no longer indexed.
+     *
+     * @param jar the dropped jar
+     * */
+    public void dropJar(File jar) {
+        final JarStatistics previous = jars.remove(jar);
+        if (previous != null) {
+            add(previous, -1);
+        }
+    }
+
+    /**
+     * Drops all jars.
+     * */
+    public void clear() {
+        for (File jar : jars.keySet()) {
+            dropJar(jar);
+        }
+    }
+
+    /**
+     * @return the number of indexed jars
+     * */
+    public long jars() {
+        return jars.size();
+    }
+
+    /**
+     * @return the number of indexed classes, duplicates not included
+     * */
+    public long classes() {
+        return classes.get();
+    }
+
+    /**
+     * @return the size of the class entries of all indexed jars as stored in the jars
+     * */
+    public long compressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * @return the size of the class entries of all indexed jars when read
+     * */
+    public long uncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    /**
+     * @return the number of class entries not indexed because a class with the same name was indexed from another jar
+     * */
+    public long duplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * @param jar an indexed jar
+     * @return the statistics of the jar, or null if it is not indexed
+     * */
+    public JarStatistics jar(File jar) {
+        return jars.get(jar);
+    }
+
+    /**
+     * @return the statistics of every indexed jar, by jar
+     * */
+    public Map<File, JarStatistics> perJar() {
+        return ImmutableMap.copyOf(jars);
+    }
+
+    /**
+     * @return a copy of these statistics, not changed by later updates
+     * */
+    public IndexStatistics snapshot() {
+        final IndexStatistics result = new IndexStatistics();
+        for (JarStatistics jar : jars.values()) {
+            result.recordJar(jar);
+        }
+        return result;
+    }
+
+    private void add(JarStatistics jar, int sign) {
+        classes.addAndGet(sign * jar.indexedClasses());
+        compressedBytes.addAndGet(sign * jar.compressedBytes());
+        uncompressedBytes.addAndGet(sign * jar.uncompressedBytes());
+        duplicates.addAndGet(sign * jar.duplicates());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d classes in %d jars, %d duplicates, %d bytes compressed, %d bytes uncompressed",
+                classes(), jars(), duplicates(), compressedBytes(), uncompressedBytes());
+    }
+}
@@ -0,0 +1,171 @@
+package org.codarama.diet.index;
+
+import org.codarama.diet.util.annotation.Immutable;
+
+import java.io.File;
+import java.util.Objects;
+
+/**
+ * What an index found in one jar: its class entries, their sizes and how many of them were duplicates.
+ *
+ * Statistics can carry the fingerprint of the jar as it was indexed, its size, modification time and a hash of its
+ * central directory, so whoever reads the index can tell whether the jar on disk is still the indexed one.
+ *
+ * A duplicate is a class entry that was not indexed because a class with the same name was already indexed from
+ * another jar, see {@link LibraryIndex}.
+ */
+@Immutable
+public final class JarStatistics {
+
+    private final File jar;
+    private final long classes;
+    private final long compressedBytes;
+    private final long uncompressedBytes;
+    private final long duplicates;
+
+    // the fingerprint of the jar as it was indexed, if the index keeps one
+    private final boolean fingerprinted;
+    private final long jarSize;
+    private final long jarLastModified;
+    private final long directoryHash;
+
+    public JarStatistics(File jar, long classes, long compressedBytes, long uncompressedBytes, long duplicates) {
+        this(jar, classes, compressedBytes, uncompressedBytes, duplicates, false, 0, 0, 0);
+    }
+
+    private JarStatistics(File jar, long classes, long compressedBytes, long uncompressedBytes, long duplicates,
+                          boolean fingerprinted, long jarSize, long jarLastModified, long directoryHash) {
+        this.jar = jar;
+        this.classes = classes;
+        this.compressedBytes = compressedBytes;
+        this.uncompressedBytes = uncompressedBytes;
+        this.duplicates = duplicates;
+        this.fingerprinted = fingerprinted;
+        this.jarSize = jarSize;
+        this.jarLastModified = jarLastModified;
+        this.directoryHash = directoryHash;
+    }
+
+    /**
+     * Sums up the class entries of a jar.
+     *
+     * @param jar the jar the classes were found in
+     * @param locators the class entries of the jar
+     * @param duplicates how many of the entries were not indexed as duplicates
+     * @return the statistics of the jar
+     * */
+    public static JarStatistics of(File jar, Iterable<ClassLocator> locators, long duplicates) {
+        long classes = 0;
+        long compressedBytes = 0;
+        long uncompressedBytes = 0;
+        for (ClassLocator locator : locators) {
+            classes++;
+            compressedBytes += locator.compressedSize();
+            uncompressedBytes += locator.size();
+        }
+        return new JarStatistics(jar, classes, compressedBytes, uncompressedBytes, duplicates);
+    }
+
+    public File jar() {
+        return jar;
+    }
+
+    /**
+     * @return the number of class entries in the jar, duplicates included
+     * */
+    public long classes() {
+        return classes;
+    }
+
+    /**
+     * @return the number of class entries that were indexed, the ones that are not duplicates
+     * */
+    public long indexedClasses() {
+        return classes - duplicates;
+    }
+
+    /**
+     * @return the size of all class entries as stored in the jar
+     * */
+    public long compressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * @return the size of all class entries when read
+     * */
+    public long uncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    public long duplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Returns the same statistics with the fingerprint of the jar as it was indexed.
+     *
+     * @param jarSize the size of the jar when it was indexed
+     * @param jarLastModified the modification time of the jar when it was indexed
+     * @param directoryHash the hash of the central directory of the jar
+     * @return statistics with the fingerprint
+     * */
+    public JarStatistics withFingerprint(long jarSize, long jarLastModified, long directoryHash) {
+        return new JarStatistics(jar, classes, compressedBytes, uncompressedBytes, duplicates, true, jarSize, jarLastModified, directoryHash);
+    }
+
+    /**
+     * @return true if the statistics carry the fingerprint of the jar as it was indexed
+     * */
+    public boolean hasFingerprint() {
+        return fingerprinted;
+    }
+
+    /**
+     * @return the size of the jar when it was indexed, see {@link #hasFingerprint()}
+     * */
+    public long jarSize() {
+        return jarSize;
+    }
+
+    /**
+     * @return the modification time of the jar when it was indexed, see {@link #hasFingerprint()}
+     * */
+    public long jarLastModified() {
+        return jarLastModified;
+    }
+
+    /**
+     * @return the hash of the central directory of the jar when it was indexed, see {@link #hasFingerprint()}
+     * */
+    public long directoryHash() {
+        return directoryHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof JarStatistics)) {
+            return false;
+        }
+        final JarStatistics other = (JarStatistics) o;
+        return other.classes == this.classes
+                && other.compressedBytes == this.compressedBytes
+                && other.uncompressedBytes == this.uncompressedBytes
+                && other.duplicates == this.duplicates
+                && other.jar.equals(this.jar);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(jar, classes, compressedBytes, uncompressedBytes, duplicates);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d classes, %d duplicates, %d bytes compressed, %d bytes uncompressed",
+                jar, classes, duplicates, compressedBytes, uncompressedBytes);
+    }
+}
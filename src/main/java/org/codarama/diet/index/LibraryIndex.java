@@ -3,12 +3,18 @@ package org.codarama.diet.index;
 import org.codarama.diet.model.ClassName;
 import org.codarama.diet.model.ClassStream;
 
-import java.io.InputStream;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.jar.JarFile;
 
 /**
- * A tree index for a library of jar files.
+ * A tree index for a library of jar files and class directories.
  * Nodes contain folders or class names.
  *
  * An example index for the following classes should look like this:
@@ -50,6 +56,15 @@ public interface LibraryIndex {
      * */
     LibraryIndex index(JarFile lib);
 
+    /**
+     * Adds a set of libraries to the current index, jars as well as class directories like the target/classes
+     * directory of a module. The classes of a class directory are looked up like the classes of a jar.
+     *
+     * @param libs the jars and class directories to add
+     * @return the modified index
+     * */
+    LibraryIndex indexLibraries(Set<File> libs);
+
     /**
      * Checks if a class name is contained in the current index.
      *
@@ -58,6 +73,58 @@ public interface LibraryIndex {
      * */
     boolean contains(ClassName className);
 
+    /**
+     * Looks a class up once, without reading it.
+     * Cheaper than a {@link #contains(ClassName)} followed by a {@link #get(ClassName)} which look the class up twice.
+     *
+     * @param name the name of the class to look for
+     * @return a handle to read the class with, or null if no class with this name is indexed
+     * */
+    ClassHandle lookup(ClassName name);
+
+    /**
+     * Returns many classes at once as streams of bytes.
+     * Classes kept in jars are read grouped by jar and in the order they are stored in, see
+     * {@link ClassLocator#streamAll(List)}. Names that are not indexed are left out of the result.
+     *
+     * @param names the names of the classes to get
+     * @return the found classes by name
+     * */
+    default Map<ClassName, ClassStream> getAll(Collection<ClassName> names) {
+        final Map<ClassName, ClassStream> result = Maps.newHashMapWithExpectedSize(names.size());
+        for (Map.Entry<ClassHandle, ClassStream> found : readAll(names).entrySet()) {
+            result.put(found.getKey().name(), found.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Looks many classes up and reads them at once, like {@link #getAll(Collection)}, keeping the handle every class
+     * was read through, so callers that need both don't look the classes up again.
+     *
+     * @param names the names of the classes to read
+     * @return the found classes by the handle they were read through
+     * */
+    default Map<ClassHandle, ClassStream> readAll(Collection<ClassName> names) {
+        final Map<ClassHandle, ClassStream> result = Maps.newHashMapWithExpectedSize(names.size());
+
+        final List<ClassLocator> locators = Lists.newArrayListWithCapacity(names.size());
+        for (ClassName name : names) {
+            final ClassHandle handle = lookup(name);
+            if (handle instanceof ClassLocator) {
+                locators.add((ClassLocator) handle);
+            } else if (handle != null) {
+                result.put(handle, handle.stream());
+            }
+        }
+
+        final List<ClassStream> streams = ClassLocator.streamAll(locators);
+        for (int i = 0; i < streams.size(); i++) {
+            result.put(locators.get(i), streams.get(i));
+        }
+        return result;
+    }
+
     /**
      * Returns the class corresponding to the given {@link org.codarama.diet.model.ClassName} as a stream of bytes.
      * If a file with this name is not found this method throws an exception.
@@ -77,6 +144,19 @@ public interface LibraryIndex {
      * */
     ClassStream find(ClassName name);
 
+    /**
+     * Lists the indexed classes matching a glob of package segments, in time proportional to the number of matches.
+     *
+     * A segment of the glob can be {@code *}, matching one package segment or class name, or {@code **}, matching any
+     * number of package segments. A {@code *} within a segment matches any part of it. For example
+     * {@code com.foo.*} lists the classes in com.foo, inner classes included, and {@code com.foo.**} also lists the
+     * classes in all packages under com.foo.
+     *
+     * @param glob the glob to match
+     * @return the matching classes, empty if none match
+     * */
+    Set<ClassName> classesMatching(String glob);
+
     /**
      * Returns the number of currently indexed classes.
      * Implementers should omit directory entries count, even if they index them.
@@ -84,4 +164,22 @@ public interface LibraryIndex {
      * @return the number of currently indexed classes.
      * */
     long size();
+
+    /**
+     * Returns the statistics of the index, updated while indexing.
+     * Reading the returned statistics costs the same however many classes are indexed.
+     *
+     * @return the statistics of the index
+     * */
+    IndexStatistics statistics();
+
+    /**
+     * Takes an immutable snapshot of the classes indexed so far.
+     * Later indexing does not change a snapshot and a snapshot can be read by any number of threads at once, so one
+     * snapshot can serve many concurrent minimizations, each adding its own jars in an
+     * {@link org.codarama.diet.index.impl.OverlayLibraryIndex}. Snapshots can not be indexed to.
+     *
+     * @return a read only snapshot of the index
+     * */
+    LibraryIndex snapshot();
 }
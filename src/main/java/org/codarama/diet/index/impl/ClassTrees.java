@@ -0,0 +1,137 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.model.ClassFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Lists exploded class directories, like the target/classes directory of a module, as {@link JarDirectory}s, so a
+ * class directory is indexed like a jar.
+ *
+ * A tree is walked in parallel, one fork join task per directory, on the fork join pool the walk is called from, like
+ * a work stealing index pool, or else on the common pool. Only file attributes are read while walking, class files are
+ * read when asked for, see {@link org.codarama.diet.index.ClassLocator#inDirectory(String, File, String, long)}.
+ *
+ * Classes are listed in path order. The hash of a class directory is a hash of the paths, sizes and modification times
+ * of its class files, the size of the directory the size of its class files and its modification time the latest of
+ * theirs. Class files under META-INF are not listed, class directories are not multi-release.
+ */
+final class ClassTrees {
+
+    private static final String CLASS_FILE_SUFFIX = "." + ClassFile.EXTENSION;
+    private static final String META_INF_DIR = "META-INF";
+
+    private ClassTrees() {
+    }
+
+    /**
+     * Walks a class directory.
+     *
+     * @param classDir the absolute path of the class directory, the root of its package directories
+     * @return the classes of the directory
+     * @throws IOException if the directory can not be walked
+     * */
+    static JarDirectory walk(File classDir) throws IOException {
+        final List<ClassFileAttributes> found;
+        try {
+            found = new Walk(classDir.toPath(), "").invoke();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Collections.sort(found, new Comparator<ClassFileAttributes>() {
+            @Override
+            public int compare(ClassFileAttributes one, ClassFileAttributes other) {
+                return one.path.compareTo(other.path);
+            }
+        });
+
+        final ImmutableList.Builder<ClassLocator> classes = ImmutableList.builder();
+        final Hasher hash = Hashing.murmur3_128().newHasher();
+        long size = 0;
+        long lastModified = 0;
+        for (ClassFileAttributes classFile : found) {
+            final String className = JarDirectory.toClassName(classFile.path);
+            if (className != null) {
+                classes.add(ClassLocator.inDirectory(className, classDir, classFile.path, classFile.size));
+            }
+            hash.putUnencodedChars(classFile.path).putLong(classFile.size).putLong(classFile.lastModified);
+
+            size += classFile.size;
+            lastModified = Math.max(lastModified, classFile.lastModified);
+        }
+        return new JarDirectory(classDir, size, lastModified, classes.build(), hash.hash().asLong());
+    }
+
+    // lists the class files under a directory, forking a walk for every sub directory
+    private static final class Walk extends RecursiveTask<List<ClassFileAttributes>> {
+
+        private final Path dir;
+        private final String pathPrefix;
+
+        private Walk(Path dir, String pathPrefix) {
+            this.dir = dir;
+            this.pathPrefix = pathPrefix;
+        }
+
+        @Override
+        protected List<ClassFileAttributes> compute() {
+            final List<ClassFileAttributes> result = Lists.newArrayList();
+            final List<Walk> subWalks = Lists.newArrayList();
+
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                for (Path child : children) {
+                    final String name = child.getFileName().toString();
+                    final BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class);
+
+                    if (attributes.isDirectory()) {
+                        if (!(pathPrefix.isEmpty() && name.equals(META_INF_DIR))) {
+                            final Walk subWalk = new Walk(child, pathPrefix + name + "/");
+                            subWalk.fork();
+                            subWalks.add(subWalk);
+                        }
+                    } else if (attributes.isRegularFile() && name.endsWith(CLASS_FILE_SUFFIX)) {
+                        result.add(new ClassFileAttributes(
+                                pathPrefix + name, attributes.size(), attributes.lastModifiedTime().toMillis()
+                        ));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("could not walk class directory: " + dir, e);
+            }
+
+            for (Walk subWalk : subWalks) {
+                result.addAll(subWalk.join());
+            }
+            return result;
+        }
+    }
+
+    private static final class ClassFileAttributes {
+
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        private ClassFileAttributes(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
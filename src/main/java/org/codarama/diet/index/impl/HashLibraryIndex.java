@@ -0,0 +1,362 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.collect.Lists;
+import org.codarama.diet.index.ClassHandle;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.index.IndexStatistics;
+import org.codarama.diet.index.JarStatistics;
+import org.codarama.diet.index.LibraryIndex;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.codarama.diet.util.annotation.NotThreadSafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.jar.JarFile;
+
+/**
+ * A {@link org.codarama.diet.index.LibraryIndex} keeping class names in an in-memory open addressing hash table.
+ *
+ * Keys are 64 bit hashes of the qualified class names kept in a primitive array, so a lookup costs a hash of the name
+ * and a few array reads instead of a query. Every key points to a {@link org.codarama.diet.index.ClassLocator} read
+ * from the jar's central directory, class bytes are only read when {@link #get(ClassName)} or {@link #find(ClassName)}
+ * is called. Class names are also kept in a package trie to list classes by package. Jars and class directories are
+ * indexed once, indexing one again has no effect.
+ *
+ * Snapshots are versioned: a snapshot shares the table and the class records with the index and remembers how many
+ * records there were when it was taken. Records are only ever appended, so a slot pointing at a record past that
+ * count was empty for the snapshot and ends its probe. Nothing is copied when a snapshot is taken or when the index
+ * next adds a class, growing the table allocates new arrays the snapshot does not see.
+ *
+ * If the same class name is found in more than one jar the first indexed occurrence wins.
+ */
+@NotThreadSafe
+public class HashLibraryIndex implements LibraryIndex {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_LOAD_PERCENT = 50;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // the open addressing table, a zero key marks an empty slot
+    private long[] keys;
+    private int[] slots;
+
+    // class records, a slot holds an index into these
+    private ClassLocator[] locators;
+    private int size;
+
+    private final PackageTrie packages = new PackageTrie();
+
+    // also tells which jars are indexed already
+    private final IndexStatistics statistics = new IndexStatistics();
+
+    // null to scan jars on the calling thread
+    private ExecutorService threadPool;
+
+    private int targetRelease = JarDirectory.BASE_RELEASE;
+
+    private HashLibraryIndex(int expectedSize) {
+        final int capacity = tableCapacityFor(expectedSize);
+
+        this.keys = new long[capacity];
+        this.slots = new int[capacity];
+
+        this.locators = new ClassLocator[Math.max(expectedSize, MIN_CAPACITY)];
+    }
+
+    /**
+     * Creates an empty index sized for the given number of classes.
+     * The index grows past that size if needed, the hint only saves rehashing.
+     *
+     * @param expectedSize the number of classes the index is expected to hold
+     * @return a new empty index
+     * */
+    public static HashLibraryIndex withExpectedSize(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expected size can not be negative, actual: " + expectedSize);
+        }
+        return new HashLibraryIndex(expectedSize);
+    }
+
+    /**
+     * Creates a snapshot holding the given classes, for indexes that can not share their own data with a snapshot.
+     *
+     * @param locators the indexed classes, one per class name
+     * @param statistics the statistics of the index the classes are taken from, copied
+     * @return a snapshot of the given classes
+     * */
+    static IndexSnapshot snapshotOf(List<ClassLocator> locators, IndexStatistics statistics) {
+        final HashLibraryIndex index = new HashLibraryIndex(locators.size());
+        for (ClassLocator locator : locators) {
+            index.put(locator);
+        }
+        return new Snapshot(index.keys, index.slots, index.locators, index.size, statistics);
+    }
+
+    @Override
+    public LibraryIndex index(Set<JarFile> libs) {
+        return indexLibraries(JarScans.filesOf(libs));
+    }
+
+    @Override
+    public LibraryIndex indexLibraries(Set<File> libs) {
+        final List<Callable<JarDirectory>> scans = Lists.newArrayListWithCapacity(libs.size());
+        for (File lib : libs) {
+            final File jar = lib.getAbsoluteFile();
+            if (statistics.jar(jar) != null) {
+                continue; // all its classes are indexed already
+            }
+
+            scans.add(new Callable<JarDirectory>() {
+                @Override
+                public JarDirectory call() throws IOException {
+                    return JarDirectory.of(jar, targetRelease);
+                }
+            });
+        }
+
+        // jars are scanned in parallel but added to the table on this thread, the table is never shared
+        final List<JarDirectory> scanned;
+        try {
+            scanned = JarScans.run(threadPool, scans);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read the central directory of a jar in: " + libs, e);
+        }
+
+        for (JarDirectory directory : scanned) {
+            putAll(directory);
+        }
+        return this;
+    }
+
+    @Override
+    public LibraryIndex index(JarFile lib) {
+        final File jar = new File(lib.getName()).getAbsoluteFile();
+        if (statistics.jar(jar) != null) {
+            return this;
+        }
+
+        try {
+            putAll(JarDirectory.of(jar, targetRelease));
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read the central directory of: " + jar, e);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean contains(ClassName className) {
+        return indexOf(keys, slots, locators, size, className.toString()) >= 0;
+    }
+
+    @Override
+    public ClassHandle lookup(ClassName name) {
+        final int record = indexOf(keys, slots, locators, size, name.toString());
+        return record < 0 ? null : locators[record];
+    }
+
+    @Override
+    public ClassStream get(ClassName name) {
+        final ClassStream result = find(name);
+        if (result == null) {
+            throw new IllegalStateException("no file with name: " + name + ", found in index");
+        }
+        return result;
+    }
+
+    @Override
+    public ClassStream find(ClassName name) {
+        final ClassHandle handle = lookup(name);
+        return handle == null ? null : handle.stream();
+    }
+
+    @Override
+    public Set<ClassName> classesMatching(String glob) {
+        return packages.matching(glob);
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public IndexStatistics statistics() {
+        return statistics;
+    }
+
+    @Override
+    public LibraryIndex snapshot() {
+        return new Snapshot(keys, slots, locators, size, statistics);
+    }
+
+    /**
+     * Sets a pool to read jar directories on in parallel, one task per jar.
+     * Without a pool jars are read one after another on the calling thread.
+     *
+     * @param threadPool the pool to read jars on, preferably a work stealing one
+     * */
+    public void setThreadPool(ExecutorService threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Sets the Java release to index the classes of multi-release jars for, see {@link JarDirectory}.
+     * Affects only jars indexed after the call.
+     *
+     * @param targetRelease the release to index classes for, {@link JarDirectory#BASE_RELEASE} (the default) ignores
+     *                      versioned entries
+     * */
+    public void setTargetRelease(int targetRelease) {
+        this.targetRelease = targetRelease;
+    }
+
+    private void putAll(JarDirectory directory) {
+        int duplicates = 0;
+        for (ClassLocator locator : directory.classes()) {
+            if (!put(locator)) {
+                duplicates++;
+            }
+        }
+        statistics.recordJar(JarStatistics.of(directory.jar(), directory.classes(), duplicates)
+                .withFingerprint(directory.jarSize(), directory.jarLastModified(), directory.hash()));
+    }
+
+    // returns false if a class with the same name is indexed already
+    private boolean put(ClassLocator locator) {
+        if ((size + 1L) * 100 > (long) keys.length * MAX_LOAD_PERCENT) {
+            rehash(keys.length * 2);
+        }
+
+        final String className = locator.className();
+        final long key = hash(className);
+        final int mask = keys.length - 1;
+
+        int slot = (int) key & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key && locators[slots[slot]].className().equals(className)) {
+                return false; // already indexed from another jar, first one wins
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == locators.length) {
+            locators = Arrays.copyOf(locators, locators.length * 2);
+        }
+        locators[size] = locator;
+
+        // a slot is written once, a snapshot reading it meanwhile finds no key, a record past its own or record 0,
+        // which has another name
+        slots[slot] = size;
+        keys[slot] = key;
+        size++;
+
+        packages.add(className);
+        return true;
+    }
+
+    // looks among the first records only, a slot pointing past them was empty when they were all there
+    private static int indexOf(long[] keys, int[] slots, ClassLocator[] locators, int records, String className) {
+        final long key = hash(className);
+        final int mask = keys.length - 1;
+
+        int slot = (int) key & mask;
+        while (keys[slot] != 0) {
+            final int record = slots[slot];
+            if (record >= records) {
+                return -1;
+            }
+            if (keys[slot] == key && locators[record].className().equals(className)) {
+                return record;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        final long[] newKeys = new long[capacity];
+        final int[] newSlots = new int[capacity];
+        final int mask = capacity - 1;
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == 0) {
+                continue;
+            }
+            int slot = (int) keys[i] & mask;
+            while (newKeys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newKeys[slot] = keys[i];
+            newSlots[slot] = slots[i];
+        }
+
+        this.keys = newKeys;
+        this.slots = newSlots;
+    }
+
+    private static int tableCapacityFor(int expectedSize) {
+        final long required = Math.max((long) expectedSize * 100 / MAX_LOAD_PERCENT, MIN_CAPACITY);
+        if (required > (1 << 30)) {
+            throw new IllegalArgumentException("expected size: " + expectedSize + ", is too large");
+        }
+        return Integer.highestOneBit((int) required - 1) << 1;
+    }
+
+    // 64 bit FNV-1a, spread so that the low bits used for the slot depend on the whole name
+    static long hash(String className) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < className.length(); i++) {
+            hash ^= className.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        hash ^= (hash >>> 32);
+
+        // zero marks empty slots
+        return hash == 0 ? 1 : hash;
+    }
+
+    // the table and records shared with the index, of which only the first size records are seen
+    private static final class Snapshot extends IndexSnapshot {
+
+        private final long[] keys;
+        private final int[] slots;
+        private final ClassLocator[] locators;
+        private final int size;
+
+        private Snapshot(long[] keys, int[] slots, ClassLocator[] locators, int size, IndexStatistics statistics) {
+            super(statistics);
+            this.keys = keys;
+            this.slots = slots;
+            this.locators = locators;
+            this.size = size;
+        }
+
+        @Override
+        public ClassHandle lookup(ClassName name) {
+            final int record = indexOf(keys, slots, locators, size, name.toString());
+            return record < 0 ? null : locators[record];
+        }
+
+        @Override
+        Iterable<String> classNames() {
+            final List<String> result = Lists.newArrayListWithCapacity(size);
+            for (int record = 0; record < size; record++) {
+                result.add(locators[record].className());
+            }
+            return result;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+    }
+}
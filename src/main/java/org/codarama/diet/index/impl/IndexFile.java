@@ -0,0 +1,500 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.primitives.UnsignedBytes;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.index.JarStatistics;
+import org.codarama.diet.util.annotation.Immutable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read only, memory mapped file of {@link org.codarama.diet.index.ClassLocator}s.
+ *
+ * The file is laid out as:
+ * <pre>
+ *   header   magic, version, jar count, class count, string pool length, filter length
+ *   jars     one record per jar: path and fingerprint when indexed (see {@link JarFingerprint})
+ *   classes  one record per class sorted by name: entry name, jar, compression method, header offset, sizes and
+ *            where the class's path starts in the entry name, after <code>META-INF/versions/N/</code> for variants of
+ *            multi-release jars
+ *   strings  UTF-8 jar paths and entry names referenced by the records above
+ *   filter   an optional bloom filter of the class names
+ * </pre>
+ * Records are fixed size, so a class is found with a binary search straight on the mapped bytes and opening an
+ * index file costs a mapping and a check of the header, nothing is read from the jars or copied to the heap. Records
+ * are sorted and searched by the class name read from the class's path, the part of the entry name the name is taken
+ * from, so variants of classes are found by the name of the class.
+ *
+ * Index files are never changed once written, with the exception of jar fingerprints which can be updated in place
+ * when a jar was touched but still holds the same classes.
+ */
+@Immutable
+final class IndexFile {
+
+    private static final int MAGIC = 0x44494554; // DIET
+    private static final int VERSION = 4;
+
+    private static final int HEADER_SIZE = 24;
+    private static final int JAR_RECORD_SIZE = 32;
+    private static final int JAR_RECORD_STAMP_OFFSET = 8;
+    private static final int CLASS_RECORD_SIZE = 36;
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    private static final double FILTER_FALSE_POSITIVE_RATE = 0.01;
+
+    private final File file;
+    private final ByteBuffer buffer;
+
+    private final List<JarFingerprint> jars;
+    private final Map<File, Integer> jarIndices;
+    private final int classCount;
+    private final int classesStart;
+    private final int stringsStart;
+
+    // null if the file has no filter
+    private final BloomFilter<CharSequence> filter;
+
+    private IndexFile(File file, ByteBuffer buffer, List<JarFingerprint> jars, int classCount, int classesStart, int stringsStart,
+                      BloomFilter<CharSequence> filter) {
+        this.file = file;
+        this.buffer = buffer;
+        this.jars = jars;
+        this.classCount = classCount;
+
+        final ImmutableMap.Builder<File, Integer> jarIndices = ImmutableMap.builder();
+        for (int i = 0; i < jars.size(); i++) {
+            jarIndices.put(jars.get(i).jar(), i);
+        }
+        this.jarIndices = jarIndices.build();
+        this.classesStart = classesStart;
+        this.stringsStart = stringsStart;
+        this.filter = filter;
+    }
+
+    /**
+     * Maps an existing index file.
+     *
+     * @param file the index file to map
+     * @return the mapped index file
+     * @throws IOException if the file can not be read or is not a valid index file
+     * */
+    static IndexFile map(File file) throws IOException {
+        final ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final long fileSize = raf.length();
+            if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("not an index file: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("not an index file or an unsupported version: " + file);
+        }
+
+        final int jarCount = buffer.getInt(8);
+        final int classCount = buffer.getInt(12);
+        final int stringsLength = buffer.getInt(16);
+        final int filterLength = buffer.getInt(20);
+
+        final long classesStart = HEADER_SIZE + (long) jarCount * JAR_RECORD_SIZE;
+        final long stringsStart = classesStart + (long) classCount * CLASS_RECORD_SIZE;
+        final long filterStart = stringsStart + stringsLength;
+        if (jarCount < 0 || classCount < 0 || stringsLength < 0 || filterLength < 0 || filterStart + filterLength != buffer.capacity()) {
+            throw new IOException("corrupt index file: " + file);
+        }
+
+        BloomFilter<CharSequence> filter = null;
+        if (filterLength > 0) {
+            final byte[] filterBytes = new byte[filterLength];
+            for (int i = 0; i < filterLength; i++) {
+                filterBytes[i] = buffer.get((int) filterStart + i);
+            }
+            filter = BloomFilter.readFrom(new ByteArrayInputStream(filterBytes), Funnels.unencodedCharsFunnel());
+        }
+
+        final ImmutableList.Builder<JarFingerprint> jars = ImmutableList.builder();
+        for (int i = 0; i < jarCount; i++) {
+            final int record = HEADER_SIZE + i * JAR_RECORD_SIZE;
+            final String path = string(buffer, (int) stringsStart, buffer.getInt(record), buffer.getInt(record + 4));
+            jars.add(new JarFingerprint(new File(path), buffer.getLong(record + 8), buffer.getLong(record + 16), buffer.getLong(record + 24)));
+        }
+
+        return new IndexFile(file, buffer, jars.build(), classCount, (int) classesStart, (int) stringsStart, filter);
+    }
+
+    /**
+     * Writes an index file and maps it.
+     * The file is written next to its final location and moved in place, so readers never see it half written.
+     * If a class name is found more than once the first locator in the given list wins.
+     *
+     * @param file where to write the index file, an existing file is replaced
+     * @param jars the fingerprints of the jars the locators point to
+     * @param locators the locators to write, all pointing to one of the given jars
+     * @param withFilter whether to write a bloom filter of the class names as well
+     * @return the written index file, mapped
+     * @throws IOException if the file can not be written
+     * */
+    static IndexFile write(File file, List<JarFingerprint> jars, List<ClassLocator> locators, boolean withFilter) throws IOException {
+        final Map<File, Integer> jarIndices = new HashMap<>();
+        final byte[][] jarPaths = new byte[jars.size()][];
+        for (int i = 0; i < jars.size(); i++) {
+            jarIndices.put(jars.get(i).jar(), i);
+            jarPaths[i] = jars.get(i).jar().getPath().getBytes(Charsets.UTF_8);
+        }
+
+        final byte[][] names = new byte[locators.size()][];
+        final byte[][] entryNames = new byte[locators.size()][];
+        final int[] pathStarts = new int[locators.size()];
+        final Integer[] order = new Integer[locators.size()];
+        for (int i = 0; i < locators.size(); i++) {
+            final ClassLocator locator = locators.get(i);
+            if (!jarIndices.containsKey(locator.jar())) {
+                throw new IllegalArgumentException("locator: " + locator + ", points to a jar that is not indexed");
+            }
+            names[i] = locator.className().getBytes(Charsets.UTF_8);
+            entryNames[i] = locator.entryName().getBytes(Charsets.UTF_8);
+            pathStarts[i] = pathStart(locator);
+            order[i] = i;
+        }
+
+        // a stable sort, so the first of equal names stays first
+        final Comparator<byte[]> byteOrder = UnsignedBytes.lexicographicalComparator();
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return byteOrder.compare(names[a], names[b]);
+            }
+        });
+
+        int classCount = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (classCount == 0 || !Arrays.equals(names[order[classCount - 1]], names[order[i]])) {
+                order[classCount++] = order[i];
+            }
+        }
+
+        byte[] filter = new byte[0];
+        if (withFilter) {
+            final BloomFilter<CharSequence> classNames = BloomFilter.create(
+                    Funnels.unencodedCharsFunnel(), Math.max(classCount, 1), FILTER_FALSE_POSITIVE_RATE);
+            for (int i = 0; i < classCount; i++) {
+                classNames.put(locators.get(order[i]).className());
+            }
+            final ByteArrayOutputStream filterBytes = new ByteArrayOutputStream();
+            classNames.writeTo(filterBytes);
+            filter = filterBytes.toByteArray();
+        }
+
+        long stringsLength = 0;
+        for (byte[] path : jarPaths) {
+            stringsLength += path.length;
+        }
+        for (int i = 0; i < classCount; i++) {
+            stringsLength += entryNames[order[i]].length;
+        }
+        final long fileSize = HEADER_SIZE + (long) jars.size() * JAR_RECORD_SIZE + (long) classCount * CLASS_RECORD_SIZE
+                + stringsLength + filter.length;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("index of " + classCount + " classes is too large for a single index file");
+        }
+
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("could not create index directory: " + parent);
+        }
+
+        final File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(jars.size());
+            out.writeInt(classCount);
+            out.writeInt((int) stringsLength);
+            out.writeInt(filter.length);
+
+            int stringOffset = 0;
+            for (int i = 0; i < jars.size(); i++) {
+                out.writeInt(stringOffset);
+                out.writeInt(jarPaths[i].length);
+                out.writeLong(jars.get(i).size());
+                out.writeLong(jars.get(i).lastModified());
+                out.writeLong(jars.get(i).directoryHash());
+                stringOffset += jarPaths[i].length;
+            }
+
+            for (int i = 0; i < classCount; i++) {
+                final ClassLocator locator = locators.get(order[i]);
+                out.writeInt(stringOffset);
+                out.writeInt(entryNames[order[i]].length);
+                out.writeInt(jarIndices.get(locator.jar()));
+                out.writeInt(locator.method());
+                out.writeLong(locator.headerOffset());
+                out.writeInt((int) locator.compressedSize());
+                out.writeInt((int) locator.size());
+                out.writeInt(pathStarts[order[i]]);
+                stringOffset += entryNames[order[i]].length;
+            }
+
+            for (byte[] path : jarPaths) {
+                out.write(path);
+            }
+            for (int i = 0; i < classCount; i++) {
+                out.write(entryNames[order[i]]);
+            }
+            out.write(filter);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return map(file);
+    }
+
+    /**
+     * Merges index files into a new one with a filter.
+     * Only the mapped records are read, the indexed jars are not touched.
+     * If a class name is found in more than one of the merged files the first file wins.
+     *
+     * @param file where to write the merged index file, an existing file is replaced
+     * @param parts the index files to merge
+     * @return the merged index file, mapped
+     * @throws IOException if the file can not be written
+     * */
+    static IndexFile merge(File file, List<IndexFile> parts) throws IOException {
+        final ImmutableList.Builder<JarFingerprint> jars = ImmutableList.builder();
+        final ImmutableList.Builder<ClassLocator> locators = ImmutableList.builder();
+        for (IndexFile part : parts) {
+            jars.addAll(part.jars);
+            for (int record = 0; record < part.classCount; record++) {
+                locators.add(part.locator(record));
+            }
+        }
+        return write(file, jars.build(), locators.build(), true);
+    }
+
+    /**
+     * Updates the size and modification time of an indexed jar in place.
+     * Meant for jars that were touched but have the same directory hash, the class records are left as they are.
+     *
+     * @param fingerprint the new fingerprint of a jar in this index file, with the same directory hash as the old one
+     * @return this index file mapped again
+     * @throws IOException if the file can not be written
+     * */
+    IndexFile restamp(JarFingerprint fingerprint) throws IOException {
+        final Integer jar = jarIndices.get(fingerprint.jar());
+        if (jar == null || !jars.get(jar).hasSameClasses(fingerprint)) {
+            throw new IllegalArgumentException("can not restamp: " + fingerprint + ", in: " + file);
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(HEADER_SIZE + jar * JAR_RECORD_SIZE + JAR_RECORD_STAMP_OFFSET);
+            raf.writeLong(fingerprint.size());
+            raf.writeLong(fingerprint.lastModified());
+        }
+        return map(file);
+    }
+
+    File file() {
+        return file;
+    }
+
+    /**
+     * @param jar the absolute path of a jar
+     * @return the fingerprint of the jar as it was indexed in this file, or null if the jar is not in this file
+     * */
+    JarFingerprint findJar(File jar) {
+        final Integer index = jarIndices.get(jar);
+        return index == null ? null : jars.get(index);
+    }
+
+    /**
+     * @return the stamps of the indexed jars, in the order they were written
+     * */
+    List<JarFingerprint> jars() {
+        return jars;
+    }
+
+    /**
+     * @return the number of distinct class names in the index file
+     * */
+    int size() {
+        return classCount;
+    }
+
+    /**
+     * Checks every indexed jar against its stamp.
+     * Only file attributes are read, never jar contents.
+     *
+     * @return true if all indexed jars are unchanged since they were indexed
+     * */
+    boolean isCurrent() {
+        for (JarFingerprint jar : jars) {
+            if (!jar.isCurrent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the filter of the index file, if it has one.
+     *
+     * @param className the qualified name of a class
+     * @return false if the class is certainly not in the index file, true if it might be
+     * */
+    boolean mightContain(String className) {
+        return filter == null || filter.mightContain(className);
+    }
+
+    /**
+     * @return true if the index file has a filter of its class names
+     * */
+    boolean hasFilter() {
+        return filter != null;
+    }
+
+    /**
+     * Finds the record of a class.
+     *
+     * @param className the qualified name of the class
+     * @return the record number of the class or a negative number if it is not in the index file
+     * */
+    int indexOf(String className) {
+        final byte[] name = className.getBytes(Charsets.UTF_8);
+
+        int low = 0;
+        int high = classCount - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int comparison = compareName(middle, name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a locator from its record.
+     *
+     * @param record a record number returned by {@link #indexOf(String)}
+     * @return the locator stored in the record
+     * */
+    ClassLocator locator(int record) {
+        final int position = classesStart + record * CLASS_RECORD_SIZE;
+
+        final int offset = buffer.getInt(position);
+        final int length = buffer.getInt(position + 4);
+        final int pathStart = buffer.getInt(position + 32);
+        final String entryName = string(buffer, stringsStart, offset, length);
+        final File jar = jars.get(buffer.getInt(position + 8)).jar();
+
+        return new ClassLocator(
+                JarDirectory.toClassName(string(buffer, stringsStart, offset + pathStart, length - pathStart)),
+                jar,
+                entryName,
+                buffer.getLong(position + 16),
+                buffer.getInt(position + 24) & 0xffffffffL,
+                buffer.getInt(position + 28) & 0xffffffffL,
+                buffer.getInt(position + 12)
+        );
+    }
+
+    /**
+     * Sums up the class records of every jar in the index file.
+     * Classes of a jar that were left out as duplicates of classes of other jars are not counted.
+     *
+     * @return the statistics of the indexed jars, in the order they were written
+     * */
+    List<JarStatistics> statistics() {
+        final long[] classes = new long[jars.size()];
+        final long[] compressedBytes = new long[jars.size()];
+        final long[] uncompressedBytes = new long[jars.size()];
+
+        for (int record = 0; record < classCount; record++) {
+            final int position = classesStart + record * CLASS_RECORD_SIZE;
+            final int jar = buffer.getInt(position + 8);
+
+            classes[jar]++;
+            compressedBytes[jar] += buffer.getInt(position + 24) & 0xffffffffL;
+            uncompressedBytes[jar] += buffer.getInt(position + 28) & 0xffffffffL;
+        }
+
+        final List<JarStatistics> result = Lists.newArrayListWithCapacity(jars.size());
+        for (int jar = 0; jar < jars.size(); jar++) {
+            final JarFingerprint fingerprint = jars.get(jar);
+            result.add(new JarStatistics(fingerprint.jar(), classes[jar], compressedBytes[jar], uncompressedBytes[jar], 0)
+                    .withFingerprint(fingerprint.size(), fingerprint.lastModified(), fingerprint.directoryHash()));
+        }
+        return result;
+    }
+
+    // the start of the class's path in the locator's entry name, in bytes, the class name is read from the path
+    private static int pathStart(ClassLocator locator) {
+        final String entryName = locator.entryName();
+        final int pathStart = entryName.length() - locator.className().length() - CLASS_FILE_SUFFIX.length();
+        if (pathStart < 0 || !locator.className().equals(JarDirectory.toClassName(entryName.substring(pathStart)))) {
+            throw new IllegalArgumentException("locator: " + locator + ", has an entry name that is not the path of its class");
+        }
+        return entryName.substring(0, pathStart).getBytes(Charsets.UTF_8).length;
+    }
+
+    // records hold entry names, the class name is the class's path without the suffix and with '/' read as '.'
+    private int compareName(int record, byte[] name) {
+        final int position = classesStart + record * CLASS_RECORD_SIZE;
+        final int pathStart = buffer.getInt(position + 32);
+        final int start = stringsStart + buffer.getInt(position) + pathStart;
+        final int length = buffer.getInt(position + 4) - pathStart - CLASS_FILE_SUFFIX.length();
+
+        final int common = Math.min(length, name.length);
+        for (int i = 0; i < common; i++) {
+            byte stored = buffer.get(start + i);
+            if (stored == '/') {
+                stored = '.';
+            }
+            final int comparison = UnsignedBytes.compare(stored, name[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return length - name.length;
+    }
+
+    private static String string(ByteBuffer buffer, int stringsStart, int offset, int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(stringsStart + offset + i);
+        }
+        return new String(bytes, Charsets.UTF_8);
+    }
+}
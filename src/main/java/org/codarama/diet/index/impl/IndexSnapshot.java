@@ -0,0 +1,104 @@
+package org.codarama.diet.index.impl;
+
+import org.codarama.diet.index.ClassHandle;
+import org.codarama.diet.index.IndexStatistics;
+import org.codarama.diet.index.LibraryIndex;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.codarama.diet.util.annotation.ThreadSafe;
+
+import java.io.File;
+import java.util.Set;
+import java.util.jar.JarFile;
+
+/**
+ * A read only {@link org.codarama.diet.index.LibraryIndex} over data an index will not change any more, returned by
+ * {@link org.codarama.diet.index.LibraryIndex#snapshot()}.
+ *
+ * Implementations only look classes up and list their names, the rest is answered here. The statistics are copied
+ * when the snapshot is taken and the package trie is built when first queried, so all reads are safe from any thread.
+ */
+@ThreadSafe
+abstract class IndexSnapshot implements LibraryIndex {
+
+    private final IndexStatistics statistics;
+
+    // built from the class names when first queried, null until then
+    private volatile PackageTrie packages;
+
+    /**
+     * @param statistics the statistics of the index the snapshot is taken from, copied
+     * */
+    IndexSnapshot(IndexStatistics statistics) {
+        this.statistics = statistics.snapshot();
+    }
+
+    /**
+     * @return the qualified names of all classes in the snapshot
+     * */
+    abstract Iterable<String> classNames();
+
+    @Override
+    public LibraryIndex index(Set<JarFile> libs) {
+        throw new UnsupportedOperationException("an index snapshot can not be changed, index: " + libs + ", to an overlay");
+    }
+
+    @Override
+    public LibraryIndex index(JarFile lib) {
+        throw new UnsupportedOperationException("an index snapshot can not be changed, index: " + lib.getName() + ", to an overlay");
+    }
+
+    @Override
+    public LibraryIndex indexLibraries(Set<File> libs) {
+        throw new UnsupportedOperationException("an index snapshot can not be changed, index: " + libs + ", to an overlay");
+    }
+
+    @Override
+    public boolean contains(ClassName className) {
+        return lookup(className) != null;
+    }
+
+    @Override
+    public ClassStream get(ClassName name) {
+        final ClassStream result = find(name);
+        if (result == null) {
+            throw new IllegalStateException("no file with name: " + name + ", found in index");
+        }
+        return result;
+    }
+
+    @Override
+    public ClassStream find(ClassName name) {
+        final ClassHandle handle = lookup(name);
+        return handle == null ? null : handle.stream();
+    }
+
+    @Override
+    public Set<ClassName> classesMatching(String glob) {
+        PackageTrie result = packages;
+        if (result == null) {
+            // a trie is only read once it is published, two threads building it at once build the same trie
+            result = new PackageTrie();
+            for (String className : classNames()) {
+                result.add(className);
+            }
+            packages = result;
+        }
+        return result.matching(glob);
+    }
+
+    @Override
+    public long size() {
+        return statistics.classes();
+    }
+
+    @Override
+    public IndexStatistics statistics() {
+        return statistics;
+    }
+
+    @Override
+    public LibraryIndex snapshot() {
+        return this;
+    }
+}
@@ -0,0 +1,465 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.model.ClassFile;
+import org.codarama.diet.util.annotation.Immutable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * Reads {@link org.codarama.diet.index.ClassLocator}s straight from a jar's central directory.
+ *
+ * Only the end of the jar is read: the end of central directory record and the central directory itself.
+ * Entry data is never touched, so listing a jar costs roughly the size of its directory regardless of how much
+ * bytecode it holds. Zip64 jars are supported.
+ *
+ * A hash of the raw directory bytes is kept as well, jars with the same directory hash list the same classes at the
+ * same places.
+ *
+ * Entries compressed with a method other than stored or deflated, which {@link org.codarama.diet.index.ClassLocator}
+ * can not read, are skipped with a warning, as encrypted entries are.
+ *
+ * Multi-release jars are listed for a target Java release. Of the variants of a class, the one in the jar's root and
+ * the ones under <code>META-INF/versions/N/</code>, only the variant for the highest release not above the target is
+ * listed, under the class's plain name. Versioned entries are honored only if the jar's manifest says
+ * <code>Multi-Release: true</code>, and the manifest is read only if the jar has versioned classes for the target.
+ * Other entries under <code>META-INF/versions/</code> are never listed.
+ *
+ * Class directories are listed like jars, by walking their trees, see {@link ClassTrees}.
+ *
+ * More info here:
+ *   https://pkware.cachefly.net/webdocs/casestudies/APPNOTE.TXT
+ */
+@Immutable
+public final class JarDirectory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JarDirectory.class);
+
+    /**
+     * The release of classes in a jar's root, a target of this release ignores all versioned entries.
+     * */
+    public static final int BASE_RELEASE = 8;
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int END_ENTRIES_OFFSET = 10;
+    private static final int END_DIRECTORY_SIZE_OFFSET = 12;
+    private static final int END_DIRECTORY_OFFSET_OFFSET = 16;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_LOCATOR_END_OFFSET_OFFSET = 8;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ZIP64_END_DIRECTORY_SIZE_OFFSET = 40;
+    private static final int ZIP64_END_DIRECTORY_OFFSET_OFFSET = 48;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int ENTRY_SIGNATURE = 0x02014b50;
+    private static final int ENTRY_SIZE = 46;
+    private static final int ENTRY_FLAGS_OFFSET = 8;
+    private static final int ENTRY_METHOD_OFFSET = 10;
+    private static final int ENTRY_COMPRESSED_SIZE_OFFSET = 20;
+    private static final int ENTRY_SIZE_OFFSET = 24;
+    private static final int ENTRY_NAME_LENGTH_OFFSET = 28;
+    private static final int ENTRY_EXTRA_LENGTH_OFFSET = 30;
+    private static final int ENTRY_COMMENT_LENGTH_OFFSET = 32;
+    private static final int ENTRY_HEADER_OFFSET_OFFSET = 42;
+
+    private static final int ENCRYPTED_FLAG = 0x1;
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+
+    private static final String CLASS_FILE_SUFFIX = "." + ClassFile.EXTENSION;
+
+    private static final String VERSIONS_DIR = "META-INF/versions/";
+    private static final String MANIFEST_ENTRY = "META-INF/MANIFEST.MF";
+
+    // the class file of a module declaration, not of a class
+    private static final String MODULE_INFO = "module-info";
+    private static final Attributes.Name MULTI_RELEASE = new Attributes.Name("Multi-Release");
+
+    private final File jar;
+    private final long jarSize;
+    private final long jarLastModified;
+    private final List<ClassLocator> classes;
+    private final long hash;
+
+    JarDirectory(File jar, long jarSize, long jarLastModified, List<ClassLocator> classes, long hash) {
+        this.jar = jar;
+        this.jarSize = jarSize;
+        this.jarLastModified = jarLastModified;
+        this.classes = classes;
+        this.hash = hash;
+    }
+
+    /**
+     * Reads the central directory of a jar, ignoring versioned entries of multi-release jars.
+     *
+     * @param jar the jar to read
+     * @return the central directory of the jar
+     * @throws IOException if the jar can not be read or is not a valid zip file
+     * */
+    public static JarDirectory of(File jar) throws IOException {
+        return of(jar, BASE_RELEASE);
+    }
+
+    /**
+     * Reads the central directory of a jar, listing the variants of classes in a multi-release jar for a target
+     * release.
+     *
+     * @param jar the jar to read, or a class directory to walk
+     * @param targetRelease the Java release to list classes for, like 11
+     * @return the central directory of the jar
+     * @throws IOException if the jar can not be read or is not a valid zip file
+     * */
+    public static JarDirectory of(File jar, int targetRelease) throws IOException {
+        final File absoluteJar = jar.getAbsoluteFile();
+        if (absoluteJar.isDirectory()) {
+            return ClassTrees.walk(absoluteJar);
+        }
+
+        // taken before reading, so a jar changed while being read does not look unchanged later
+        final long jarSize = absoluteJar.length();
+        final long jarLastModified = absoluteJar.lastModified();
+
+        try (RandomAccessFile file = new RandomAccessFile(absoluteJar, "r")) {
+            final ByteBuffer directory = readDirectory(absoluteJar, file.getChannel());
+            final long hash = Hashing.murmur3_128().hashBytes(directory.array(), directory.arrayOffset(), directory.limit()).asLong();
+
+            final List<ClassLocator> classes = locatorsIn(absoluteJar, directory, file.getChannel(), targetRelease);
+            return new JarDirectory(absoluteJar, jarSize, jarLastModified, classes, hash);
+        }
+    }
+
+    /**
+     * Lists the class entries of a jar as locators.
+     * Directories, resources and encrypted entries are skipped.
+     *
+     * @param jar the jar to list
+     * @return a locator for every class entry in the jar, in central directory order
+     * @throws IOException if the jar can not be read or is not a valid zip file
+     * */
+    public static List<ClassLocator> classesIn(File jar) throws IOException {
+        return of(jar).classes();
+    }
+
+    /**
+     * Lists the class entries of a jar as locators, taking the variants of classes in a multi-release jar for a target
+     * release. Directories, resources and encrypted entries are skipped.
+     *
+     * @param jar the jar to list
+     * @param targetRelease the Java release to list classes for, like 11
+     * @return a locator for every class in the jar, in central directory order of the class's first variant
+     * @throws IOException if the jar can not be read or is not a valid zip file
+     * */
+    public static List<ClassLocator> classesIn(File jar, int targetRelease) throws IOException {
+        return of(jar, targetRelease).classes();
+    }
+
+    /**
+     * @return the absolute path of the jar this directory was read from
+     * */
+    public File jar() {
+        return jar;
+    }
+
+    /**
+     * @return the size of the jar just before its directory was read
+     * */
+    public long jarSize() {
+        return jarSize;
+    }
+
+    /**
+     * @return the modification time of the jar just before its directory was read
+     * */
+    public long jarLastModified() {
+        return jarLastModified;
+    }
+
+    /**
+     * @return a locator for every class entry in the jar, in central directory order
+     * */
+    public List<ClassLocator> classes() {
+        return classes;
+    }
+
+    /**
+     * @return a 64 bit hash of the raw central directory bytes
+     * */
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * Turns a jar entry name into a qualified class name.
+     * Returns null for entries that are not class files and for <code>module-info.class</code>, which declares a
+     * module, not a class.
+     *
+     * @param entryName a jar entry name like <code>com/google/common/collect/Sets.class</code>
+     * @return a qualified class name like <code>com.google.common.collect.Sets</code> or null
+     * */
+    public static String toClassName(String entryName) {
+        if (!entryName.endsWith(CLASS_FILE_SUFFIX)) {
+            return null;
+        }
+
+        final String className = entryName.substring(0, entryName.length() - CLASS_FILE_SUFFIX.length()).replace('/', '.');
+        return className.equals(MODULE_INFO) ? null : className;
+    }
+
+    /**
+     * @param entryName a jar entry name
+     * @return true if the entry is under <code>META-INF/versions/</code>, in a multi-release jar only the variant of
+     *         a class for some release
+     * */
+    public static boolean isVersioned(String entryName) {
+        return entryName.startsWith(VERSIONS_DIR);
+    }
+
+    /**
+     * Returns the release a jar entry is for.
+     *
+     * @param entryName a jar entry name like <code>META-INF/versions/11/com/google/common/collect/Sets.class</code>
+     * @return the release of a versioned entry like 11, {@link #BASE_RELEASE} for entries outside
+     *         <code>META-INF/versions/</code> or -1 if the entry is not in a release directory
+     * */
+    public static int releaseOf(String entryName) {
+        if (!isVersioned(entryName)) {
+            return BASE_RELEASE;
+        }
+
+        final int releaseEnd = entryName.indexOf('/', VERSIONS_DIR.length());
+        if (releaseEnd <= VERSIONS_DIR.length() || releaseEnd - VERSIONS_DIR.length() > 9) {
+            return -1;
+        }
+        for (int i = VERSIONS_DIR.length(); i < releaseEnd; i++) {
+            if (!Character.isDigit(entryName.charAt(i))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(entryName.substring(VERSIONS_DIR.length(), releaseEnd));
+    }
+
+    private static List<ClassLocator> locatorsIn(File jar, ByteBuffer directory, FileChannel channel, int targetRelease) throws IOException {
+        final ImmutableList.Builder<ClassLocator> result = ImmutableList.builder();
+
+        // null unless the jar has versioned classes for the target
+        List<ClassLocator> versioned = null;
+        ClassLocator manifest = null;
+
+        while (directory.remaining() >= ENTRY_SIZE) {
+            final int entryStart = directory.position();
+            if (directory.getInt(entryStart) != ENTRY_SIGNATURE) {
+                throw new IOException("corrupt central directory in: " + jar + ", at: " + entryStart);
+            }
+
+            final int flags = directory.getShort(entryStart + ENTRY_FLAGS_OFFSET) & 0xffff;
+            final int method = directory.getShort(entryStart + ENTRY_METHOD_OFFSET) & 0xffff;
+            long compressedSize = directory.getInt(entryStart + ENTRY_COMPRESSED_SIZE_OFFSET) & ZIP64_MAGIC;
+            long size = directory.getInt(entryStart + ENTRY_SIZE_OFFSET) & ZIP64_MAGIC;
+            long headerOffset = directory.getInt(entryStart + ENTRY_HEADER_OFFSET_OFFSET) & ZIP64_MAGIC;
+            final int nameLength = directory.getShort(entryStart + ENTRY_NAME_LENGTH_OFFSET) & 0xffff;
+            final int extraLength = directory.getShort(entryStart + ENTRY_EXTRA_LENGTH_OFFSET) & 0xffff;
+            final int commentLength = directory.getShort(entryStart + ENTRY_COMMENT_LENGTH_OFFSET) & 0xffff;
+
+            final int nameStart = entryStart + ENTRY_SIZE;
+            final String entryName = decode(directory, nameStart, nameLength);
+
+            // sizes and offsets that don't fit in 32 bits are moved to the zip64 extra field, in this order
+            int extraStart = nameStart + nameLength;
+            final int extraEnd = extraStart + extraLength;
+            while (extraStart + 4 <= extraEnd) {
+                final int extraId = directory.getShort(extraStart) & 0xffff;
+                final int extraSize = directory.getShort(extraStart + 2) & 0xffff;
+                if (extraId == ZIP64_EXTRA_ID) {
+                    int field = extraStart + 4;
+                    if (size == ZIP64_MAGIC) {
+                        size = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGIC) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (headerOffset == ZIP64_MAGIC) {
+                        headerOffset = directory.getLong(field);
+                    }
+                }
+                extraStart += 4 + extraSize;
+            }
+
+            directory.position(extraEnd + commentLength);
+
+            final boolean isEncrypted = (flags & ENCRYPTED_FLAG) != 0;
+            if (isEncrypted) {
+                continue;
+            }
+            if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+                LOG.warn("skipping entry: " + entryName + ", of: " + jar + ", compressed with unsupported method: " + method);
+                continue;
+            }
+            if (entryName.equals(MANIFEST_ENTRY)) {
+                manifest = new ClassLocator(entryName, jar, entryName, headerOffset, compressedSize, size, method);
+                continue;
+            }
+
+            if (!isVersioned(entryName)) {
+                final String className = toClassName(entryName);
+                if (className != null) {
+                    result.add(new ClassLocator(className, jar, entryName, headerOffset, compressedSize, size, method));
+                }
+                continue;
+            }
+
+            // releases up to the base one are ignored, as the JVM ignores them
+            final int release = releaseOf(entryName);
+            if (release <= BASE_RELEASE || release > targetRelease) {
+                continue;
+            }
+            final String className = toClassName(entryName.substring(entryName.indexOf('/', VERSIONS_DIR.length()) + 1));
+            if (className != null) {
+                if (versioned == null) {
+                    versioned = new ArrayList<>();
+                }
+                versioned.add(new ClassLocator(className, jar, entryName, headerOffset, compressedSize, size, method));
+            }
+        }
+
+        if (versioned == null || manifest == null || !isMultiRelease(manifest, channel)) {
+            return result.build();
+        }
+        return withVariants(result.build(), versioned);
+    }
+
+    private static boolean isMultiRelease(ClassLocator manifest, FileChannel channel) throws IOException {
+        final String multiRelease = new Manifest(new ByteArrayInputStream(manifest.read(channel)))
+                .getMainAttributes()
+                .getValue(MULTI_RELEASE);
+        return Boolean.parseBoolean(multiRelease == null ? null : multiRelease.trim());
+    }
+
+    // replaces root classes with their variants for the highest release, keeping the order of the first variants
+    private static List<ClassLocator> withVariants(List<ClassLocator> root, List<ClassLocator> versioned) {
+        Collections.sort(versioned, new Comparator<ClassLocator>() {
+            @Override
+            public int compare(ClassLocator one, ClassLocator other) {
+                return Integer.compare(releaseOf(one.entryName()), releaseOf(other.entryName()));
+            }
+        });
+
+        final Map<String, ClassLocator> result = Maps.newLinkedHashMap();
+        for (ClassLocator locator : root) {
+            if (!result.containsKey(locator.className())) {
+                result.put(locator.className(), locator);
+            }
+        }
+        for (ClassLocator locator : versioned) {
+            result.put(locator.className(), locator);
+        }
+        return ImmutableList.copyOf(result.values());
+    }
+
+    private static ByteBuffer readDirectory(File jar, FileChannel channel) throws IOException {
+        final long fileSize = channel.size();
+        if (fileSize < END_SIZE) {
+            throw new IOException(jar + " is too small to be a jar");
+        }
+
+        // the end record is followed only by the zip comment which jars rarely have, so try the last bytes first
+        // and search backwards from the end for the record's signature only if that fails
+        final int tailSize = read(channel, fileSize - END_SIZE, END_SIZE).getInt(0) == END_SIGNATURE
+                ? END_SIZE
+                : (int) Math.min(fileSize, END_SIZE + MAX_COMMENT_SIZE);
+        final ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+
+        int endStart = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                endStart = i;
+                break;
+            }
+        }
+        if (endStart < 0) {
+            throw new IOException("no end of central directory record found in: " + jar);
+        }
+
+        long directorySize = tail.getInt(endStart + END_DIRECTORY_SIZE_OFFSET) & ZIP64_MAGIC;
+        long directoryOffset = tail.getInt(endStart + END_DIRECTORY_OFFSET_OFFSET) & ZIP64_MAGIC;
+
+        final boolean isZip64 = directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC
+                || (tail.getShort(endStart + END_ENTRIES_OFFSET) & 0xffff) == 0xffff;
+        final long locatorStart = fileSize - tailSize + endStart - ZIP64_LOCATOR_SIZE;
+        if (isZip64 && locatorStart >= 0) {
+            final ByteBuffer locator = read(channel, locatorStart, ZIP64_LOCATOR_SIZE);
+            if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                final ByteBuffer zip64End = read(channel, locator.getLong(ZIP64_LOCATOR_END_OFFSET_OFFSET), ZIP64_END_SIZE);
+                if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                    throw new IOException("corrupt zip64 end of central directory record in: " + jar);
+                }
+                directorySize = zip64End.getLong(ZIP64_END_DIRECTORY_SIZE_OFFSET);
+                directoryOffset = zip64End.getLong(ZIP64_END_DIRECTORY_OFFSET_OFFSET);
+            }
+        }
+
+        if (directorySize > Integer.MAX_VALUE || directoryOffset + directorySize > fileSize) {
+            throw new IOException("invalid central directory size: " + directorySize + ", or offset: " + directoryOffset + " in: " + jar);
+        }
+        return read(channel, directoryOffset, (int) directorySize);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        final ByteBuffer result = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        long offset = position;
+        while (result.hasRemaining()) {
+            final int read = channel.read(result, offset);
+            if (read < 0) {
+                throw new IOException("unexpected end of file at: " + offset);
+            }
+            offset += read;
+        }
+        result.flip();
+        return result;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int length) {
+        // jar entry names are UTF-8 and almost always plain ASCII, so try to avoid the decoder
+        boolean isAscii = true;
+        for (int i = start; i < start + length; i++) {
+            if (buffer.get(i) < 0) {
+                isAscii = false;
+                break;
+            }
+        }
+        if (!isAscii) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, Charsets.UTF_8);
+        }
+
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) buffer.get(start + i);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,113 @@
+package org.codarama.diet.index.impl;
+
+import org.codarama.diet.index.JarStatistics;
+import org.codarama.diet.util.annotation.Immutable;
+
+import java.io.File;
+import java.util.Objects;
+
+/**
+ * What a jar looked like when it was indexed: its size, modification time and a hash of its central directory.
+ *
+ * Size and time are checked first as they cost no more than a file stat. Only when they changed is the directory read
+ * again, and a matching directory hash then shows the jar still holds the same classes at the same places, like after
+ * a touch or a download of the same artifact.
+ */
+@Immutable
+final class JarFingerprint {
+
+    private final File jar;
+    private final long size;
+    private final long lastModified;
+    private final long directoryHash;
+
+    JarFingerprint(File jar, long size, long lastModified, long directoryHash) {
+        this.jar = jar;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.directoryHash = directoryHash;
+    }
+
+    /**
+     * Fingerprints a jar as it was when its central directory was read.
+     *
+     * @param directory the central directory read from the jar
+     * @return the fingerprint of the jar
+     * */
+    static JarFingerprint of(JarDirectory directory) {
+        return new JarFingerprint(directory.jar(), directory.jarSize(), directory.jarLastModified(), directory.hash());
+    }
+
+    /**
+     * Takes the fingerprint an index recorded with the statistics of a jar.
+     *
+     * @param statistics the statistics of the jar as it was indexed
+     * @return the fingerprint of the jar, or null if the index recorded none
+     * */
+    static JarFingerprint of(JarStatistics statistics) {
+        if (!statistics.hasFingerprint()) {
+            return null;
+        }
+        return new JarFingerprint(statistics.jar(), statistics.jarSize(), statistics.jarLastModified(), statistics.directoryHash());
+    }
+
+    File jar() {
+        return jar;
+    }
+
+    long size() {
+        return size;
+    }
+
+    long lastModified() {
+        return lastModified;
+    }
+
+    long directoryHash() {
+        return directoryHash;
+    }
+
+    /**
+     * Checks the jar on disk against this fingerprint without reading it.
+     *
+     * A class directory is never current, its size and modification time do not show changes deep in its tree.
+     *
+     * @return true if the jar still exists and has the fingerprinted size and modification time
+     * */
+    boolean isCurrent() {
+        return jar.isFile() && jar.length() == size && jar.lastModified() == lastModified;
+    }
+
+    /**
+     * @param other another fingerprint
+     * @return true if both fingerprints are of the same jar with the same classes, regardless of when they were taken
+     * */
+    boolean hasSameClasses(JarFingerprint other) {
+        return other.jar.equals(this.jar) && other.directoryHash == this.directoryHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof JarFingerprint)) {
+            return false;
+        }
+        final JarFingerprint other = (JarFingerprint) o;
+        return other.size == this.size
+                && other.lastModified == this.lastModified
+                && other.directoryHash == this.directoryHash
+                && other.jar.equals(this.jar);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(jar, size, lastModified, directoryHash);
+    }
+
+    @Override
+    public String toString() {
+        return jar + " (" + size + " bytes, modified: " + lastModified + ", directory: " + Long.toHexString(directoryHash) + ")";
+    }
+}
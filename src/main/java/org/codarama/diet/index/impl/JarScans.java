@@ -0,0 +1,91 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+
+/**
+ * Runs per-jar scans of the indexes, in parallel when given a thread pool.
+ *
+ * Every scan works on its own jar and returns its own result, results are collected in the order the scans were given,
+ * so indexes merge them afterwards without sharing anything while scanning. A work stealing pool, see
+ * {@link java.util.concurrent.Executors#newWorkStealingPool(int)}, keeps all threads busy when jar sizes vary a lot.
+ */
+final class JarScans {
+
+    private JarScans() {
+    }
+
+    /**
+     * Runs scans and waits for all of them.
+     * The pool is not shut down, it can be shared and reused.
+     *
+     * @param threadPool the pool to scan on, or null to scan on the calling thread
+     * @param scans the scans to run
+     * @param <T> the type of a scan result
+     * @return the scan results, in the order of the given scans
+     * @throws IOException the first failure of a scan
+     * */
+    static <T> List<T> run(ExecutorService threadPool, List<Callable<T>> scans) throws IOException {
+        final List<T> result = Lists.newArrayListWithCapacity(scans.size());
+
+        try {
+            if (threadPool == null) {
+                for (Callable<T> scan : scans) {
+                    result.add(scan.call());
+                }
+                return result;
+            }
+
+            for (Future<T> future : threadPool.invokeAll(scans)) {
+                result.add(future.get());
+            }
+            return result;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while scanning jars", e);
+        } catch (ExecutionException e) {
+            throw asIOException(e.getCause());
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw asIOException(e);
+        }
+    }
+
+    /**
+     * @param jars open jars
+     * @return the absolute paths of the jars, in the order of the given jars
+     * */
+    static Set<File> filesOf(Collection<JarFile> jars) {
+        final Set<File> result = Sets.newLinkedHashSet();
+        for (JarFile jar : jars) {
+            result.add(new File(jar.getName()).getAbsoluteFile());
+        }
+        return result;
+    }
+
+    private static IOException asIOException(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+}
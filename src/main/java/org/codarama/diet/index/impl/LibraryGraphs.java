@@ -0,0 +1,217 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import org.codarama.diet.dependency.DependencyGraph;
+import org.codarama.diet.dependency.resolver.DependencyResolver;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.model.ClassStream;
+import org.codarama.diet.util.annotation.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link DependencyGraph}s of indexed libraries, a file per library in a directory, next to the library's segment.
+ *
+ * A graph file is laid out as:
+ * <pre>
+ *   header   magic, version, the directory hash of the library the graph was resolved from, the fingerprint of the
+ *            resolver it was resolved with, see {@link DependencyResolver#fingerprint()}
+ *   graph    the graph, see {@link DependencyGraph#writeTo(java.io.DataOutput)}
+ * </pre>
+ * A graph is only read for a library with the same directory hash, so a library that changed gets a new graph when it
+ * is indexed again and a touched one keeps its graph. Graphs are read when first asked for and kept, libraries without
+ * a graph are remembered too, so asking for the graph of a class's library costs a map lookup after the first time.
+ *
+ * Graphs are resolved with the resolver given when indexing and only read for a resolver with the same fingerprint,
+ * see {@link #setResolverFingerprint(long)}, so a graph resolved before the resolver was configured differently, for
+ * example with other platform catalogs, is resolved again.
+ */
+@ThreadSafe
+final class LibraryGraphs {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LibraryGraphs.class);
+
+    private static final int MAGIC = 0x44475250; // DGRP
+    private static final int VERSION = 2;
+
+    private static final String GRAPH_FILE_EXTENSION = ".dep";
+
+    // classes of a library are read from it in batches, not all at once
+    private static final int BATCH_SIZE = 512;
+
+    private final File dir;
+
+    // of the resolver graphs are resolved with now
+    private volatile long resolverFingerprint;
+
+    // the graphs read or resolved so far by library, a null graph for a library without a graph file
+    private final ConcurrentHashMap<File, Known> known = new ConcurrentHashMap<>();
+
+    LibraryGraphs(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Sets the fingerprint of the resolver graphs are resolved with, graphs resolved with another one are not found.
+     *
+     * @param resolverFingerprint the fingerprint of the resolver given to {@link #ensure(IndexFile, DependencyResolver)}
+     * */
+    void setResolverFingerprint(long resolverFingerprint) {
+        this.resolverFingerprint = resolverFingerprint;
+    }
+
+    /**
+     * @param library the library as it was indexed
+     * @return the graph of the library, or null if none was resolved for it as it was indexed
+     * */
+    DependencyGraph find(JarFingerprint library) {
+        final long resolverFingerprint = this.resolverFingerprint;
+        final Known found = known.get(library.jar());
+        if (found != null && found.directoryHash == library.directoryHash()
+                && found.resolverFingerprint == resolverFingerprint) {
+            return found.graph;
+        }
+
+        final DependencyGraph graph = read(graphFile(library.jar()), library.directoryHash(), resolverFingerprint);
+        known.put(library.jar(), new Known(library.directoryHash(), resolverFingerprint, graph));
+        return graph;
+    }
+
+    /**
+     * Makes sure the library of a segment has a graph, resolving the dependencies of all its classes if it has none.
+     *
+     * @param segment the segment of the library
+     * @param resolver the resolver to resolve classes with
+     * @throws IOException if the classes can not be read or the graph can not be written
+     * */
+    void ensure(IndexFile segment, DependencyResolver<ClassStream> resolver) throws IOException {
+        final JarFingerprint library = segment.jars().get(0);
+        if (find(library) != null) {
+            return;
+        }
+
+        final List<ClassLocator> locators = Lists.newArrayListWithCapacity(segment.size());
+        for (int record = 0; record < segment.size(); record++) {
+            locators.add(segment.locator(record));
+        }
+
+        final DependencyGraph.Builder builder = DependencyGraph.builder();
+        for (List<ClassLocator> batch : Lists.partition(locators, BATCH_SIZE)) {
+            final List<ClassStream> classes = ClassLocator.streamAll(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                builder.add(batch.get(i).name(), resolver.resolve(classes.get(i)));
+            }
+        }
+
+        final DependencyGraph graph = builder.build();
+        final File graphFile = graphFile(library.jar());
+        LOG.debug("resolved graph of: " + library.jar() + " to: " + graphFile + ", " + graph.size() + " classes, " + graph.edgeCount() + " dependencies");
+
+        write(graphFile, library.directoryHash(), resolverFingerprint, graph);
+        known.put(library.jar(), new Known(library.directoryHash(), resolverFingerprint, graph));
+    }
+
+    /**
+     * Deletes the graph files of all libraries but the given ones.
+     *
+     * @param libraries the libraries to keep the graphs of
+     * */
+    void dropExcept(Collection<File> libraries) {
+        final File[] existing = dir.listFiles();
+        if (existing == null) {
+            return;
+        }
+
+        final Set<File> inUse = Sets.newHashSet();
+        for (File library : libraries) {
+            inUse.add(graphFile(library).getAbsoluteFile());
+        }
+
+        for (File graphFile : existing) {
+            if (!inUse.contains(graphFile.getAbsoluteFile()) && !graphFile.delete()) {
+                LOG.warn("could not drop unused dependency graph: " + graphFile);
+            }
+        }
+        known.keySet().retainAll(Sets.newHashSet(libraries));
+    }
+
+    private File graphFile(File library) {
+        final String name = Hashing.murmur3_128().hashUnencodedChars(library.getPath()).toString();
+        return new File(dir, name + GRAPH_FILE_EXTENSION);
+    }
+
+    private static DependencyGraph read(File graphFile, long directoryHash, long resolverFingerprint) {
+        if (!graphFile.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(graphFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a dependency graph file or an unsupported version: " + graphFile);
+            }
+            if (in.readLong() != directoryHash) {
+                return null; // of another version of the library
+            }
+            if (in.readLong() != resolverFingerprint) {
+                return null; // resolved by a differently configured resolver
+            }
+            return DependencyGraph.readFrom(in);
+        } catch (IOException e) {
+            LOG.warn("ignoring unreadable dependency graph: " + graphFile + ", it will be resolved again", e);
+            return null;
+        }
+    }
+
+    private static void write(File graphFile, long directoryHash, long resolverFingerprint, DependencyGraph graph) throws IOException {
+        final File parent = graphFile.getParentFile();
+        if (!parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("could not create dependency graph directory: " + parent);
+        }
+
+        final File temp = File.createTempFile(graphFile.getName(), ".tmp", parent);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(directoryHash);
+            out.writeLong(resolverFingerprint);
+            graph.writeTo(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+
+        Files.move(temp.toPath(), graphFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final class Known {
+
+        private final long directoryHash;
+        private final long resolverFingerprint;
+
+        // null if the library has no graph
+        private final DependencyGraph graph;
+
+        private Known(long directoryHash, long resolverFingerprint, DependencyGraph graph) {
+            this.directoryHash = directoryHash;
+            this.resolverFingerprint = resolverFingerprint;
+            this.graph = graph;
+        }
+    }
+}
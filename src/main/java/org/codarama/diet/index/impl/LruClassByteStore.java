@@ -0,0 +1,235 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteSource;
+import org.codarama.diet.index.ByteStoreStatistics;
+import org.codarama.diet.index.ClassByteStore;
+import org.codarama.diet.index.ClassHandle;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.codarama.diet.util.annotation.ThreadSafe;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link org.codarama.diet.index.ClassByteStore} keeping the most recently used class bytes in memory.
+ *
+ * When the bytes in memory exceed the budget the least recently used ones are evicted. Bytes located in a jar, see
+ * {@link org.codarama.diet.index.ClassLocator}, are simply dropped and read from the jar again when needed. Other
+ * bytes are appended to a spill file, created in the spill directory on the first spill and deleted when the store is
+ * closed, or when the JVM exits if it never is, and read from there. Bytes larger than the whole budget are evicted
+ * as soon as they are no longer read.
+ */
+@ThreadSafe
+public class LruClassByteStore implements ClassByteStore {
+
+    private final long memoryBudget;
+    private final File spillDir;
+
+    // every class added, by name
+    private final Map<ClassName, Entry> entries = Maps.newHashMap();
+
+    // the entries with bytes in memory, least recently used first
+    private final LinkedHashMap<ClassName, Entry> inMemory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    // null until bytes are first spilled
+    private File spillPath;
+    private RandomAccessFile spillFile;
+
+    private boolean closed;
+
+    private final ByteStoreStatistics statistics = new ByteStoreStatistics();
+
+    private LruClassByteStore(long memoryBudget, File spillDir) {
+        this.memoryBudget = memoryBudget;
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * Creates an empty store.
+     *
+     * @param memoryBudget how many class bytes to keep in memory at most
+     * @param spillDir where to create the spill file if bytes that can not be read from a jar are evicted
+     * @return a new empty store
+     * */
+    public static LruClassByteStore withBudget(long memoryBudget, File spillDir) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("memory budget can not be negative, actual: " + memoryBudget);
+        }
+        return new LruClassByteStore(memoryBudget, spillDir);
+    }
+
+    @Override
+    public synchronized ClassStream put(final ClassName name, byte[] bytes, ClassHandle source) {
+        checkOpen(name);
+        if (!entries.containsKey(name)) {
+            // other handles may hold the bytes themselves, keeping them would defeat the budget
+            final Entry entry = new Entry(source instanceof ClassLocator ? (ClassLocator) source : null);
+            entries.put(name, entry);
+            keep(name, entry, bytes);
+        }
+
+        return ClassStream.fromSource(name, new ByteSource() {
+            @Override
+            public InputStream openStream() {
+                return new ByteArrayInputStream(get(name));
+            }
+
+            // the bytes as the store keeps them, not a copy
+            @Override
+            public byte[] read() {
+                return get(name);
+            }
+        });
+    }
+
+    @Override
+    public synchronized byte[] get(ClassName name) {
+        checkOpen(name);
+        final Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IllegalStateException("no class with name: " + name + ", found in store");
+        }
+
+        if (entry.bytes != null) {
+            inMemory.get(name); // marks it as used
+            statistics.recordHit();
+            return entry.bytes;
+        }
+
+        final byte[] result = reload(name, entry);
+        keep(name, entry, result);
+        return result;
+    }
+
+    @Override
+    public synchronized boolean contains(ClassName name) {
+        return entries.containsKey(name);
+    }
+
+    @Override
+    public synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    @Override
+    public ByteStoreStatistics statistics() {
+        return statistics;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        entries.clear();
+        inMemory.clear();
+        memoryBytes = 0;
+
+        if (spillFile != null) {
+            spillFile.close();
+            Files.deleteIfExists(spillPath.toPath());
+        }
+    }
+
+    private void checkOpen(ClassName name) {
+        if (closed) {
+            throw new IllegalStateException("store is closed, can not read or add: " + name);
+        }
+    }
+
+    private void keep(ClassName name, Entry entry, byte[] bytes) {
+        entry.bytes = bytes;
+        inMemory.put(name, entry);
+        memoryBytes += bytes.length;
+
+        final Iterator<Map.Entry<ClassName, Entry>> leastRecentlyUsed = inMemory.entrySet().iterator();
+        while (memoryBytes > memoryBudget && leastRecentlyUsed.hasNext()) {
+            final Map.Entry<ClassName, Entry> evicted = leastRecentlyUsed.next();
+            if (evicted.getKey().equals(name)) {
+                continue; // the caller is about to read it
+            }
+
+            evict(evicted.getKey(), evicted.getValue());
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    private void evict(ClassName name, Entry entry) {
+        final boolean spill = entry.locator == null && entry.spillOffset < 0;
+        if (spill) {
+            try {
+                final RandomAccessFile spillFile = spillFile();
+                entry.spillOffset = spillFile.length();
+                spillFile.seek(entry.spillOffset);
+                spillFile.write(entry.bytes);
+            } catch (IOException e) {
+                throw new IllegalStateException("could not spill: " + name + ", to: " + spillDir, e);
+            }
+        }
+
+        entry.length = entry.bytes.length;
+        memoryBytes -= entry.length;
+        entry.bytes = null;
+        statistics.recordEviction(spill);
+    }
+
+    private byte[] reload(ClassName name, Entry entry) {
+        try {
+            if (entry.locator != null) {
+                statistics.recordReload(false);
+                return entry.locator.read();
+            }
+
+            final byte[] result = new byte[entry.length];
+            spillFile.seek(entry.spillOffset);
+            spillFile.readFully(result);
+            statistics.recordReload(true);
+            return result;
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read back evicted: " + name, e);
+        }
+    }
+
+    private RandomAccessFile spillFile() throws IOException {
+        if (spillFile == null) {
+            if (!spillDir.mkdirs() && !spillDir.isDirectory()) {
+                throw new IOException("could not create spill directory: " + spillDir);
+            }
+
+            spillPath = File.createTempFile("classes", ".spill", spillDir);
+            spillPath.deleteOnExit();
+            spillFile = new RandomAccessFile(spillPath, "rw");
+        }
+        return spillFile;
+    }
+
+    private static final class Entry {
+
+        // null if the bytes can only be read back from the spill file
+        private final ClassLocator locator;
+
+        // null while evicted
+        private byte[] bytes;
+        private int length;
+
+        // where the bytes are in the spill file, negative until spilled
+        private long spillOffset = -1;
+
+        private Entry(ClassLocator locator) {
+            this.locator = locator;
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.codarama.diet.index.ClassHandle;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.index.IndexStatistics;
+import org.codarama.diet.index.JarStatistics;
+import org.codarama.diet.index.LibraryIndex;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.jar.JarFile;
+
+/**
+ * A {@link org.codarama.diet.index.LibraryIndex} kept in an H2 MVStore file that outlives the JVM.
+ *
+ * More info here:
+ *   http://www.h2database.com/html/mvstore.html
+ *
+ * The store holds a map of class names to {@link org.codarama.diet.index.ClassLocator}s read from the jars' central
+ * directories, a map of the indexed jars with their {@link JarFingerprint}s and, with {@link #setStoreBytes(boolean)},
+ * a map of class names to class bytes, compressed by the store. The jar map also keeps the {@link #statistics()} of
+ * every jar, so they are known without reading any jar.
+ *
+ * All changes of an {@link #index(Set)} call are committed at once, so a run that dies while indexing leaves the
+ * store as the previous run committed it. Jars that are unchanged since they were indexed, by size and modification
+ * time, are not read again, so sequential runs on the same machine can share a store. Lookups read the maps without
+ * locking and can run on many threads, also while indexing, but indexing must not run on more than one thread at a
+ * time. The store is opened when first used and is locked by the opening JVM until {@link #close()}.
+ *
+ * A snapshot copies the locators of the committed classes to memory, once after every update, so it does not depend
+ * on the store staying open. Snapshots read classes from their jars, also when class bytes are stored.
+ *
+ * Class directories are indexed like jars, walked from their trees, see {@link ClassTrees}. Their size and
+ * modification time do not show changes deep in their trees, so they are indexed again on every update.
+ *
+ * The store is indexed for one target release of multi-release jars, see {@link #setTargetRelease(int)}.
+ *
+ * If the same class name is found in more than one jar the first indexed occurrence wins.
+ */
+public class MVStoreLibraryIndex implements LibraryIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MVStoreLibraryIndex.class);
+
+    private static final String CLASSES_MAP_NAME = "classes";
+    private static final String BYTES_MAP_NAME = "bytes";
+    private static final String JARS_MAP_NAME = "jars";
+    private static final String META_MAP_NAME = "meta";
+
+    // stores written with another version are cleared when opened
+    private static final String VERSION_KEY = "version";
+    private static final int VERSION = 2;
+
+    // stores indexed for another target release are cleared when opened
+    private static final String RELEASE_KEY = "release";
+
+    // jar map values: the jar id, its fingerprint, then its statistics
+    private static final int JAR_ID = 0;
+    private static final int JAR_SIZE = 1;
+    private static final int JAR_LAST_MODIFIED = 2;
+    private static final int JAR_DIRECTORY_HASH = 3;
+    private static final int JAR_CLASSES = 4;
+    private static final int JAR_COMPRESSED_BYTES = 5;
+    private static final int JAR_UNCOMPRESSED_BYTES = 6;
+    private static final int JAR_DUPLICATES = 7;
+
+    // class map values: jar id, method, header offset, compressed size, size, then the UTF-8 entry name
+    private static final int LOCATOR_FIXED_SIZE = 4 + 4 + 8 + 8 + 8;
+
+    private final File storeFile;
+
+    // null until first used, the maps are set before the store
+    private volatile MVStore store;
+    private MVMap<String, byte[]> classes;
+    private MVMap<String, byte[]> bytes;
+    private MVMap<String, long[]> jars;
+
+    // jar files by their ids in the store
+    private final ConcurrentMap<Integer, File> jarsById = Maps.newConcurrentMap();
+
+    // read from the jar map whenever it changes
+    private final IndexStatistics statistics = new IndexStatistics();
+
+    // built from the class map when first queried, null after a change
+    private volatile PackageTrie packages;
+
+    // taken when first asked for, null after a change
+    private volatile LibraryIndex snapshot;
+
+    private boolean storeBytes;
+
+    // null to scan jars on the calling thread
+    private ExecutorService threadPool;
+
+    private int targetRelease = JarDirectory.BASE_RELEASE;
+
+    private MVStoreLibraryIndex(File storeFile) {
+        this.storeFile = storeFile.getAbsoluteFile();
+    }
+
+    /**
+     * Creates an index kept in the given store file.
+     * Nothing is read or created before the index is first used.
+     *
+     * @param storeFilePath the path to the store file, created when the index is first used
+     * @return the index kept in the given file
+     * */
+    public static MVStoreLibraryIndex inFile(String storeFilePath) {
+        return new MVStoreLibraryIndex(new File(storeFilePath));
+    }
+
+    @Override
+    public LibraryIndex index(Set<JarFile> libs) {
+        return indexLibraries(JarScans.filesOf(libs));
+    }
+
+    @Override
+    public LibraryIndex indexLibraries(Set<File> libs) {
+        final Set<File> jarFiles = Sets.newLinkedHashSet();
+        for (File lib : libs) {
+            jarFiles.add(lib.getAbsoluteFile());
+        }
+
+        update(jarFiles, true);
+        return this;
+    }
+
+    @Override
+    public LibraryIndex index(JarFile lib) {
+        update(Sets.newHashSet(new File(lib.getName()).getAbsoluteFile()), false);
+        return this;
+    }
+
+    @Override
+    public boolean contains(ClassName className) {
+        return classes().containsKey(className.toString());
+    }
+
+    @Override
+    public ClassHandle lookup(final ClassName name) {
+        final byte[] locator = classes().get(name.toString());
+        if (locator == null) {
+            return null;
+        }
+
+        final byte[] classBytes = bytes.get(name.toString());
+        if (classBytes == null) {
+            return toLocator(name.toString(), locator);
+        }
+
+        return new ClassHandle() {
+            @Override
+            public ClassName name() {
+                return name;
+            }
+
+            @Override
+            public ClassStream stream() {
+                return ClassStream.fromStream(new ByteArrayInputStream(classBytes));
+            }
+        };
+    }
+
+    @Override
+    public ClassStream get(ClassName name) {
+        final ClassStream result = find(name);
+        if (result == null) {
+            throw new IllegalStateException("no file with name: " + name + ", found in index");
+        }
+        return result;
+    }
+
+    @Override
+    public ClassStream find(ClassName name) {
+        final ClassHandle handle = lookup(name);
+        return handle == null ? null : handle.stream();
+    }
+
+    @Override
+    public Set<ClassName> classesMatching(String glob) {
+        PackageTrie result = packages;
+        if (result == null) {
+            result = new PackageTrie();
+            for (String className : classes().keySet()) {
+                result.add(className);
+            }
+            packages = result;
+        }
+        return result.matching(glob);
+    }
+
+    @Override
+    public long size() {
+        return classes().sizeAsLong();
+    }
+
+    @Override
+    public IndexStatistics statistics() {
+        if (store == null) {
+            open();
+        }
+        return statistics;
+    }
+
+    @Override
+    public synchronized LibraryIndex snapshot() {
+        if (snapshot == null) {
+            final List<ClassLocator> locators = Lists.newArrayListWithCapacity((int) classes().sizeAsLong());
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                locators.add(toLocator(entry.getKey(), entry.getValue()));
+            }
+            snapshot = HashLibraryIndex.snapshotOf(locators, statistics);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Switches between storing only where classes are in their jars and also copying class bytes in the store.
+     * Copied bytes are read from the store even if their jar is gone, at the cost of a larger store and reading all
+     * classes while indexing. Affects only jars indexed after the call.
+     *
+     * @param storeBytes true to copy class bytes, false to store only locators (the default)
+     * */
+    public void setStoreBytes(boolean storeBytes) {
+        this.storeBytes = storeBytes;
+    }
+
+    /**
+     * Sets a pool to scan jars on in parallel, one task per jar.
+     * Without a pool jars are scanned one after another on the calling thread.
+     *
+     * @param threadPool the pool to scan jars on, preferably a work stealing one
+     * */
+    public void setThreadPool(ExecutorService threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Sets the Java release to index the classes of multi-release jars for, see {@link JarDirectory}.
+     * Must be called before the index is first used, a store indexed for another release is cleared when opened.
+     *
+     * @param targetRelease the release to index classes for, {@link JarDirectory#BASE_RELEASE} (the default) ignores
+     *                      versioned entries
+     * */
+    public void setTargetRelease(int targetRelease) {
+        this.targetRelease = targetRelease;
+    }
+
+    /**
+     * Closes the store, if it was opened, unlocking it for other JVMs.
+     * The index opens the store again if used after it was closed.
+     * */
+    public synchronized void close() {
+        if (store != null && !store.isClosed()) {
+            store.close();
+        }
+        store = null;
+    }
+
+    // indexes the given jars, also dropping all other jars if exclusive
+    private synchronized void update(Collection<File> jarFiles, boolean exclusive) {
+        open();
+
+        final Set<String> dropped = Sets.newHashSet();
+        for (String indexed : Lists.newArrayList(jars.keySet())) {
+            final File jar = new File(indexed);
+            final boolean requested = jarFiles.contains(jar);
+
+            if ((exclusive && !requested) || (requested && !isCurrent(jar, jars.get(indexed)))) {
+                dropped.add(indexed);
+            }
+        }
+
+        final List<File> toScan = Lists.newArrayList();
+        final List<File> toRestore = Lists.newArrayList();
+        for (File jar : jarFiles) {
+            if (!jars.containsKey(jar.getPath()) || dropped.contains(jar.getPath())) {
+                toScan.add(jar);
+            } else if (!dropped.isEmpty()) {
+                toRestore.add(jar);
+            }
+        }
+
+        if (dropped.isEmpty() && toScan.isEmpty()) {
+            LOG.debug("reusing index: " + storeFile + ", all " + jarFiles.size() + " jars are unchanged");
+            return;
+        }
+
+        final List<JarDirectory> scanned;
+        final List<JarDirectory> restored;
+        try {
+            scanned = scan(toScan);
+            // dropped classes could hide the same classes of kept jars, those are put back
+            restored = scan(toRestore);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read the central directory of a jar in: " + jarFiles, e);
+        }
+
+        try {
+            drop(dropped);
+            for (JarDirectory directory : restored) {
+                final long[] jar = jars.get(directory.jar().getPath()).clone();
+                jar[JAR_DUPLICATES] = put(directory, jar[JAR_ID]);
+                jars.put(directory.jar().getPath(), jar);
+            }
+            for (JarDirectory directory : scanned) {
+                final long id = nextJarId();
+                final JarStatistics jar = JarStatistics.of(directory.jar(), directory.classes(), put(directory, id));
+                jars.put(directory.jar().getPath(), new long[]{
+                        id, directory.jarSize(), directory.jarLastModified(), directory.hash(),
+                        jar.classes(), jar.compressedBytes(), jar.uncompressedBytes(), jar.duplicates()
+                });
+                jarsById.put((int) id, directory.jar());
+            }
+        } catch (IOException | RuntimeException e) {
+            store.rollback();
+            loadJars();
+            throw new IllegalStateException("could not update index in: " + storeFile, e);
+        } finally {
+            packages = null;
+            snapshot = null;
+        }
+
+        store.commit();
+        loadJars();
+        LOG.debug("updated index: " + storeFile + ", with " + classes.sizeAsLong() + " classes from " + jars.size() + " jars");
+    }
+
+    private List<JarDirectory> scan(List<File> jarFiles) throws IOException {
+        final List<Callable<JarDirectory>> scans = Lists.newArrayListWithCapacity(jarFiles.size());
+        for (final File jar : jarFiles) {
+            scans.add(new Callable<JarDirectory>() {
+                @Override
+                public JarDirectory call() throws IOException {
+                    return JarDirectory.of(jar, targetRelease);
+                }
+            });
+        }
+        return JarScans.run(threadPool, scans);
+    }
+
+    // returns the number of classes of the jar that are indexed from another jar
+    private long put(JarDirectory directory, long jarId) throws IOException {
+        long duplicates = 0;
+
+        // class directories have no file to keep open, their classes are read file by file
+        final boolean isJar = directory.jar().isFile();
+        try (RandomAccessFile jar = storeBytes && isJar ? new RandomAccessFile(directory.jar(), "r") : null) {
+            for (ClassLocator locator : directory.classes()) {
+                final byte[] existing = classes.putIfAbsent(locator.className(), toRecord((int) jarId, locator));
+                if (existing == null) {
+                    if (storeBytes) {
+                        bytes.put(locator.className(), locator.read(jar == null ? null : jar.getChannel()));
+                    }
+                } else if (ByteBuffer.wrap(existing).getInt() != jarId) {
+                    duplicates++;
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    private void drop(Set<String> droppedJars) {
+        if (droppedJars.isEmpty()) {
+            return;
+        }
+
+        final Set<Integer> droppedIds = Sets.newHashSet();
+        for (String jar : droppedJars) {
+            final int id = (int) jars.remove(jar)[JAR_ID];
+            droppedIds.add(id);
+            jarsById.remove(id);
+        }
+
+        for (String className : Lists.newArrayList(classes.keySet())) {
+            if (droppedIds.contains(ByteBuffer.wrap(classes.get(className)).getInt())) {
+                classes.remove(className);
+                bytes.remove(className);
+            }
+        }
+        LOG.debug("dropped: " + droppedJars + ", from index: " + storeFile);
+    }
+
+    private long nextJarId() {
+        long result = 0;
+        for (long[] jar : jars.values()) {
+            result = Math.max(result, jar[JAR_ID] + 1);
+        }
+        return result;
+    }
+
+    private MVMap<String, byte[]> classes() {
+        if (store == null) {
+            open();
+        }
+        return classes;
+    }
+
+    private synchronized void open() {
+        if (store != null) {
+            return;
+        }
+
+        final File storeDir = storeFile.getParentFile();
+        if (storeDir != null && !storeDir.mkdirs() && !storeDir.isDirectory()) {
+            throw new IllegalStateException("could not create index directory: " + storeDir);
+        }
+
+        final MVStore opened = new MVStore.Builder()
+                .fileName(storeFile.getPath())
+                .compress()
+                .autoCommitDisabled()
+                .open();
+
+        try {
+            this.jars = opened.openMap(JARS_MAP_NAME);
+            this.classes = opened.openMap(CLASSES_MAP_NAME);
+            this.bytes = opened.openMap(BYTES_MAP_NAME);
+
+            final MVMap<String, Integer> meta = opened.openMap(META_MAP_NAME);
+            final boolean otherVersion = !Integer.valueOf(VERSION).equals(meta.get(VERSION_KEY));
+            final boolean otherRelease = !Integer.valueOf(targetRelease).equals(meta.get(RELEASE_KEY));
+            if (otherVersion || otherRelease) {
+                LOG.debug("clearing index: " + storeFile + ", written by another version or for another release");
+                jars.clear();
+                classes.clear();
+                bytes.clear();
+                meta.put(VERSION_KEY, VERSION);
+                meta.put(RELEASE_KEY, targetRelease);
+                opened.commit();
+            }
+
+            loadJars();
+        } catch (RuntimeException e) {
+            opened.closeImmediately();
+            throw e;
+        }
+
+        this.store = opened;
+    }
+
+    private void loadJars() {
+        jarsById.clear();
+        statistics.clear();
+        for (Map.Entry<String, long[]> entry : jars.entrySet()) {
+            final File jar = new File(entry.getKey());
+            final long[] value = entry.getValue();
+
+            jarsById.put((int) value[JAR_ID], jar);
+            statistics.recordJar(new JarStatistics(
+                    jar, value[JAR_CLASSES], value[JAR_COMPRESSED_BYTES], value[JAR_UNCOMPRESSED_BYTES], value[JAR_DUPLICATES]
+            ).withFingerprint(value[JAR_SIZE], value[JAR_LAST_MODIFIED], value[JAR_DIRECTORY_HASH]));
+        }
+    }
+
+    private static boolean isCurrent(File jar, long[] indexed) {
+        return new JarFingerprint(jar, indexed[JAR_SIZE], indexed[JAR_LAST_MODIFIED], indexed[JAR_DIRECTORY_HASH]).isCurrent();
+    }
+
+    private static byte[] toRecord(int jarId, ClassLocator locator) {
+        final byte[] entryName = locator.entryName().getBytes(Charsets.UTF_8);
+
+        return ByteBuffer.allocate(LOCATOR_FIXED_SIZE + entryName.length)
+                .putInt(jarId)
+                .putInt(locator.method())
+                .putLong(locator.headerOffset())
+                .putLong(locator.compressedSize())
+                .putLong(locator.size())
+                .put(entryName)
+                .array();
+    }
+
+    private ClassLocator toLocator(String className, byte[] record) {
+        final ByteBuffer buffer = ByteBuffer.wrap(record);
+
+        final int jarId = buffer.getInt();
+        final int method = buffer.getInt();
+        final long headerOffset = buffer.getLong();
+        final long compressedSize = buffer.getLong();
+        final long size = buffer.getLong();
+        final String entryName = new String(record, LOCATOR_FIXED_SIZE, record.length - LOCATOR_FIXED_SIZE, Charsets.UTF_8);
+
+        final File jar = jarsById.get(jarId);
+        if (jar == null) {
+            throw new IllegalStateException("no jar with id: " + jarId + ", for class: " + className + ", in index: " + storeFile);
+        }
+        return new ClassLocator(className, jar, entryName, headerOffset, compressedSize, size, method);
+    }
+}
@@ -0,0 +1,520 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import org.codarama.diet.dependency.DependencyGraph;
+import org.codarama.diet.dependency.resolver.DependencyResolver;
+import org.codarama.diet.index.ClassHandle;
+import org.codarama.diet.index.FilterStatistics;
+import org.codarama.diet.index.FilteredLibraryIndex;
+import org.codarama.diet.index.GraphedLibraryIndex;
+import org.codarama.diet.index.IndexStatistics;
+import org.codarama.diet.index.JarStatistics;
+import org.codarama.diet.index.LibraryIndex;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.codarama.diet.util.annotation.NotThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.jar.JarFile;
+
+/**
+ * A {@link org.codarama.diet.index.LibraryIndex} kept in memory mapped files that outlive the JVM.
+ *
+ * Every jar is indexed to its own immutable segment file holding a sorted table of class names with a
+ * {@link org.codarama.diet.index.ClassLocator} for each, and the jar's {@link JarFingerprint}. Lookups go to a single
+ * index file merged from the segments of all indexed jars.
+ *
+ * When a later run indexes jars that are unchanged since their segments were written, the segments are reused and
+ * no jar is read. Changed and new jars get new segments from their central directories, segments of jars that are no
+ * longer indexed are dropped, and the merged file is rebuilt from the segments only if the set of classes changed.
+ * Given a thread pool, jars are scanned to their segments in parallel.
+ *
+ * Class directories get segments like jars, walked from their trees, see {@link ClassTrees}. A directory is walked
+ * again on every update, as its size and modification time do not show changes deep in its tree, but its segment is
+ * only rewritten if the paths, sizes or modification times of its class files changed.
+ *
+ * The merged file carries a bloom filter of its class names, checked before the sorted table when looking classes up.
+ * Listing classes by package builds a package trie from the merged file, once for every merged file.
+ *
+ * A snapshot reads the merged file mapped when it was taken. A new merged file is moved in place of the old one and
+ * only jar stamps are ever written in place, so the class records a snapshot reads never change.
+ *
+ * An index is built for one target release of multi-release jars, see {@link #inDirectory(String, int)}. Indexes for
+ * other releases than {@link JarDirectory#BASE_RELEASE} are kept in a subdirectory per release, so indexes for
+ * different releases can share an index directory.
+ *
+ * Given a dependency resolver, see {@link #setDependencyResolver(DependencyResolver)}, the dependencies of the classes
+ * of every jar are resolved once, in the same task that scans the jar, and kept as the jar's
+ * {@link org.codarama.diet.dependency.DependencyGraph} in a file next to its segment, see {@link LibraryGraphs}. The
+ * graph is kept as long as the jar's directory and the resolver's fingerprint do not change.
+ *
+ * If the same class name is found in more than one jar the first indexed occurrence wins.
+ */
+@NotThreadSafe
+public class MappedLibraryIndex implements FilteredLibraryIndex, GraphedLibraryIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedLibraryIndex.class);
+
+    private static final String MERGED_FILE_NAME = "classes.idx";
+    private static final String SEGMENTS_DIR_NAME = "segments";
+    private static final String SEGMENT_FILE_EXTENSION = ".seg";
+    private static final String GRAPHS_DIR_NAME = "graphs";
+    private static final String RELEASE_DIR_PREFIX = "release-";
+
+    private final File indexDir;
+    private final File mergedFile;
+    private final File segmentsDir;
+    private final int targetRelease;
+
+    private final LibraryGraphs graphs;
+
+    // null until something is indexed or an existing index is found
+    private IndexFile merged;
+
+    // built from the merged file when first queried, null until then
+    private PackageTrie packages;
+
+    // null to scan jars on the calling thread
+    private ExecutorService threadPool;
+
+    // null to keep no dependency graphs
+    private DependencyResolver<ClassStream> dependencyResolver;
+
+    private final FilterStatistics filterStatistics = new FilterStatistics();
+    private final IndexStatistics statistics = new IndexStatistics();
+
+    private MappedLibraryIndex(File indexDir, int targetRelease) {
+        this.indexDir = targetRelease == JarDirectory.BASE_RELEASE
+                ? indexDir.getAbsoluteFile()
+                : new File(indexDir.getAbsoluteFile(), RELEASE_DIR_PREFIX + targetRelease);
+        this.targetRelease = targetRelease;
+        this.mergedFile = new File(this.indexDir, MERGED_FILE_NAME);
+        this.segmentsDir = new File(this.indexDir, SEGMENTS_DIR_NAME);
+        this.graphs = new LibraryGraphs(new File(this.indexDir, GRAPHS_DIR_NAME));
+
+        this.merged = load(mergedFile);
+        if (merged != null) {
+            final List<IndexFile> segments = Lists.newArrayList();
+            for (JarFingerprint jar : merged.jars()) {
+                final IndexFile segment = load(segmentFile(jar.jar()));
+                if (segment != null) {
+                    segments.add(segment);
+                }
+            }
+            recount(segments);
+        }
+    }
+
+    /**
+     * Creates an index kept in the given directory.
+     * If an index exists there it is mapped right away and its classes can be looked up before anything is indexed.
+     *
+     * @param indexDirPath the path to the index directory, created when something is first indexed
+     * @return the index kept in the given directory
+     * */
+    public static MappedLibraryIndex inDirectory(String indexDirPath) {
+        return inDirectory(indexDirPath, JarDirectory.BASE_RELEASE);
+    }
+
+    /**
+     * Creates an index kept in the given directory, indexing the classes of multi-release jars for a target release.
+     * If an index for the release exists there it is mapped right away.
+     *
+     * @param indexDirPath the path to the index directory, created when something is first indexed
+     * @param targetRelease the Java release to index classes for, {@link JarDirectory#BASE_RELEASE} ignores versioned
+     *                      entries
+     * @return the index kept in the given directory
+     * */
+    public static MappedLibraryIndex inDirectory(String indexDirPath, int targetRelease) {
+        return new MappedLibraryIndex(new File(indexDirPath), targetRelease);
+    }
+
+    @Override
+    public LibraryIndex index(Set<JarFile> libs) {
+        return indexLibraries(JarScans.filesOf(libs));
+    }
+
+    @Override
+    public LibraryIndex indexLibraries(Set<File> libs) {
+        final Set<File> jars = Sets.newLinkedHashSet();
+        for (File lib : libs) {
+            jars.add(lib.getAbsoluteFile());
+        }
+
+        update(jars);
+        return this;
+    }
+
+    @Override
+    public LibraryIndex index(JarFile lib) {
+        final Set<File> jars = Sets.newLinkedHashSet();
+        if (merged != null) {
+            for (JarFingerprint indexed : merged.jars()) {
+                if (indexed.jar().exists()) {
+                    jars.add(indexed.jar());
+                }
+            }
+        }
+        jars.add(new File(lib.getName()).getAbsoluteFile());
+
+        update(jars);
+        return this;
+    }
+
+    @Override
+    public boolean contains(ClassName className) {
+        return indexOf(className.toString()) >= 0;
+    }
+
+    @Override
+    public ClassHandle lookup(ClassName name) {
+        final int record = indexOf(name.toString());
+        return record < 0 ? null : merged.locator(record);
+    }
+
+    @Override
+    public ClassStream get(ClassName name) {
+        final ClassStream result = find(name);
+        if (result == null) {
+            throw new IllegalStateException("no file with name: " + name + ", found in index");
+        }
+        return result;
+    }
+
+    @Override
+    public ClassStream find(ClassName name) {
+        final ClassHandle handle = lookup(name);
+        return handle == null ? null : handle.stream();
+    }
+
+    @Override
+    public Set<ClassName> classesMatching(String glob) {
+        if (merged == null) {
+            return Sets.newHashSet();
+        }
+
+        if (packages == null) {
+            packages = new PackageTrie();
+            for (int record = 0; record < merged.size(); record++) {
+                packages.add(merged.locator(record).className());
+            }
+        }
+        return packages.matching(glob);
+    }
+
+    @Override
+    public long size() {
+        return merged == null ? 0 : merged.size();
+    }
+
+    @Override
+    public IndexStatistics statistics() {
+        return statistics;
+    }
+
+    @Override
+    public DependencyGraph dependencyGraph(File library) {
+        return graphOf(merged, dependencyResolver == null ? null : graphs, library);
+    }
+
+    @Override
+    public LibraryIndex snapshot() {
+        return new Snapshot(merged, dependencyResolver == null ? null : graphs, statistics, filterStatistics);
+    }
+
+    @Override
+    public FilterStatistics filterStatistics() {
+        return filterStatistics;
+    }
+
+    /**
+     * Sets a pool to scan jars on in parallel, one task per jar.
+     * Without a pool jars are scanned one after another on the calling thread.
+     *
+     * @param threadPool the pool to scan jars on, preferably a work stealing one
+     * */
+    public void setThreadPool(ExecutorService threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Sets a resolver to resolve the dependencies of the classes of every indexed jar with, kept as the jar's graph.
+     * Without a resolver no graphs are kept and {@link #dependencyGraph(File)} returns null.
+     *
+     * @param dependencyResolver the resolver to resolve the classes of jars with, called from the scanning threads
+     * */
+    public void setDependencyResolver(DependencyResolver<ClassStream> dependencyResolver) {
+        this.dependencyResolver = dependencyResolver;
+        if (dependencyResolver != null) {
+            graphs.setResolverFingerprint(dependencyResolver.fingerprint());
+        }
+    }
+
+    private static DependencyGraph graphOf(IndexFile merged, LibraryGraphs graphs, File library) {
+        if (merged == null || graphs == null) {
+            return null;
+        }
+        final JarFingerprint indexed = merged.findJar(library.getAbsoluteFile());
+        return indexed == null ? null : graphs.find(indexed);
+    }
+
+    private int indexOf(String className) {
+        return indexOf(merged, className, filterStatistics);
+    }
+
+    private static int indexOf(IndexFile merged, String className, FilterStatistics filterStatistics) {
+        if (merged == null) {
+            return -1;
+        }
+        if (!merged.mightContain(className)) {
+            filterStatistics.recordRejected();
+            return -1;
+        }
+
+        final int record = merged.indexOf(className);
+        if (merged.hasFilter()) {
+            filterStatistics.recordPassed(record >= 0);
+        }
+        return record;
+    }
+
+    private void update(Collection<File> jars) {
+        if (merged != null && isCurrent(merged, jars)) {
+            LOG.debug("reusing index: " + mergedFile + ", all " + jars.size() + " jars are unchanged");
+            if (dependencyResolver != null) {
+                graphAll(jars);
+            }
+            return;
+        }
+
+        final List<Callable<IndexFile>> scans = Lists.newArrayListWithCapacity(jars.size());
+        for (final File jar : jars) {
+            scans.add(new Callable<IndexFile>() {
+                @Override
+                public IndexFile call() throws IOException {
+                    return graphed(segment(jar));
+                }
+            });
+        }
+
+        final List<IndexFile> segments;
+        try {
+            // segments are separate files, so they are scanned and written without any locking
+            segments = JarScans.run(threadPool, scans);
+
+            final List<JarFingerprint> fingerprints = Lists.newArrayListWithCapacity(segments.size());
+            for (IndexFile segment : segments) {
+                fingerprints.add(segment.jars().get(0));
+            }
+
+            if (merged != null && hasSameClasses(merged, fingerprints)) {
+                for (JarFingerprint fingerprint : fingerprints) {
+                    if (!fingerprint.equals(merged.findJar(fingerprint.jar()))) {
+                        merged = merged.restamp(fingerprint);
+                    }
+                }
+            } else {
+                merged = IndexFile.merge(mergedFile, segments);
+                packages = null;
+                recount(segments);
+                LOG.debug("merged index: " + mergedFile + ", with " + merged.size() + " classes from " + jars.size() + " jars");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("could not update index in: " + indexDir, e);
+        }
+
+        dropSegmentsExcept(segments);
+    }
+
+    // resolves the graphs of unchanged jars that have none, as when a resolver is set for an existing index
+    private void graphAll(Collection<File> jars) {
+        final List<Callable<IndexFile>> scans = Lists.newArrayListWithCapacity(jars.size());
+        for (final File jar : jars) {
+            scans.add(new Callable<IndexFile>() {
+                @Override
+                public IndexFile call() throws IOException {
+                    return graphed(load(segmentFile(jar)));
+                }
+            });
+        }
+
+        try {
+            JarScans.run(threadPool, scans);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not resolve dependency graphs in: " + indexDir, e);
+        }
+    }
+
+    // the given segment, after making sure its jar has a graph if graphs are kept
+    private IndexFile graphed(IndexFile segment) throws IOException {
+        if (dependencyResolver != null && segment != null) {
+            graphs.ensure(segment, dependencyResolver);
+        }
+        return segment;
+    }
+
+    // counts classes in the segments of the jars and duplicates as the classes of a segment left out of the merged file
+    private void recount(List<IndexFile> segments) {
+        final Map<File, JarStatistics> indexed = Maps.newHashMap();
+        for (JarStatistics jar : merged.statistics()) {
+            indexed.put(jar.jar(), jar);
+        }
+
+        final Map<File, JarStatistics> entries = Maps.newHashMap();
+        for (IndexFile segment : segments) {
+            final JarStatistics jar = segment.statistics().get(0);
+            entries.put(jar.jar(), jar);
+        }
+
+        statistics.clear();
+        for (JarStatistics jar : indexed.values()) {
+            // without its segment a jar can only be counted as merged
+            final JarStatistics all = entries.containsKey(jar.jar()) ? entries.get(jar.jar()) : jar;
+            statistics.recordJar(new JarStatistics(
+                    jar.jar(), all.classes(), all.compressedBytes(), all.uncompressedBytes(), all.classes() - jar.classes()
+            ).withFingerprint(jar.jarSize(), jar.jarLastModified(), jar.directoryHash()));
+        }
+    }
+
+    // the up to date segment of a jar, the jar's directory is read only if it changed since the segment was written
+    private IndexFile segment(File jar) throws IOException {
+        final File segmentFile = segmentFile(jar);
+
+        IndexFile existing = load(segmentFile);
+        if (existing != null && (existing.jars().size() != 1 || !existing.jars().get(0).jar().equals(jar))) {
+            existing = null; // not a segment of this jar
+        }
+        if (existing != null && existing.jars().get(0).isCurrent()) {
+            return existing;
+        }
+
+        final JarDirectory directory = JarDirectory.of(jar, targetRelease);
+        final JarFingerprint fingerprint = JarFingerprint.of(directory);
+
+        if (existing != null && existing.jars().get(0).hasSameClasses(fingerprint)) {
+            return existing.restamp(fingerprint);
+        }
+
+        LOG.debug("indexing: " + jar + " to segment: " + segmentFile);
+        return IndexFile.write(segmentFile, Lists.newArrayList(fingerprint), directory.classes(), false);
+    }
+
+    private File segmentFile(File jar) {
+        final String name = Hashing.murmur3_128().hashUnencodedChars(jar.getPath()).toString();
+        return new File(segmentsDir, name + SEGMENT_FILE_EXTENSION);
+    }
+
+    private void dropSegmentsExcept(List<IndexFile> segments) {
+        final File[] existing = segmentsDir.listFiles();
+        if (existing == null) {
+            return;
+        }
+
+        final Set<File> inUse = Sets.newHashSet();
+        final List<File> jars = Lists.newArrayListWithCapacity(segments.size());
+        for (IndexFile segment : segments) {
+            inUse.add(segment.file().getAbsoluteFile());
+            jars.add(segment.jars().get(0).jar());
+        }
+        graphs.dropExcept(jars);
+
+        for (File segmentFile : existing) {
+            if (!inUse.contains(segmentFile.getAbsoluteFile()) && !segmentFile.delete()) {
+                LOG.warn("could not drop unused index segment: " + segmentFile);
+            }
+        }
+    }
+
+    private static boolean isCurrent(IndexFile index, Collection<File> jars) {
+        if (index.jars().size() != jars.size()) {
+            return false;
+        }
+        for (File jar : jars) {
+            final JarFingerprint indexed = index.findJar(jar);
+            if (indexed == null || !indexed.isCurrent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasSameClasses(IndexFile index, List<JarFingerprint> fingerprints) {
+        if (index.jars().size() != fingerprints.size()) {
+            return false;
+        }
+        for (JarFingerprint fingerprint : fingerprints) {
+            final JarFingerprint indexed = index.findJar(fingerprint.jar());
+            if (indexed == null || !indexed.hasSameClasses(fingerprint)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static IndexFile load(File indexFile) {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try {
+            return IndexFile.map(indexFile);
+        } catch (IOException e) {
+            LOG.warn("ignoring unreadable index file: " + indexFile + ", it will be rebuilt", e);
+            return null;
+        }
+    }
+
+    // lookups on a snapshot are counted with the lookups on the index
+    private static final class Snapshot extends IndexSnapshot implements GraphedLibraryIndex {
+
+        // null if nothing was indexed when the snapshot was taken
+        private final IndexFile merged;
+        private final FilterStatistics filterStatistics;
+
+        // shared with the index, null if the index keeps no graphs
+        private final LibraryGraphs graphs;
+
+        private Snapshot(IndexFile merged, LibraryGraphs graphs, IndexStatistics statistics, FilterStatistics filterStatistics) {
+            super(statistics);
+            this.merged = merged;
+            this.graphs = graphs;
+            this.filterStatistics = filterStatistics;
+        }
+
+        @Override
+        public DependencyGraph dependencyGraph(File library) {
+            return graphOf(merged, graphs, library);
+        }
+
+        @Override
+        public ClassHandle lookup(ClassName name) {
+            final int record = indexOf(merged, name.toString(), filterStatistics);
+            return record < 0 ? null : merged.locator(record);
+        }
+
+        @Override
+        Iterable<String> classNames() {
+            final List<String> result = Lists.newArrayList();
+            for (int record = 0; merged != null && record < merged.size(); record++) {
+                result.add(merged.locator(record).className());
+            }
+            return result;
+        }
+
+        @Override
+        public long size() {
+            return merged == null ? 0 : merged.size();
+        }
+    }
+}
@@ -2,7 +2,19 @@ package org.codarama.diet.index.impl;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
+import org.codarama.diet.index.ClassHandle;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.index.FilterStatistics;
+import org.codarama.diet.index.FilteredLibraryIndex;
+import org.codarama.diet.index.IndexStatistics;
+import org.codarama.diet.index.JarStatistics;
 import org.codarama.diet.index.LibraryIndex;
 import org.codarama.diet.model.ClassFile;
 import org.codarama.diet.model.ClassName;
@@ -18,6 +30,8 @@ import org.slf4j.LoggerFactory;
 import javax.jcr.*;
 import javax.jcr.query.QueryManager;
 import javax.jcr.query.QueryResult;
+import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
@@ -30,9 +44,36 @@ import java.util.jar.JarFile;
  * More info here:
  *   https://docs.jboss.org/author/display/MODE40/Home
  *
+ * By default class bytes are copied in the repository while indexing. Bytes are stored by content, under a hash of the
+ * bytes, so identical classes found in many jars (shaded copies, several versions of an artifact) are stored once and
+ * class nodes only point to their {@link #contentId(ClassName) content id}. If the same class name is found in more
+ * than one jar the first indexed occurrence wins, other occurrences with different bytes are recorded as
+ * {@link #conflicts() conflicts}.
+ *
+ * With {@link #setLocatorsOnly(boolean)} only a
+ * {@link org.codarama.diet.index.ClassLocator} is stored for each class, read from the jar's central directory, and
+ * bytes are read from the jar when a class is requested. Class directories are always indexed this way, their classes
+ * are read from their files when requested.
+ *
+ * With {@link #setFilterExpectedClasses(int)} a bloom filter of the indexed class names is checked before querying
+ * the repository in {@link #lookup(ClassName)}, which every other way to find a class goes through, and before the
+ * table of a {@link #snapshot()}, which takes a copy of the filter. The filter only knows classes indexed through this instance, so it
+ * should be used with in memory repositories only. The same goes for {@link #classesMatching(String)}, answered from a
+ * package trie of the classes indexed through this instance instead of querying the repository, for {@link #size()},
+ * the number of distinct classes in the trie, and for {@link #statistics()}, counted while indexing. Jars are indexed once by an instance, indexing a
+ * jar again has no effect.
+ *
+ * Classes of multi-release jars are indexed for a target release, see {@link #setTargetRelease(int)}. Only the variant
+ * for the target is added, at the node of the class's plain name, other entries under <code>META-INF/versions/</code>
+ * get no nodes.
+ *
+ * A JCR session must not be used by more than one thread, so a {@link #snapshot()} does not read the repository. It
+ * holds the locators of the classes indexed through this instance, read again from the jars' central directories,
+ * once after every change.
+ *
  * Created by ayld on 20.06.15.
  */
-public class ModeShapeLibraryIndex implements LibraryIndex{
+public class ModeShapeLibraryIndex implements FilteredLibraryIndex {
 
     private static final Logger LOG = LoggerFactory.getLogger(ModeShapeLibraryIndex.class);
 
@@ -42,6 +83,21 @@ public class ModeShapeLibraryIndex implements LibraryIndex{
     private static final String JCR_SYSTEM_NODE_ID = "/jcr:system";
     private static final String JCR_ROOT_NODE_ID = "/jcr:root";
     private static final String JCR_BINARY_NODE_PROPERTY = "binary";
+    private static final String JCR_CONTENT_NODE_PROPERTY = "content";
+    private static final String JCR_CONFLICTS_NODE_PROPERTY = "conflicts";
+    private static final String JCR_JAR_NODE_PROPERTY = "jar";
+    private static final String JCR_ENTRY_NODE_PROPERTY = "entry";
+    private static final String JCR_HEADER_OFFSET_NODE_PROPERTY = "headerOffset";
+    private static final String JCR_COMPRESSED_SIZE_NODE_PROPERTY = "compressedSize";
+    private static final String JCR_SIZE_NODE_PROPERTY = "size";
+    private static final String JCR_METHOD_NODE_PROPERTY = "method";
+
+    // content nodes are kept under /contents/<first two hex digits of the id>/<the rest of the id>
+    private static final String CONTENTS_NODE_NAME = "contents";
+    private static final int CONTENT_FAN_OUT_DIGITS = 2;
+    private static final HashFunction CONTENT_HASH = Hashing.sha1();
+
+    private static final double FILTER_FALSE_POSITIVE_RATE = 0.01;
 
     private static final String XPATH_QUERY_SEPARATOR = "/";
     private static final String XPATH_DOLLAR_SIGN_REPLACEMENT = "___";
@@ -50,6 +106,23 @@ public class ModeShapeLibraryIndex implements LibraryIndex{
 
     private final Session repoSession;
 
+    private boolean locatorsOnly;
+    private int targetRelease = JarDirectory.BASE_RELEASE;
+
+    // null if lookups are not filtered
+    private BloomFilter<CharSequence> filter;
+    private final FilterStatistics filterStatistics = new FilterStatistics();
+
+    // classes indexed through this instance, by package
+    private final PackageTrie packages = new PackageTrie();
+
+    // jars indexed through this instance, also in the order they were indexed
+    private final IndexStatistics statistics = new IndexStatistics();
+    private final List<File> indexedJars = new ArrayList<>();
+
+    // taken when first asked for, null after a change
+    private volatile LibraryIndex snapshot;
+
     private ModeShapeLibraryIndex(String libLocation) throws ParsingException, RepositoryException {
         final RepositoryConfiguration conf = RepositoryConfiguration.read(Resources.getResource(libLocation));
 
@@ -71,6 +144,11 @@ public class ModeShapeLibraryIndex implements LibraryIndex{
 
     @Override
     public LibraryIndex index(Set<JarFile> libs) {
+        return indexLibraries(JarScans.filesOf(libs));
+    }
+
+    @Override
+    public LibraryIndex indexLibraries(Set<File> libs) {
 
         final Node rootNode;
         try {
@@ -79,20 +157,23 @@ public class ModeShapeLibraryIndex implements LibraryIndex{
             throw new IllegalStateException("could not get root node for index, cause: ", e);
         }
 
-        for (JarFile jar: libs) {
-
-            final Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
+        final List<JarStatistics> indexed = new ArrayList<>();
+        for (File lib : libs) {
+            final File jar = lib.getAbsoluteFile();
+            if (statistics.jar(jar) != null) {
+                continue; // all its classes are indexed already
+            }
 
-                final JarEntry entry = entries.nextElement();
-                final String entryName = entry.getName();
+            // class directories have no jar entries to copy, their classes are read from their files when requested
+            if (locatorsOnly || jar.isDirectory()) {
+                indexed.add(addLocators(jar, rootNode));
+                continue;
+            }
 
-                final List<String> packagesAndClassname = Tokenizer.delimiter("/").tokenize(entryName).tokens();
-                try {
-                    addChildrenDepthFirst(packagesAndClassname, rootNode, entry, jar);
-                } catch (RepositoryException | IOException e) {
-                    throw new IllegalStateException("could not add nodes: " + packagesAndClassname + ", to parent: " + rootNode);
-                }
+            try (JarFile jarFile = new JarFile(jar)) {
+                indexed.add(addClasses(jarFile, rootNode));
+            } catch (IOException e) {
+                throw new IllegalStateException("could not read jar: " + jar, e);
             }
         }
 
@@ -102,41 +183,177 @@ public class ModeShapeLibraryIndex implements LibraryIndex{
             throw new IllegalStateException("could not save changes for index, cause: ", e);
         }
 
+        for (JarStatistics jar : indexed) {
+            statistics.recordJar(jar);
+            indexedJars.add(jar.jar());
+        }
+        if (!indexed.isEmpty()) {
+            snapshot = null;
+        }
+
         return this;
     }
 
-    private void addChildrenDepthFirst(Collection<String> newChildren, Node to, JarEntry entry, JarFile jar) throws RepositoryException, IOException {
-        if (newChildren.isEmpty()) {
-            return;
+    // copies the classes of a jar in the repository
+    private JarStatistics addClasses(JarFile jar, Node rootNode) {
+        long classes = 0;
+        long compressedBytes = 0;
+        long uncompressedBytes = 0;
+        long duplicates = 0;
+
+        // the class entries to add, by entry name, one variant of each class
+        final JarDirectory directory = directoryOf(new File(jar.getName()));
+        final Map<String, String> classEntries = Maps.newHashMap();
+        for (ClassLocator locator : directory.classes()) {
+            classEntries.put(locator.entryName(), locator.className());
         }
-        final Iterator<String> childrenIterator = newChildren.iterator();
-        if (childrenIterator.hasNext()) {
 
-            String childName = childrenIterator.next();
+        final Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+
+            final JarEntry entry = entries.nextElement();
+            final String entryName = entry.getName();
+
+            final boolean childIsClassFile = classEntries.containsKey(entryName);
+            if (!childIsClassFile && (entryName.endsWith(ClassFile.EXTENSION) || JarDirectory.isVersioned(entryName))) {
+                continue; // another variant of a class or a resource of another release
+            }
 
-            final boolean childContainsInnerClass = childName.contains(ClassName.INNER_CLASS_SEPARATOR);
-            if (childContainsInnerClass) {
-                childName = childName.replaceAll(INNER_CLASS_SEPARATOR_REGEX, XPATH_DOLLAR_SIGN_REPLACEMENT);
+            final String path = childIsClassFile ? classPath(classEntries.get(entryName)) : entryName;
+            final List<String> packagesAndClassname = Tokenizer.delimiter("/").tokenize(path).tokens();
+            try {
+                final Node child = addChildrenDepthFirst(packagesAndClassname, rootNode);
+
+                if (childIsClassFile) {
+                    final byte[] bytes;
+                    try (InputStream entryStream = jar.getInputStream(entry)) {
+                        bytes = ByteStreams.toByteArray(entryStream);
+                    }
+                    if (!addContent(child, bytes, rootNode)) {
+                        duplicates++;
+                    }
+                    addIndexed(classEntries.get(entryName));
+
+                    classes++;
+                    compressedBytes += Math.max(entry.getCompressedSize(), 0);
+                    uncompressedBytes += bytes.length;
+                }
+            } catch (RepositoryException | IOException e) {
+                throw new IllegalStateException("could not add nodes: " + packagesAndClassname + ", to parent: " + rootNode);
             }
+        }
+        return new JarStatistics(directory.jar(), classes, compressedBytes, uncompressedBytes, duplicates)
+                .withFingerprint(directory.jarSize(), directory.jarLastModified(), directory.hash());
+    }
+
+    private JarStatistics addLocators(File jar, Node rootNode) {
+        final JarDirectory directory = directoryOf(jar);
+        final List<ClassLocator> locators = directory.classes();
+
+        long duplicates = 0;
+        for (ClassLocator locator : locators) {
+            final List<String> packagesAndClassname = Tokenizer.delimiter("/").tokenize(classPath(locator.className())).tokens();
+            try {
+                final Node child = addChildrenDepthFirst(packagesAndClassname, rootNode);
+                if (child.hasProperty(JCR_JAR_NODE_PROPERTY) || child.hasProperty(JCR_CONTENT_NODE_PROPERTY)) {
+                    duplicates++;
+                    continue; // first one wins
+                }
 
-            Node child;
-            if (!to.hasNode(childName)) {
-                child = to.addNode(childName);
+                child.setProperty(JCR_JAR_NODE_PROPERTY, locator.jar().getAbsolutePath());
+                child.setProperty(JCR_ENTRY_NODE_PROPERTY, locator.entryName());
+                child.setProperty(JCR_HEADER_OFFSET_NODE_PROPERTY, locator.headerOffset());
+                child.setProperty(JCR_COMPRESSED_SIZE_NODE_PROPERTY, locator.compressedSize());
+                child.setProperty(JCR_SIZE_NODE_PROPERTY, locator.size());
+                child.setProperty(JCR_METHOD_NODE_PROPERTY, locator.method());
+                addIndexed(locator.className());
+            } catch (RepositoryException e) {
+                throw new IllegalStateException("could not add nodes: " + packagesAndClassname + ", to parent: " + rootNode);
             }
-            else {
-                child = to.getNode(childName);
+        }
+        return JarStatistics.of(directory.jar(), locators, duplicates)
+                .withFingerprint(directory.jarSize(), directory.jarLastModified(), directory.hash());
+    }
+
+    private JarDirectory directoryOf(File jar) {
+        try {
+            return JarDirectory.of(jar, targetRelease);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read the central directory of: " + jar, e);
+        }
+    }
+
+    // the path of a class's node, also for variants of multi-release jars found under META-INF/versions/
+    private static String classPath(String className) {
+        return className.replace('.', '/') + "." + ClassFile.EXTENSION;
+    }
+
+    private Node addChildrenDepthFirst(Collection<String> newChildren, Node to) throws RepositoryException {
+        if (newChildren.isEmpty()) {
+            return to;
+        }
+        final Iterator<String> childrenIterator = newChildren.iterator();
+
+        String childName = childrenIterator.next();
+
+        final boolean childContainsInnerClass = childName.contains(ClassName.INNER_CLASS_SEPARATOR);
+        if (childContainsInnerClass) {
+            childName = childName.replaceAll(INNER_CLASS_SEPARATOR_REGEX, XPATH_DOLLAR_SIGN_REPLACEMENT);
+        }
+
+        Node child;
+        if (!to.hasNode(childName)) {
+            child = to.addNode(childName);
+        }
+        else {
+            child = to.getNode(childName);
+        }
+
+        childrenIterator.remove();
+        return addChildrenDepthFirst(newChildren, child);
+    }
+
+    // points a class node to the content node of its bytes, adding the content node only if no class had these bytes,
+    // returns false if the class node already had content
+    private boolean addContent(Node classNode, byte[] bytes, Node rootNode) throws RepositoryException {
+        final String contentId = CONTENT_HASH.hashBytes(bytes).toString();
+
+        if (classNode.hasProperty(JCR_CONTENT_NODE_PROPERTY)) {
+            final String existingId = classNode.getProperty(JCR_CONTENT_NODE_PROPERTY).getString();
+            if (!existingId.equals(contentId)) {
+                addConflict(classNode, contentId);
             }
+            return false; // first one wins
+        }
+
+        final Node fanOut = getOrAddNode(getOrAddNode(rootNode, CONTENTS_NODE_NAME), contentId.substring(0, CONTENT_FAN_OUT_DIGITS));
+        final String contentNodeName = contentId.substring(CONTENT_FAN_OUT_DIGITS);
+        if (!fanOut.hasNode(contentNodeName)) {
+            fanOut.addNode(contentNodeName).setProperty(JCR_BINARY_NODE_PROPERTY, toBinary(new ByteArrayInputStream(bytes)));
+        }
 
-            final boolean childIsClassFile = childName.endsWith(ClassFile.EXTENSION);
-            if (childIsClassFile) {
-                child.setProperty(JCR_BINARY_NODE_PROPERTY, toBinary(jar.getInputStream(entry)));
+        classNode.setProperty(JCR_CONTENT_NODE_PROPERTY, contentId);
+        return true;
+    }
+
+    private void addConflict(Node classNode, String contentId) throws RepositoryException {
+        final Set<String> conflicts = new LinkedHashSet<>();
+        if (classNode.hasProperty(JCR_CONFLICTS_NODE_PROPERTY)) {
+            for (Value conflict : classNode.getProperty(JCR_CONFLICTS_NODE_PROPERTY).getValues()) {
+                conflicts.add(conflict.getString());
             }
+        }
 
-            childrenIterator.remove();
-            addChildrenDepthFirst(newChildren, child, entry, jar);
+        if (conflicts.add(contentId)) {
+            LOG.debug("class: " + classNode.getPath() + ", found with different content: " + contentId);
+            classNode.setProperty(JCR_CONFLICTS_NODE_PROPERTY, conflicts.toArray(new String[conflicts.size()]));
         }
     }
 
+    private static Node getOrAddNode(Node parent, String name) throws RepositoryException {
+        return parent.hasNode(name) ? parent.getNode(name) : parent.addNode(name);
+    }
+
     private Binary toBinary(InputStream stream) throws RepositoryException {
         return repoSession.getValueFactory().createBinary(stream);
     }
@@ -149,7 +366,7 @@ public class ModeShapeLibraryIndex implements LibraryIndex{
 
     @Override
     public boolean contains(ClassName className) {
-        return find(className) != null;
+        return lookup(className) != null;
     }
 
     @Override
@@ -163,6 +380,113 @@ public class ModeShapeLibraryIndex implements LibraryIndex{
 
     @Override
     public ClassStream find(ClassName name) {
+        final ClassHandle handle = lookup(name);
+        return handle == null ? null : handle.stream();
+    }
+
+    @Override
+    public ClassHandle lookup(ClassName name) {
+        if (filter == null) {
+            return lookupInRepository(name);
+        }
+
+        if (!filter.mightContain(name.toString())) {
+            filterStatistics.recordRejected();
+            return null;
+        }
+
+        final ClassHandle found = lookupInRepository(name);
+        filterStatistics.recordPassed(found != null);
+        return found;
+    }
+
+    private ClassHandle lookupInRepository(final ClassName name) {
+        final Node node = findClassNode(name);
+        if (node == null) {
+            return null;
+        }
+
+        try {
+            if (!node.hasProperty(JCR_CONTENT_NODE_PROPERTY)) {
+                return toLocator(name, node);
+            }
+        } catch (RepositoryException e) {
+            throw new IllegalStateException("could not get locator properties for file with name: " + name, e);
+        }
+
+        final Binary binary;
+        try {
+            binary = contentNode(node.getProperty(JCR_CONTENT_NODE_PROPERTY).getString())
+                    .getProperty(JCR_BINARY_NODE_PROPERTY)
+                    .getBinary();
+        } catch (RepositoryException e) {
+            throw new IllegalStateException("could not get binary property for file with name: " + name, e);
+        }
+
+        return new ClassHandle() {
+            @Override
+            public ClassName name() {
+                return name;
+            }
+
+            @Override
+            public ClassStream stream() {
+                try {
+                    return ClassStream.fromStream(binary.getStream());
+                } catch (RepositoryException e) {
+                    throw new IllegalStateException("could not get binary stream for node with name: " + name, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the id of the content of an indexed class, a hash of its bytes.
+     * Classes with the same content id have the same bytes, so anything derived from the bytes alone, like the
+     * dependencies of a class, can be kept per content id instead of per class occurrence.
+     *
+     * @param name the name of the class
+     * @return the content id of the class, or null if the class is not indexed or only its locator is stored
+     * */
+    public String contentId(ClassName name) {
+        final Node node = findClassNode(name);
+        try {
+            if (node == null || !node.hasProperty(JCR_CONTENT_NODE_PROPERTY)) {
+                return null;
+            }
+            return node.getProperty(JCR_CONTENT_NODE_PROPERTY).getString();
+        } catch (RepositoryException e) {
+            throw new IllegalStateException("could not get content id for file with name: " + name, e);
+        }
+    }
+
+    /**
+     * Returns the classes found with different bytes in different jars.
+     * The indexed content of such a class is the first one found, see {@link #contentId(ClassName)}, the returned
+     * content ids are the ones of the other occurrences.
+     *
+     * @return the content ids of the occurrences that were not indexed, by class name
+     * */
+    public Map<ClassName, Set<String>> conflicts() {
+        final Map<ClassName, Set<String>> result = new HashMap<>();
+        try {
+            final NodeIterator conflicting = queryForNodes("//element(*, nt:base)[@" + JCR_CONFLICTS_NODE_PROPERTY + "]");
+            while (conflicting.hasNext()) {
+                final Node node = conflicting.nextNode();
+
+                final Set<String> contentIds = new LinkedHashSet<>();
+                for (Value contentId : node.getProperty(JCR_CONFLICTS_NODE_PROPERTY).getValues()) {
+                    contentIds.add(contentId.getString());
+                }
+                result.put(toClassName(node.getPath()), contentIds);
+            }
+        } catch (RepositoryException e) {
+            throw new IllegalStateException("could not query for conflicting classes", e);
+        }
+        return result;
+    }
+
+    private Node findClassNode(ClassName name) {
         String query = Joiner.on(XPATH_QUERY_SEPARATOR)
                 .join(
                         JCR_ROOT_NODE_ID,
@@ -184,31 +508,66 @@ public class ModeShapeLibraryIndex implements LibraryIndex{
         if (nodeIterator.getSize() > 1) {
             throw new IllegalArgumentException("found more than one node for name: " + name + " with query: " + query);
         }
-        final Node node = nodeIterator.nextNode();
+        return nodeIterator.nextNode();
+    }
 
-        final Binary binary;
-        try {
-            binary = node.getProperty(JCR_BINARY_NODE_PROPERTY).getBinary();
-        } catch (RepositoryException e) {
-            throw new IllegalStateException("could not get binary property for file with name: " + name, e);
-        }
+    private Node contentNode(String contentId) throws RepositoryException {
+        return repoSession.getNode(Joiner.on(XPATH_QUERY_SEPARATOR).join(
+                "",
+                CONTENTS_NODE_NAME,
+                contentId.substring(0, CONTENT_FAN_OUT_DIGITS),
+                contentId.substring(CONTENT_FAN_OUT_DIGITS)
+        ));
+    }
 
-        try {
-            return ClassStream.fromStream(binary.getStream());
-        } catch (RepositoryException e) {
-            throw new IllegalStateException("could not get binary stream for node with name: " + name, e);
-        }
+    // /org/primefaces/Foo___Bar.class to org.primefaces.Foo$Bar
+    private static ClassName toClassName(String classNodePath) {
+        return new ClassName(JarDirectory.toClassName(classNodePath.substring(1).replace(XPATH_DOLLAR_SIGN_REPLACEMENT, ClassName.INNER_CLASS_SEPARATOR)));
+    }
+
+    private ClassLocator toLocator(ClassName name, Node node) throws RepositoryException {
+        return new ClassLocator(
+                name.toString(),
+                new File(node.getProperty(JCR_JAR_NODE_PROPERTY).getString()),
+                node.getProperty(JCR_ENTRY_NODE_PROPERTY).getString(),
+                node.getProperty(JCR_HEADER_OFFSET_NODE_PROPERTY).getLong(),
+                node.getProperty(JCR_COMPRESSED_SIZE_NODE_PROPERTY).getLong(),
+                node.getProperty(JCR_SIZE_NODE_PROPERTY).getLong(),
+                (int) node.getProperty(JCR_METHOD_NODE_PROPERTY).getLong()
+        );
+    }
+
+    @Override
+    public Set<ClassName> classesMatching(String glob) {
+        return packages.matching(glob);
     }
 
     @Override
     public long size() {
-        final NodeIterator allClassNodes;
-        try {
-            allClassNodes = queryForNodes("//element(*, nt:base)[jcr:contains(., '" + ClassFile.EXTENSION + "')]");
-        } catch (RepositoryException e) {
-            throw new IllegalStateException(e);
+        return packages.size();
+    }
+
+    @Override
+    public IndexStatistics statistics() {
+        return statistics;
+    }
+
+    @Override
+    public synchronized LibraryIndex snapshot() {
+        if (snapshot == null) {
+            final List<ClassLocator> locators = new ArrayList<>();
+            for (File jar : indexedJars) {
+                try {
+                    locators.addAll(JarDirectory.classesIn(jar, targetRelease));
+                } catch (IOException e) {
+                    throw new IllegalStateException("could not read the central directory of: " + jar, e);
+                }
+            }
+            // the first occurrence of a class name wins, as it does in the repository
+            final IndexSnapshot classes = HashLibraryIndex.snapshotOf(locators, statistics);
+            snapshot = filter == null ? classes : new FilteredSnapshot(classes, filter.copy(), filterStatistics, statistics);
         }
-        return allClassNodes.getSize();
+        return snapshot;
     }
 
     @Override
@@ -238,10 +597,101 @@ public class ModeShapeLibraryIndex implements LibraryIndex{
         return Strings.isNullOrEmpty(result.toString()) ? "empty" : result.toString();
     }
 
+    @Override
+    public FilterStatistics filterStatistics() {
+        return filterStatistics;
+    }
+
+    /**
+     * Enables a bloom filter of indexed class names, checked before querying the repository for a class.
+     * More classes than expected can be indexed, but the filter then rejects fewer lookups.
+     * Must be called before anything is indexed.
+     *
+     * @param expectedClasses the number of classes expected to be indexed
+     * */
+    public void setFilterExpectedClasses(int expectedClasses) {
+        this.filter = BloomFilter.create(Funnels.unencodedCharsFunnel(), Math.max(expectedClasses, 1), FILTER_FALSE_POSITIVE_RATE);
+    }
+
+    private void addIndexed(String className) {
+        if (className == null) {
+            return;
+        }
+
+        packages.add(className);
+        if (filter != null) {
+            filter.put(className);
+        }
+    }
+
+    /**
+     * Switches between copying class bytes in the repository and storing only where classes are in their jars.
+     * Affects only jars indexed after the call.
+     *
+     * @param locatorsOnly true to store only locators, false to copy class bytes (the default)
+     * */
+    public void setLocatorsOnly(boolean locatorsOnly) {
+        this.locatorsOnly = locatorsOnly;
+    }
+
+    /**
+     * Sets the Java release to index the classes of multi-release jars for, see {@link JarDirectory}.
+     * Affects only jars indexed after the call.
+     *
+     * @param targetRelease the release to index classes for, {@link JarDirectory#BASE_RELEASE} (the default) ignores
+     *                      versioned entries
+     * */
+    public void setTargetRelease(int targetRelease) {
+        this.targetRelease = targetRelease;
+    }
+
     private NodeIterator queryForNodes(String queryStr) throws RepositoryException {
         final QueryManager queryManager = repoSession.getWorkspace().getQueryManager();
         final QueryResult queryResult = queryManager.createQuery(queryStr, JCR_QUERY_LANGUAGE).execute();
 
         return queryResult.getNodes();
     }
+
+    // a snapshot checking a copy of the filter, taken with the snapshot, before its table
+    private static final class FilteredSnapshot extends IndexSnapshot implements FilteredLibraryIndex {
+
+        private final IndexSnapshot classes;
+        private final BloomFilter<CharSequence> filter;
+        private final FilterStatistics filterStatistics;
+
+        private FilteredSnapshot(IndexSnapshot classes, BloomFilter<CharSequence> filter, FilterStatistics filterStatistics,
+                                 IndexStatistics statistics) {
+            super(statistics);
+            this.classes = classes;
+            this.filter = filter;
+            this.filterStatistics = filterStatistics;
+        }
+
+        @Override
+        public ClassHandle lookup(ClassName name) {
+            if (!filter.mightContain(name.toString())) {
+                filterStatistics.recordRejected();
+                return null;
+            }
+
+            final ClassHandle found = classes.lookup(name);
+            filterStatistics.recordPassed(found != null);
+            return found;
+        }
+
+        @Override
+        Iterable<String> classNames() {
+            return classes.classNames();
+        }
+
+        @Override
+        public long size() {
+            return classes.size();
+        }
+
+        @Override
+        public FilterStatistics filterStatistics() {
+            return filterStatistics;
+        }
+    }
 }
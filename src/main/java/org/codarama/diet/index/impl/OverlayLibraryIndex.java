@@ -0,0 +1,231 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import org.codarama.diet.index.ClassHandle;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.index.IndexStatistics;
+import org.codarama.diet.index.JarStatistics;
+import org.codarama.diet.index.LibraryIndex;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.codarama.diet.util.annotation.NotThreadSafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.jar.JarFile;
+
+/**
+ * A {@link org.codarama.diet.index.LibraryIndex} of one run's jars, on top of a shared base snapshot.
+ *
+ * The base is a {@link org.codarama.diet.index.LibraryIndex#snapshot()}, for example of all jars in a local Maven
+ * repository, and is only ever read. Jars of the run the base holds are looked up in the base, nothing is copied.
+ * Jars the base does not hold, jars that changed on disk since the base indexed them and jars some of whose classes the
+ * base took from another jar are indexed to a private {@link HashLibraryIndex}, the overlay. A jar is still the one the
+ * base indexed if it has the size and modification time the base recorded or, when those changed, the same central
+ * directory, see {@link #isCurrentIn(LibraryIndex, File, int)}. The index only finds base classes of the jars it
+ * serves from the base: classes of jars the run did not index are left out, so a base over many versions of a library
+ * serves each run the version it asked for, and so are the classes a changed jar had when the base indexed it.
+ *
+ * An instance belongs to one run and is simply dropped when the run ends, which drops the overlay with it. Many
+ * instances can share a base, each on its own thread. The overlay wins over the base if both hold a class. A snapshot
+ * of an overlay shares its base and takes a snapshot of the overlay.
+ */
+@NotThreadSafe
+public class OverlayLibraryIndex implements LibraryIndex {
+
+    private final LibraryIndex base;
+    private final LibraryIndex overlay;
+
+    // the jars indexed to this index that the base serves, the others are in the overlay
+    private final Set<File> fromBase;
+    private final IndexStatistics statistics;
+
+    private final int targetRelease;
+
+    // snapshots of an overlay can not be indexed to
+    private final boolean readOnly;
+
+    private OverlayLibraryIndex(LibraryIndex base, LibraryIndex overlay, Set<File> fromBase, IndexStatistics statistics,
+                                int targetRelease, boolean readOnly) {
+        this.base = base;
+        this.overlay = overlay;
+        this.fromBase = fromBase;
+        this.statistics = statistics;
+        this.targetRelease = targetRelease;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Creates an empty index on top of a base snapshot.
+     *
+     * @param base the snapshot to read jars from, see {@link org.codarama.diet.index.LibraryIndex#snapshot()}
+     * @param threadPool a pool to read the directories of jars missing from the base on, or null to read them on the
+     *                   calling thread
+     * @return a new index holding no jars
+     * */
+    public static OverlayLibraryIndex over(LibraryIndex base, ExecutorService threadPool) {
+        return over(base, threadPool, JarDirectory.BASE_RELEASE);
+    }
+
+    /**
+     * Creates an empty index on top of a base snapshot, indexing the classes of multi-release jars missing from the
+     * base for a target release.
+     *
+     * @param base the snapshot to read jars from, indexed for the same release
+     * @param threadPool a pool to read the directories of jars missing from the base on, or null to read them on the
+     *                   calling thread
+     * @param targetRelease the Java release to index classes for, see {@link JarDirectory}
+     * @return a new index holding no jars
+     * */
+    public static OverlayLibraryIndex over(LibraryIndex base, ExecutorService threadPool, int targetRelease) {
+        final HashLibraryIndex overlay = HashLibraryIndex.withExpectedSize(0);
+        overlay.setThreadPool(threadPool);
+        overlay.setTargetRelease(targetRelease);
+        return new OverlayLibraryIndex(base, overlay, Sets.<File>newHashSet(), new IndexStatistics(), targetRelease, false);
+    }
+
+    /**
+     * Checks that an index holds a jar as it is on disk now.
+     *
+     * The jar is checked against the fingerprint the index recorded with its statistics, its size and modification
+     * time first and only if those changed its central directory, which is read again then. A jar the index recorded no
+     * fingerprint for is taken to have changed.
+     *
+     * @param index the index, or a snapshot of it
+     * @param jar the jar or class directory to check
+     * @param targetRelease the Java release the index is indexed for
+     * @return true if the index holds the jar and the jar did not change since it was indexed
+     * */
+    public static boolean isCurrentIn(LibraryIndex index, File jar, int targetRelease) {
+        final JarStatistics indexed = index.statistics().jar(jar.getAbsoluteFile());
+        if (indexed == null) {
+            return false;
+        }
+
+        final JarFingerprint fingerprint = JarFingerprint.of(indexed);
+        if (fingerprint == null) {
+            return false;
+        }
+        if (fingerprint.isCurrent()) {
+            return true;
+        }
+
+        try {
+            return fingerprint.hasSameClasses(JarFingerprint.of(JarDirectory.of(fingerprint.jar(), targetRelease)));
+        } catch (IOException e) {
+            return false; // not readable as it was, indexing it again reports why
+        }
+    }
+
+    @Override
+    public LibraryIndex index(Set<JarFile> libs) {
+        return indexLibraries(JarScans.filesOf(libs));
+    }
+
+    @Override
+    public LibraryIndex indexLibraries(Set<File> libs) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("an index snapshot can not be changed, index: " + libs + ", to an overlay");
+        }
+
+        final Set<File> missing = Sets.newLinkedHashSet();
+        for (File lib : libs) {
+            final File jar = lib.getAbsoluteFile();
+
+            final JarStatistics inBase = base.statistics().jar(jar);
+            if (inBase != null && inBase.duplicates() == 0 && isCurrentIn(base, jar, targetRelease)) {
+                fromBase.add(jar);
+                statistics.recordJar(inBase);
+            } else {
+                missing.add(jar);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            overlay.indexLibraries(missing);
+            for (File jar : missing) {
+                statistics.recordJar(overlay.statistics().jar(jar));
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public LibraryIndex index(JarFile lib) {
+        return index(Sets.newHashSet(lib));
+    }
+
+    @Override
+    public boolean contains(ClassName className) {
+        return lookup(className) != null;
+    }
+
+    @Override
+    public ClassHandle lookup(ClassName name) {
+        final ClassHandle inOverlay = overlay.lookup(name);
+        if (inOverlay != null) {
+            return inOverlay;
+        }
+
+        // snapshots always hand out locators, so the jar of a base class is known
+        final ClassHandle inBase = base.lookup(name);
+        if (inBase instanceof ClassLocator && fromBase.contains(((ClassLocator) inBase).jar())) {
+            return inBase;
+        }
+        return null;
+    }
+
+    @Override
+    public ClassStream get(ClassName name) {
+        final ClassStream result = find(name);
+        if (result == null) {
+            throw new IllegalStateException("no file with name: " + name + ", found in index");
+        }
+        return result;
+    }
+
+    @Override
+    public ClassStream find(ClassName name) {
+        final ClassHandle handle = lookup(name);
+        return handle == null ? null : handle.stream();
+    }
+
+    @Override
+    public Set<ClassName> classesMatching(String glob) {
+        final Set<ClassName> result = Sets.newLinkedHashSet(overlay.classesMatching(glob));
+        for (ClassName name : base.classesMatching(glob)) {
+            if (!result.contains(name) && lookup(name) != null) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long size() {
+        return statistics.classes();
+    }
+
+    @Override
+    public IndexStatistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * @return the jars indexed to this index that are read from the base
+     * */
+    public Set<File> servedFromBase() {
+        return ImmutableSet.copyOf(fromBase);
+    }
+
+    @Override
+    public LibraryIndex snapshot() {
+        if (readOnly) {
+            return this;
+        }
+        return new OverlayLibraryIndex(base, overlay.snapshot(), ImmutableSet.copyOf(fromBase), statistics.snapshot(), targetRelease, true);
+    }
+}
@@ -0,0 +1,268 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.util.annotation.NotThreadSafe;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The package tree of indexed classes, see {@link org.codarama.diet.index.LibraryIndex}, kept next to an index to list
+ * classes by package.
+ *
+ * Every node is a package segment and holds the simple names of the classes in its package. Segments are interned,
+ * so the many packages sharing a prefix share its strings. A query only walks the nodes of the packages it matches,
+ * so it costs about as much as the classes it returns, no matter how many classes are indexed.
+ */
+@NotThreadSafe
+final class PackageTrie {
+
+    private static final String PACKAGE_SEPARATOR = ".";
+    private static final String ANY_SEGMENT = "*";
+    private static final String ANY_SEGMENTS = "**";
+
+    private static final Splitter SEGMENTS = Splitter.on(PACKAGE_SEPARATOR);
+
+    private final Interner<String> segments = Interners.newStrongInterner();
+    private final Node root = new Node();
+
+    private int size;
+
+    /**
+     * Adds a class, adding a class twice has no effect.
+     *
+     * @param className the qualified name of the class
+     * */
+    void add(String className) {
+        Node node = root;
+
+        int start = 0;
+        int end = className.indexOf(PACKAGE_SEPARATOR);
+        while (end >= 0) {
+            node = node.child(segments.intern(className.substring(start, end)));
+
+            start = end + 1;
+            end = className.indexOf(PACKAGE_SEPARATOR, start);
+        }
+
+        if (node.addClass(className.substring(start))) {
+            size++;
+        }
+    }
+
+    /**
+     * @return the number of distinct classes added
+     * */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Lists the classes matching a glob of package segments.
+     *
+     * A glob is a qualified class name in which a segment can be a wildcard: {@code *} matches one package segment or
+     * class name, {@code **} matches any number of package segments and, as the last segment, all classes in all of
+     * them. A {@code *} within a segment matches any part of it. For example:
+     *
+     * com.foo.Bar       the class com.foo.Bar
+     * com.foo.*         the classes in com.foo, the way a wildcard import would
+     * com.foo.**        the classes in com.foo and all its sub packages
+     * com.*.api.*Impl   the classes ending with Impl in the api package of every package in com
+     *
+     * Inner classes are classes of their package like any other, so com.foo.* also lists com.foo.Bar$Baz.
+     *
+     * @param glob the glob to match
+     * @return the matching classes
+     * */
+    Set<ClassName> matching(String glob) {
+        final List<String> pattern = SEGMENTS.splitToList(glob);
+
+        final Set<ClassName> result = Sets.newLinkedHashSet();
+        match(root, pattern, 0, new StringBuilder(), result);
+        return result;
+    }
+
+    private static void match(Node node, List<String> pattern, int position, StringBuilder packageName, Set<ClassName> result) {
+        final String segment = pattern.get(position);
+        final boolean last = position == pattern.size() - 1;
+
+        if (ANY_SEGMENTS.equals(segment)) {
+            if (last) {
+                addAll(node, packageName, result);
+                return;
+            }
+
+            // ** matching no segment at all, then one more segment and so on
+            match(node, pattern, position + 1, packageName, result);
+            for (Map.Entry<String, Node> child : node.children().entrySet()) {
+                final int length = appendSegment(packageName, child.getKey());
+                match(child.getValue(), pattern, position, packageName, result);
+                packageName.setLength(length);
+            }
+            return;
+        }
+
+        if (last) {
+            for (String className : node.classes(segment)) {
+                addClassName(qualify(packageName, className), result);
+            }
+            return;
+        }
+
+        for (Map.Entry<String, Node> child : node.children(segment).entrySet()) {
+            final int length = appendSegment(packageName, child.getKey());
+            match(child.getValue(), pattern, position + 1, packageName, result);
+            packageName.setLength(length);
+        }
+    }
+
+    private static void addAll(Node node, StringBuilder packageName, Set<ClassName> result) {
+        for (String className : node.classes()) {
+            addClassName(qualify(packageName, className), result);
+        }
+        for (Map.Entry<String, Node> child : node.children().entrySet()) {
+            final int length = appendSegment(packageName, child.getKey());
+            addAll(child.getValue(), packageName, result);
+            packageName.setLength(length);
+        }
+    }
+
+    private static void addClassName(String qualifiedName, Set<ClassName> result) {
+        try {
+            result.add(ClassName.of(qualifiedName));
+        } catch (IllegalArgumentException e) {
+            // jars can hold .class entries that are no classes, like META-INF/versions/9/module-info.class
+        }
+    }
+
+    // returns the length to reset the builder to
+    private static int appendSegment(StringBuilder packageName, String segment) {
+        final int length = packageName.length();
+        if (length > 0) {
+            packageName.append(PACKAGE_SEPARATOR);
+        }
+        packageName.append(segment);
+        return length;
+    }
+
+    private static String qualify(StringBuilder packageName, String className) {
+        return packageName.length() == 0 ? className : packageName + PACKAGE_SEPARATOR + className;
+    }
+
+    private static boolean isWildcard(String segment) {
+        return segment.contains(ANY_SEGMENT);
+    }
+
+    private static Pattern toRegex(String segment) {
+        final List<String> parts = Splitter.on(ANY_SEGMENT).splitToList(segment);
+
+        final StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < parts.size(); i++) {
+            if (i > 0) {
+                regex.append(".*");
+            }
+            if (!parts.get(i).isEmpty()) {
+                regex.append(Pattern.quote(parts.get(i)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    // children and classes are created when first needed, most packages have either sub packages or classes
+    private static final class Node {
+
+        private Map<String, Node> children;
+        private Set<String> classes;
+
+        Node child(String segment) {
+            if (children == null) {
+                children = new HashMap<>(4);
+            }
+
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        boolean addClass(String className) {
+            if (classes == null) {
+                classes = new HashSet<>(4);
+            }
+            return classes.add(className);
+        }
+
+        Map<String, Node> children() {
+            return children == null ? Collections.<String, Node>emptyMap() : children;
+        }
+
+        Map<String, Node> children(String segment) {
+            if (children == null) {
+                return Collections.emptyMap();
+            }
+
+            if (ANY_SEGMENT.equals(segment)) {
+                return children;
+            }
+
+            final Map<String, Node> result = new HashMap<>();
+            if (!isWildcard(segment)) {
+                final Node child = children.get(segment);
+                if (child != null) {
+                    result.put(segment, child);
+                }
+                return result;
+            }
+
+            final Pattern regex = toRegex(segment);
+            for (Map.Entry<String, Node> child : children.entrySet()) {
+                if (regex.matcher(child.getKey()).matches()) {
+                    result.put(child.getKey(), child.getValue());
+                }
+            }
+            return result;
+        }
+
+        Set<String> classes() {
+            return classes == null ? Collections.<String>emptySet() : classes;
+        }
+
+        List<String> classes(String segment) {
+            if (classes == null) {
+                return Lists.newArrayList();
+            }
+            if (ANY_SEGMENT.equals(segment)) {
+                return Lists.newArrayList(classes);
+            }
+
+            final List<String> result = Lists.newArrayList();
+
+            if (!isWildcard(segment)) {
+                if (classes.contains(segment)) {
+                    result.add(segment);
+                }
+                return result;
+            }
+
+            final Pattern regex = toRegex(segment);
+            for (String className : classes) {
+                if (regex.matcher(className).matches()) {
+                    result.add(className);
+                }
+            }
+            return result;
+        }
+    }
+}
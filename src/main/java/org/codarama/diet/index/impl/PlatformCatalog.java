@@ -0,0 +1,352 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.util.annotation.Immutable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A read only, memory mapped catalog of the classes of a platform, like the running JDK or an android.jar.
+ *
+ * Platform classes are never part of a minimized jar, so dependency resolvers drop them before they are looked up in
+ * a {@link org.codarama.diet.index.LibraryIndex}. Telling a platform class apart by its package alone misses most of
+ * them (javax, jdk, sun, android, ...), a catalog knows every class of the platform instead.
+ *
+ * The file is laid out as:
+ * <pre>
+ *   header   magic, version, a stamp of the platform it was built from, table capacity, class count
+ *   table    an open addressing table of 64 bit class name hashes, a zero marks an empty slot
+ * </pre>
+ * Only hashes are kept, the same hashes {@link HashLibraryIndex} keys its table with, so checking a class costs a hash
+ * of its name and a probe or two on the mapped table. A library class whose name hash equals the hash of a platform
+ * class would be taken for a platform class, with 64 bit hashes that is not expected to happen.
+ *
+ * Catalogs are built once and kept in a catalog directory. A catalog whose stamp does not match its platform any more,
+ * after a JDK update or a new android.jar, is built again and moved in place of the old one.
+ */
+@Immutable
+public final class PlatformCatalog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlatformCatalog.class);
+
+    private static final int MAGIC = 0x44504c43; // DPLC
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    private static final int MAX_LOAD_PERCENT = 50;
+    private static final int MIN_CAPACITY = 16;
+
+    private static final String CATALOG_FILE_EXTENSION = ".catalog";
+    private static final String JRT_MODULES_DIR = "/modules";
+    private static final String MODULE_INFO_CLASS = "module-info";
+
+    private final File file;
+    private final ByteBuffer table;
+    private final int capacity;
+    private final int size;
+
+    private PlatformCatalog(File file, ByteBuffer table, int capacity, int size) {
+        this.file = file;
+        this.table = table;
+        this.capacity = capacity;
+        this.size = size;
+    }
+
+    /**
+     * Returns the catalog of the running JDK, building it if it is missing or was built for another JDK.
+     *
+     * Classes are listed from the <code>jrt:/</code> file system on JDKs that have one, and from the jars in the
+     * runtime's lib and lib/ext directories on older ones.
+     *
+     * @param catalogDirPath the directory to keep catalogs in, created when the first catalog is built
+     * @return the catalog of the running JDK
+     * */
+    public static PlatformCatalog ofRunningJdk(String catalogDirPath) {
+        final String javaHome = System.getProperty("java.home");
+        final String javaVersion = System.getProperty("java.runtime.version", System.getProperty("java.version"));
+        final long stamp = Hashing.murmur3_128().newHasher()
+                .putUnencodedChars(javaHome)
+                .putUnencodedChars(javaVersion)
+                .hash().asLong();
+
+        final File file = new File(catalogDirPath, "jdk-" + javaVersion.replaceAll("[^A-Za-z0-9._-]", "_") + CATALOG_FILE_EXTENSION);
+        try {
+            final PlatformCatalog existing = mapIfCurrent(file, stamp);
+            if (existing != null) {
+                return existing;
+            }
+
+            final List<String> classNames = jdkClassNames(new File(javaHome));
+            LOG.debug("building catalog: " + file + ", of " + classNames.size() + " JDK classes");
+            return write(file, classNames, stamp);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not build the catalog of the JDK in: " + javaHome + ", to: " + file, e);
+        }
+    }
+
+    /**
+     * Returns the catalog of a platform jar, like an android.jar, building it if it is missing or the jar changed.
+     *
+     * @param catalogDirPath the directory to keep catalogs in, created when the first catalog is built
+     * @param jarPath the path to the platform jar
+     * @return the catalog of the platform jar
+     * */
+    public static PlatformCatalog ofJar(String catalogDirPath, String jarPath) {
+        final File jar = new File(jarPath).getAbsoluteFile();
+        final String jarName = jar.getName().replaceFirst("\\.jar$", "");
+        final String pathHash = Hashing.murmur3_128().hashString(jar.getPath(), Charsets.UTF_8).toString().substring(0, 16);
+        final File file = new File(catalogDirPath, jarName + "-" + pathHash + CATALOG_FILE_EXTENSION);
+
+        try {
+            final long stamp = Hashing.murmur3_128().newHasher()
+                    .putLong(jar.length())
+                    .putLong(jar.lastModified())
+                    .hash().asLong();
+
+            final PlatformCatalog existing = mapIfCurrent(file, stamp);
+            if (existing != null) {
+                return existing;
+            }
+
+            final List<String> classNames = Lists.newArrayList();
+            for (ClassLocator locator : JarDirectory.classesIn(jar)) {
+                classNames.add(locator.className());
+            }
+            LOG.debug("building catalog: " + file + ", of " + classNames.size() + " classes in: " + jar);
+            return write(file, classNames, stamp);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not build the catalog of: " + jar + ", to: " + file, e);
+        }
+    }
+
+    /**
+     * @param className a qualified class name like <code>javax.swing.JFrame</code>
+     * @return true if the class is a class of the platform
+     * */
+    // not named contains, probes are not library index lookups and are not profiled as ones
+    public boolean includes(String className) {
+        final long key = HashLibraryIndex.hash(className);
+        final int mask = capacity - 1;
+
+        int slot = (int) key & mask;
+        long found;
+        while ((found = table.getLong(HEADER_SIZE + slot * 8)) != 0) {
+            if (found == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @param className the name of a class
+     * @return true if the class is a class of the platform
+     * */
+    public boolean includes(ClassName className) {
+        return includes(className.toString());
+    }
+
+    /**
+     * @return the number of classes of the platform
+     * */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the stamp of the platform the catalog was built from, a new build of the platform has a new stamp
+     * */
+    public long stamp() {
+        return table.getLong(8);
+    }
+
+    /**
+     * @return the catalog file
+     * */
+    public File file() {
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return file + " (" + size + " classes)";
+    }
+
+    /**
+     * Builds a catalog of the given classes.
+     *
+     * @param file the catalog file, replaced if it exists
+     * @param classNames the qualified names of the platform's classes
+     * @param stamp a stamp of the platform the classes are read from
+     * @return the mapped catalog
+     * @throws IOException if the catalog can not be written
+     * */
+    static PlatformCatalog write(File file, List<String> classNames, long stamp) throws IOException {
+        final int capacity = tableCapacityFor(classNames.size());
+        final int mask = capacity - 1;
+
+        final long[] table = new long[capacity];
+        int size = 0;
+        for (String className : classNames) {
+            final long key = HashLibraryIndex.hash(className);
+
+            int slot = (int) key & mask;
+            while (table[slot] != 0 && table[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] == 0) {
+                table[slot] = key;
+                size++;
+            }
+        }
+
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("could not create catalog directory: " + parent);
+        }
+
+        final File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(stamp);
+            out.writeInt(capacity);
+            out.writeInt(size);
+            for (long key : table) {
+                out.writeLong(key);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return map(file);
+    }
+
+    /**
+     * Maps an existing catalog.
+     *
+     * @param file the catalog file to map
+     * @return the mapped catalog
+     * @throws IOException if the file can not be read or is not a valid catalog
+     * */
+    static PlatformCatalog map(File file) throws IOException {
+        final ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final long fileSize = raf.length();
+            if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("not a catalog file: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("not a catalog file or an unsupported version: " + file);
+        }
+
+        final int capacity = buffer.getInt(16);
+        final int size = buffer.getInt(20);
+        if (capacity < MIN_CAPACITY || Integer.bitCount(capacity) != 1 || size < 0 || size >= capacity
+                || HEADER_SIZE + capacity * 8L != buffer.capacity()) {
+            throw new IOException("corrupt catalog file: " + file);
+        }
+        return new PlatformCatalog(file, buffer, capacity, size);
+    }
+
+    // null if the file is missing, unreadable or of another platform
+    private static PlatformCatalog mapIfCurrent(File file, long stamp) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            final PlatformCatalog result = map(file);
+            return result.stamp() == stamp ? result : null;
+        } catch (IOException e) {
+            LOG.warn("ignoring unreadable catalog: " + file + ", it will be rebuilt", e);
+            return null;
+        }
+    }
+
+    private static List<String> jdkClassNames(File javaHome) throws IOException {
+        final List<String> result = Lists.newArrayList();
+
+        final FileSystem jrt;
+        try {
+            jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+        } catch (ProviderNotFoundException | FileSystemNotFoundException e) {
+            // no jrt file system before Java 9, the runtime's classes are in jars
+            for (File jar : runtimeJars(javaHome)) {
+                for (ClassLocator locator : JarDirectory.classesIn(jar)) {
+                    result.add(locator.className());
+                }
+            }
+            return result;
+        }
+
+        // jrt:/modules/<module>/<package directories>/<class file>
+        try (DirectoryStream<Path> modules = Files.newDirectoryStream(jrt.getPath(JRT_MODULES_DIR))) {
+            for (Path module : modules) {
+                try (Stream<Path> files = Files.walk(module)) {
+                    files.forEach(path -> {
+                        final String className = JarDirectory.toClassName(module.relativize(path).toString());
+                        if (className != null && !className.equals(MODULE_INFO_CLASS)) {
+                            result.add(className);
+                        }
+                    });
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<File> runtimeJars(File javaHome) {
+        final List<File> result = Lists.newArrayList();
+        for (File libDir : new File[]{new File(javaHome, "lib"), new File(javaHome, "lib/ext")}) {
+            final File[] jars = libDir.listFiles();
+            if (jars == null) {
+                continue;
+            }
+            for (File jar : jars) {
+                if (jar.isFile() && jar.getName().endsWith(".jar")) {
+                    result.add(jar);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int tableCapacityFor(int classCount) {
+        final long required = Math.max((long) classCount * 100 / MAX_LOAD_PERCENT, MIN_CAPACITY);
+        if (required > (1 << 30)) {
+            throw new IllegalArgumentException("catalog of: " + classCount + " classes is too large");
+        }
+        return Integer.highestOneBit((int) required - 1) << 1;
+    }
+}
@@ -0,0 +1,81 @@
+package org.codarama.diet.minimization;
+
+import com.google.common.collect.ImmutableSet;
+import org.codarama.diet.index.IndexStatistics;
+import org.codarama.diet.model.marker.Packagable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * What a minimization run found: the classes the sources depend on and what the run found in its libraries.
+ *
+ * The classes may read their content from resources the run holds on to, like a
+ * {@link org.codarama.diet.index.ClassByteStore}, a result is closed once the classes were consumed to free them.
+ *
+ * Generic arguments:
+ *   - RT(return type): type of the found classes, see {@link org.codarama.diet.minimization.MinimizationStrategy}
+ *
+ * @see org.codarama.diet.minimization.MinimizationStrategy#minimizeToResult(Set, Set)
+ */
+public final class MinimizationResult<RT extends Packagable> implements Closeable {
+
+    private final Set<RT> classes;
+    private final IndexStatistics libraryStatistics;
+    private final Set<File> librariesFromIndex;
+
+    // null if the classes hold their content themselves
+    private final Closeable resources;
+
+    public MinimizationResult(Set<RT> classes, IndexStatistics libraryStatistics, Set<File> librariesFromIndex) {
+        this(classes, libraryStatistics, librariesFromIndex, null);
+    }
+
+    /**
+     * @param classes the classes the sources depend on
+     * @param libraryStatistics the statistics of the run's libraries
+     * @param librariesFromIndex the libraries of the run read from an index filled before the run
+     * @param resources what the classes read their content from, closed with the result, or null if nothing
+     * */
+    public MinimizationResult(Set<RT> classes, IndexStatistics libraryStatistics, Set<File> librariesFromIndex, Closeable resources) {
+        this.classes = classes;
+        this.libraryStatistics = libraryStatistics;
+        this.librariesFromIndex = ImmutableSet.copyOf(librariesFromIndex);
+        this.resources = resources;
+    }
+
+    /**
+     * @return the classes the sources depend on, as {@link MinimizationStrategy#minimize(Set, Set)} returns them
+     * */
+    public Set<RT> classes() {
+        return classes;
+    }
+
+    /**
+     * @return the statistics of the run's libraries, how many classes they hold for example
+     * */
+    public IndexStatistics libraryStatistics() {
+        return libraryStatistics;
+    }
+
+    /**
+     * @return the libraries of the run that were read from an index filled before the run, empty if there is none
+     * */
+    public Set<File> librariesFromIndex() {
+        return librariesFromIndex;
+    }
+
+    /**
+     * Frees what the classes read their content from, the content of the classes can not be read after.
+     *
+     * @throws IOException if the resources can not be freed
+     * */
+    @Override
+    public void close() throws IOException {
+        if (resources != null) {
+            resources.close();
+        }
+    }
+}
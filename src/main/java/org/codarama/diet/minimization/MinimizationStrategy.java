@@ -36,4 +36,15 @@ public interface MinimizationStrategy<ST extends Resolvable, LT, RT extends Pack
      * @return a set of {@link org.codarama.diet.model.ClassFile}s on which the sources depend
      * */
     public Set<RT> minimize(Set<ST> sources, Set<LT> libraries) throws IOException;
+
+    /**
+     * Minimizes a set of sources given a set of libraries, like {@link #minimize(Set, Set)}, also telling what the run
+     * found in the libraries.
+     *
+     * @param sources the sources to derive dependencies from
+     * @param libraries the libraries to search for dependencies in
+     *
+     * @return the classes on which the sources depend and the statistics of the libraries
+     * */
+    public MinimizationResult<RT> minimizeToResult(Set<ST> sources, Set<LT> libraries) throws IOException;
 }
@@ -1,33 +1,78 @@
 package org.codarama.diet.minimization.impl;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import org.codarama.diet.bundle.JarMaker;
 import org.codarama.diet.component.ListenableComponent;
+import org.codarama.diet.dependency.DependencyGraph;
 import org.codarama.diet.dependency.resolver.DependencyResolver;
+import org.codarama.diet.dependency.resolver.impl.CachingDependencyResolver;
 import org.codarama.diet.event.model.MinimizationEndEvent;
 import org.codarama.diet.event.model.MinimizationEvent;
 import org.codarama.diet.event.model.MinimizationStartEvent;
+import org.codarama.diet.index.ClassByteStore;
+import org.codarama.diet.index.ClassHandle;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.index.GraphedLibraryIndex;
 import org.codarama.diet.index.LibraryIndex;
+import org.codarama.diet.index.impl.LruClassByteStore;
+import org.codarama.diet.index.impl.JarDirectory;
+import org.codarama.diet.index.impl.OverlayLibraryIndex;
+import org.codarama.diet.minimization.MinimizationResult;
 import org.codarama.diet.minimization.MinimizationStrategy;
 import org.codarama.diet.model.ClassName;
 import org.codarama.diet.model.ClassStream;
 import org.codarama.diet.model.SourceFile;
+import org.codarama.diet.util.EnginePool;
+import org.codarama.diet.util.Files;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Required;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
-import java.util.jar.JarFile;
+import java.util.concurrent.ExecutorService;
 
 /**
  * A {@link org.codarama.diet.minimization.MinimizationStrategy} that indexes all .class files in library jars to a tree
  * and the runs queries on that tree for (hopefully) optimal performance.
  *
+ * The configured index is shared by all runs and only ever read by them. It is filled with the configured shared
+ * libraries, see {@link #setSharedLibraries(String)}, for example the jars of a local Maven repository, and is not
+ * written to by runs. A run takes a snapshot of it and indexes its libraries to its own
+ * {@link org.codarama.diet.index.impl.OverlayLibraryIndex} on top of the snapshot, dropped when the run ends.
+ * Libraries the shared index holds as they are on disk are read from the snapshot, the others, missing from it or
+ * changed since it indexed them, go to the run's overlay only. Only taking the snapshot holds the lock of the shared
+ * index, so minimizations run concurrently. Libraries are jars or class directories, like the target/classes
+ * directories of sibling modules.
+ *
+ * The bytes of the found classes are kept in a {@link org.codarama.diet.index.ClassByteStore} of the run, within
+ * {@link #setMemoryBudget(long)}, and the returned class streams read them from there until the
+ * {@link MinimizationResult} of the run is closed, which deletes what the store spilled to disk. The store of a
+ * {@link #minimize(Set, Set)} run is never closed, so its spill file is only deleted when the JVM exits. A
+ * {@link org.codarama.diet.dependency.resolver.impl.CachingDependencyResolver} is written out at the end of every run.
+ *
+ * The transitive dependencies of the sources are walked by {@link DependencyGraph#closure(java.util.List, java.util.Collection)}, over
+ * the ids of class names, through the graphs of the run's libraries the shared index keeps graphs of, see
+ * {@link org.codarama.diet.index.GraphedLibraryIndex}, and a graph of the classes the run parsed. Reached classes no
+ * graph covers yet are read from the run's index on the calling thread, as indexes are not thread safe, then their
+ * bytes are stored and the ones outside the libraries' graphs are parsed in parallel on the
+ * {@link org.codarama.diet.util.EnginePool}, see {@link #setEnginePool(EnginePool)}, and the closure is walked again
+ * until it reaches no new class. The bytes of classes covered by a graph are still read, they are the bytes of the
+ * minimized library. The closure is walked from the sources every time, so a class of the run that shadows a class of
+ * a graph is followed as the run found it, and the result is the same whatever the number of threads.
+ *
  * Created by ayld on 20.06.15.
  */
-public class IndexedMinimizationStrategy implements MinimizationStrategy<SourceFile, JarFile, ClassStream>{
+public class IndexedMinimizationStrategy implements MinimizationStrategy<SourceFile, File, ClassStream>{
 
     private static final Logger LOG = LoggerFactory.getLogger(IndexedMinimizationStrategy.class);
 
@@ -35,41 +80,171 @@ public class IndexedMinimizationStrategy implements MinimizationStrategy<SourceF
     private DependencyResolver<ClassStream> classDependencyResolver;
     private LibraryIndex index;
 
+    // null to index the run's libraries on the calling thread
+    private ExecutorService threadPool;
+
+    // null to follow dependencies on the calling thread
+    private EnginePool enginePool;
+    private int parallelism = Integer.MAX_VALUE;
+
+    private long memoryBudget = Long.MAX_VALUE;
+    private File spillDir = new File(System.getProperty("java.io.tmpdir"));
+
+    private int targetRelease = JarDirectory.BASE_RELEASE;
+
+    // the libraries the shared index is filled with, none by default
+    private Set<File> sharedLibraries = ImmutableSet.of();
+
+    @Override
+    public Set<ClassStream> minimize(Set<SourceFile> sources, Set<File> libraries) throws IOException {
+        return minimizeToResult(sources, libraries).classes();
+    }
+
     @Override
-    public Set<ClassStream> minimize(Set<SourceFile> sources, Set<JarFile> libraries) throws IOException {
+    public MinimizationResult<ClassStream> minimizeToResult(Set<SourceFile> sources, Set<File> libraries) throws IOException {
         final Set<ClassName> sourceDependencies = sourceDependencyResolver.resolve(sources);
 
-        index.index(libraries);
+        final LibraryIndex base = baseSnapshot();
+        final OverlayLibraryIndex runIndex = OverlayLibraryIndex.over(base, threadPool, targetRelease);
+        runIndex.indexLibraries(libraries);
+
+        final ClassByteStore store = LruClassByteStore.withBudget(memoryBudget, spillDir);
+
+        // only graphs of libraries read from the shared index, the run indexed the others as they are now
+        final Map<File, DependencyGraph> libraryGraphs = graphsOf(base, runIndex.servedFromBase());
+
+        // the parsed classes go first, a parsed class is one the run found outside of the libraries' graphs
+        final List<DependencyGraph> graphs = Lists.newArrayList(libraryGraphs.values());
+        final Map<ClassName, ClassStream> kept = Maps.newHashMap();
+        final Set<ClassName> read = Sets.newHashSet();
+        int fromGraphs = 0;
+
+        Set<ClassName> reached = DependencyGraph.closure(graphs, sourceDependencies);
+        List<ClassName> unread = unread(reached, read);
+        while (!unread.isEmpty()) {
+            final List<Found> found = Lists.newArrayListWithCapacity(unread.size());
+            for (Map.Entry<ClassHandle, ClassStream> entry : runIndex.readAll(unread).entrySet()) {
+                final ClassHandle handle = entry.getKey();
+                found.add(new Found(handle.name(), entry.getValue(), handle, isCovered(libraryGraphs, handle.name(), handle)));
+            }
+
+            final DependencyGraph.Builder parsed = DependencyGraph.builder();
+            for (Expansion expansion : expand(found, store)) {
+                final DependencyGraph parsedByChunk = expansion.parsed.build();
+                kept.putAll(expansion.kept);
+                parsed.addAll(parsedByChunk);
+                fromGraphs += expansion.kept.size() - parsedByChunk.size();
+            }
+            graphs.add(0, parsed.build());
 
-        final Set<ClassStream> result = Sets.newHashSet();
-        final Set<ClassName> resultNames = Sets.newHashSet();
-        for (ClassName sourceDep : sourceDependencies) {
-            resolveAndAddAllFromIndex(sourceDep, result, resultNames);
+            reached = DependencyGraph.closure(graphs, sourceDependencies);
+            unread = unread(reached, read);
         }
 
-        return result;
+        final Set<ClassStream> result = Sets.newHashSetWithExpectedSize(reached.size());
+        for (ClassName name : reached) {
+            final ClassStream found = kept.get(name);
+            if (found != null) {
+                result.add(found);
+            }
+        }
+
+        LOG.debug("kept the bytes of: " + result.size() + " classes, " + store.statistics());
+        LOG.debug("followed the dependencies of: " + fromGraphs + " classes through library graphs");
+        if (classDependencyResolver instanceof CachingDependencyResolver) {
+            final CachingDependencyResolver cache = (CachingDependencyResolver) classDependencyResolver;
+            cache.flush();
+            LOG.debug("resolved dependencies from cache: " + cache.statistics());
+        }
+        return new MinimizationResult<>(result, runIndex.statistics(), runIndex.servedFromBase(), store);
     }
 
-    private void resolveAndAddAllFromIndex(ClassName depName, Set<ClassStream> deps, Set<ClassName> depNames) {
-        if (!depNames.contains(depName) && index.contains(depName)) {
+    private List<Expansion> expand(List<Found> found, final ClassByteStore store) throws IOException {
+        final EnginePool.Chunk<Found, Expansion> chunk = new EnginePool.Chunk<Found, Expansion>() {
+            @Override
+            public Expansion call(List<Found> items) throws IOException {
+                final Expansion result = new Expansion(items.size());
+                for (Found item : items) {
+                    final ClassStream dep = store.put(item.name, item.stream.bytes(), item.handle);
+                    result.kept.put(item.name, dep);
 
-            final ClassStream dep = index.get(depName);
+                    if (!item.covered) {
+                        result.parsed.add(item.name, getDepsOfDep(dep));
+                    }
+                }
+                return result;
+            }
+        };
 
-            deps.add(dep);
-            depNames.add(depName);
+        if (enginePool == null) {
+            return ImmutableList.of(chunk.call(found));
+        }
+        return enginePool.inChunks(found, parallelism, chunk);
+    }
 
-            final Set<ClassName> depsOfDep = getDepsOfDep(dep);
-            for (ClassName depOfDep : depsOfDep) {
-                resolveAndAddAllFromIndex(depOfDep, deps, depNames);
+    // the reached classes not read yet, marking them read
+    private static List<ClassName> unread(Set<ClassName> reached, Set<ClassName> read) {
+        final List<ClassName> result = Lists.newArrayList();
+        for (ClassName name : reached) {
+            if (read.add(name)) {
+                result.add(name);
             }
         }
+        return result;
+    }
+
+    // the graphs the shared index keeps of the given libraries, by library
+    private static Map<File, DependencyGraph> graphsOf(LibraryIndex base, Set<File> libraries) {
+        final Map<File, DependencyGraph> result = Maps.newHashMap();
+        if (!(base instanceof GraphedLibraryIndex)) {
+            return result;
+        }
+
+        for (File library : libraries) {
+            final DependencyGraph graph = ((GraphedLibraryIndex) base).dependencyGraph(library);
+            if (graph != null) {
+                result.put(library, graph);
+            }
+        }
+        return result;
+    }
+
+    // true if the class was found in a library whose graph has the dependencies of the class
+    private static boolean isCovered(Map<File, DependencyGraph> libraryGraphs, ClassName name, ClassHandle handle) {
+        if (!(handle instanceof ClassLocator)) {
+            return false;
+        }
+        final DependencyGraph graph = libraryGraphs.get(((ClassLocator) handle).jar());
+        return graph != null && graph.has(name);
+    }
+
+    /**
+     * Fills the shared index with the shared libraries, see {@link #setSharedLibraries(String)}, does nothing if none
+     * are configured. Called when the strategy is set up, and again whenever the shared libraries changed on disk.
+     * */
+    public void indexSharedLibraries() {
+        if (sharedLibraries.isEmpty()) {
+            return;
+        }
+
+        synchronized (index) {
+            LOG.debug("indexing: " + sharedLibraries.size() + " shared libraries");
+            index.indexLibraries(sharedLibraries);
+        }
+    }
+
+    // indexes are not thread safe, filling the shared index and taking the snapshot need the lock, reading it does not
+    private LibraryIndex baseSnapshot() {
+        synchronized (index) {
+            return index.snapshot();
+        }
     }
 
     private Set<ClassName> getDepsOfDep(ClassStream dep) {
         try {
             return classDependencyResolver.resolve(dep);
         } catch (IOException e) {
-            // shouldn't happen here as we've called contains
+            // shouldn't happen here as the index found the class
             // so this happening here means a bug in the index or some runtime error
             throw new RuntimeException(e);
         }
@@ -89,4 +264,104 @@ public class IndexedMinimizationStrategy implements MinimizationStrategy<SourceF
     public void setIndex(LibraryIndex index) {
         this.index = index;
     }
+
+    /**
+     * Sets a pool to read the directories of a run's libraries on in parallel, one task per jar.
+     * Without a pool they are read one after another on the calling thread.
+     *
+     * @param threadPool the pool to read jars on, preferably a work stealing one
+     * */
+    public void setThreadPool(ExecutorService threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Sets the pool to follow the dependencies of found classes on in parallel.
+     * Without a pool they are followed on the calling thread.
+     *
+     * @param enginePool the engine's pool, never shut down by the strategy
+     * */
+    public void setEnginePool(EnginePool enginePool) {
+        this.enginePool = enginePool;
+    }
+
+    /**
+     * Sets how many chunks of a frontier are expanded at the same time at most, the pool's parallelism by default.
+     *
+     * @param parallelism the most chunks at the same time
+     * */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets how many class bytes a run keeps in memory at most, the least recently used are evicted past that.
+     * Every run has its own budget, unlimited by default.
+     *
+     * @param memoryBudget the budget of a run in bytes
+     * */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Sets where runs spill evicted class bytes that can not be read from their jars again.
+     *
+     * @param spillDir the path to the spill directory, created when first needed
+     * */
+    public void setSpillDir(String spillDir) {
+        this.spillDir = new File(spillDir);
+    }
+
+    /**
+     * Sets the libraries to fill the shared index with, the jars in a directory and its sub directories, like a local
+     * Maven repository. The index is filled by {@link #indexSharedLibraries()}, runs never add libraries to it.
+     *
+     * @param pathToLibraries the path to the directory, or an empty one to fill the shared index with nothing
+     * @throws IOException if the directory can not be listed
+     * */
+    public void setSharedLibraries(String pathToLibraries) throws IOException {
+        if (Strings.isNullOrEmpty(pathToLibraries)) {
+            this.sharedLibraries = ImmutableSet.of();
+            return;
+        }
+        this.sharedLibraries = ImmutableSet.copyOf(Files.in(pathToLibraries).withExtension(JarMaker.JAR_FILE_EXTENSION).list());
+    }
+
+    /**
+     * Sets the Java release to take the classes of multi-release libraries for, should be the release the shared index
+     * is indexed for.
+     *
+     * @param targetRelease the release to take classes for, {@link JarDirectory#BASE_RELEASE} by default
+     * */
+    public void setTargetRelease(int targetRelease) {
+        this.targetRelease = targetRelease;
+    }
+
+    // a reached class, as read from the run's index
+    private static final class Found {
+        private final ClassName name;
+        private final ClassStream stream;
+        private final ClassHandle handle;
+
+        // true if a graph of the library the class was found in has its dependencies
+        private final boolean covered;
+
+        private Found(ClassName name, ClassStream stream, ClassHandle handle, boolean covered) {
+            this.name = name;
+            this.stream = stream;
+            this.handle = handle;
+            this.covered = covered;
+        }
+    }
+
+    // what a chunk of reached classes adds, the stored classes and the dependencies of the parsed ones
+    private static final class Expansion {
+        private final Map<ClassName, ClassStream> kept;
+        private final DependencyGraph.Builder parsed = DependencyGraph.builder();
+
+        private Expansion(int size) {
+            this.kept = Maps.newHashMapWithExpectedSize(size);
+        }
+    }
 }
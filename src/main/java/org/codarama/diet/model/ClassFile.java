@@ -3,8 +3,8 @@ package org.codarama.diet.model;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Files;
 import com.google.common.io.Resources;
-import org.apache.bcel.classfile.ClassParser;
 import org.codarama.diet.dependency.resolver.DependencyResolver;
+import org.codarama.diet.dependency.resolver.impl.DependencyScanner;
 import org.codarama.diet.model.marker.Packagable;
 import org.codarama.diet.model.marker.Resolvable;
 import org.codarama.diet.util.Components;
@@ -34,10 +34,10 @@ public class ClassFile implements Resolvable, Packagable { // XXX magic numbers
     private ClassFile(File classfile) { // XXX copy code
         try {
             this.classFile = classfile;
-            this.qualifiedName = new ClassName(new ClassParser(classFile.getAbsolutePath()).parse().getClassName());
+            this.qualifiedName = new ClassName(DependencyScanner.className(Files.toByteArray(classFile)));
 
         } catch (IOException e) {
-            // assuming bcel threw IOException because validation failed
+            // assuming the scanner threw IOException because validation failed
             throw new IllegalArgumentException("file: " + classfile.getAbsolutePath() + ", not valid or is not a class file", e);
         }
     }
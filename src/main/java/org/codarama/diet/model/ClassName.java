@@ -12,6 +12,10 @@ import java.util.regex.Pattern;
  * <p>
  * The idea behind the class is to provide a model object that makes sure that a string is actually a class name and not
  * something else, so one doesn't need to check 'by hand' every time.
+ * <p>
+ * Names are interned in a global {@link ClassNameTable}, validated the first time they are seen and given a dense
+ * {@link #id()}, so creating the name of a class seen before costs a lookup and names compare by id. Code keeping many
+ * names, like indexes and dependency graphs, can keep ids instead and get the names back with {@link #byId(int)}.
  */
 public final class ClassName implements Resolvable {
 
@@ -38,6 +42,7 @@ public final class ClassName implements Resolvable {
     public static final String INNER_CLASS_SEPARATOR = "$";
 
     private final String qualifiedClassName;
+    private final int id;
 
     /**
      * Creates a {@link ClassName}.
@@ -48,11 +53,54 @@ public final class ClassName implements Resolvable {
      * @param qualifiedClassName a class name
      */
     public ClassName(String qualifiedClassName) {
+        final ClassName interned = ClassNameTable.GLOBAL.intern(qualifiedClassName);
+        this.qualifiedClassName = interned.qualifiedClassName;
+        this.id = interned.id;
+    }
+
+    // only the table creates names this way, after validating them
+    ClassName(String qualifiedClassName, int id) {
+        this.qualifiedClassName = qualifiedClassName;
+        this.id = id;
+    }
+
+    /**
+     * Returns the interned name, like {@link #ClassName(String)} without creating a new instance.
+     *
+     * @throws IllegalArgumentException if the argument is not a class name
+     * @param qualifiedClassName a class name
+     * @return the one instance of the name
+     */
+    public static ClassName of(String qualifiedClassName) {
+        return ClassNameTable.GLOBAL.intern(qualifiedClassName);
+    }
+
+    /**
+     * Returns the name with an id.
+     *
+     * @throws IllegalArgumentException if no name has the id
+     * @param id the id of a name, see {@link #id()}
+     * @return the one instance of the name
+     */
+    public static ClassName byId(int id) {
+        return ClassNameTable.GLOBAL.byId(id);
+    }
+
+    /**
+     * Returns the id of this name, the same for equal names and unique among the names created by the JVM.
+     * Ids are dense, they start at 0 and every new name takes the next one, so they can index arrays and bit sets.
+     *
+     * @return the id of this name
+     */
+    public int id() {
+        return id;
+    }
+
+    static void validate(String qualifiedClassName) {
         if (!isClassName(qualifiedClassName)) {
             throw new IllegalArgumentException("invalid fully qualified class name: " + qualifiedClassName +
                     ", expected: " + CLASS_NAME_VALIDATION_REGEX + ", actual: " + qualifiedClassName);
         }
-        this.qualifiedClassName = qualifiedClassName;
     }
 
     private static boolean isClassName(String qualifiedClassName) {
@@ -79,7 +127,7 @@ public final class ClassName implements Resolvable {
      * @return the short name of the wrapped qualified class name
      */
     public String shortName() {
-        return Tokenizer.delimiter(".").tokenize(qualifiedClassName).lastToken();
+        return qualifiedClassName.substring(qualifiedClassName.lastIndexOf('.') + 1);
     }
 
     /**
@@ -94,7 +142,7 @@ public final class ClassName implements Resolvable {
 
     @Override
     public int hashCode() {
-        return qualifiedClassName.hashCode();
+        return id;
     }
 
     @Override
@@ -109,6 +157,6 @@ public final class ClassName implements Resolvable {
 
         final ClassName other = (ClassName) obj;
 
-        return other.toString().equals(this.toString());
+        return other.id == this.id;
     }
 }
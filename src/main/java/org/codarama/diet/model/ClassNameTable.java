@@ -0,0 +1,81 @@
+package org.codarama.diet.model;
+
+import org.codarama.diet.util.annotation.ThreadSafe;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns {@link ClassName}s, every distinct name is validated once and kept once, with a dense int id.
+ *
+ * Looking up a name seen before takes no lock. A new name is validated and added under the table's lock, it takes the
+ * next id and is kept for the life of the JVM, so the table grows with the number of distinct names seen.
+ */
+@ThreadSafe
+final class ClassNameTable {
+
+    static final ClassNameTable GLOBAL = new ClassNameTable();
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private final ConcurrentHashMap<String, ClassName> byName = new ConcurrentHashMap<>(INITIAL_CAPACITY);
+
+    // names by id, replaced by a larger copy when full, written under the lock
+    private volatile ClassName[] byId = new ClassName[INITIAL_CAPACITY];
+    private int size;
+
+    private ClassNameTable() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the argument is not a class name
+     * @param qualifiedClassName a class name
+     * @return the one instance of the name, added if it was not in the table
+     * */
+    ClassName intern(String qualifiedClassName) {
+        final ClassName found = byName.get(qualifiedClassName);
+        if (found != null) {
+            return found;
+        }
+        return add(qualifiedClassName);
+    }
+
+    /**
+     * @throws IllegalArgumentException if no name has the id
+     * @param id the id of a name
+     * @return the one instance of the name
+     * */
+    ClassName byId(int id) {
+        // a name is put in the array before it is found by name, so any id handed out is in the array read here
+        final ClassName[] names = byId;
+        final ClassName result = id >= 0 && id < names.length ? names[id] : null;
+        if (result == null) {
+            throw new IllegalArgumentException("no class name with id: " + id);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of names in the table, one more than the largest id
+     * */
+    synchronized int size() {
+        return size;
+    }
+
+    private synchronized ClassName add(String qualifiedClassName) {
+        final ClassName found = byName.get(qualifiedClassName);
+        if (found != null) {
+            return found;
+        }
+
+        ClassName.validate(qualifiedClassName);
+
+        final ClassName result = new ClassName(qualifiedClassName, size);
+        if (size == byId.length) {
+            byId = Arrays.copyOf(byId, size * 2);
+        }
+        byId[size++] = result;
+        byName.put(qualifiedClassName, result);
+        return result;
+    }
+}
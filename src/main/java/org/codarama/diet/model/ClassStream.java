@@ -1,8 +1,10 @@
 package org.codarama.diet.model;
 
-import org.apache.bcel.classfile.ClassParser;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import org.codarama.diet.dependency.resolver.DependencyResolver;
 import org.codarama.diet.dependency.resolver.impl.ClassStreamDependencyResolver;
+import org.codarama.diet.dependency.resolver.impl.DependencyScanner;
 import org.codarama.diet.model.marker.Packagable;
 import org.codarama.diet.model.marker.Resolvable;
 import org.codarama.diet.util.Components;
@@ -21,19 +23,18 @@ import java.util.Set;
 @NotThreadSafe
 public class ClassStream implements Resolvable, Packagable {
 
+    // exactly one of bytes and source is set, a class stream read from an input stream hands out a single stream
+    private final byte[] bytes;
     private final InputStream streamContent;
+    private final ByteSource source;
+
     private final ClassName name;
 
-    private ClassStream(InputStream streamContent) {
-        this.streamContent = new BufferedInputStream(streamContent);
-        try {
-            this.streamContent.mark(streamContent.available());
-            this.name = new ClassName(new ClassParser(this.streamContent, "").parse().getClassName());
-            this.streamContent.reset();
-        } catch (IOException e) {
-            // assuming bcel threw IOException because validation failed
-            throw new IllegalArgumentException(e);
-        }
+    private ClassStream(ClassName name, byte[] bytes, InputStream streamContent, ByteSource source) {
+        this.bytes = bytes;
+        this.streamContent = streamContent;
+        this.source = source;
+        this.name = name;
     }
 
     /**
@@ -45,7 +46,60 @@ public class ClassStream implements Resolvable, Packagable {
      * @return a new class stream
      * */
     public static ClassStream fromStream(InputStream content) {
-        return new ClassStream(content);
+        final byte[] bytes;
+        try {
+            bytes = ByteStreams.toByteArray(content);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return new ClassStream(nameOf(bytes), bytes, new ByteArrayInputStream(bytes), null);
+    }
+
+    /**
+     * Creates a new class stream holding the bytes of a class, without copying them.
+     * This method validates whether the given bytes actually are a compiled class file, the bytes must not be changed
+     * after.
+     *
+     * @throws IllegalArgumentException if the bytes are not a compiled class
+     * @param content the bytes of the class
+     * @return a new class stream
+     * */
+    public static ClassStream fromBytes(byte[] content) {
+        if (content == null) {
+            throw new NullPointerException("argument is null");
+        }
+        return new ClassStream(nameOf(content), content, null, null);
+    }
+
+    /**
+     * Creates a new class stream of a known class holding its bytes, without copying or validating them.
+     * The bytes must not be changed after.
+     *
+     * @param name the name of the class
+     * @param content the bytes of the class
+     * @return a new class stream
+     * */
+    public static ClassStream fromBytes(ClassName name, byte[] content) {
+        if (name == null || content == null) {
+            throw new NullPointerException("argument is null");
+        }
+        return new ClassStream(name, content, null, null);
+    }
+
+    /**
+     * Creates a new class stream of a known class whose bytes are read only when needed.
+     * Unlike the other factory methods this one does not read the class, so nothing is validated. Every call to
+     * {@link #content()} opens a new stream from the source.
+     *
+     * @param name the name of the class
+     * @param source where to read the bytes of the class from
+     * @return a new class stream
+     * */
+    public static ClassStream fromSource(ClassName name, ByteSource source) {
+        if (name == null || source == null) {
+            throw new NullPointerException("argument is null");
+        }
+        return new ClassStream(name, null, null, source);
     }
 
     /**
@@ -81,7 +135,38 @@ public class ClassStream implements Resolvable, Packagable {
      * @return a compiled class file as a stream of bytes.
      * */
     public InputStream content() {
-        return this.streamContent;
+        if (streamContent != null) {
+            return this.streamContent;
+        }
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+        }
+
+        try {
+            return source.openBufferedStream();
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read the content of: " + name, e);
+        }
+    }
+
+    /**
+     * Returns the content of this class stream as bytes, all of it whether {@link #content()} was read or not.
+     * Bytes the stream holds are returned as they are and bytes of a source as it reads them, callers must not change
+     * them.
+     *
+     * @throws IllegalStateException if the source of the class can not be read
+     * @return a compiled class file as bytes
+     * */
+    public byte[] bytes() {
+        if (bytes != null) {
+            return bytes;
+        }
+
+        try {
+            return source.read();
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read the content of: " + name, e);
+        }
     }
 
     /**
@@ -107,6 +192,15 @@ public class ClassStream implements Resolvable, Packagable {
         }
     }
 
+    private static ClassName nameOf(byte[] content) {
+        try {
+            return new ClassName(DependencyScanner.className(content));
+        } catch (IOException e) {
+            // assuming the scanner threw IOException because validation failed
+            throw new IllegalArgumentException(e);
+        }
+    }
+
     @Override
     public String toString() {
         return name.toString();
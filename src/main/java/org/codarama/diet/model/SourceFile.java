@@ -10,16 +10,15 @@ import org.codarama.diet.model.marker.Resolvable;
 import org.codarama.diet.util.Components;
 import org.codarama.diet.util.Tokenizer;
 
-import com.github.javaparser.JavaParser;
-import com.github.javaparser.ParseException;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Resources;
 
 /**
  * Represents a Java source file.
  * <p>
- * Upon creation this class parses the Java source it is being created from and validates it's correctness. Throws
- * {@link IllegalArgumentException} if the source file fails validation.
+ * Upon creation this class reads the header of the Java source it is being created from, its package and imports, and
+ * validates its syntax, see {@link SourceHeader}. Throws {@link IllegalArgumentException} if the source file fails
+ * validation. The header is kept, so resolving the dependencies of the file does not read it again.
  */
 public class SourceFile implements Resolvable {
 
@@ -34,12 +33,17 @@ public class SourceFile implements Resolvable {
 
     private Set<ClassName> dependencies;
     private final File source;
+    private final SourceHeader header;
 
     private SourceFile(File sourceFile) {
+        if (!hasSourceExtension(sourceFile)) {
+            throw new IllegalArgumentException(sourceFile + " does not look like Java source");
+        }
+
         try {
-            if (!isSourceFile(sourceFile)) {
-                throw new IllegalArgumentException(sourceFile + " does not look like Java source");
-            }
+            this.header = SourceHeader.read(sourceFile);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(sourceFile + " does not look like Java source, " + e.getMessage(), e);
         } catch (IOException e) {
             throw new IllegalArgumentException(e);
         }
@@ -114,7 +118,14 @@ public class SourceFile implements Resolvable {
         return new File(source.getAbsolutePath());
     }
 
-    private static boolean isSourceFile(File sourceFile) throws IOException {
+    /**
+     * Returns the package and imports of this {@link SourceFile}, read when it was created.
+     */
+    public SourceHeader header() {
+        return header;
+    }
+
+    private static boolean hasSourceExtension(File sourceFile) {
         if (sourceFile == null) {
             return false;
         }
@@ -122,18 +133,7 @@ public class SourceFile implements Resolvable {
         final String name = sourceFile.getName();
         final String extension = Tokenizer.delimiter(".").tokenize(name).lastToken();
 
-        if (!extension.equals(EXTENSION)) {
-            return false;
-        }
-
-        try {
-            // [tmateev] I trusted them for saying this is fast, but we might want to measure how fast it really is
-            JavaParser.parse(sourceFile);
-        } catch (ParseException e) {
-            // assuming parse failed because file is not a valid Java source file
-            return false;
-        }
-        return true;
+        return extension.equals(EXTENSION);
     }
 
     @Override
@@ -0,0 +1,433 @@
+package org.codarama.diet.model;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.codarama.diet.util.annotation.Immutable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The header of a Java source file: its package and its imports, read up to the first type declaration.
+ * <p>
+ * The header is read in a single pass by a small lexer that knows comments and string and character literals, so an
+ * import in a comment or a string is not taken for an import. The syntax of the package and import declarations is
+ * checked while reading them, as is the start of the first type declaration, its modifiers, annotations, keyword and
+ * name. Nothing after the name of the first type is read, the rest of the file is left to the compiler.
+ * <p>
+ * Unicode escapes are not translated, a header spelling keywords or names with them is not read.
+ */
+@Immutable
+public final class SourceHeader {
+
+    private static final String END = "";
+    private static final String LITERAL = "\"";
+
+    // written at the start of a file by some editors, not part of the source
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private static final Set<String> MODIFIERS = ImmutableSet.of(
+            "public", "protected", "private", "abstract", "static", "final", "strictfp", "sealed", "open"
+    );
+    private static final Set<String> TYPE_KEYWORDS = ImmutableSet.of("class", "interface", "enum", "record");
+
+    private final String packageName;
+    private final List<Import> imports;
+
+    private SourceHeader(String packageName, List<Import> imports) {
+        this.packageName = packageName;
+        this.imports = ImmutableList.copyOf(imports);
+    }
+
+    /**
+     * Reads the header of a source file, read as UTF-8.
+     *
+     * @throws IllegalArgumentException if the header is not valid Java
+     * @param sourceFile the source file
+     * @return the header of the file
+     * @throws IOException if the file can not be read
+     */
+    public static SourceHeader read(File sourceFile) throws IOException {
+        try (Reader reader = Files.newReader(sourceFile, Charsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Reads the header of Java source, leaving the reader a character after the name of the first type.
+     * A byte order mark at the start of the source, as some editors write, is skipped.
+     *
+     * @throws IllegalArgumentException if the header is not valid Java
+     * @param source the source to read
+     * @return the header of the source
+     * @throws IOException if the source can not be read
+     */
+    public static SourceHeader read(Reader source) throws IOException {
+        return new Parser(source).header();
+    }
+
+    /**
+     * @return the name of the declared package, empty for the default package
+     */
+    public String packageName() {
+        return packageName;
+    }
+
+    /**
+     * @return the imports, in the order they are declared
+     */
+    public List<Import> imports() {
+        return imports;
+    }
+
+    /**
+     * An import declaration.
+     */
+    @Immutable
+    public static final class Import {
+
+        private final String name;
+        private final boolean isStatic;
+        private final boolean isWildcard;
+
+        private Import(String name, boolean isStatic, boolean isWildcard) {
+            this.name = name;
+            this.isStatic = isStatic;
+            this.isWildcard = isWildcard;
+        }
+
+        /**
+         * @return the imported name as declared, without a wildcard suffix, a package for a wildcard import and a
+         * class member for a single static import
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return true if the import is a static import
+         */
+        public boolean isStatic() {
+            return isStatic;
+        }
+
+        /**
+         * @return true if the import ends with {@code .*}
+         */
+        public boolean isWildcard() {
+            return isWildcard;
+        }
+
+        @Override
+        public String toString() {
+            return "import " + (isStatic ? "static " : "") + name + (isWildcard ? ".*" : "") + ";";
+        }
+    }
+
+    // reads tokens one at a time, the current token is an identifier, a punctuation character, a literal or the end
+    private static final class Parser {
+
+        private final PushbackReader in;
+        private int line = 1;
+
+        private String token;
+
+        private Parser(Reader source) {
+            this.in = new PushbackReader(source, 2);
+        }
+
+        private SourceHeader header() throws IOException {
+            skipByteOrderMark();
+            advance();
+
+            // annotations of the package, or of the first type if there is no package declaration
+            boolean annotated = false;
+            while (at("@")) {
+                advance();
+                if (at("interface")) {
+                    advance();
+                    identifier("an annotation type name");
+                    return new SourceHeader("", ImmutableList.<Import>of());
+                }
+                annotation();
+                annotated = true;
+            }
+
+            String packageName = "";
+            if (at(SourceFile.PACKAGE_KEYWORD)) {
+                advance();
+                packageName = qualifiedName("a package name");
+                expect(";");
+            } else if (annotated) {
+                typeDeclaration();
+                return new SourceHeader(packageName, ImmutableList.<Import>of());
+            }
+
+            final List<Import> imports = Lists.newArrayList();
+            while (at(SourceFile.IMPORT_KEYWORD) || at(";")) {
+                if (at(";")) {
+                    advance();
+                    continue;
+                }
+                advance();
+                imports.add(importDeclaration());
+            }
+
+            if (!at(END)) {
+                typeDeclaration();
+            }
+            return new SourceHeader(packageName, imports);
+        }
+
+        private Import importDeclaration() throws IOException {
+            final boolean isStatic = at("static");
+            if (isStatic) {
+                advance();
+            }
+
+            final StringBuilder name = new StringBuilder(identifier("an imported name"));
+            advance();
+
+            boolean isWildcard = false;
+            while (at(".")) {
+                advance();
+                if (at(SourceFile.WILDCARD_IMPORT_SUFFIX)) {
+                    isWildcard = true;
+                    advance();
+                    break;
+                }
+                name.append('.').append(identifier("an imported name"));
+                advance();
+            }
+            if (!isWildcard && name.indexOf(".") < 0) {
+                // a single import names a class or member in a package, or a member in a class
+                throw unexpected("'.'");
+            }
+            expect(";");
+
+            return new Import(name.toString(), isStatic, isWildcard);
+        }
+
+        // modifiers and annotations up to the keyword and name of the type, the name is the last token read
+        private void typeDeclaration() throws IOException {
+            while (true) {
+                if (at("@")) {
+                    advance();
+                    if (at("interface")) {
+                        advance();
+                        identifier("an annotation type name");
+                        return;
+                    }
+                    annotation();
+                } else if (MODIFIERS.contains(token)) {
+                    advance();
+                } else if (at("non")) {
+                    // non-sealed, lexed as three tokens
+                    advance();
+                    expect("-");
+                    if (!at("sealed")) {
+                        throw unexpected("'sealed'");
+                    }
+                    advance();
+                } else {
+                    break;
+                }
+            }
+
+            if (TYPE_KEYWORDS.contains(token)) {
+                advance();
+                identifier("a type name");
+                return;
+            }
+            if (at("module")) {
+                advance();
+                identifier("a module name");
+                return;
+            }
+            throw unexpected("a type declaration");
+        }
+
+        // an annotation after its '@', leaves the token after it
+        private void annotation() throws IOException {
+            qualifiedName("an annotation name");
+            if (!at("(")) {
+                return;
+            }
+
+            int depth = 0;
+            do {
+                if (at("(")) {
+                    depth++;
+                } else if (at(")")) {
+                    depth--;
+                } else if (at(END)) {
+                    throw unexpected("the end of an annotation");
+                }
+                advance();
+            } while (depth > 0);
+        }
+
+        // a dot separated name, leaves the token after it
+        private String qualifiedName(String what) throws IOException {
+            final StringBuilder result = new StringBuilder(identifier(what));
+            advance();
+            while (at(".")) {
+                advance();
+                result.append('.').append(identifier(what));
+                advance();
+            }
+            return result.toString();
+        }
+
+        private String identifier(String what) {
+            if (token.isEmpty() || !Character.isJavaIdentifierStart(token.charAt(0))) {
+                throw unexpected(what);
+            }
+            return token;
+        }
+
+        private void expect(String expected) throws IOException {
+            if (!at(expected)) {
+                throw unexpected("'" + expected + "'");
+            }
+            advance();
+        }
+
+        private boolean at(String expected) {
+            return token.equals(expected);
+        }
+
+        private IllegalArgumentException unexpected(String expected) {
+            final String found = at(END) ? "the end of the source" : at(LITERAL) ? "a literal" : "'" + token + "'";
+            return new IllegalArgumentException("expected " + expected + ", found: " + found + ", at line: " + line);
+        }
+
+        private void advance() throws IOException {
+            int c = skipBlanks();
+            if (c == -1) {
+                token = END;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                final StringBuilder result = new StringBuilder().append((char) c);
+                while ((c = read()) != -1 && Character.isJavaIdentifierPart(c)) {
+                    result.append((char) c);
+                }
+                unread(c);
+                token = result.toString();
+            } else if (c == '"' || c == '\'') {
+                literal(c);
+                token = LITERAL;
+            } else {
+                token = String.valueOf((char) c);
+            }
+        }
+
+        // skips white space and comments, returns the first character after them
+        private int skipBlanks() throws IOException {
+            while (true) {
+                final int c = read();
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                if (c != '/') {
+                    return c;
+                }
+
+                final int next = read();
+                if (next == '/') {
+                    int skipped;
+                    do {
+                        skipped = read();
+                    } while (skipped != '\n' && skipped != -1);
+                } else if (next == '*') {
+                    int previous = 0;
+                    int skipped;
+                    while ((skipped = read()) != '/' || previous != '*') {
+                        if (skipped == -1) {
+                            throw new IllegalArgumentException("unterminated comment, at line: " + line);
+                        }
+                        previous = skipped;
+                    }
+                } else {
+                    unread(next);
+                    return c;
+                }
+            }
+        }
+
+        private void skipByteOrderMark() throws IOException {
+            final int first = in.read();
+            if (first != BYTE_ORDER_MARK && first != -1) {
+                in.unread(first);
+            }
+        }
+
+        // skips a string, text block or character literal after its opening quote
+        private void literal(int quote) throws IOException {
+            if (quote == '"') {
+                final int second = read();
+                if (second == '"') {
+                    final int third = read();
+                    if (third == '"') {
+                        textBlock();
+                        return;
+                    }
+                    unread(third);
+                    return; // an empty string
+                }
+                unread(second);
+            }
+
+            int c;
+            while ((c = read()) != quote) {
+                if (c == -1 || c == '\n') {
+                    throw new IllegalArgumentException("unterminated literal, at line: " + line);
+                }
+                if (c == '\\') {
+                    read();
+                }
+            }
+        }
+
+        private void textBlock() throws IOException {
+            int quotes = 0;
+            int c;
+            while (quotes < 3) {
+                c = read();
+                if (c == -1) {
+                    throw new IllegalArgumentException("unterminated text block, at line: " + line);
+                }
+                if (c == '\\') {
+                    read();
+                    quotes = 0;
+                } else {
+                    quotes = c == '"' ? quotes + 1 : 0;
+                }
+            }
+        }
+
+        private int read() throws IOException {
+            final int c = in.read();
+            if (c == '\n') {
+                line++;
+            }
+            return c;
+        }
+
+        private void unread(int c) throws IOException {
+            if (c == -1) {
+                return;
+            }
+            if (c == '\n') {
+                line--;
+            }
+            in.unread(c);
+        }
+    }
+}
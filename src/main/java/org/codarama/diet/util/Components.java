@@ -8,6 +8,7 @@ public enum Components {
     STREAM_DEPENDENCY_RESOLVER("classStreamResolver"),
     SOURCE_DEPENDENCY_RESOLVER("sourceDependencyResolver"),
     INDEXED_MINIMIZATION_STRATEGY("indexedMinimizationStrategy"),
+    LIBRARY_INDEX("libraryIndex"),
     EVENT_BUS("statusUpdateEventBus");
 
     private final ApplicationContext context;
@@ -0,0 +1,141 @@
+package org.codarama.diet.util;
+
+import com.google.common.collect.Lists;
+import org.codarama.diet.util.annotation.ThreadSafe;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The work stealing pool shared by every parallel phase of the engine, resolving, indexing and the like.
+ *
+ * The pool lives as long as the engine, phases never shut it down, so components using it can be called any number of
+ * times and concurrently. It is shut down by {@link #close()}, when the engine's context is closed.
+ *
+ * A phase runs its work with {@link #inChunks(List, int, Chunk)}: items are split into at most as many chunks as the
+ * phase's parallelism limit, each chunk is one task working through its items one after another, so a phase with
+ * thousands of small items submits a handful of tasks and never takes more threads than its limit allows.
+ */
+@ThreadSafe
+public final class EnginePool {
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final ForkJoinPool pool;
+
+    private EnginePool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a pool, like {@link java.util.concurrent.Executors#newWorkStealingPool(int)}.
+     *
+     * @param parallelism the number of threads of the pool, usually the number of cores
+     * @return a new pool
+     * */
+    public static EnginePool withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive, actual: " + parallelism);
+        }
+        return new EnginePool(new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true));
+    }
+
+    /**
+     * Works on items in parallel, in at most the given number of chunks, and waits for all chunks.
+     *
+     * @param items the items to work on
+     * @param parallelism the most chunks to run at the same time, the phase's limit
+     * @param chunk the work done on a chunk of items
+     * @param <T> the type of an item
+     * @param <R> the type of the result of a chunk
+     * @return the results of the chunks, in the order of the items
+     * @throws IOException the first failure of a chunk
+     * */
+    public <T, R> List<R> inChunks(List<T> items, int parallelism, final Chunk<T, R> chunk) throws IOException {
+        final int chunkCount = Math.max(1, Math.min(Math.min(parallelism, pool.getParallelism()), items.size()));
+        final int chunkSize = (items.size() + chunkCount - 1) / chunkCount;
+
+        final List<Callable<R>> tasks = Lists.newArrayListWithCapacity(chunkCount);
+        for (final List<T> partition : Lists.partition(items, Math.max(1, chunkSize))) {
+            tasks.add(new Callable<R>() {
+                @Override
+                public R call() throws IOException {
+                    return chunk.call(partition);
+                }
+            });
+        }
+
+        final List<R> result = Lists.newArrayListWithCapacity(tasks.size());
+        try {
+            for (Future<R> future : pool.invokeAll(tasks)) {
+                result.add(future.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for chunks", e);
+        } catch (ExecutionException | RuntimeException e) {
+            // the pool wraps what a task throws, and may wrap it again when rethrowing it
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new IllegalStateException("chunk failed", e.getCause());
+        }
+    }
+
+    /**
+     * @return the pool as an executor, for components that submit their own tasks, it must not be shut down by them
+     * */
+    public ExecutorService executor() {
+        return pool;
+    }
+
+    /**
+     * @return the number of threads of the pool
+     * */
+    public int parallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Shuts the pool down, waiting a while for running tasks to end.
+     * */
+    public void close() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The work a phase does on a chunk of its items.
+     *
+     * @param <T> the type of an item
+     * @param <R> the type of the result of a chunk
+     */
+    public interface Chunk<T, R> {
+
+        /**
+         * @param items the items of the chunk
+         * @return the result of the chunk
+         * @throws IOException if working on an item failed
+         * */
+        R call(List<T> items) throws IOException;
+    }
+}
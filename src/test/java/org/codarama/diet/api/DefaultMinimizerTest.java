@@ -0,0 +1,51 @@
+package org.codarama.diet.api;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import org.codarama.diet.api.reporting.MinimizationReport;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link DefaultMinimizer}.
+ */
+public class DefaultMinimizerTest {
+
+    @Test
+    public void libsFindsJarsAndClassDirectories() throws IOException {
+        final File libDir = Files.createTempDir();
+
+        final File jar = new File(libDir, "nested/library.jar");
+        touch(jar);
+        final File classes = new File(libDir, "classes");
+        touch(new File(classes, "org/codarama/Whatever.class"));
+        touch(new File(libDir, "resources/readme.txt"));
+
+        final DefaultMinimizer minimizer = new DefaultMinimizer(libDir) {
+            @Override
+            public MinimizationReport minimize() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        minimizer.libs(libDir.getAbsolutePath());
+
+        assertEquals(ImmutableSet.of(jar.getAbsoluteFile(), classes.getAbsoluteFile()), absolute(minimizer.libraryLocations));
+    }
+
+    private static void touch(File file) throws IOException {
+        Files.createParentDirs(file);
+        Files.touch(file);
+    }
+
+    private static ImmutableSet<File> absolute(Iterable<File> files) {
+        final ImmutableSet.Builder<File> result = ImmutableSet.builder();
+        for (File file : files) {
+            result.add(file.getAbsoluteFile());
+        }
+        return result.build();
+    }
+}
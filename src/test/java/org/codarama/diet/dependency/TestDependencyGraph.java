@@ -0,0 +1,87 @@
+package org.codarama.diet.dependency;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.codarama.diet.model.ClassName;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.dependency.DependencyGraph}.
+ */
+public class TestDependencyGraph {
+
+    private static final ClassName A = ClassName.of("org.codarama.graph.A");
+    private static final ClassName B = ClassName.of("org.codarama.graph.B");
+    private static final ClassName C = ClassName.of("org.codarama.graph.C");
+    private static final ClassName D = ClassName.of("org.codarama.graph.D");
+    private static final ClassName OBJECT = ClassName.of("java.lang.Object");
+
+    @Test
+    public void closure() {
+        final DependencyGraph graph = DependencyGraph.builder()
+                .add(A, ImmutableSet.of(B, OBJECT))
+                .add(B, ImmutableSet.of(C))
+                .add(C, ImmutableSet.of(A)) // a cycle
+                .add(D, ImmutableSet.of(OBJECT))
+                .build();
+
+        assertEquals(4, graph.size());
+        assertEquals(5, graph.edgeCount());
+        assertEquals(ImmutableSet.of(A, B, C, OBJECT), graph.closure(ImmutableSet.of(B)));
+        assertEquals(ImmutableSet.of(D, OBJECT), graph.closure(ImmutableSet.of(D)));
+        assertEquals(ImmutableSet.of(OBJECT), graph.closure(ImmutableSet.of(OBJECT)));
+    }
+
+    @Test
+    public void dependencies() {
+        final DependencyGraph graph = DependencyGraph.builder()
+                .add(A, ImmutableSet.of(B))
+                .add(A, ImmutableSet.of(C, D))
+                .build();
+
+        assertTrue(graph.has(A));
+        assertFalse(graph.has(B));
+        assertEquals(ImmutableSet.of(C, D), ImmutableSet.copyOf(graph.dependenciesOf(A)));
+        assertTrue(graph.dependenciesOf(B).isEmpty());
+        assertEquals(2, graph.edgeCount());
+    }
+
+    @Test
+    public void firstGraphWins() {
+        final DependencyGraph first = DependencyGraph.builder().add(A, ImmutableSet.of(B)).build();
+        final DependencyGraph second = DependencyGraph.builder()
+                .add(A, ImmutableSet.of(C))
+                .add(B, ImmutableSet.of(D))
+                .build();
+
+        assertEquals(ImmutableSet.of(A, B, D), DependencyGraph.closure(ImmutableList.of(first, second), ImmutableSet.of(A)));
+        assertEquals(ImmutableSet.of(A, C), DependencyGraph.closure(ImmutableList.of(second, first), ImmutableSet.of(A)));
+    }
+
+    @Test
+    public void deepChain() {
+        final int depth = 100000;
+
+        final DependencyGraph.Builder builder = DependencyGraph.builder();
+        ClassName previous = ClassName.of("org.codarama.chain.C0");
+        for (int i = 1; i < depth; i++) {
+            final ClassName next = ClassName.of("org.codarama.chain.C" + i);
+            builder.add(previous, ImmutableSet.of(next));
+            previous = next;
+        }
+
+        final Set<ClassName> closure = builder.build().closure(ImmutableSet.of(ClassName.of("org.codarama.chain.C0")));
+        assertEquals(depth, closure.size());
+        assertTrue(closure.contains(previous));
+    }
+
+    @Test
+    public void empty() {
+        assertEquals(0, DependencyGraph.empty().size());
+        assertEquals(ImmutableSet.of(A), DependencyGraph.empty().closure(ImmutableSet.of(A)));
+    }
+}
@@ -42,7 +42,7 @@ import com.google.common.io.Resources;
 public class TestProfilingAdvice implements IntegrationTest {
 
     @Autowired
-    private MinimizationStrategy<SourceFile, JarFile, ClassStream> indexedMinimizationStrategy;
+    private MinimizationStrategy<SourceFile, File, ClassStream> indexedMinimizationStrategy;
 
     @Autowired
     private LibraryIndex modeShapeIndex;
@@ -96,6 +96,18 @@ public class TestProfilingAdvice implements IntegrationTest {
         assertTrue("No status updates received", statusUpdateMsgs.size() > 0);
     }
 
+    @Test
+    public void indexContainsPostsFilterStatistics() {
+
+        // no indexing here, the filter answers whether or not other tests indexed already
+        final Set<String> statusUpdateMsgs = subscribeForUpdates();
+
+        modeShapeIndex.contains(new ClassName("javax.servlet.http.HttpServlet"));
+
+        assertTrue("No status updates received", statusUpdateMsgs.size() > 0);
+        assertTrue("No filter statistics received", statusUpdateMsgs.iterator().next().contains("filter"));
+    }
+
     @Test
     public void indexIndexPostsStatusUpdates() {
 
@@ -118,13 +130,9 @@ public class TestProfilingAdvice implements IntegrationTest {
                         .collect(Collectors.toList())
         );
         final Set<File> libraries = Files.in(pathToLibraries).withExtension(JarMaker.JAR_FILE_EXTENSION).all();
-        final Set<JarFile> jarLibraries = Sets.newHashSetWithExpectedSize(libraries.size());
-        for (File lib : libraries) {
-            jarLibraries.add(new JarFile(lib));
-        }
 
         final Set<String> statusUpdateMsgs = subscribeForUpdates();
-        indexedMinimizationStrategy.minimize(sourceFiles, jarLibraries);
+        indexedMinimizationStrategy.minimize(sourceFiles, libraries);
 
         assertTrue("No status updates received", statusUpdateMsgs.size() > 0);
     }
@@ -0,0 +1,60 @@
+package org.codarama.diet.index;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.index.IndexStatistics}.
+ */
+public class TestIndexStatistics {
+
+    private static final File JAR = new File("/libs/first.jar");
+    private static final File OTHER_JAR = new File("/libs/second.jar");
+
+    @Test
+    public void recordJar() {
+        final IndexStatistics statistics = new IndexStatistics();
+        statistics.recordJar(new JarStatistics(JAR, 10, 1000, 3000, 0));
+        statistics.recordJar(new JarStatistics(OTHER_JAR, 5, 500, 1500, 2));
+
+        assertEquals(2, statistics.jars());
+        assertEquals(10 + 5 - 2, statistics.classes());
+        assertEquals(2, statistics.duplicates());
+        assertEquals(1500, statistics.compressedBytes());
+        assertEquals(4500, statistics.uncompressedBytes());
+        assertEquals(new JarStatistics(OTHER_JAR, 5, 500, 1500, 2), statistics.jar(OTHER_JAR));
+        assertEquals(2, statistics.perJar().size());
+    }
+
+    @Test
+    public void recordJarAgain() {
+        final IndexStatistics statistics = new IndexStatistics();
+        statistics.recordJar(new JarStatistics(JAR, 10, 1000, 3000, 0));
+        statistics.recordJar(new JarStatistics(JAR, 4, 400, 1200, 1));
+
+        assertEquals(1, statistics.jars());
+        assertEquals(3, statistics.classes());
+        assertEquals(400, statistics.compressedBytes());
+    }
+
+    @Test
+    public void dropJar() {
+        final IndexStatistics statistics = new IndexStatistics();
+        statistics.recordJar(new JarStatistics(JAR, 10, 1000, 3000, 0));
+        statistics.recordJar(new JarStatistics(OTHER_JAR, 5, 500, 1500, 2));
+
+        statistics.dropJar(JAR);
+        assertEquals(1, statistics.jars());
+        assertEquals(3, statistics.classes());
+        assertNull(statistics.jar(JAR));
+
+        statistics.clear();
+        assertEquals(0, statistics.jars());
+        assertEquals(0, statistics.classes());
+        assertEquals(0, statistics.duplicates());
+        assertEquals(0, statistics.uncompressedBytes());
+    }
+}
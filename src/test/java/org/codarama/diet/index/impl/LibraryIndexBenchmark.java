@@ -0,0 +1,120 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Resources;
+import org.codarama.diet.index.LibraryIndex;
+import org.codarama.diet.model.ClassFile;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.test.util.suite.IntegrationTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the lookup throughput of the {@link org.codarama.diet.index.LibraryIndex} implementations.
+ * Every class in the test libraries is looked up the way {@link org.codarama.diet.minimization.impl.IndexedMinimizationStrategy}
+ * does it, a contains followed by a get, and the lookups per second are logged for each index.
+ */
+@Category(IntegrationTest.class)
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration({"classpath:META-INF/test-contexts/testLibraryIndexBenchmark.xml"})
+public class LibraryIndexBenchmark implements IntegrationTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LibraryIndexBenchmark.class);
+
+    private static final String CLASS_FILE_SUFFIX = "." + ClassFile.EXTENSION;
+
+    @Autowired
+    private LibraryIndex hashIndex;
+
+    @Autowired
+    private LibraryIndex mappedIndex;
+
+    @Autowired
+    private LibraryIndex mvStoreIndex;
+
+    @Autowired
+    private LibraryIndex modeShapeIndex;
+
+    private Set<JarFile> libs;
+    private List<ClassName> names;
+
+    @Before
+    public void init() throws URISyntaxException, IOException {
+        this.libs = Sets.newHashSet(
+                new JarFile(Resources.getResource("test-classes/lib/aspectjweaver-1.6.12.jar").toURI().getPath()),
+                new JarFile(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI().getPath()),
+                new JarFile(Resources.getResource("test-classes/lib/primefaces-3.5.jar").toURI().getPath())
+        );
+
+        this.names = Lists.newArrayList();
+        for (JarFile lib : libs) {
+            final Enumeration<JarEntry> entries = lib.entries();
+            while (entries.hasMoreElements()) {
+                final String entryName = entries.nextElement().getName();
+                if (entryName.endsWith(CLASS_FILE_SUFFIX)) {
+                    names.add(new ClassName(entryName
+                            .substring(0, entryName.length() - CLASS_FILE_SUFFIX.length())
+                            .replace('/', '.')));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lookupThroughput() {
+        final long hashLookups = measure("hash index", hashIndex);
+        final long mappedLookups = measure("mapped index", mappedIndex);
+        final long mvStoreLookups = measure("MVStore index", mvStoreIndex);
+        final long modeShapeLookups = measure("ModeShape index", modeShapeIndex);
+
+        LOG.info("hash index does: " + hashLookups / Math.max(modeShapeLookups, 1) + "x the lookups of the ModeShape index");
+        LOG.info("mapped index does: " + mappedLookups / Math.max(modeShapeLookups, 1) + "x the lookups of the ModeShape index");
+        LOG.info("MVStore index does: " + mvStoreLookups / Math.max(modeShapeLookups, 1) + "x the lookups of the ModeShape index");
+    }
+
+    private long measure(String indexName, LibraryIndex index) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        index.index(libs);
+        LOG.info(indexName + " indexed " + names.size() + " classes in: " + stopwatch.stop());
+
+        stopwatch = Stopwatch.createStarted();
+        int found = 0;
+        for (ClassName name : names) {
+            if (index.contains(name)) {
+                index.get(name);
+                found++;
+            }
+        }
+        stopwatch.stop();
+
+        assertEquals(names.size(), found);
+        assertTrue(index.size() > 0);
+
+        final long elapsedMicros = Math.max(stopwatch.elapsed(TimeUnit.MICROSECONDS), 1);
+        final long lookupsPerSecond = names.size() * TimeUnit.SECONDS.toMicros(1) / elapsedMicros;
+
+        LOG.info(indexName + " looked up " + found + " classes in: " + stopwatch + ", " + lookupsPerSecond + " lookups/s");
+        return lookupsPerSecond;
+    }
+}
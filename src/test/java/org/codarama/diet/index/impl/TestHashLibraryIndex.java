@@ -0,0 +1,236 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Resources;
+import org.codarama.diet.index.ClassHandle;
+import org.codarama.diet.index.IndexStatistics;
+import org.codarama.diet.index.JarStatistics;
+import org.codarama.diet.index.LibraryIndex;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.index.impl.HashLibraryIndex}.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration({"classpath:META-INF/test-contexts/testHashLibraryIndexContext.xml"})
+public class TestHashLibraryIndex {
+
+    @Autowired
+    private LibraryIndex hashIndex;
+
+    private JarFile primefacesJar;
+
+    @Before
+    public void init() throws URISyntaxException, IOException {
+        final Set<JarFile> toIndex = new HashSet<>();
+        toIndex.add(new JarFile(Resources.getResource("test-classes/lib/aspectjweaver-1.6.12.jar").toURI().getPath()));
+        toIndex.add(new JarFile(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI().getPath()));
+
+        this.primefacesJar = new JarFile(Resources.getResource("test-classes/lib/primefaces-3.5.jar").toURI().getPath());
+        toIndex.add(primefacesJar);
+
+        hashIndex.index(toIndex);
+    }
+
+    @Test
+    public void contains() {
+        assertTrue(hashIndex.contains(new ClassName("org.primefaces.model.DefaultScheduleModel")));
+        assertTrue(hashIndex.contains(new ClassName("org.primefaces.model.DynamicChainedPropertyComparator")));
+        assertTrue(hashIndex.contains(new ClassName("org.primefaces.facelets.MethodRule$MethodBindingMetadata")));
+        assertTrue(hashIndex.contains(new ClassName("org.primefaces.push.PushContextImpl$1")));
+        assertTrue(hashIndex.contains(new ClassName("org.aspectj.bridge.MessageUtil$11")));
+        assertTrue(hashIndex.contains(new ClassName("org.aspectj.bridge.MessageUtil$IMessageRenderer")));
+        assertTrue(hashIndex.contains(new ClassName("org.apache.commons.lang3.event.EventListenerSupport$ProxyInvocationHandler")));
+
+        assertFalse(hashIndex.contains(new ClassName("non.existent.clazz.Name")));
+        assertFalse(hashIndex.contains(new ClassName("org.primefaces.model")));
+    }
+
+    @Test
+    public void singleJarIndex() {
+        final long sizeBefore = hashIndex.size();
+
+        // indexing a jar twice should not add its classes again
+        hashIndex.index(primefacesJar);
+
+        assertEquals(sizeBefore, hashIndex.size());
+        assertTrue(hashIndex.contains(new ClassName("org.primefaces.model.DefaultScheduleModel")));
+    }
+
+    @Test
+    public void find() throws IOException {
+        ClassName testName = new ClassName("org.primefaces.model.DefaultScheduleModel");
+        ClassStream found = hashIndex.find(testName);
+
+        assertNotNull(found);
+        assertEquals(found.name(), testName);
+        assertTrue(found.content().available() > 0);
+
+        testName = new ClassName("org.aspectj.bridge.MessageUtil$11");
+        found = hashIndex.find(testName);
+
+        assertNotNull(found);
+        assertEquals(found.name(), testName);
+        assertTrue(found.content().available() > 0);
+
+        Assert.assertNull(hashIndex.find(new ClassName("non.existent.clazz.Name")));
+    }
+
+    @Test
+    public void get() throws IOException {
+        final ClassName testName = new ClassName("org.primefaces.facelets.MethodRule$MethodBindingMetadata");
+        final ClassStream found = hashIndex.get(testName);
+
+        assertNotNull(found);
+        assertEquals(found.name(), testName);
+        assertTrue(found.content().available() > 0);
+
+        try {
+            hashIndex.get(new ClassName("non.existent.clazz.Name"));
+        } catch (IllegalStateException e) {
+            return; //yay
+        }
+        Assert.fail(); // awww
+    }
+
+    @Test
+    public void lookup() throws IOException {
+        final ClassName testName = new ClassName("org.apache.commons.lang3.event.EventListenerSupport$ProxyInvocationHandler");
+        final ClassHandle found = hashIndex.lookup(testName);
+
+        assertNotNull(found);
+        assertEquals(testName, found.name());
+        assertTrue(found.stream().content().available() > 0);
+
+        assertNull(hashIndex.lookup(new ClassName("non.existent.clazz.Name")));
+    }
+
+    @Test
+    public void getAll() throws IOException {
+        final ClassName primefaces = new ClassName("org.primefaces.model.DefaultScheduleModel");
+        final ClassName aspectj = new ClassName("org.aspectj.bridge.MessageUtil$11");
+        final ClassName aspectjToo = new ClassName("org.aspectj.bridge.MessageUtil$IMessageRenderer");
+        final ClassName missing = new ClassName("non.existent.clazz.Name");
+
+        final Map<ClassName, ClassStream> found = hashIndex.getAll(Lists.newArrayList(aspectjToo, primefaces, missing, aspectj));
+
+        assertEquals(Sets.newHashSet(primefaces, aspectj, aspectjToo), found.keySet());
+        for (Map.Entry<ClassName, ClassStream> entry : found.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue().name());
+            assertArrayEquals(ByteStreams.toByteArray(hashIndex.get(entry.getKey()).content()),
+                    ByteStreams.toByteArray(entry.getValue().content()));
+        }
+    }
+
+    @Test
+    public void classesMatching() {
+        final Set<ClassName> inPackage = hashIndex.classesMatching("org.apache.commons.lang3.event.*");
+        assertTrue(inPackage.contains(new ClassName("org.apache.commons.lang3.event.EventListenerSupport")));
+        assertTrue(inPackage.contains(new ClassName("org.apache.commons.lang3.event.EventListenerSupport$ProxyInvocationHandler")));
+        for (ClassName name : inPackage) {
+            assertTrue(hashIndex.contains(name));
+        }
+
+        final Set<ClassName> underPackage = hashIndex.classesMatching("org.apache.commons.lang3.**");
+        assertTrue(underPackage.containsAll(inPackage));
+        assertTrue(underPackage.contains(new ClassName("org.apache.commons.lang3.StringUtils")));
+        assertFalse(underPackage.contains(new ClassName("org.aspectj.bridge.MessageUtil$11")));
+
+        assertTrue(hashIndex.classesMatching("non.existent.**").isEmpty());
+    }
+
+    @Test
+    public void statistics() throws URISyntaxException {
+        final IndexStatistics statistics = hashIndex.statistics();
+
+        assertEquals(3, statistics.jars());
+        assertEquals(877 + 153 + 621, statistics.classes());
+        assertEquals(0, statistics.duplicates());
+        assertTrue(statistics.compressedBytes() > 0);
+        assertTrue(statistics.uncompressedBytes() > statistics.compressedBytes());
+
+        final File jar = new File(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI());
+        final JarStatistics jarStatistics = statistics.jar(jar.getAbsoluteFile());
+        assertEquals(153, jarStatistics.classes());
+        assertEquals(153, jarStatistics.indexedClasses());
+        assertTrue(jarStatistics.uncompressedBytes() > jarStatistics.compressedBytes());
+    }
+
+    @Test
+    public void snapshot() throws URISyntaxException, IOException {
+        final LibraryIndex index = HashLibraryIndex.withExpectedSize(0);
+        index.index(new JarFile(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI().getPath()));
+
+        final LibraryIndex snapshot = index.snapshot();
+        index.index(primefacesJar);
+
+        // classes indexed after the snapshot was taken are not in it
+        final ClassName primefaces = new ClassName("org.primefaces.model.DefaultScheduleModel");
+        assertTrue(index.contains(primefaces));
+        assertFalse(snapshot.contains(primefaces));
+        assertTrue(snapshot.classesMatching("org.primefaces.**").isEmpty());
+
+        assertTrue(snapshot.find(new ClassName("org.apache.commons.lang3.StringUtils")).content().available() > 0);
+        assertEquals(153, snapshot.size());
+        assertEquals(1, snapshot.statistics().jars());
+
+        try {
+            snapshot.index(primefacesJar);
+        } catch (UnsupportedOperationException e) {
+            return;
+        }
+        fail();
+    }
+
+    @Test
+    public void snapshotSharesTable() throws URISyntaxException, IOException {
+        // sized for both jars, so adding the second one writes to the table the snapshot reads
+        final LibraryIndex index = HashLibraryIndex.withExpectedSize(153 + 621);
+        final JarFile commonsJar = new JarFile(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI().getPath());
+        index.index(commonsJar);
+
+        final LibraryIndex snapshot = index.snapshot();
+        index.index(primefacesJar);
+
+        for (String className : ((IndexSnapshot) snapshot).classNames()) {
+            assertTrue(snapshot.contains(new ClassName(className)));
+        }
+        final IndexSnapshot after = (IndexSnapshot) index.snapshot();
+        int primefacesClasses = 0;
+        for (String className : after.classNames()) {
+            if (className.startsWith("org.primefaces.")) {
+                assertFalse(snapshot.contains(new ClassName(className)));
+                primefacesClasses++;
+            }
+        }
+        assertEquals(621, primefacesClasses);
+        assertEquals(153, snapshot.size());
+        assertEquals(153 + 621, after.size());
+    }
+
+    @Test
+    public void size() {
+        // aspectjweaver, commons-lang3 and primefaces .class entries
+        assertEquals(877 + 153 + 621, hashIndex.size());
+    }
+}
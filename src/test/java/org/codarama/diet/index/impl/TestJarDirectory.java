@@ -0,0 +1,252 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.model.ClassFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.index.impl.JarDirectory}.
+ */
+public class TestJarDirectory {
+
+    @Test
+    public void classesIn() throws URISyntaxException, IOException {
+        final File jar = new File(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI());
+        final List<ClassLocator> locators = JarDirectory.classesIn(jar);
+
+        assertEquals(153, locators.size());
+
+        try (JarFile jarFile = new JarFile(jar)) {
+            for (ClassLocator locator : locators) {
+                final JarEntry entry = jarFile.getJarEntry(locator.entryName());
+
+                assertNotNull(entry);
+                assertEquals(entry.getSize(), locator.size());
+                assertEquals(entry.getCompressedSize(), locator.compressedSize());
+                assertEquals(JarDirectory.toClassName(entry.getName()), locator.className());
+
+                try (InputStream expected = jarFile.getInputStream(entry)) {
+                    assertArrayEquals(ByteStreams.toByteArray(expected), locator.read());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void classesInSkipsNonClassEntries() throws URISyntaxException, IOException {
+        final File jar = new File(Resources.getResource("test-classes/lib/primefaces-3.5.jar").toURI());
+
+        int classEntries = 0;
+        try (JarFile jarFile = new JarFile(jar)) {
+            final Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                if (entries.nextElement().getName().endsWith("." + ClassFile.EXTENSION)) {
+                    classEntries++;
+                }
+            }
+        }
+
+        assertEquals(classEntries, JarDirectory.classesIn(jar).size());
+    }
+
+    @Test
+    public void toClassName() {
+        assertEquals("org.primefaces.push.PushContextImpl$1", JarDirectory.toClassName("org/primefaces/push/PushContextImpl$1.class"));
+        assertNull(JarDirectory.toClassName("META-INF/MANIFEST.MF"));
+        assertNull(JarDirectory.toClassName("org/primefaces/"));
+        assertNull(JarDirectory.toClassName("module-info.class"));
+        assertEquals("com.google.common.base.package-info", JarDirectory.toClassName("com/google/common/base/package-info.class"));
+    }
+
+    @Test
+    public void modular() throws URISyntaxException, IOException {
+        final File jar = modularJar();
+
+        // module declarations are no classes, at the root, for a release or in a class directory
+        assertEquals(1, JarDirectory.classesIn(jar, 11).size());
+        assertEquals("com.ayld.test.jar.Whatever", JarDirectory.classesIn(jar, 11).get(0).className());
+        assertEquals(1, JarDirectory.of(explode(jar)).classes().size());
+    }
+
+    @Test
+    public void multiRelease() throws IOException {
+        final File jar = multiReleaseJar("true");
+
+        final List<ClassLocator> base = JarDirectory.classesIn(jar);
+        assertEquals(1, base.size());
+        assertEquals("com/ayld/test/mr/Versioned.class", base.get(0).entryName());
+
+        final List<ClassLocator> java10 = JarDirectory.classesIn(jar, 10);
+        assertEquals(1, java10.size());
+        assertEquals("com.ayld.test.mr.Versioned", java10.get(0).className());
+        assertArrayEquals(new byte[]{9}, java10.get(0).read());
+
+        final List<ClassLocator> java11 = JarDirectory.classesIn(jar, 11);
+        assertEquals(2, java11.size());
+        assertEquals("com.ayld.test.mr.Versioned", java11.get(0).className());
+        assertArrayEquals(new byte[]{11}, java11.get(0).read());
+        assertEquals("com.ayld.test.mr.Added", java11.get(1).className());
+    }
+
+    @Test
+    public void notMultiRelease() throws IOException {
+        final File jar = multiReleaseJar("false");
+
+        final List<ClassLocator> java11 = JarDirectory.classesIn(jar, 11);
+        assertEquals(1, java11.size());
+        assertArrayEquals(new byte[]{8}, java11.get(0).read());
+    }
+
+    @Test
+    public void releaseOf() {
+        assertEquals(JarDirectory.BASE_RELEASE, JarDirectory.releaseOf("org/primefaces/push/PushContextImpl$1.class"));
+        assertEquals(11, JarDirectory.releaseOf("META-INF/versions/11/org/primefaces/push/PushContextImpl$1.class"));
+        assertEquals(-1, JarDirectory.releaseOf("META-INF/versions/eleven/org/primefaces/push/PushContextImpl$1.class"));
+        assertEquals(-1, JarDirectory.releaseOf("META-INF/versions/Foo.class"));
+    }
+
+    @Test
+    public void classDirectory() throws URISyntaxException, IOException {
+        final File jar = new File(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI());
+        final File classDir = explode(jar);
+        Files.write(new byte[]{1}, new File(classDir, "META-INF/Ignored.class"));
+
+        final JarDirectory directory = JarDirectory.of(classDir);
+        assertEquals(classDir.getAbsoluteFile(), directory.jar());
+        assertEquals(153, directory.classes().size());
+
+        try (JarFile jarFile = new JarFile(jar)) {
+            for (ClassLocator locator : directory.classes()) {
+                assertTrue(locator.isInDirectory());
+                assertEquals(JarDirectory.toClassName(locator.entryName()), locator.className());
+
+                try (InputStream expected = jarFile.getInputStream(jarFile.getJarEntry(locator.entryName()))) {
+                    assertArrayEquals(ByteStreams.toByteArray(expected), locator.read());
+                }
+            }
+        }
+
+        // the same files have the same hash, a changed file changes it
+        assertEquals(directory.hash(), JarDirectory.of(classDir).hash());
+        Files.write(new byte[]{1}, new File(classDir, directory.classes().get(0).entryName()));
+        assertNotEquals(directory.hash(), JarDirectory.of(classDir).hash());
+    }
+
+    @Test
+    public void unsupportedCompression() throws IOException {
+        final File jar = new File(Files.createTempDir(), "bzip2.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            addEntry(out, "com/ayld/test/Kept.class", 1);
+            addEntry(out, "com/ayld/test/Bzipped.class", 2);
+        }
+
+        // marks the second class as compressed with bzip2 in the central directory
+        final byte[] bytes = Files.toByteArray(jar);
+        final byte[] name = "com/ayld/test/Bzipped.class".getBytes(Charsets.UTF_8);
+        for (int i = 0; i + 46 + name.length <= bytes.length; i++) {
+            final boolean isDirectoryEntry = bytes[i] == 0x50 && bytes[i + 1] == 0x4b && bytes[i + 2] == 0x01 && bytes[i + 3] == 0x02;
+            if (isDirectoryEntry && Arrays.equals(name, Arrays.copyOfRange(bytes, i + 46, i + 46 + name.length))) {
+                bytes[i + 10] = 12;
+                bytes[i + 11] = 0;
+            }
+        }
+        Files.write(bytes, jar);
+
+        // the entry is skipped, not the jar
+        final List<ClassLocator> classes = JarDirectory.classesIn(jar);
+        assertEquals(1, classes.size());
+        assertEquals("com.ayld.test.Kept", classes.get(0).className());
+        assertArrayEquals(new byte[]{1}, classes.get(0).read());
+    }
+
+    @Test(expected = IOException.class)
+    public void classesInNotAJar() throws URISyntaxException, IOException {
+        JarDirectory.classesIn(new File(Resources.getResource("testIndexConf.json").toURI()));
+    }
+
+    // extracts the entries of a jar to a new class directory
+    static File explode(File jar) throws IOException {
+        final File result = Files.createTempDir();
+        try (JarFile jarFile = new JarFile(jar)) {
+            final Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+
+                final File file = new File(result, entry.getName());
+                Files.createParentDirs(file);
+                try (InputStream content = jarFile.getInputStream(entry)) {
+                    Files.write(ByteStreams.toByteArray(content), file);
+                }
+            }
+        }
+        return result;
+    }
+
+    // a multi-release jar of a module with one class, declaring the module for the base release and for 9
+    static File modularJar() throws URISyntaxException, IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(new Attributes.Name("Multi-Release"), "true");
+
+        final File result = new File(Files.createTempDir(), "modular.jar");
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(result), manifest);
+             JarFile classes = new JarFile(new File(Resources.getResource("test-classes/test-lib-dir/jar1.jar").toURI()))) {
+            addEntry(jar, "module-info.class", 8);
+            addEntry(jar, "META-INF/versions/9/module-info.class", 9);
+
+            final String className = "com/ayld/test/jar/Whatever.class";
+            jar.putNextEntry(new JarEntry(className));
+            try (InputStream content = classes.getInputStream(classes.getJarEntry(className))) {
+                ByteStreams.copy(content, jar);
+            }
+            jar.closeEntry();
+        }
+        return result;
+    }
+
+    // a class with variants for the base release, 9 and 11, a class added in 11 and a resource of 11
+    static File multiReleaseJar(String multiRelease) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(new Attributes.Name("Multi-Release"), multiRelease);
+
+        final File result = new File(Files.createTempDir(), "multi-release.jar");
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(result), manifest)) {
+            addEntry(jar, "com/ayld/test/mr/Versioned.class", 8);
+            addEntry(jar, "META-INF/versions/11/com/ayld/test/mr/Versioned.class", 11);
+            addEntry(jar, "META-INF/versions/9/com/ayld/test/mr/Versioned.class", 9);
+            addEntry(jar, "META-INF/versions/11/com/ayld/test/mr/Added.class", 11);
+            addEntry(jar, "META-INF/versions/11/com/ayld/test/mr/added.properties", 11);
+        }
+        return result;
+    }
+
+    private static void addEntry(JarOutputStream jar, String name, int content) throws IOException {
+        jar.putNextEntry(new JarEntry(name));
+        jar.write(content);
+        jar.closeEntry();
+    }
+}
@@ -0,0 +1,158 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.codarama.diet.index.ByteStoreStatistics;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.index.impl.LruClassByteStore}.
+ */
+public class TestLruClassByteStore {
+
+    private ClassLocator first;
+    private ClassLocator second;
+    private ClassLocator third;
+
+    private byte[] firstBytes;
+    private byte[] secondBytes;
+
+    private File spillDir;
+
+    @Before
+    public void init() throws URISyntaxException, IOException {
+        final List<ClassLocator> locators = JarDirectory.classesIn(
+                new File(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI())
+        );
+        this.first = locators.get(0);
+        this.second = locators.get(1);
+        this.third = locators.get(2);
+        this.firstBytes = first.read();
+        this.secondBytes = second.read();
+
+        this.spillDir = Files.createTempDir();
+    }
+
+    @Test
+    public void withinBudget() throws IOException {
+        final LruClassByteStore store = LruClassByteStore.withBudget(firstBytes.length + secondBytes.length, spillDir);
+
+        final ClassStream stream = store.put(first.name(), firstBytes, first);
+        store.put(second.name(), secondBytes, second);
+
+        assertEquals(first.name(), stream.name());
+        assertArrayEquals(firstBytes, ByteStreams.toByteArray(stream.content()));
+        assertEquals(firstBytes.length + secondBytes.length, store.memoryBytes());
+
+        final ByteStoreStatistics statistics = store.statistics();
+        assertEquals(1, statistics.hits());
+        assertEquals(0, statistics.evictions());
+
+        // the stored bytes are handed out as they are, not copied
+        assertSame(firstBytes, stream.bytes());
+    }
+
+    @Test
+    public void reloadFromJar() {
+        final LruClassByteStore store = LruClassByteStore.withBudget(firstBytes.length, spillDir);
+
+        store.put(first.name(), firstBytes, first);
+        store.put(second.name(), secondBytes, second);
+        assertTrue(store.memoryBytes() <= Math.max(firstBytes.length, secondBytes.length));
+
+        // the least recently used one was dropped and is read from its jar again
+        assertArrayEquals(firstBytes, store.get(first.name()));
+
+        final ByteStoreStatistics statistics = store.statistics();
+        assertTrue(statistics.evictions() > 0);
+        assertEquals(0, statistics.spills());
+        assertEquals(1, statistics.reloads());
+        assertEquals(0, statistics.spillReads());
+        assertEquals(0, spillDir.list().length);
+    }
+
+    @Test
+    public void reloadFromSpill() {
+        final LruClassByteStore store = LruClassByteStore.withBudget(firstBytes.length, spillDir);
+
+        store.put(first.name(), firstBytes, null);
+        store.put(second.name(), secondBytes, null);
+
+        assertArrayEquals(firstBytes, store.get(first.name()));
+        assertArrayEquals(secondBytes, store.get(second.name()));
+
+        final ByteStoreStatistics statistics = store.statistics();
+        // bytes are spilled once, evicting them again only drops them
+        assertEquals(3, statistics.evictions());
+        assertEquals(2, statistics.spills());
+        assertEquals(2, statistics.spillReads());
+        assertEquals(1, spillDir.list().length);
+    }
+
+    @Test
+    public void leastRecentlyUsedFirst() {
+        final LruClassByteStore store = LruClassByteStore.withBudget(firstBytes.length + secondBytes.length, spillDir);
+
+        store.put(first.name(), firstBytes, first);
+        store.put(second.name(), secondBytes, second);
+
+        // reading the first makes the second the least recently used
+        store.get(first.name());
+        store.put(third.name(), new byte[secondBytes.length], third);
+
+        store.get(first.name());
+        assertEquals(0, store.statistics().reloads());
+        store.get(second.name());
+        assertEquals(1, store.statistics().reloads());
+    }
+
+    @Test
+    public void addTwice() {
+        final LruClassByteStore store = LruClassByteStore.withBudget(Long.MAX_VALUE, spillDir);
+
+        store.put(first.name(), firstBytes, first);
+        store.put(first.name(), secondBytes, second);
+
+        assertTrue(store.contains(first.name()));
+        assertArrayEquals(firstBytes, store.get(first.name()));
+        assertEquals(firstBytes.length, store.memoryBytes());
+    }
+
+    @Test
+    public void closeDeletesSpill() throws IOException {
+        final LruClassByteStore store = LruClassByteStore.withBudget(firstBytes.length, spillDir);
+
+        store.put(first.name(), firstBytes, null);
+        store.put(second.name(), secondBytes, null);
+        assertEquals(1, spillDir.list().length);
+
+        store.close();
+        assertEquals(0, spillDir.list().length);
+        assertEquals(0, store.memoryBytes());
+
+        try {
+            store.get(first.name());
+            fail("expected a closed store");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        store.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missing() {
+        LruClassByteStore.withBudget(Long.MAX_VALUE, spillDir).get(new ClassName("non.existent.clazz.Name"));
+    }
+}
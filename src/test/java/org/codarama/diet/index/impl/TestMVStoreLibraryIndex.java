@@ -0,0 +1,275 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.codarama.diet.index.ClassHandle;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.index.IndexStatistics;
+import org.codarama.diet.index.JarStatistics;
+import org.codarama.diet.index.LibraryIndex;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.index.impl.MVStoreLibraryIndex}.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration({"classpath:META-INF/test-contexts/testMVStoreLibraryIndexContext.xml"})
+public class TestMVStoreLibraryIndex {
+
+    @Autowired
+    private String storeFile;
+
+    @Autowired
+    private LibraryIndex mvStoreIndex;
+
+    private Set<JarFile> toIndex;
+
+    @Before
+    public void init() throws URISyntaxException, IOException {
+        this.toIndex = new HashSet<>();
+        toIndex.add(new JarFile(Resources.getResource("test-classes/lib/aspectjweaver-1.6.12.jar").toURI().getPath()));
+        toIndex.add(new JarFile(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI().getPath()));
+        toIndex.add(new JarFile(Resources.getResource("test-classes/lib/primefaces-3.5.jar").toURI().getPath()));
+
+        mvStoreIndex.index(toIndex);
+    }
+
+    @Test
+    public void contains() {
+        assertTrue(mvStoreIndex.contains(new ClassName("org.primefaces.model.DefaultScheduleModel")));
+        assertTrue(mvStoreIndex.contains(new ClassName("org.primefaces.facelets.MethodRule$MethodBindingMetadata")));
+        assertTrue(mvStoreIndex.contains(new ClassName("org.aspectj.bridge.MessageUtil$11")));
+        assertTrue(mvStoreIndex.contains(new ClassName("org.apache.commons.lang3.event.EventListenerSupport$ProxyInvocationHandler")));
+
+        assertFalse(mvStoreIndex.contains(new ClassName("non.existent.clazz.Name")));
+        assertFalse(mvStoreIndex.contains(new ClassName("org.primefaces.model")));
+    }
+
+    @Test
+    public void lookup() throws IOException {
+        final ClassName testName = new ClassName("org.apache.commons.lang3.event.EventListenerSupport$ProxyInvocationHandler");
+        final ClassHandle found = mvStoreIndex.lookup(testName);
+
+        assertTrue(found instanceof ClassLocator);
+        assertEquals(testName, found.name());
+        assertTrue(found.stream().content().available() > 0);
+
+        assertNull(mvStoreIndex.lookup(new ClassName("non.existent.clazz.Name")));
+    }
+
+    @Test
+    public void get() throws IOException {
+        final ClassName testName = new ClassName("org.primefaces.facelets.MethodRule$MethodBindingMetadata");
+        final ClassStream found = mvStoreIndex.get(testName);
+
+        assertNotNull(found);
+        assertEquals(found.name(), testName);
+        assertTrue(found.content().available() > 0);
+
+        try {
+            mvStoreIndex.get(new ClassName("non.existent.clazz.Name"));
+        } catch (IllegalStateException e) {
+            return; //yay
+        }
+        Assert.fail(); // awww
+    }
+
+    @Test
+    public void classesMatching() {
+        final Set<ClassName> inPackage = mvStoreIndex.classesMatching("org.apache.commons.lang3.event.*");
+        assertTrue(inPackage.contains(new ClassName("org.apache.commons.lang3.event.EventListenerSupport")));
+
+        final Set<ClassName> underPackage = mvStoreIndex.classesMatching("org.apache.commons.lang3.**");
+        assertTrue(underPackage.containsAll(inPackage));
+        assertFalse(underPackage.contains(new ClassName("org.aspectj.bridge.MessageUtil$11")));
+    }
+
+    @Test
+    public void statistics() throws URISyntaxException {
+        final IndexStatistics statistics = mvStoreIndex.statistics();
+
+        assertEquals(3, statistics.jars());
+        assertEquals(877 + 153 + 621, statistics.classes());
+        assertEquals(0, statistics.duplicates());
+        assertTrue(statistics.compressedBytes() > 0);
+        assertTrue(statistics.uncompressedBytes() > statistics.compressedBytes());
+
+        final File jar = new File(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI());
+        final JarStatistics jarStatistics = statistics.jar(jar.getAbsoluteFile());
+        assertEquals(153, jarStatistics.classes());
+        assertEquals(153, jarStatistics.indexedClasses());
+        assertTrue(jarStatistics.uncompressedBytes() > jarStatistics.compressedBytes());
+    }
+
+    @Test
+    public void size() {
+        assertEquals(877 + 153 + 621, mvStoreIndex.size());
+    }
+
+    @Test
+    public void warmStart() {
+        final File store = new File(storeFile);
+
+        // a later run opens the same store, the shared one is closed as a finished run would close it
+        ((MVStoreLibraryIndex) mvStoreIndex).close();
+        final long modifiedBefore = store.lastModified();
+
+        final MVStoreLibraryIndex warmIndex = MVStoreLibraryIndex.inFile(storeFile);
+        try {
+            assertEquals(877 + 153 + 621, warmIndex.size());
+            assertTrue(warmIndex.contains(new ClassName("org.primefaces.model.DefaultScheduleModel")));
+
+            // the same unchanged jars, so nothing is written
+            warmIndex.index(toIndex);
+            assertEquals(877 + 153 + 621, warmIndex.size());
+        } finally {
+            warmIndex.close();
+        }
+        assertEquals(modifiedBefore, store.lastModified());
+    }
+
+    @Test
+    public void storeBytes() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File jar = copyToDir("test-classes/lib/commons-lang3-3.1.jar", workDir);
+
+        final MVStoreLibraryIndex index = MVStoreLibraryIndex.inFile(new File(workDir, "index.mv.db").getPath());
+        index.setStoreBytes(true);
+        try {
+            index.index(Collections.singleton(new JarFile(jar)));
+
+            final ClassName testName = new ClassName("org.apache.commons.lang3.StringUtils");
+            final byte[] expected = ByteStreams.toByteArray(mvStoreIndex.get(testName).content());
+
+            // the stored bytes outlive the jar
+            assertTrue(jar.delete());
+            assertArrayEquals(expected, ByteStreams.toByteArray(index.get(testName).content()));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void rebuildOnChange() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File jar = copyToDir("test-classes/test-lib-dir/jar1.jar", workDir);
+        final File otherJar = copyToDir("test-classes/test-lib-dir/jar2.jar", workDir);
+
+        final MVStoreLibraryIndex index = MVStoreLibraryIndex.inFile(new File(workDir, "index.mv.db").getPath());
+        try {
+            final Set<JarFile> libs = Sets.newHashSet(new JarFile(jar), new JarFile(otherJar));
+
+            index.index(libs);
+            assertEquals(2, index.size());
+
+            // a different jar in place of the first one
+            Files.copy(new File(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI()), jar);
+            index.index(libs);
+
+            assertEquals(153 + 1, index.size());
+            assertTrue(index.contains(new ClassName("org.apache.commons.lang3.StringUtils")));
+
+            // jars no longer indexed are dropped
+            index.index(Collections.singleton(new JarFile(otherJar)));
+            assertEquals(1, index.size());
+            assertFalse(index.contains(new ClassName("org.apache.commons.lang3.StringUtils")));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void dropShadowingJar() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File jar = copyToDir("test-classes/test-lib-dir/jar1.jar", workDir);
+        final File copy = new File(workDir, "copy.jar");
+        Files.copy(jar, copy);
+
+        final MVStoreLibraryIndex index = MVStoreLibraryIndex.inFile(new File(workDir, "index.mv.db").getPath());
+        try {
+            index.index(new JarFile(jar));
+            index.index(new JarFile(copy));
+            assertEquals(1, index.size());
+
+            // the class of the dropped jar is still in the kept copy
+            index.index(Collections.singleton(new JarFile(copy)));
+            assertEquals(1, index.size());
+
+            final ClassHandle found = index.lookup(index.classesMatching("**").iterator().next());
+            assertEquals(copy.getAbsoluteFile(), ((ClassLocator) found).jar());
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void snapshot() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File jar = copyToDir("test-classes/test-lib-dir/jar1.jar", workDir);
+        final File otherJar = copyToDir("test-classes/test-lib-dir/jar2.jar", workDir);
+
+        final MVStoreLibraryIndex index = MVStoreLibraryIndex.inFile(new File(workDir, "index.mv.db").getPath());
+        final LibraryIndex snapshot;
+        try {
+            index.index(Sets.newHashSet(new JarFile(jar), new JarFile(otherJar)));
+            snapshot = index.snapshot();
+            assertSame(snapshot, index.snapshot());
+
+            index.index(Collections.singleton(new JarFile(otherJar)));
+            assertEquals(1, index.size());
+            assertNotSame(snapshot, index.snapshot());
+        } finally {
+            index.close();
+        }
+
+        // the snapshot does not need the store
+        final ClassName whatever = new ClassName("com.ayld.test.jar.Whatever");
+        assertTrue(snapshot.get(whatever).content().available() > 0);
+        assertEquals(2, snapshot.size());
+        assertEquals(2, snapshot.statistics().jars());
+    }
+
+    @Test
+    public void singleJarIndex() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final MVStoreLibraryIndex index = MVStoreLibraryIndex.inFile(new File(workDir, "index.mv.db").getPath());
+        try {
+            index.index(new JarFile(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI().getPath()));
+            assertEquals(153, index.size());
+
+            index.index(new JarFile(Resources.getResource("test-classes/lib/primefaces-3.5.jar").toURI().getPath()));
+            assertEquals(153 + 621, index.size());
+            assertTrue(index.contains(new ClassName("org.apache.commons.lang3.StringUtils")));
+            assertTrue(index.contains(new ClassName("org.primefaces.model.DefaultScheduleModel")));
+        } finally {
+            index.close();
+        }
+    }
+
+    private static File copyToDir(String resource, File dir) throws URISyntaxException, IOException {
+        final File source = new File(Resources.getResource(resource).toURI());
+        final File result = new File(dir, source.getName());
+        Files.copy(source, result);
+        return result;
+    }
+}
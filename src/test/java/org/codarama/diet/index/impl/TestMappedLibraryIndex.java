@@ -0,0 +1,481 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.codarama.diet.dependency.DependencyGraph;
+import org.codarama.diet.dependency.resolver.DependencyResolver;
+import org.codarama.diet.dependency.resolver.impl.ClassStreamDependencyResolver;
+import org.codarama.diet.index.ClassHandle;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.index.FilterStatistics;
+import org.codarama.diet.index.FilteredLibraryIndex;
+import org.codarama.diet.index.GraphedLibraryIndex;
+import org.codarama.diet.index.IndexStatistics;
+import org.codarama.diet.index.JarStatistics;
+import org.codarama.diet.index.LibraryIndex;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.index.impl.MappedLibraryIndex}.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration({"classpath:META-INF/test-contexts/testMappedLibraryIndexContext.xml"})
+public class TestMappedLibraryIndex {
+
+    private static final long OLD_TIMESTAMP = 1000L;
+
+    @Autowired
+    private String indexDir;
+
+    @Autowired
+    private LibraryIndex mappedIndex;
+
+    private Set<JarFile> toIndex;
+
+    @Before
+    public void init() throws URISyntaxException, IOException {
+        this.toIndex = new HashSet<>();
+        toIndex.add(new JarFile(Resources.getResource("test-classes/lib/aspectjweaver-1.6.12.jar").toURI().getPath()));
+        toIndex.add(new JarFile(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI().getPath()));
+        toIndex.add(new JarFile(Resources.getResource("test-classes/lib/primefaces-3.5.jar").toURI().getPath()));
+
+        mappedIndex.index(toIndex);
+    }
+
+    @Test
+    public void contains() {
+        assertTrue(mappedIndex.contains(new ClassName("org.primefaces.model.DefaultScheduleModel")));
+        assertTrue(mappedIndex.contains(new ClassName("org.primefaces.facelets.MethodRule$MethodBindingMetadata")));
+        assertTrue(mappedIndex.contains(new ClassName("org.aspectj.bridge.MessageUtil$11")));
+        assertTrue(mappedIndex.contains(new ClassName("org.apache.commons.lang3.event.EventListenerSupport$ProxyInvocationHandler")));
+
+        assertFalse(mappedIndex.contains(new ClassName("non.existent.clazz.Name")));
+        assertFalse(mappedIndex.contains(new ClassName("org.primefaces.model")));
+    }
+
+    @Test
+    public void find() throws IOException {
+        final ClassName testName = new ClassName("org.aspectj.bridge.MessageUtil$11");
+        final ClassStream found = mappedIndex.find(testName);
+
+        assertNotNull(found);
+        assertEquals(found.name(), testName);
+        assertTrue(found.content().available() > 0);
+
+        Assert.assertNull(mappedIndex.find(new ClassName("non.existent.clazz.Name")));
+    }
+
+    @Test
+    public void get() throws IOException {
+        final ClassName testName = new ClassName("org.primefaces.facelets.MethodRule$MethodBindingMetadata");
+        final ClassStream found = mappedIndex.get(testName);
+
+        assertNotNull(found);
+        assertEquals(found.name(), testName);
+
+        try {
+            mappedIndex.get(new ClassName("non.existent.clazz.Name"));
+        } catch (IllegalStateException e) {
+            return; //yay
+        }
+        Assert.fail(); // awww
+    }
+
+    @Test
+    public void lookup() throws IOException {
+        final ClassName testName = new ClassName("org.apache.commons.lang3.event.EventListenerSupport$ProxyInvocationHandler");
+        final ClassHandle found = mappedIndex.lookup(testName);
+
+        assertNotNull(found);
+        assertEquals(testName, found.name());
+        assertTrue(found.stream().content().available() > 0);
+
+        assertNull(mappedIndex.lookup(new ClassName("non.existent.clazz.Name")));
+    }
+
+    @Test
+    public void getAll() throws IOException {
+        final ClassName primefaces = new ClassName("org.primefaces.model.DefaultScheduleModel");
+        final ClassName aspectj = new ClassName("org.aspectj.bridge.MessageUtil$11");
+        final ClassName aspectjToo = new ClassName("org.aspectj.bridge.MessageUtil$IMessageRenderer");
+        final ClassName missing = new ClassName("non.existent.clazz.Name");
+
+        final Map<ClassName, ClassStream> found = mappedIndex.getAll(Lists.newArrayList(aspectjToo, primefaces, missing, aspectj));
+
+        assertEquals(Sets.newHashSet(primefaces, aspectj, aspectjToo), found.keySet());
+        for (Map.Entry<ClassName, ClassStream> entry : found.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue().name());
+            assertArrayEquals(ByteStreams.toByteArray(mappedIndex.get(entry.getKey()).content()),
+                    ByteStreams.toByteArray(entry.getValue().content()));
+        }
+    }
+
+    @Test
+    public void readAll() throws IOException {
+        final ClassName primefaces = new ClassName("org.primefaces.model.DefaultScheduleModel");
+        final ClassName aspectj = new ClassName("org.aspectj.bridge.MessageUtil$11");
+        final ClassName missing = new ClassName("non.existent.clazz.Name");
+
+        final Map<ClassHandle, ClassStream> found = mappedIndex.readAll(Lists.newArrayList(primefaces, missing, aspectj));
+
+        assertEquals(Sets.newHashSet(mappedIndex.lookup(primefaces), mappedIndex.lookup(aspectj)), found.keySet());
+        for (Map.Entry<ClassHandle, ClassStream> entry : found.entrySet()) {
+            assertEquals(entry.getKey().name(), entry.getValue().name());
+        }
+    }
+
+    @Test
+    public void classesMatching() {
+        final Set<ClassName> inPackage = mappedIndex.classesMatching("org.apache.commons.lang3.event.*");
+        assertTrue(inPackage.contains(new ClassName("org.apache.commons.lang3.event.EventListenerSupport")));
+        assertTrue(inPackage.contains(new ClassName("org.apache.commons.lang3.event.EventListenerSupport$ProxyInvocationHandler")));
+        for (ClassName name : inPackage) {
+            assertTrue(mappedIndex.contains(name));
+        }
+
+        final Set<ClassName> underPackage = mappedIndex.classesMatching("org.apache.commons.lang3.**");
+        assertTrue(underPackage.containsAll(inPackage));
+        assertTrue(underPackage.contains(new ClassName("org.apache.commons.lang3.StringUtils")));
+        assertFalse(underPackage.contains(new ClassName("org.aspectj.bridge.MessageUtil$11")));
+
+        assertTrue(mappedIndex.classesMatching("non.existent.**").isEmpty());
+    }
+
+    @Test
+    public void statistics() throws URISyntaxException {
+        final IndexStatistics statistics = mappedIndex.statistics();
+
+        assertEquals(3, statistics.jars());
+        assertEquals(877 + 153 + 621, statistics.classes());
+        assertEquals(0, statistics.duplicates());
+        assertTrue(statistics.compressedBytes() > 0);
+        assertTrue(statistics.uncompressedBytes() > statistics.compressedBytes());
+
+        final File jar = new File(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI());
+        final JarStatistics jarStatistics = statistics.jar(jar.getAbsoluteFile());
+        assertEquals(153, jarStatistics.classes());
+        assertEquals(153, jarStatistics.indexedClasses());
+        assertTrue(jarStatistics.uncompressedBytes() > jarStatistics.compressedBytes());
+    }
+
+    @Test
+    public void size() {
+        assertEquals(877 + 153 + 621, mappedIndex.size());
+    }
+
+    @Test
+    public void filter() {
+        final FilterStatistics statistics = ((FilteredLibraryIndex) mappedIndex).filterStatistics();
+        final long rejectedBefore = statistics.rejected();
+
+        for (int i = 0; i < 100; i++) {
+            assertFalse(mappedIndex.contains(new ClassName("javax.servlet.http.NotIndexed" + i)));
+        }
+
+        // one percent false positives expected, some leeway for a small sample
+        assertTrue(statistics.rejected() - rejectedBefore > 90);
+
+        // and never a false negative
+        assertTrue(mappedIndex.contains(new ClassName("org.primefaces.model.DefaultScheduleModel")));
+        assertTrue(mappedIndex.contains(new ClassName("org.aspectj.bridge.MessageUtil$11")));
+    }
+
+    @Test
+    public void warmStart() {
+        final File mergedFile = new File(indexDir, "classes.idx");
+        assertTrue(mergedFile.setLastModified(OLD_TIMESTAMP));
+
+        // a new index over the same directory, as a later run would create it
+        final LibraryIndex warmIndex = MappedLibraryIndex.inDirectory(indexDir);
+
+        assertEquals(mappedIndex.size(), warmIndex.size());
+        assertTrue(warmIndex.contains(new ClassName("org.primefaces.model.DefaultScheduleModel")));
+
+        warmIndex.index(toIndex);
+
+        // the same unchanged jars, so the index should not have been rewritten
+        assertEquals(OLD_TIMESTAMP, mergedFile.lastModified());
+        assertEquals(mappedIndex.size(), warmIndex.size());
+    }
+
+    @Test
+    public void snapshot() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File jar = copyToDir("test-classes/test-lib-dir/jar1.jar", workDir);
+        final File otherJar = copyToDir("test-classes/test-lib-dir/jar2.jar", workDir);
+
+        final LibraryIndex index = MappedLibraryIndex.inDirectory(workDir.getPath());
+        index.index(Sets.newHashSet(new JarFile(jar), new JarFile(otherJar)));
+
+        final LibraryIndex snapshot = index.snapshot();
+
+        // merging the index again replaces the merged file, the snapshot keeps reading the old one
+        index.index(Sets.newHashSet(new JarFile(otherJar)));
+        assertEquals(1, index.size());
+
+        final ClassName whatever = new ClassName("com.ayld.test.jar.Whatever");
+        assertFalse(index.contains(whatever));
+        assertTrue(snapshot.contains(whatever));
+        assertTrue(snapshot.get(whatever).content().available() > 0);
+        assertEquals(2, snapshot.size());
+        assertEquals(2, snapshot.classesMatching("com.ayld.test.jar.*").size());
+    }
+
+    @Test
+    public void rebuildOnChange() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File jar = copyToDir("test-classes/test-lib-dir/jar1.jar", workDir);
+        final File otherJar = copyToDir("test-classes/test-lib-dir/jar2.jar", workDir);
+
+        final LibraryIndex index = MappedLibraryIndex.inDirectory(workDir.getPath());
+        final Set<JarFile> libs = Sets.newHashSet(new JarFile(jar), new JarFile(otherJar));
+
+        index.index(libs);
+        assertEquals(2, index.size());
+
+        final File[] segments = segmentsIn(workDir);
+        assertEquals(2, segments.length);
+        for (File segment : segments) {
+            assertTrue(segment.setLastModified(OLD_TIMESTAMP));
+        }
+
+        // a different jar in place of the first one
+        Files.copy(new File(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI()), jar);
+        index.index(libs);
+
+        assertEquals(153 + 1, index.size());
+        assertTrue(index.contains(new ClassName("org.apache.commons.lang3.StringUtils")));
+
+        // only the segment of the changed jar is written again
+        int rewritten = 0;
+        for (File segment : segmentsIn(workDir)) {
+            if (segment.lastModified() != OLD_TIMESTAMP) {
+                rewritten++;
+            }
+        }
+        assertEquals(1, rewritten);
+    }
+
+    @Test
+    public void touchedJar() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File jar = copyToDir("test-classes/test-lib-dir/jar1.jar", workDir);
+
+        final LibraryIndex index = MappedLibraryIndex.inDirectory(workDir.getPath());
+        final Set<JarFile> libs = Collections.singleton(new JarFile(jar));
+        index.index(libs);
+
+        // same classes, new time: the fingerprints are updated and the next run reads nothing
+        assertTrue(jar.setLastModified(jar.lastModified() - 60000));
+        index.index(libs);
+        assertEquals(1, index.size());
+
+        final File mergedFile = new File(workDir, "classes.idx");
+        assertTrue(mergedFile.setLastModified(OLD_TIMESTAMP));
+
+        MappedLibraryIndex.inDirectory(workDir.getPath()).index(libs);
+        assertEquals(OLD_TIMESTAMP, mergedFile.lastModified());
+    }
+
+    @Test
+    public void dropUnusedSegments() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File jar = copyToDir("test-classes/test-lib-dir/jar1.jar", workDir);
+        final File otherJar = copyToDir("test-classes/test-lib-dir/jar2.jar", workDir);
+
+        final LibraryIndex index = MappedLibraryIndex.inDirectory(workDir.getPath());
+        index.index(Sets.newHashSet(new JarFile(jar), new JarFile(otherJar)));
+        assertEquals(2, segmentsIn(workDir).length);
+
+        index.index(Collections.singleton(new JarFile(jar)));
+        assertEquals(1, segmentsIn(workDir).length);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void singleJarIndex() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final LibraryIndex index = MappedLibraryIndex.inDirectory(workDir.getPath());
+
+        index.index(new JarFile(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI().getPath()));
+        assertEquals(153, index.size());
+
+        index.index(new JarFile(Resources.getResource("test-classes/lib/primefaces-3.5.jar").toURI().getPath()));
+        assertEquals(153 + 621, index.size());
+        assertEquals(2, segmentsIn(workDir).length);
+        assertTrue(index.contains(new ClassName("org.apache.commons.lang3.StringUtils")));
+        assertTrue(index.contains(new ClassName("org.primefaces.model.DefaultScheduleModel")));
+    }
+
+    @Test
+    public void classDirectory() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File classDir = TestJarDirectory.explode(new File(Resources.getResource("test-classes/test-lib-dir/jar1.jar").toURI()));
+        final File jar = copyToDir("test-classes/test-lib-dir/jar2.jar", workDir);
+
+        final LibraryIndex index = MappedLibraryIndex.inDirectory(workDir.getPath());
+        final Set<File> libs = Sets.newHashSet(classDir, jar);
+        index.indexLibraries(libs);
+
+        final ClassName whatever = new ClassName("com.ayld.test.jar.Whatever");
+        assertEquals(2, index.size());
+        assertTrue(index.contains(new ClassName("com.ayld.test.jar.Wherever")));
+        assertTrue(index.get(whatever).content().available() > 0);
+        assertEquals(classDir.getAbsoluteFile(), ((ClassLocator) index.lookup(whatever)).jar());
+        assertEquals(2, segmentsIn(workDir).length);
+
+        // the directory is walked again but its classes did not change
+        final File mergedFile = new File(workDir, "classes.idx");
+        assertTrue(mergedFile.setLastModified(OLD_TIMESTAMP));
+        index.indexLibraries(libs);
+        assertEquals(OLD_TIMESTAMP, mergedFile.lastModified());
+
+        // a class added deep in the tree is found by the next update
+        Files.copy(new File(classDir, "com/ayld/test/jar/Whatever.class"), new File(classDir, "com/ayld/test/jar/Added.class"));
+        index.indexLibraries(libs);
+        assertEquals(3, index.size());
+        assertTrue(index.contains(new ClassName("com.ayld.test.jar.Added")));
+    }
+
+    @Test
+    public void multiReleaseJar() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File jar = TestJarDirectory.multiReleaseJar("true");
+        final File other = copyToDir("test-classes/lib/commons-lang3-3.1.jar", workDir);
+        final ClassName versioned = new ClassName("com.ayld.test.mr.Versioned");
+
+        final LibraryIndex index = MappedLibraryIndex.inDirectory(workDir.getPath(), 11);
+        index.indexLibraries(Sets.newLinkedHashSet(Lists.newArrayList(jar, other)));
+
+        // variants are found by the name of their class, in the merged file and in a segment alone
+        assertEquals(153 + 2, index.size());
+        final ClassLocator found = (ClassLocator) index.lookup(versioned);
+        assertEquals("META-INF/versions/11/com/ayld/test/mr/Versioned.class", found.entryName());
+        assertArrayEquals(new byte[]{11}, found.read());
+        assertTrue(index.contains(new ClassName("com.ayld.test.mr.Added")));
+        assertTrue(index.contains(new ClassName("org.apache.commons.lang3.StringUtils")));
+        assertNotNull(index.snapshot().lookup(versioned));
+
+        final LibraryIndex segmentOnly = MappedLibraryIndex.inDirectory(Files.createTempDir().getPath(), 11);
+        segmentOnly.index(new JarFile(jar));
+        assertEquals(versioned.toString(), ((ClassLocator) segmentOnly.lookup(versioned)).className());
+    }
+
+    @Test
+    public void dependencyGraphs() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File jar = copyToDir("test-classes/lib/commons-lang3-3.1.jar", workDir);
+        final ClassName stringUtils = new ClassName("org.apache.commons.lang3.StringUtils");
+
+        final MappedLibraryIndex index = MappedLibraryIndex.inDirectory(workDir.getPath());
+        assertNull(index.dependencyGraph(jar));
+
+        index.setDependencyResolver(new ClassStreamDependencyResolver());
+        index.indexLibraries(Collections.singleton(jar));
+
+        final DependencyGraph graph = index.dependencyGraph(jar);
+        assertNotNull(graph);
+        assertEquals(153, graph.size());
+        assertEquals(new ClassStreamDependencyResolver().resolve(index.get(stringUtils)), Sets.newHashSet(graph.dependenciesOf(stringUtils)));
+        assertEquals(graph.dependenciesOf(stringUtils), ((GraphedLibraryIndex) index.snapshot()).dependencyGraph(jar).dependenciesOf(stringUtils));
+
+        // the graph is read back by a later run, no class is resolved again
+        final MappedLibraryIndex warm = MappedLibraryIndex.inDirectory(workDir.getPath());
+        warm.setDependencyResolver(new FailingResolver());
+        warm.indexLibraries(Collections.singleton(jar));
+        assertEquals(graph.dependenciesOf(stringUtils), warm.dependencyGraph(jar).dependenciesOf(stringUtils));
+    }
+
+    @Test
+    public void dependencyGraphsOfOtherCatalogs() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File jar = copyToDir("test-classes/lib/commons-lang3-3.1.jar", workDir);
+        final ClassName stringUtils = new ClassName("org.apache.commons.lang3.StringUtils");
+
+        final MappedLibraryIndex index = MappedLibraryIndex.inDirectory(workDir.getPath());
+        index.setDependencyResolver(new ClassStreamDependencyResolver());
+        index.indexLibraries(Collections.singleton(jar));
+        assertTrue(index.dependencyGraph(jar).dependenciesOf(stringUtils).contains(new ClassName("org.apache.commons.lang3.ArrayUtils")));
+
+        // a later run taking the jar's classes for platform classes resolves the graph again
+        final ClassStreamDependencyResolver catalogued = new ClassStreamDependencyResolver();
+        catalogued.setPlatformCatalogs(Collections.singletonList(
+                PlatformCatalog.ofJar(Files.createTempDir().getPath(), jar.getPath())));
+
+        final MappedLibraryIndex changed = MappedLibraryIndex.inDirectory(workDir.getPath());
+        changed.setDependencyResolver(catalogued);
+        changed.indexLibraries(Collections.singleton(jar));
+        assertTrue(changed.dependencyGraph(jar).dependenciesOf(stringUtils).isEmpty());
+    }
+
+    @Test
+    public void modularJar() throws URISyntaxException, IOException {
+        final File jar = TestJarDirectory.modularJar();
+
+        final MappedLibraryIndex index = MappedLibraryIndex.inDirectory(Files.createTempDir().getPath(), 11);
+        index.setDependencyResolver(new ClassStreamDependencyResolver());
+        index.indexLibraries(Collections.singleton(jar));
+
+        assertEquals(1, index.size());
+        assertEquals(1, index.dependencyGraph(jar.getAbsoluteFile()).size());
+    }
+
+    @Test
+    public void corruptIndexFile() throws IOException, URISyntaxException {
+        final File workDir = Files.createTempDir();
+        Files.write("not an index", new File(workDir, "classes.idx"), Charsets.UTF_8);
+
+        final LibraryIndex index = MappedLibraryIndex.inDirectory(workDir.getPath());
+        assertEquals(0, index.size());
+
+        index.index(toIndex);
+        assertEquals(mappedIndex.size(), index.size());
+    }
+
+    private static final class FailingResolver implements DependencyResolver<ClassStream> {
+
+        @Override
+        public Set<ClassName> resolve(ClassStream resolvable) {
+            throw new AssertionError("no class expected to be resolved");
+        }
+
+        @Override
+        public Set<ClassName> resolve(Set<ClassStream> resolvables) {
+            throw new AssertionError("no class expected to be resolved");
+        }
+    }
+
+    private static File copyToDir(String resource, File dir) throws URISyntaxException, IOException {
+        final File source = new File(Resources.getResource(resource).toURI());
+        final File result = new File(dir, source.getName());
+        Files.copy(source, result);
+        return result;
+    }
+
+    private static File[] segmentsIn(File indexDir) {
+        return new File(indexDir, "segments").listFiles();
+    }
+}
@@ -1,8 +1,16 @@
 package org.codarama.diet.index.impl;
 
 import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
 import com.google.common.io.Resources;
 import org.codarama.diet.dependency.resolver.DependencyResolver;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.index.FilterStatistics;
+import org.codarama.diet.index.FilteredLibraryIndex;
+import org.codarama.diet.index.IndexStatistics;
+import org.codarama.diet.index.JarStatistics;
 import org.codarama.diet.index.LibraryIndex;
 import org.codarama.diet.model.ClassName;
 import org.codarama.diet.model.ClassStream;
@@ -14,12 +22,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
 
 import static org.junit.Assert.*;
 
@@ -38,6 +53,9 @@ public class TestModeShapeLibraryIndex {
     @Autowired
     private LibraryIndex modeShapeIndex;
 
+    @Autowired
+    private LibraryIndex locatorModeShapeIndex;
+
     @Autowired
     private DependencyResolver<ClassStream> classStreamResolver;
 
@@ -144,10 +162,157 @@ public class TestModeShapeLibraryIndex {
         Assert.fail(); // awww
     }
 
+    @Test
+    public void locatorsOnly() throws IOException {
+        locatorModeShapeIndex.index(Collections.singleton(primefacesJar));
+
+        final ClassName testName = new ClassName("org.primefaces.facelets.MethodRule$MethodBindingMetadata");
+        assertTrue(locatorModeShapeIndex.contains(testName));
+
+        final ClassStream found = locatorModeShapeIndex.get(testName);
+        final ClassStream expected = modeShapeIndex.get(testName);
+
+        assertEquals(testName, found.name());
+        assertArrayEquals(ByteStreams.toByteArray(expected.content()), ByteStreams.toByteArray(found.content()));
+
+        Assert.assertNull(locatorModeShapeIndex.find(new ClassName("org.aspectj.bridge.MessageUtil$11")));
+    }
+
+    @Test
+    public void filter() {
+        locatorModeShapeIndex.index(Collections.singleton(primefacesJar));
+
+        final FilterStatistics statistics = ((FilteredLibraryIndex) locatorModeShapeIndex).filterStatistics();
+        final long rejectedBefore = statistics.rejected();
+
+        assertFalse(locatorModeShapeIndex.contains(new ClassName("org.aspectj.bridge.MessageUtil$11")));
+        assertFalse(locatorModeShapeIndex.contains(new ClassName("non.existent.clazz.Name")));
+        assertTrue(locatorModeShapeIndex.contains(new ClassName("org.primefaces.model.DefaultScheduleModel")));
+
+        assertTrue(statistics.rejected() > rejectedBefore);
+        assertTrue(statistics.passed() > 0);
+    }
+
+    @Test
+    public void filterBeforeLookupAndSnapshot() {
+        locatorModeShapeIndex.index(Collections.singleton(primefacesJar));
+
+        final FilterStatistics statistics = ((FilteredLibraryIndex) locatorModeShapeIndex).filterStatistics();
+        final ClassName missing = new ClassName("non.existent.clazz.Name");
+        final ClassName indexed = new ClassName("org.primefaces.model.DefaultScheduleModel");
+
+        long rejectedBefore = statistics.rejected();
+        assertNull(locatorModeShapeIndex.lookup(missing));
+        assertEquals(rejectedBefore + 1, statistics.rejected());
+
+        // snapshots check a copy of the filter too, counted in the same statistics
+        final LibraryIndex snapshot = locatorModeShapeIndex.snapshot();
+        assertTrue(snapshot instanceof FilteredLibraryIndex);
+
+        rejectedBefore = statistics.rejected();
+        final long passedBefore = statistics.passed();
+        assertNull(snapshot.lookup(missing));
+        assertNotNull(snapshot.lookup(indexed));
+        assertEquals(rejectedBefore + 1, statistics.rejected());
+        assertEquals(passedBefore + 1, statistics.passed());
+    }
+
+    @Test
+    public void contentAddressed() throws IOException {
+        final ModeShapeLibraryIndex index = (ModeShapeLibraryIndex) modeShapeIndex;
+
+        final ClassName original = new ClassName("org.primefaces.model.DefaultScheduleModel");
+        final byte[] originalBytes = ByteStreams.toByteArray(index.get(original).content());
+        final byte[] changedBytes = Arrays.copyOf(originalBytes, originalBytes.length + 1);
+
+        // a shaded copy with the same bytes and a different version of the original
+        final File conflictingJar = new File(indexWorkDir, "conflicting.jar");
+        Files.createParentDirs(conflictingJar);
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(conflictingJar))) {
+            jar.putNextEntry(new JarEntry("shaded/org/primefaces/model/DefaultScheduleModel.class"));
+            jar.write(originalBytes);
+            jar.putNextEntry(new JarEntry("org/primefaces/model/DefaultScheduleModel.class"));
+            jar.write(changedBytes);
+        }
+        index.index(Collections.singleton(new JarFile(conflictingJar)));
+
+        final ClassName shaded = new ClassName("shaded.org.primefaces.model.DefaultScheduleModel");
+        assertNotNull(index.contentId(original));
+        assertEquals(index.contentId(original), index.contentId(shaded));
+        assertArrayEquals(originalBytes, ByteStreams.toByteArray(index.get(shaded).content()));
+
+        // first one wins
+        assertArrayEquals(originalBytes, ByteStreams.toByteArray(index.get(original).content()));
+
+        final Map<ClassName, Set<String>> conflicts = index.conflicts();
+        assertEquals(Collections.singleton(Hashing.sha1().hashBytes(changedBytes).toString()), conflicts.get(original));
+        assertFalse(conflicts.containsKey(shaded));
+    }
+
+    @Test
+    public void classesMatching() {
+        final Set<ClassName> inPackage = modeShapeIndex.classesMatching("org.apache.commons.lang3.event.*");
+        assertTrue(inPackage.contains(new ClassName("org.apache.commons.lang3.event.EventListenerSupport")));
+        assertTrue(inPackage.contains(new ClassName("org.apache.commons.lang3.event.EventListenerSupport$ProxyInvocationHandler")));
+        for (ClassName name : inPackage) {
+            assertTrue(modeShapeIndex.contains(name));
+        }
+
+        final Set<ClassName> underPackage = modeShapeIndex.classesMatching("org.apache.commons.lang3.**");
+        assertTrue(underPackage.containsAll(inPackage));
+        assertTrue(underPackage.contains(new ClassName("org.apache.commons.lang3.StringUtils")));
+        assertFalse(underPackage.contains(new ClassName("org.aspectj.bridge.MessageUtil$11")));
+
+        assertTrue(modeShapeIndex.classesMatching("non.existent.**").isEmpty());
+    }
+
+    @Test
+    public void statistics() throws URISyntaxException {
+        final IndexStatistics statistics = modeShapeIndex.statistics();
+
+        final File jar = new File(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI());
+        final JarStatistics jarStatistics = statistics.jar(jar.getAbsoluteFile());
+        assertEquals(153, jarStatistics.classes());
+        assertEquals(153, jarStatistics.indexedClasses());
+        assertTrue(jarStatistics.uncompressedBytes() > jarStatistics.compressedBytes());
+    }
+
+    @Test
+    public void snapshot() throws IOException {
+        final LibraryIndex snapshot = modeShapeIndex.snapshot();
+        assertSame(snapshot, modeShapeIndex.snapshot());
+
+        // the snapshot reads classes from their jars, not from the repository
+        final ClassName testName = new ClassName("org.apache.commons.lang3.event.EventListenerSupport$ProxyInvocationHandler");
+        assertTrue(snapshot.lookup(testName) instanceof ClassLocator);
+        assertArrayEquals(ByteStreams.toByteArray(modeShapeIndex.get(testName).content()),
+                ByteStreams.toByteArray(snapshot.get(testName).content()));
+        assertEquals(modeShapeIndex.size(), snapshot.size());
+    }
+
     @Test
     public void size() {
         final long size = modeShapeIndex.size();
 
         assertTrue(size > 0);
     }
+
+    @Test
+    public void sizeCountsDuplicatesOnce() throws IOException {
+        final long sizeBefore = modeShapeIndex.size();
+
+        // one class already indexed from commons-lang3 and one new class
+        final File duplicatingJar = new File(indexWorkDir, "duplicating.jar");
+        Files.createParentDirs(duplicatingJar);
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(duplicatingJar))) {
+            jar.putNextEntry(new JarEntry("org/apache/commons/lang3/StringUtils.class"));
+            jar.write(new byte[]{1});
+            jar.putNextEntry(new JarEntry("org/codarama/duplicating/Added.class"));
+            jar.write(new byte[]{2});
+        }
+        modeShapeIndex.index(Collections.singleton(new JarFile(duplicatingJar)));
+
+        assertEquals(sizeBefore + 1, modeShapeIndex.size());
+        assertEquals(modeShapeIndex.size(), modeShapeIndex.snapshot().size());
+    }
 }
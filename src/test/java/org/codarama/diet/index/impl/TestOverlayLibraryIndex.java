@@ -0,0 +1,152 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.codarama.diet.index.ClassLocator;
+import org.codarama.diet.index.LibraryIndex;
+import org.codarama.diet.model.ClassName;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.index.impl.OverlayLibraryIndex}.
+ */
+public class TestOverlayLibraryIndex {
+
+    private static final ClassName ASPECTJ_CLASS = new ClassName("org.aspectj.bridge.MessageUtil$11");
+    private static final ClassName COMMONS_CLASS = new ClassName("org.apache.commons.lang3.StringUtils");
+    private static final ClassName PRIMEFACES_CLASS = new ClassName("org.primefaces.model.DefaultScheduleModel");
+
+    private JarFile aspectjJar;
+    private JarFile commonsJar;
+    private JarFile primefacesJar;
+
+    private LibraryIndex base;
+
+    @Before
+    public void init() throws URISyntaxException, IOException {
+        this.aspectjJar = new JarFile(Resources.getResource("test-classes/lib/aspectjweaver-1.6.12.jar").toURI().getPath());
+        this.commonsJar = new JarFile(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI().getPath());
+        this.primefacesJar = new JarFile(Resources.getResource("test-classes/lib/primefaces-3.5.jar").toURI().getPath());
+
+        this.base = HashLibraryIndex.withExpectedSize(0).index(Sets.newHashSet(aspectjJar, commonsJar)).snapshot();
+    }
+
+    @Test
+    public void baseAndOverlay() throws IOException {
+        final LibraryIndex index = OverlayLibraryIndex.over(base, null).index(Sets.newHashSet(commonsJar, primefacesJar));
+
+        // commons from the base, primefaces from the overlay
+        assertTrue(index.contains(COMMONS_CLASS));
+        assertTrue(index.contains(PRIMEFACES_CLASS));
+        assertTrue(index.get(PRIMEFACES_CLASS).content().available() > 0);
+        assertSame(base.lookup(COMMONS_CLASS), index.lookup(COMMONS_CLASS));
+
+        assertEquals(153 + 621, index.size());
+        assertEquals(2, index.statistics().jars());
+    }
+
+    @Test
+    public void onlyJarsOfTheRun() {
+        final LibraryIndex index = OverlayLibraryIndex.over(base, null).index(Sets.newHashSet(primefacesJar));
+
+        // aspectj is in the base but not one of the run's jars
+        assertFalse(index.contains(ASPECTJ_CLASS));
+        assertNull(index.find(ASPECTJ_CLASS));
+        assertTrue(index.classesMatching("org.aspectj.**").isEmpty());
+        assertFalse(index.classesMatching("org.primefaces.model.*").isEmpty());
+    }
+
+    @Test
+    public void baseIsNotChanged() {
+        final LibraryIndex first = OverlayLibraryIndex.over(base, null).index(Sets.newHashSet(primefacesJar));
+        final LibraryIndex second = OverlayLibraryIndex.over(base, null).index(Sets.newHashSet(aspectjJar));
+
+        assertTrue(first.contains(PRIMEFACES_CLASS));
+        assertFalse(second.contains(PRIMEFACES_CLASS));
+        assertTrue(second.contains(ASPECTJ_CLASS));
+
+        assertFalse(base.contains(PRIMEFACES_CLASS));
+        assertEquals(2, base.statistics().jars());
+    }
+
+    @Test
+    public void shadowedJar() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File jar = new File(Resources.getResource("test-classes/test-lib-dir/jar1.jar").toURI());
+        final File copy = new File(workDir, "copy.jar");
+        Files.copy(jar, copy);
+
+        // one of the jars holds a class the base took from the other one
+        final LibraryIndex shadowingBase = HashLibraryIndex.withExpectedSize(0)
+                .index(Sets.newHashSet(new JarFile(jar), new JarFile(copy)))
+                .snapshot();
+        final File shadowed = shadowingBase.statistics().jar(copy.getAbsoluteFile()).duplicates() > 0
+                ? copy.getAbsoluteFile()
+                : jar.getAbsoluteFile();
+
+        // so a run of the shadowed jar alone gets the class from its overlay
+        final LibraryIndex index = OverlayLibraryIndex.over(shadowingBase, null).index(Sets.newHashSet(new JarFile(shadowed)));
+        final ClassLocator found = (ClassLocator) index.lookup(new ClassName("com.ayld.test.jar.Whatever"));
+        assertEquals(shadowed, found.jar());
+    }
+
+    @Test
+    public void changedJar() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File lib = new File(workDir, "lib.jar");
+        Files.copy(new File(Resources.getResource("test-classes/test-lib-dir/jar1.jar").toURI()), lib);
+        final LibraryIndex indexedBase = HashLibraryIndex.withExpectedSize(0).index(new JarFile(lib)).snapshot();
+
+        // another version of the library is put in place of the indexed one
+        Files.copy(new File(Resources.getResource("test-classes/test-lib-dir/jar2.jar").toURI()), lib);
+        assertTrue(lib.setLastModified(lib.lastModified() + 10000));
+
+        final LibraryIndex index = OverlayLibraryIndex.over(indexedBase, null).indexLibraries(Sets.newHashSet(lib));
+        assertFalse(OverlayLibraryIndex.isCurrentIn(indexedBase, lib, JarDirectory.BASE_RELEASE));
+        assertTrue(index.contains(new ClassName("com.ayld.test.jar.Wherever")));
+        assertFalse(index.contains(new ClassName("com.ayld.test.jar.Whatever")));
+    }
+
+    @Test
+    public void touchedJar() throws URISyntaxException, IOException {
+        final File workDir = Files.createTempDir();
+        final File lib = new File(workDir, "lib.jar");
+        Files.copy(new File(Resources.getResource("test-classes/test-lib-dir/jar1.jar").toURI()), lib);
+        final LibraryIndex indexedBase = HashLibraryIndex.withExpectedSize(0).index(new JarFile(lib)).snapshot();
+
+        // the same classes at the same places, the base still serves the jar
+        assertTrue(lib.setLastModified(lib.lastModified() + 10000));
+
+        final ClassName whatever = new ClassName("com.ayld.test.jar.Whatever");
+        final LibraryIndex index = OverlayLibraryIndex.over(indexedBase, null).indexLibraries(Sets.newHashSet(lib));
+        assertTrue(OverlayLibraryIndex.isCurrentIn(indexedBase, lib, JarDirectory.BASE_RELEASE));
+        assertSame(indexedBase.lookup(whatever), index.lookup(whatever));
+    }
+
+    @Test
+    public void snapshot() {
+        final LibraryIndex index = OverlayLibraryIndex.over(base, null).index(Sets.newHashSet(primefacesJar));
+        final LibraryIndex snapshot = index.snapshot();
+
+        index.index(aspectjJar);
+        assertTrue(index.contains(ASPECTJ_CLASS));
+        assertFalse(snapshot.contains(ASPECTJ_CLASS));
+        assertTrue(snapshot.contains(PRIMEFACES_CLASS));
+
+        try {
+            snapshot.index(aspectjJar);
+        } catch (UnsupportedOperationException e) {
+            return;
+        }
+        fail();
+    }
+}
@@ -0,0 +1,91 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.collect.Sets;
+import org.codarama.diet.model.ClassName;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.index.impl.PackageTrie}.
+ */
+public class TestPackageTrie {
+
+    private PackageTrie trie;
+
+    @Before
+    public void init() {
+        this.trie = new PackageTrie();
+
+        trie.add("com.google.guava.collections.Sets");
+        trie.add("com.google.guava.collections.Lists");
+        trie.add("com.google.guava.collections.Lists$Partition");
+        trie.add("com.google.guava.util.Strings");
+        trie.add("com.google.guava.util.impl.StringsImpl");
+        trie.add("org.primefaces.model.DefaultScheduleModel");
+        trie.add("Unnamed");
+    }
+
+    @Test
+    public void size() {
+        assertEquals(7, trie.size());
+
+        // adding a class twice has no effect
+        trie.add("com.google.guava.util.Strings");
+        assertEquals(7, trie.size());
+    }
+
+    @Test
+    public void exactName() {
+        assertEquals(names("com.google.guava.util.Strings"), trie.matching("com.google.guava.util.Strings"));
+        assertEquals(names("Unnamed"), trie.matching("Unnamed"));
+
+        assertTrue(trie.matching("com.google.guava.util").isEmpty());
+        assertTrue(trie.matching("com.google.guava.util.Missing").isEmpty());
+        assertTrue(trie.matching("non.existent.clazz.Name").isEmpty());
+    }
+
+    @Test
+    public void classesInPackage() {
+        assertEquals(
+                names("com.google.guava.collections.Sets", "com.google.guava.collections.Lists", "com.google.guava.collections.Lists$Partition"),
+                trie.matching("com.google.guava.collections.*")
+        );
+        assertEquals(names("com.google.guava.util.Strings"), trie.matching("com.google.guava.util.*"));
+        assertEquals(names("Unnamed"), trie.matching("*"));
+
+        assertTrue(trie.matching("com.google.*").isEmpty());
+    }
+
+    @Test
+    public void classesUnderPackage() {
+        assertEquals(
+                names("com.google.guava.util.Strings", "com.google.guava.util.impl.StringsImpl"),
+                trie.matching("com.google.guava.util.**")
+        );
+        assertEquals(7, trie.matching("**").size());
+        assertEquals(6, trie.matching("*.**").size());
+    }
+
+    @Test
+    public void wildcardSegments() {
+        assertEquals(names("com.google.guava.util.impl.StringsImpl"), trie.matching("com.**.*Impl"));
+        assertEquals(names("com.google.guava.util.Strings"), trie.matching("com.google.*.*.Strings"));
+        assertEquals(
+                names("com.google.guava.collections.Lists", "com.google.guava.collections.Lists$Partition"),
+                trie.matching("com.google.guava.collec*.Lists*")
+        );
+        assertEquals(names("org.primefaces.model.DefaultScheduleModel"), trie.matching("**.model.*"));
+    }
+
+    private static Set<ClassName> names(String... names) {
+        final Set<ClassName> result = Sets.newHashSet();
+        for (String name : names) {
+            result.add(new ClassName(name));
+        }
+        return result;
+    }
+}
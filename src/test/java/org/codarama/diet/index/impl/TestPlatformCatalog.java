@@ -0,0 +1,86 @@
+package org.codarama.diet.index.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.codarama.diet.model.ClassName;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.index.impl.PlatformCatalog}.
+ */
+public class TestPlatformCatalog {
+
+    private File catalogDir;
+
+    @Before
+    public void init() {
+        this.catalogDir = Files.createTempDir();
+    }
+
+    @Test
+    public void runningJdk() {
+        final PlatformCatalog catalog = PlatformCatalog.ofRunningJdk(catalogDir.getAbsolutePath());
+
+        assertTrue(catalog.includes("java.lang.String"));
+        assertTrue(catalog.includes("javax.swing.JButton"));
+        assertTrue(catalog.includes(new ClassName("java.util.concurrent.ForkJoinPool")));
+        assertFalse(catalog.includes("org.apache.commons.lang3.StringUtils"));
+        assertTrue(catalog.size() > 1000);
+
+        // a second catalog of the same JDK maps the file built by the first
+        final long built = catalog.file().lastModified();
+        assertEquals(built, PlatformCatalog.ofRunningJdk(catalogDir.getAbsolutePath()).file().lastModified());
+    }
+
+    @Test
+    public void jar() throws URISyntaxException {
+        final String jarPath = new File(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI()).getAbsolutePath();
+        final PlatformCatalog catalog = PlatformCatalog.ofJar(catalogDir.getAbsolutePath(), jarPath);
+
+        assertTrue(catalog.includes("org.apache.commons.lang3.StringUtils"));
+        assertTrue(catalog.includes("org.apache.commons.lang3.builder.ToStringBuilder"));
+        assertFalse(catalog.includes("java.lang.String"));
+    }
+
+    @Test
+    public void replace() throws IOException {
+        final File file = new File(catalogDir, "replaced.catalog");
+        PlatformCatalog.write(file, ImmutableList.of("com.example.Old"), 1);
+
+        final PlatformCatalog rebuilt = PlatformCatalog.write(file, ImmutableList.of("com.example.New", "com.example.Newer"), 2);
+        assertEquals(2, rebuilt.size());
+        assertTrue(rebuilt.includes("com.example.New"));
+        assertFalse(rebuilt.includes("com.example.Old"));
+    }
+
+    @Test(expected = IOException.class)
+    public void notACatalog() throws IOException {
+        final File file = new File(catalogDir, "garbage.catalog");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(new byte[64]);
+        }
+        PlatformCatalog.map(file);
+    }
+
+    @Test
+    public void corruptCatalogIsRebuilt() throws IOException, URISyntaxException {
+        final String jarPath = new File(Resources.getResource("test-classes/lib/commons-lang3-3.1.jar").toURI()).getAbsolutePath();
+        final File file = PlatformCatalog.ofJar(catalogDir.getAbsolutePath(), jarPath).file();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(10);
+        }
+
+        final PlatformCatalog rebuilt = PlatformCatalog.ofJar(catalogDir.getAbsolutePath(), jarPath);
+        assertTrue(rebuilt.includes("org.apache.commons.lang3.StringUtils"));
+    }
+}
@@ -1,17 +1,24 @@
 package org.codarama.diet.minimization;
 
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 import org.codarama.diet.bundle.JarMaker;
+import org.codarama.diet.dependency.resolver.DependencyResolver;
+import org.codarama.diet.dependency.resolver.impl.ClassStreamDependencyResolver;
 import org.codarama.diet.index.LibraryIndex;
+import org.codarama.diet.index.impl.MappedLibraryIndex;
 import org.codarama.diet.minimization.impl.IndexedMinimizationStrategy;
 import org.codarama.diet.model.ClassName;
 import org.codarama.diet.model.ClassStream;
 import org.codarama.diet.model.SourceFile;
+import org.codarama.diet.util.EnginePool;
 import org.codarama.diet.util.Files;
 import org.codarama.diet.util.Tokenizer;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,11 +30,12 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Set;
-import java.util.jar.JarFile;
 import java.util.stream.Collectors;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests {@link org.codarama.diet.minimization.impl.IndexedMinimizationStrategy}.
@@ -41,22 +49,39 @@ public class IndexedMinimizationStrategyTest {
     private static final Logger LOG = LoggerFactory.getLogger(IndexedMinimizationStrategyTest.class);
 
     private String pathToSources;
+    private String pathToLibraries;
 
     private Set<File> sources;
     private Set<SourceFile> sourceFiles;
 
     private Set<File> libraries;
-    private Set<JarFile> jarLibraries;
 
     @Autowired
     private IndexedMinimizationStrategy indexedStrategy;
 
+    @Autowired
+    private IndexedMinimizationStrategy sequentialStrategy;
+
+    @Autowired
+    private ClassStreamDependencyResolver classStreamResolver;
+
+    @Autowired
+    private DependencyResolver<SourceFile> sourceDependencyResolver;
+
+    @Autowired
+    private EnginePool enginePool;
+
+    // a mapped index keeping dependency graphs, filled with the test libraries in a directory of its own for every test
+    @Rule
+    public final TemporaryFolder graphedIndexDir = new TemporaryFolder();
+    private IndexedMinimizationStrategy graphedStrategy;
+
     @Autowired
     private LibraryIndex modeShapeIndex;
 
     @Before
     public void init() throws IOException {
-        final String pathToLibraries = toPath(Resources.getResource("test-classes/test-lib-dir"));
+        this.pathToLibraries = toPath(Resources.getResource("test-classes/test-lib-dir"));
 
         this.pathToSources = toPath(Resources.getResource("test-classes/test-src-dir"));
 
@@ -68,17 +93,24 @@ public class IndexedMinimizationStrategyTest {
                         .collect(Collectors.toList())
         );
         this.libraries = Files.in(pathToLibraries).withExtension(JarMaker.JAR_FILE_EXTENSION).all();
-        this.jarLibraries = Sets.newHashSetWithExpectedSize(libraries.size());
-        for (File lib : libraries) {
-            this.jarLibraries.add(new JarFile(lib));
-        }
+
+        final MappedLibraryIndex graphedIndex = MappedLibraryIndex.inDirectory(graphedIndexDir.getRoot().getPath());
+        graphedIndex.setDependencyResolver(classStreamResolver);
+
+        this.graphedStrategy = new IndexedMinimizationStrategy();
+        graphedStrategy.setIndex(graphedIndex);
+        graphedStrategy.setSourceDependencyResolver(sourceDependencyResolver);
+        graphedStrategy.setClassDependencyResolver(classStreamResolver);
+        graphedStrategy.setEnginePool(enginePool);
+        graphedStrategy.setSharedLibraries(pathToLibraries);
+        graphedStrategy.indexSharedLibraries();
     }
 
     @Test
     public void minimize() throws IOException {
 
         long startTime = System.currentTimeMillis();
-        final Set<ClassStream> indexMinimized = indexedStrategy.minimize(sourceFiles, jarLibraries);
+        final Set<ClassStream> indexMinimized = indexedStrategy.minimize(sourceFiles, libraries);
         long endTime = System.currentTimeMillis();
 
         LOG.info("minimization took: " + (endTime - startTime) / 1000 + " seconds");
@@ -105,6 +137,60 @@ public class IndexedMinimizationStrategyTest {
         LOG.info("libraries contain: " + indexMinimized.size() + " classes after minimization");
     }
 
+    @Test
+    public void parallelMatchesSequential() throws IOException {
+        assertEquals(namesOf(sequentialStrategy.minimize(sourceFiles, libraries)), namesOf(indexedStrategy.minimize(sourceFiles, libraries)));
+    }
+
+    @Test
+    public void graphsMatchParsing() throws IOException {
+        // the graphed index holds the libraries, their dependencies are followed through its graphs
+        assertEquals(namesOf(sequentialStrategy.minimize(sourceFiles, libraries)), namesOf(graphedStrategy.minimize(sourceFiles, libraries)));
+    }
+
+    @Test
+    public void runsLeaveSharedIndexAlone() throws IOException {
+        final Set<File> held = Sets.newHashSet(modeShapeIndex.statistics().perJar().keySet());
+
+        try (MinimizationResult<ClassStream> result = indexedStrategy.minimizeToResult(sourceFiles, libraries)) {
+            assertTrue(result.classes().size() > 0);
+            assertTrue(result.librariesFromIndex().isEmpty());
+        }
+        assertEquals(held, modeShapeIndex.statistics().perJar().keySet());
+    }
+
+    @Test
+    public void laterRunsReadFromIndex() throws IOException {
+        try (MinimizationResult<ClassStream> first = graphedStrategy.minimizeToResult(sourceFiles, libraries);
+             MinimizationResult<ClassStream> second = graphedStrategy.minimizeToResult(sourceFiles, libraries)) {
+
+            final Set<File> absoluteLibraries = libraries.stream().map(File::getAbsoluteFile).collect(Collectors.toSet());
+            assertEquals(absoluteLibraries, first.librariesFromIndex());
+            assertEquals(absoluteLibraries, second.librariesFromIndex());
+            assertEquals(namesOf(first.classes()), namesOf(second.classes()));
+            assertEquals(first.libraryStatistics().classes(), second.libraryStatistics().classes());
+        }
+    }
+
+    @Test
+    public void closedResultDropsBytes() throws IOException {
+        final MinimizationResult<ClassStream> result = graphedStrategy.minimizeToResult(sourceFiles, libraries);
+        final ClassStream found = result.classes().iterator().next();
+        assertTrue(ByteStreams.toByteArray(found.content()).length > 0);
+
+        result.close();
+        try {
+            found.content();
+            fail("expected the bytes of a closed result to be dropped");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static Set<ClassName> namesOf(Set<ClassStream> classes) {
+        return classes.stream().map(ClassStream::name).collect(Collectors.toSet());
+    }
+
     private String toPath(URL uri) {
         return Tokenizer.delimiter(":").tokenize(uri.toString()).lastToken();
     }
@@ -36,6 +36,30 @@ public class TestClassName {
         dontBlowUp("the.meaning.is42");
     }
 
+    @Test
+    public void interned() {
+        final ClassName name = ClassName.of("org.codarama.diet.model.Interned");
+
+        Assert.assertSame(name, ClassName.of("org.codarama.diet.model.Interned"));
+        Assert.assertSame(name, ClassName.byId(name.id()));
+        Assert.assertEquals(name, new ClassName("org.codarama.diet.model.Interned"));
+        Assert.assertEquals(name.id(), new ClassName("org.codarama.diet.model.Interned").id());
+        Assert.assertNotEquals(name.id(), ClassName.of("org.codarama.diet.model.Other").id());
+        Assert.assertEquals("Interned", name.shortName());
+        Assert.assertEquals("InTheDefaultPackage", ClassName.of("InTheDefaultPackage").shortName());
+    }
+
+    @Test
+    public void invalidNamesAreNotInterned() {
+        blowUp("not interned.either");
+        blowUp("not interned.either");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownId() {
+        ClassName.byId(Integer.MAX_VALUE);
+    }
+
     public void dontBlowUp(String validClassName) {
         // no need for try/catch here, but I really want to add the 'funny' comments so...
         try {
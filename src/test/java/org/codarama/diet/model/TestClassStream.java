@@ -1,11 +1,14 @@
 package org.codarama.diet.model;
 
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.Set;
 
 /**
@@ -35,4 +38,39 @@ public class TestClassStream {
         Assert.assertTrue(dependencies.size() > 0);
     }
 
+    @Test
+    public void fromSource() throws IOException {
+        final ClassFile classFile = ClassFile.fromClasspath("test-classes/guava-14.0.1/com/google/common/io/AppendableWriter.class");
+        final ClassName name = new ClassName("com.google.common.io.AppendableWriter");
+
+        final ClassStream testClassStream = ClassStream.fromSource(name, Files.asByteSource(classFile.physicalFile()));
+        Assert.assertEquals(name, testClassStream.name());
+
+        // every call reads the source again
+        final byte[] expected = Files.toByteArray(classFile.physicalFile());
+        Assert.assertArrayEquals(expected, ByteStreams.toByteArray(testClassStream.content()));
+        Assert.assertArrayEquals(expected, ByteStreams.toByteArray(testClassStream.content()));
+
+        final ClassStream read = ClassStream.fromStream(new FileInputStream(classFile.physicalFile()));
+        Assert.assertEquals(read.dependencies(), testClassStream.dependencies());
+    }
+
+    @Test
+    public void fromBytes() throws IOException {
+        final ClassFile classFile = ClassFile.fromClasspath("test-classes/guava-14.0.1/com/google/common/io/AppendableWriter.class");
+        final byte[] bytes = Files.toByteArray(classFile.physicalFile());
+
+        final ClassStream testClassStream = ClassStream.fromBytes(bytes);
+        Assert.assertEquals(new ClassName("com.google.common.io.AppendableWriter"), testClassStream.name());
+
+        // the bytes are held as they are, not copied
+        Assert.assertSame(bytes, testClassStream.bytes());
+        Assert.assertArrayEquals(bytes, ByteStreams.toByteArray(testClassStream.content()));
+        Assert.assertArrayEquals(bytes, ByteStreams.toByteArray(testClassStream.content()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromInvalidBytes() {
+        ClassStream.fromBytes(new byte[] {1, 2, 3});
+    }
 }
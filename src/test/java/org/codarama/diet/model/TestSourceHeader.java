@@ -0,0 +1,133 @@
+package org.codarama.diet.model;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.model.SourceHeader}.
+ */
+public class TestSourceHeader {
+
+    @Test
+    public void packageAndImports() throws IOException {
+        final SourceHeader header = read(
+                "/* import not.a.Comment; */",
+                "package org.codarama.test ;",
+                "// import not.a.LineComment;",
+                "import java.util.List;",
+                "import static org.junit.Assert.assertTrue;",
+                "import static org.junit.Assert.*;",
+                "import java.util.concurrent.*;;",
+                "import java . util . Map ;",
+                "",
+                "public final class Test {",
+                "    String notAnImport = \"import not.a.String;\";",
+                "}"
+        );
+
+        assertEquals("org.codarama.test", header.packageName());
+        assertEquals(Lists.newArrayList(
+                "import java.util.List;",
+                "import static org.junit.Assert.assertTrue;",
+                "import static org.junit.Assert.*;",
+                "import java.util.concurrent.*;",
+                "import java.util.Map;"
+        ), toStrings(header.imports()));
+    }
+
+    @Test
+    public void annotations() throws IOException {
+        final SourceHeader packageInfo = read(
+                "@Deprecated",
+                "@javax.annotation.Generated(value = {\"a (\", \"b\\\")\"}, comments = \"\"\"",
+                "    text ) block",
+                "    \"\"\")",
+                "package org.codarama.test;"
+        );
+        assertEquals("org.codarama.test", packageInfo.packageName());
+        assertTrue(packageInfo.imports().isEmpty());
+
+        final SourceHeader annotatedType = read("@SuppressWarnings('x') public non-sealed class Test permits A {");
+        assertEquals("", annotatedType.packageName());
+
+        assertTrue(read("package a; import b.C; public @interface Marker {}").imports().size() == 1);
+    }
+
+    @Test
+    public void stopsAtFirstType() throws IOException {
+        final StringReader source = new StringReader("import a.B; class Test { ) not ( java");
+
+        assertEquals(1, SourceHeader.read(source).imports().size());
+        // the character after the name is read to end the name
+        assertEquals("{ ) not ( java", read(source));
+    }
+
+    @Test
+    public void empty() throws IOException {
+        assertEquals("", read("").packageName());
+        assertEquals("a.b", read("package a.b; // nothing else").packageName());
+    }
+
+    @Test
+    public void byteOrderMark() throws IOException {
+        final SourceHeader header = read("\uFEFFpackage a.b;", "import c.D;", "class E {}");
+        assertEquals("a.b", header.packageName());
+        assertEquals(1, header.imports().size());
+
+        assertEquals("a.b", read("\uFEFF/* licence */ package a.b;").packageName());
+        assertEquals("", read("\uFEFF").packageName());
+    }
+
+        @Test
+    public void invalid() throws IOException {
+        assertInvalid("dafuq org.junit.runner.RunWith;");
+        assertInvalid("import org.junit.runner.RunWith");
+        assertInvalid("import RunWith;");
+        assertInvalid("import org.junit.*.Test;");
+        assertInvalid("package a.b; public clazs Coffee {}");
+        assertInvalid("/* never closed");
+        assertInvalid("@Generated(\"never closed) package a;");
+        assertInvalid("package a; import b.C; { }");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSourceFile() {
+        SourceFile.fromClasspath("test-classes/InvalidCoffee.java");
+    }
+
+    private static void assertInvalid(String source) throws IOException {
+        try {
+            SourceHeader.read(new StringReader(source));
+            fail("expected invalid: " + source);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static SourceHeader read(String... lines) throws IOException {
+        return SourceHeader.read(new StringReader(String.join("\n", lines)));
+    }
+
+    private static String read(StringReader rest) throws IOException {
+        final StringBuilder result = new StringBuilder();
+        int c;
+        while ((c = rest.read()) != -1) {
+            result.append((char) c);
+        }
+        return result.toString();
+    }
+
+    private static List<String> toStrings(List<SourceHeader.Import> imports) {
+        final List<String> result = Lists.newArrayList();
+        for (SourceHeader.Import anImport : imports) {
+            result.add(anImport.toString());
+        }
+        return result;
+    }
+}
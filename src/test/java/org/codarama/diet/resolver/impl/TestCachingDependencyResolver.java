@@ -0,0 +1,118 @@
+package org.codarama.diet.resolver.impl;
+
+import com.google.common.io.Files;
+import org.codarama.diet.dependency.resolver.DependencyResolver;
+import org.codarama.diet.dependency.resolver.impl.CachingDependencyResolver;
+import org.codarama.diet.dependency.resolver.impl.ClassStreamDependencyResolver;
+import org.codarama.diet.model.ClassFile;
+import org.codarama.diet.model.ClassName;
+import org.codarama.diet.model.ClassStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.dependency.resolver.impl.CachingDependencyResolver}.
+ */
+public class TestCachingDependencyResolver {
+
+    private static final String TEST_CLASS = "test-classes/guava-14.0.1/com/google/common/io/AppendableWriter.class";
+
+    private File cacheFile;
+    private CountingResolver delegate;
+
+    @Before
+    public void init() {
+        this.cacheFile = new File(Files.createTempDir(), "dependencies.cache");
+        this.delegate = new CountingResolver();
+    }
+
+    @Test
+    public void hit() throws IOException {
+        final CachingDependencyResolver cache = CachingDependencyResolver.inFile(cacheFile.getAbsolutePath(), delegate);
+
+        final Set<ClassName> resolved = cache.resolve(testClass());
+        assertEquals(new ClassStreamDependencyResolver().resolve(testClass()), resolved);
+        assertEquals(resolved, cache.resolve(testClass()));
+
+        assertEquals(1, delegate.calls);
+        assertEquals(1, cache.statistics().hits());
+        assertEquals(1, cache.statistics().misses());
+    }
+
+    @Test
+    public void persisted() throws IOException {
+        final CachingDependencyResolver cold = CachingDependencyResolver.inFile(cacheFile.getAbsolutePath(), delegate);
+        final Set<ClassName> resolved = cold.resolve(testClass());
+        cold.flush();
+
+        final CachingDependencyResolver warm = CachingDependencyResolver.inFile(cacheFile.getAbsolutePath(), delegate);
+        assertEquals(1, warm.size());
+        assertEquals(resolved, warm.resolve(testClass()));
+
+        assertEquals(1, delegate.calls);
+        assertEquals(1, warm.statistics().hits());
+        assertEquals(0, warm.statistics().misses());
+    }
+
+    @Test
+    public void unreadableFile() throws IOException {
+        Files.write("not a cache".getBytes("UTF-8"), cacheFile);
+
+        final CachingDependencyResolver cache = CachingDependencyResolver.inFile(cacheFile.getAbsolutePath(), delegate);
+        assertEquals(0, cache.size());
+
+        cache.resolve(testClass());
+        cache.flush();
+        assertEquals(1, CachingDependencyResolver.inFile(cacheFile.getAbsolutePath(), delegate).size());
+    }
+
+    @Test
+    public void otherFingerprint() throws IOException {
+        final CachingDependencyResolver cold = CachingDependencyResolver.inFile(cacheFile.getAbsolutePath(), delegate);
+        cold.resolve(testClass());
+        cold.flush();
+
+        // as if the platform catalogs of the wrapped resolver changed between runs
+        delegate.fingerprint = 1;
+        final CachingDependencyResolver changed = CachingDependencyResolver.inFile(cacheFile.getAbsolutePath(), delegate);
+        assertEquals(0, changed.size());
+        changed.resolve(testClass());
+        assertEquals(2, delegate.calls);
+
+        changed.flush();
+        assertEquals(1, CachingDependencyResolver.inFile(cacheFile.getAbsolutePath(), delegate).size());
+    }
+
+    private static ClassStream testClass() {
+        return ClassStream.fromFile(ClassFile.fromClasspath(TEST_CLASS).physicalFile());
+    }
+
+    private static final class CountingResolver implements DependencyResolver<ClassStream> {
+
+        private final ClassStreamDependencyResolver resolver = new ClassStreamDependencyResolver();
+        private int calls;
+        private long fingerprint;
+
+        @Override
+        public Set<ClassName> resolve(ClassStream resolvable) throws IOException {
+            calls++;
+            return resolver.resolve(resolvable);
+        }
+
+        @Override
+        public Set<ClassName> resolve(Set<ClassStream> resolvables) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long fingerprint() {
+            return fingerprint;
+        }
+    }
+}
@@ -3,6 +3,8 @@ package org.codarama.diet.resolver.impl;
 import java.io.IOException;
 import java.util.Set;
 
+import com.google.common.collect.ImmutableSet;
+
 import org.junit.Assert;
 import org.codarama.diet.dependency.resolver.DependencyResolver;
 import org.codarama.diet.model.ClassFile;
@@ -30,4 +32,19 @@ public class TestConcurrentClassDependencyResolver {
         Assert.assertEquals(1, resolved.size());
         Assert.assertEquals(new ClassName("org.primefaces.model.TreeNode"), resolved.iterator().next());
     }
+
+    @Test
+    public void resolveTwice() throws IOException {
+        final Set<ClassFile> classFiles = ImmutableSet.of(
+                ClassFile.fromClasspath("test-classes/primefaces-3.5.jar/org/primefaces/model/TreeTableModel.class"),
+                ClassFile.fromClasspath("test-classes/guava-14.0.1/com/google/common/io/AppendableWriter.class")
+        );
+
+        final Set<ClassName> resolved = classDependencyResolver.resolve(classFiles);
+        Assert.assertTrue(resolved.contains(new ClassName("org.primefaces.model.TreeNode")));
+        Assert.assertTrue(resolved.contains(new ClassName("com.google.common.base.Preconditions")));
+
+        // the resolver's pool outlives a call
+        Assert.assertEquals(resolved, classDependencyResolver.resolve(classFiles));
+    }
 }
@@ -61,6 +61,9 @@ public class TestConcurrentSourceDependencyResolver {
 
         // result sets should match
         Assert.assertEquals(dependencies, toStringSet(resolvedDependencies));
+
+        // the resolver's pool outlives a call
+        Assert.assertEquals(resolvedDependencies, sourceDependencyResolver.resolve(sources));
     }
 
     private Set<String> toStringSet(Set<ClassName> toConvert) {
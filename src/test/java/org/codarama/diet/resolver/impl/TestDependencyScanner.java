@@ -0,0 +1,182 @@
+package org.codarama.diet.resolver.impl;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.codarama.diet.dependency.resolver.impl.DependencyScanner;
+import org.codarama.diet.model.ClassFile;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.dependency.resolver.impl.DependencyScanner}.
+ */
+public class TestDependencyScanner {
+
+    @Test
+    public void compiledClass() throws IOException {
+        final byte[] bytes = Files.toByteArray(
+                ClassFile.fromClasspath("test-classes/guava-14.0.1/com/google/common/io/AppendableWriter.class").physicalFile()
+        );
+
+        assertEquals("com.google.common.io.AppendableWriter", DependencyScanner.className(bytes));
+
+        final Set<String> referenced = DependencyScanner.referencedClasses(bytes);
+        assertTrue(referenced.contains("java.io.Writer"));
+        assertTrue(referenced.contains("com.google.common.base.Preconditions"));
+        assertFalse(referenced.contains("com.google.common.io.AppendableWriter"));
+    }
+
+    @Test
+    public void modernConstantPool() throws IOException {
+        final byte[] bytes = modernClass();
+
+        assertEquals("com.example.Modern", DependencyScanner.className(bytes));
+        assertEquals(
+                ImmutableSet.of(
+                        "com.example.Dependency", "com.example.Element", "com.example.Param", "com.example.ArrayParam",
+                        "com.example.Returned", "com.example.MethodTyped", "com.example.Unicode\u00e9\u4e2d"
+                ),
+                DependencyScanner.referencedClasses(bytes)
+        );
+    }
+
+    @Test
+    public void signaturesAndAnnotations() throws IOException {
+        final byte[] bytes;
+        try (InputStream in = TestDependencyScanner.class.getResourceAsStream("TestDependencyScanner$Generic.class")) {
+            bytes = ByteStreams.toByteArray(in);
+        }
+
+        final Set<String> referenced = DependencyScanner.referencedClasses(bytes);
+
+        // only in signatures
+        assertTrue(referenced.contains(UUID.class.getName()));
+        assertTrue(referenced.contains(Locale.class.getName()));
+        assertTrue(referenced.contains(BitSet.class.getName()));
+        assertTrue(referenced.contains(Currency.class.getName()));
+        assertTrue(referenced.contains(Callable.class.getName()));
+
+        // only in descriptors
+        assertTrue(referenced.contains(Optional.class.getName()));
+        assertTrue(referenced.contains(Map.class.getName()));
+
+        // only in annotations
+        assertTrue(referenced.contains(Marker.class.getName()));
+        assertTrue(referenced.contains(CRC32.class.getName()));
+        assertTrue(referenced.contains(Thread.State.class.getName()));
+
+        assertFalse(referenced.contains(Generic.class.getName()));
+    }
+
+    @Test
+    public void byteBuffer() throws IOException {
+        final byte[] bytes = modernClass();
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertEquals(DependencyScanner.referencedClasses(bytes), DependencyScanner.referencedClasses(direct));
+        assertEquals(0, direct.position());
+
+        // a slice of a larger array
+        final byte[] padded = new byte[bytes.length + 10];
+        System.arraycopy(bytes, 0, padded, 5, bytes.length);
+        final ByteBuffer slice = ByteBuffer.wrap(padded, 5, bytes.length);
+        assertEquals(DependencyScanner.referencedClasses(bytes), DependencyScanner.referencedClasses(slice));
+    }
+
+    @Test(expected = IOException.class)
+    public void notAClass() throws IOException {
+        DependencyScanner.referencedClasses("not a class, just some text".getBytes("UTF-8"));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncated() throws IOException {
+        final byte[] bytes = modernClass();
+        DependencyScanner.referencedClasses(Arrays.copyOf(bytes, bytes.length / 2));
+    }
+
+    // a class with the constant pool tags added after Java 6, a long, arrays and non ASCII names
+    private static byte[] modernClass() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(55);
+
+        out.writeShort(24); // pool count, one more than the last index
+        out.writeByte(1); out.writeUTF("com/example/Modern");            // 1
+        out.writeByte(7); out.writeShort(1);                             // 2 this class
+        out.writeByte(1); out.writeUTF("com/example/Dependency");        // 3
+        out.writeByte(7); out.writeShort(3);                             // 4
+        out.writeByte(5); out.writeLong(42);                             // 5 and 6
+        out.writeByte(1); out.writeUTF("[[Lcom/example/Element;");       // 7
+        out.writeByte(7); out.writeShort(7);                             // 8
+        out.writeByte(1); out.writeUTF("[I");                            // 9
+        out.writeByte(7); out.writeShort(9);                             // 10
+        out.writeByte(12); out.writeShort(3); out.writeShort(22);        // 11 name and type
+        out.writeByte(15); out.writeByte(6); out.writeShort(11);         // 12 method handle
+        out.writeByte(16); out.writeShort(23);                           // 13 method type
+        out.writeByte(18); out.writeShort(0); out.writeShort(11);        // 14 invoke dynamic
+        out.writeByte(17); out.writeShort(0); out.writeShort(11);        // 15 dynamic
+        out.writeByte(19); out.writeShort(3);                            // 16 module
+        out.writeByte(20); out.writeShort(3);                            // 17 package
+        out.writeByte(1); out.writeUTF("com/example/Unicode\u00e9\u4e2d");  // 18
+        out.writeByte(7); out.writeShort(18);                            // 19
+        out.writeByte(6); out.writeDouble(4.2);                          // 20 and 21
+        out.writeByte(1); out.writeUTF("(Lcom/example/Param;[[Lcom/example/ArrayParam;I)Lcom/example/Returned;"); // 22
+        out.writeByte(1); out.writeUTF("()Lcom/example/MethodTyped;");   // 23
+
+        out.writeShort(0x21); // access flags
+        out.writeShort(2);    // this class
+        out.writeShort(0);    // no super class
+        out.writeShort(0);    // interfaces
+        out.writeShort(0);    // fields
+        out.writeShort(0);    // methods
+        out.writeShort(0);    // attributes
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    private @interface Marker {
+
+        Class<?> value();
+
+        Thread.State state();
+    }
+
+    @SuppressWarnings("unused")
+    private static class Generic<T extends Callable<UUID>> {
+
+        @Marker(value = CRC32.class, state = Thread.State.NEW)
+        private List<Locale> locales;
+
+        private Map<String, BitSet> byCurrency(Optional<Currency> currency) throws TimeoutException {
+            return null;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.codarama.diet.test.util.suite;
 
 import org.codarama.diet.api.IndexedMinimizerTest;
 import org.codarama.diet.api.RegistrarTest;
+import org.codarama.diet.index.impl.LibraryIndexBenchmark;
 import org.junit.experimental.categories.Categories;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -15,7 +16,8 @@ import org.junit.runners.Suite;
 @Categories.IncludeCategory(IntegrationTest.class)
 @Suite.SuiteClasses({
         RegistrarTest.class,
-        IndexedMinimizerTest.class
+        IndexedMinimizerTest.class,
+        LibraryIndexBenchmark.class
 })
 public class IntegrationTestsSuite {
 }
@@ -0,0 +1,93 @@
+package org.codarama.diet.util;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link org.codarama.diet.util.EnginePool}.
+ */
+public class TestEnginePool {
+
+    private EnginePool pool;
+
+    @Before
+    public void init() {
+        this.pool = EnginePool.withParallelism(4);
+    }
+
+    @After
+    public void close() {
+        pool.close();
+    }
+
+    @Test
+    public void chunks() throws IOException {
+        final List<Integer> items = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++) {
+            items.add(i);
+        }
+
+        final Set<String> threads = Collections.synchronizedSet(Sets.<String>newHashSet());
+        final List<Integer> sums = pool.inChunks(items, 2, new EnginePool.Chunk<Integer, Integer>() {
+            @Override
+            public Integer call(List<Integer> chunk) {
+                threads.add(Thread.currentThread().getName());
+
+                int sum = 0;
+                for (int item : chunk) {
+                    sum += item;
+                }
+                return sum;
+            }
+        });
+
+        // the phase limit, not the pool's parallelism, decides the number of chunks
+        assertEquals(2, sums.size());
+        assertEquals(499500, sums.get(0) + sums.get(1));
+        assertTrue(threads.size() <= 2);
+    }
+
+    @Test
+    public void reusable() throws IOException {
+        for (int run = 0; run < 3; run++) {
+            assertEquals(ImmutableList.of(1, 1, 1), pool.inChunks(ImmutableList.of("a", "b", "c"), 8, new EnginePool.Chunk<String, Integer>() {
+                @Override
+                public Integer call(List<String> chunk) {
+                    return chunk.size();
+                }
+            }));
+        }
+        assertFalse(pool.executor().isShutdown());
+    }
+
+    @Test
+    public void noItems() throws IOException {
+        assertTrue(pool.inChunks(Collections.<String>emptyList(), 8, new EnginePool.Chunk<String, Integer>() {
+            @Override
+            public Integer call(List<String> chunk) {
+                throw new AssertionError("no chunk expected");
+            }
+        }).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void failure() throws IOException {
+        pool.inChunks(ImmutableList.of("a", "b"), 2, new EnginePool.Chunk<String, Integer>() {
+            @Override
+            public Integer call(List<String> chunk) throws IOException {
+                throw new IOException("failed on: " + chunk);
+            }
+        });
+    }
+}